@@ -373,7 +373,15 @@ export async function calculateBatchTariffs(
     throw new Error(errorMsg);
   }
 
-  return response.json();
+  // Failed items come back in place with error/message instead of failing the whole batch
+  const results: (TariffCalculationResult & { error?: string; message?: string })[] =
+    await response.json();
+  const failed = results.find((result) => result.error);
+  if (failed) {
+    throw new Error(failed.message || failed.error);
+  }
+
+  return results;
 }
 
 /**
@@ -0,0 +1,301 @@
+package com.verbosegarbonzo.tariff.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import com.verbosegarbonzo.tariff.config.WitsProperties;
+
+import reactor.core.publisher.Mono;
+
+@Component
+public class WitsTariffClient {
+    // Fetches single tariff rates from the WITS tariff API for the calculate fallback.
+    // - concurrent callers for the same (reporter, partner, hs6, year) share one HTTP call
+    // - "no data" answers are remembered for wits.fetch.negative-cache-ttl
+    // - at most wits.fetch.max-concurrent-calls calls are open at once; with none free it fails fast
+    // - a caller waits at most wits.fetch.wait-timeout; a slower call still completes for later callers
+    // - a circuit breaker stops calling WITS after repeated failures and retries after a pause
+    // Failures (timeouts, 5xx, malformed XML, breaker open, no call slot) resolve to empty but are
+    // never cached.
+
+    private static final Logger log = LoggerFactory.getLogger(WitsTariffClient.class);
+
+    /** Partner code WITS uses for MFN (all partners) rates. */
+    public static final String MFN_PARTNER = "000";
+
+    private final WebClient webClient;
+    private final WitsProperties props;
+    private final WitsProperties.Fetch fetch;
+
+    private final Map<RateKey, CompletableFuture<Optional<BigDecimal>>> inFlight = new ConcurrentHashMap<>();
+    private final Map<RateKey, Long> noDataUntil = new ConcurrentHashMap<>();
+    private final Semaphore callSlots;
+    private final CircuitBreaker breaker;
+
+    public WitsTariffClient(@Qualifier("tariffWebClient") WebClient tariffWebClient, WitsProperties props) {
+        this.webClient = tariffWebClient;
+        this.props = props;
+        this.fetch = props.getFetch();
+        this.callSlots = new Semaphore(Math.max(1, fetch.getMaxConcurrentCalls()), true);
+        this.breaker = new CircuitBreaker(fetch.getBreakerFailureThreshold(), fetch.getBreakerOpenDuration());
+    }
+
+    public record RateKey(String reporter, String partner, String hs6, int year) {
+    }
+
+    /**
+     * Fetch the reported ad-valorem rate for a route and year.
+     *
+     * @param reporter WITS numeric code of the importer
+     * @param partner  WITS numeric code of the exporter, or {@link #MFN_PARTNER}
+     * @return future completing with the rate, or empty when WITS has none, cannot be reached or
+     *         has not answered within the wait timeout; it never blocks the caller
+     */
+    public CompletableFuture<Optional<BigDecimal>> fetchRate(String reporter, String partner, String hs6, int year) {
+        RateKey key = new RateKey(reporter, partner, hs6, year);
+
+        Long until = noDataUntil.get(key);
+        if (until != null) {
+            if (System.nanoTime() - until < 0) {
+                return CompletableFuture.completedFuture(Optional.empty());
+            }
+            noDataUntil.remove(key, until);
+        }
+
+        CompletableFuture<Optional<BigDecimal>> call = new CompletableFuture<>();
+        CompletableFuture<Optional<BigDecimal>> existing = inFlight.putIfAbsent(key, call);
+        if (existing != null) {
+            return bounded(existing); // coalesce onto the call already in progress
+        }
+
+        if (!breaker.allowRequest()) {
+            log.debug("WITS circuit open, skipping fetch for {}", key);
+            finish(key, call, Optional.empty());
+            return call;
+        }
+
+        if (!callSlots.tryAcquire()) {
+            log.warn("No WITS call slot free, skipping fetch for {}", key);
+            breaker.release();
+            finish(key, call, Optional.empty());
+            return call;
+        }
+
+        Mono.defer(() -> request(key))
+                .timeout(fetch.getCallTimeout())
+                .subscribe(
+                        rate -> {
+                            callSlots.release();
+                            breaker.recordSuccess();
+                            if (rate.isEmpty()) {
+                                rememberNoData(key);
+                            }
+                            finish(key, call, rate);
+                        },
+                        error -> {
+                            callSlots.release();
+                            breaker.recordFailure();
+                            log.error("Error fetching rate from WITS for {}: {}", key, error.getMessage());
+                            finish(key, call, Optional.empty());
+                        });
+        return bounded(call);
+    }
+
+    /**
+     * The caller's view of a call: completes empty after the wait timeout without touching the
+     * shared call, which other callers and the negative cache still see through to its end.
+     */
+    private CompletableFuture<Optional<BigDecimal>> bounded(CompletableFuture<Optional<BigDecimal>> call) {
+        return call.copy().completeOnTimeout(Optional.empty(), fetch.getWaitTimeout().toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Get client state for monitoring.
+     */
+    public Map<String, Object> getStatus() {
+        return Map.of(
+                "inFlight", inFlight.size(),
+                "negativeCacheSize", noDataUntil.size(),
+                "availableCallSlots", callSlots.availablePermits(),
+                "circuitState", breaker.state().name());
+    }
+
+    private Mono<Optional<BigDecimal>> request(RateKey key) {
+        String uri = String.format("/%s/reporter/%s/partner/%s/product/%s/year/%s/datatype/reported",
+                props.getTariff().getDataset(), key.reporter(), key.partner(), key.hs6(), key.year());
+        log.debug("Fetching from WITS: {}", uri);
+
+        return webClient.get()
+                .uri(uri)
+                .accept(MediaType.APPLICATION_XML)
+                .exchangeToMono(response -> {
+                    if (response.statusCode().is2xxSuccessful()) {
+                        return DataBufferUtils.join(response.bodyToFlux(DataBuffer.class))
+                                .map(db -> parseRate(db.asInputStream(true)))
+                                .defaultIfEmpty(Optional.empty());
+                    }
+                    if (response.statusCode().isSameCodeAs(HttpStatus.NOT_FOUND)) {
+                        // WITS answers 404 for combinations it has no data for
+                        return response.releaseBody().thenReturn(Optional.<BigDecimal>empty());
+                    }
+                    return response.createError();
+                });
+    }
+
+    private void rememberNoData(RateKey key) {
+        if (noDataUntil.size() >= fetch.getNegativeCacheMaxEntries()) {
+            long now = System.nanoTime();
+            noDataUntil.values().removeIf(until -> now - until >= 0);
+            if (noDataUntil.size() >= fetch.getNegativeCacheMaxEntries()) {
+                noDataUntil.clear();
+            }
+        }
+        noDataUntil.put(key, System.nanoTime() + fetch.getNegativeCacheTtl().toNanos());
+    }
+
+    private void finish(RateKey key, CompletableFuture<Optional<BigDecimal>> call, Optional<BigDecimal> rate) {
+        inFlight.remove(key, call);
+        call.complete(rate);
+    }
+
+    /**
+     * The first numeric observation value in a WITS SDMX response, or empty when it has none.
+     * A response that cannot be read, or whose only values are not numbers, throws so that it
+     * counts as a failure rather than a "no data" answer.
+     */
+    private Optional<BigDecimal> parseRate(InputStream is) {
+        try (InputStream in = is) {
+            XMLInputFactory factory = XMLInputFactory.newFactory();
+            factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            String invalidValue = null;
+
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+
+                String tagName = reader.getLocalName();
+                if (!tagName.equalsIgnoreCase("Obs") && !tagName.equalsIgnoreCase("Observation")) {
+                    continue;
+                }
+
+                for (int i = 0; i < reader.getAttributeCount(); i++) {
+                    String attrName = reader.getAttributeLocalName(i);
+                    if (!"OBS_VALUE".equalsIgnoreCase(attrName) && !"value".equalsIgnoreCase(attrName)) {
+                        continue;
+                    }
+
+                    String attrValue = reader.getAttributeValue(i);
+                    try {
+                        return Optional.of(new BigDecimal(attrValue));
+                    } catch (NumberFormatException e) {
+                        log.warn("Invalid rate value in WITS XML: {}", attrValue);
+                        invalidValue = attrValue;
+                    }
+                }
+            }
+            if (invalidValue != null) {
+                throw new IllegalStateException("No valid rate in WITS XML, last value: " + invalidValue);
+            }
+            return Optional.empty();
+
+        } catch (IOException | XMLStreamException e) {
+            throw new IllegalStateException("Error parsing WITS XML: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Consecutive-failure circuit breaker.
+     *
+     * CLOSED lets every call through. After failureThreshold consecutive failures it goes OPEN and
+     * rejects calls for openDuration, then HALF_OPEN lets a single trial call through: success
+     * closes the circuit, failure opens it again.
+     */
+    static final class CircuitBreaker {
+
+        enum State { CLOSED, OPEN, HALF_OPEN }
+
+        private final int failureThreshold;
+        private final long openNanos;
+
+        private State state = State.CLOSED;
+        private int consecutiveFailures;
+        private long openedAt;
+        private boolean trialInFlight;
+
+        CircuitBreaker(int failureThreshold, Duration openDuration) {
+            this.failureThreshold = Math.max(1, failureThreshold);
+            this.openNanos = openDuration.toNanos();
+        }
+
+        synchronized boolean allowRequest() {
+            if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+                state = State.HALF_OPEN;
+                trialInFlight = false;
+            }
+            return switch (state) {
+                case CLOSED -> true;
+                case OPEN -> false;
+                case HALF_OPEN -> {
+                    if (trialInFlight) {
+                        yield false;
+                    }
+                    trialInFlight = true;
+                    yield true;
+                }
+            };
+        }
+
+        /** Give back a permission from allowRequest when no call was made. */
+        synchronized void release() {
+            trialInFlight = false;
+        }
+
+        synchronized void recordSuccess() {
+            state = State.CLOSED;
+            consecutiveFailures = 0;
+            trialInFlight = false;
+        }
+
+        synchronized void recordFailure() {
+            consecutiveFailures++;
+            trialInFlight = false;
+            if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+                if (state != State.OPEN) {
+                    log.warn("WITS circuit opened after {} consecutive failures", consecutiveFailures);
+                }
+                state = State.OPEN;
+                openedAt = System.nanoTime();
+            }
+        }
+
+        synchronized State state() {
+            return state;
+        }
+    }
+}
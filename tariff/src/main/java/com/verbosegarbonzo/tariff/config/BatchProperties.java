@@ -0,0 +1,23 @@
+package com.verbosegarbonzo.tariff.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Batch Calculation Configuration Properties.
+ * Maps app.batch.* values for the /api/calculate/batch engine.
+ */
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "app.batch")
+public class BatchProperties {
+
+    // Maximum number of batch lookups running at once across all batch requests
+    private int maxConcurrency = 32;
+
+    // Maximum number of streamed items in flight or awaiting in-order output per stream
+    private int streamWindow = 1024;
+}
@@ -5,6 +5,8 @@ import org.springframework.context.annotation.Configuration;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.time.Duration;
+
 /**
  * ML Model Configuration Properties.
  * Maps application.properties values into Java fields for ML model settings.
@@ -18,6 +20,11 @@ public class MLModelProperties {
 
     private Model model = new Model();
     private Training training = new Training();
+    private Backtest backtest = new Backtest();
+    private Forecasts forecasts = new Forecasts();
+    private Features features = new Features();
+    private Portfolio portfolio = new Portfolio();
+    private Recommendations recommendations = new Recommendations();
 
     @Getter
     @Setter
@@ -26,12 +33,31 @@ public class MLModelProperties {
         private String path = "./models";
         private String version = "1.0.0";
         private int minTrainingSamples = 30;
+        private Backend backend = Backend.MEAN; // Per-route regressor, see Backend
+        private Tree tree = new Tree();
+    }
+
+    /**
+     * Per-route regressor: MEAN is the route mean with a seasonal adjustment, CART a single
+     * regression tree, GBT gradient-boosted regression trees.
+     */
+    public enum Backend {
+        MEAN, CART, GBT
+    }
+
+    @Getter
+    @Setter
+    public static class Tree {
+        private int maxDepth = 4;
+        private int rounds = 50; // GBT only; CART fits one tree
+        private double learningRate = 0.1; // GBT only
     }
 
     @Getter
     @Setter
     public static class Training {
         private Schedule schedule = new Schedule();
+        private int parallelism = 0; // Fork-join threads for training; 0 = available processors
 
         @Getter
         @Setter
@@ -39,4 +65,75 @@ public class MLModelProperties {
             private String cron = "0 0 2 ? * SUN";
         }
     }
+
+    /**
+     * Backtesting: models are trained on the measures before each cutoff and scored on the
+     * horizonMonths after it. The last cutoff is horizonMonths before today, the others
+     * stepMonths apart before it. A gate of 0 is not checked.
+     */
+    @Getter
+    @Setter
+    public static class Backtest {
+        private int folds = 4;
+        private int horizonMonths = 12;
+        private int stepMonths = 6;
+        private int parallelism = 0; // Fork-join threads; 0 = available processors
+        private double maxMape = 0; // Percent
+        private double minCoverage = 0; // Share of actual rates inside the forecast interval, 0-1
+        private double minPredictionsPerSecond = 0;
+    }
+
+    /**
+     * Materialized forecasts: each night the hotRoutes most traded routes over the last
+     * lookbackDays, plus the most requested since the previous run, get their weekly forecast
+     * computed ahead and served from memory until the day ends or their models change.
+     */
+    @Getter
+    @Setter
+    public static class Forecasts {
+        private boolean enabled = true;
+        private String cron = "0 10 0 * * *";
+        private int hotRoutes = 200;
+        private int lookbackDays = 90;
+        private int parallelism = 0; // Fork-join threads; 0 = available processors
+    }
+
+    /**
+     * Feature store: per-route history aggregates kept in memory, saved under model.path and
+     * rebuilt from the tables on the cron schedule to pick up rows written around the application.
+     */
+    @Getter
+    @Setter
+    public static class Features {
+        private boolean enabled = true;
+        private String cron = "0 20 * * * *";
+    }
+
+    /**
+     * Portfolio recommendations: many routes per request, at most maxConcurrency routes computed
+     * at once across all requests. Without routes in the request, the user's historyRoutes most
+     * traded routes are used.
+     */
+    @Getter
+    @Setter
+    public static class Portfolio {
+        private int maxRoutes = 50;
+        private int historyRoutes = 20;
+        private int maxConcurrency = 16;
+    }
+
+    /**
+     * Recommendation cache: a route's recommendation is kept for the day it was computed, fresh for
+     * ttl, then served for up to maxStale more while it is recomputed in the background. A degraded
+     * recommendation, built on an estimated current rate, is kept for degradedTtl only.
+     */
+    @Getter
+    @Setter
+    public static class Recommendations {
+        private boolean cacheEnabled = true;
+        private Duration ttl = Duration.ofHours(1);
+        private Duration maxStale = Duration.ofHours(6);
+        private Duration degradedTtl = Duration.ofMinutes(1);
+        private int maxEntries = 10_000;
+    }
 }
@@ -2,6 +2,8 @@ package com.verbosegarbonzo.tariff.config;
 
 import java.util.Arrays;
 
+import jakarta.servlet.DispatcherType;
+
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -41,6 +43,9 @@ public class SecurityConfig {
 
                 // Configure endpoint authorization
                 .authorizeHttpRequests(auth -> auth
+                        // Streamed responses (SSE) are written on async dispatches of a request already authorized
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+
                         .requestMatchers("/actuator/**").permitAll()
 
                         // Public endpoints - allow all OPTIONS requests for CORS preflight
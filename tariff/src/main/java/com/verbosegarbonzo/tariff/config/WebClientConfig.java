@@ -56,6 +56,16 @@ public class WebClientConfig {
                 .build();
     }
 
+    // Gemini streaming; the full URL is given per call. Timeouts apply between chunks, not to the whole stream
+    @SuppressWarnings("null")
+    @Bean
+    public WebClient geminiWebClient() {
+        return WebClient.builder()
+                .defaultHeader("User-Agent", "TariffApp/1.0")
+                .clientConnector(new ReactorClientHttpConnector(httpClient()))
+                .build();
+    }
+
     @Bean
     public RestTemplate restTemplate(RestTemplateBuilder builder) {
         return builder
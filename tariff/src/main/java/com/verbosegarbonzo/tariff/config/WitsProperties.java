@@ -1,5 +1,7 @@
 package com.verbosegarbonzo.tariff.config;
 
+import java.time.Duration;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 import lombok.Getter;
@@ -17,6 +19,7 @@ public class WitsProperties {
 
     private Metadata metadata = new Metadata();
     private Tariff tariff = new Tariff();
+    private Fetch fetch = new Fetch();
 
     @Getter
     @Setter
@@ -31,4 +34,17 @@ public class WitsProperties {
         private String baseUrl;
         private String dataset;
     }
+
+    // Tariff rate fetching behaviour (WitsTariffClient)
+    @Getter
+    @Setter
+    public static class Fetch {
+        private int maxConcurrentCalls = 8; // concurrent WITS calls across the app
+        private Duration waitTimeout = Duration.ofSeconds(5); // longest a caller waits for an answer
+        private Duration callTimeout = Duration.ofSeconds(30);
+        private Duration negativeCacheTtl = Duration.ofHours(6); // how long "no data" answers are remembered
+        private int negativeCacheMaxEntries = 100_000;
+        private int breakerFailureThreshold = 5; // consecutive failures before the breaker opens
+        private Duration breakerOpenDuration = Duration.ofSeconds(30);
+    }
 }
@@ -4,19 +4,29 @@ import com.verbosegarbonzo.tariff.model.AIRecommendationRequest;
 import com.verbosegarbonzo.tariff.model.AIRecommendationResponse;
 import com.verbosegarbonzo.tariff.model.GeminiSummaryRequest;
 import com.verbosegarbonzo.tariff.model.GeminiSummaryResponse;
+import com.verbosegarbonzo.tariff.model.PortfolioRecommendationRequest;
+import com.verbosegarbonzo.tariff.model.PortfolioRecommendationResponse;
 import com.verbosegarbonzo.tariff.model.ProfileType;
 import com.verbosegarbonzo.tariff.model.UserInfo;
 import com.verbosegarbonzo.tariff.repository.UserInfoRepository;
 import com.verbosegarbonzo.tariff.service.AIRecommendationService;
 import com.verbosegarbonzo.tariff.service.GeminiSummaryService;
+import com.verbosegarbonzo.tariff.service.PortfolioRecommendationService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.web.bind.annotation.*;
 
 import jakarta.validation.Valid;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -32,6 +42,7 @@ public class AIController {
     private final AIRecommendationService aiRecommendationService;
     private final UserInfoRepository userInfoRepository;
     private final GeminiSummaryService geminiSummaryService;
+    private final PortfolioRecommendationService portfolioRecommendationService;
 
     /**
      * Get AI timing recommendations for a specific trade route.
@@ -76,6 +87,41 @@ public class AIController {
         }
     }
 
+    /**
+     * Get AI timing recommendations for many trade routes in one call, computed concurrently.
+     * Without routes in the request, the user's most traded routes are used.
+     *
+     * @param request Routes as for /recommendation; may be omitted
+     * @param principal Authenticated user principal
+     * @return PortfolioRecommendationResponse with one result per distinct route, failed routes included
+     */
+    @PostMapping("/recommendation/portfolio")
+    public ResponseEntity<PortfolioRecommendationResponse> getPortfolioRecommendation(
+            @Valid @RequestBody(required = false) PortfolioRecommendationRequest request,
+            @AuthenticationPrincipal User principal) {
+
+        if (principal == null) {
+            log.warn("Attempted portfolio recommendation without authentication");
+            return ResponseEntity.status(401).build();
+        }
+
+        Optional<UserInfo> userInfo = userInfoRepository.findByEmail(principal.getUsername());
+        ProfileType userProfile = userInfo
+                .map(UserInfo::getProfileType)
+                .orElse(ProfileType.BUSINESS_OWNER); // Default if not set
+
+        List<AIRecommendationRequest> routes = request != null && request.getRoutes() != null
+                && !request.getRoutes().isEmpty()
+                ? request.getRoutes()
+                : userInfo.map(portfolioRecommendationService::routesFromHistory).orElse(List.of());
+
+        log.info("Generating portfolio recommendations for {} routes for user {}",
+                routes.size(), principal.getUsername());
+
+        // Routes run concurrently; failed routes carry an error code instead of failing the portfolio
+        return ResponseEntity.ok(portfolioRecommendationService.recommend(routes, userProfile));
+    }
+
     /**
      * Generate Gemini 2.5 summary for AI recommendations (Option 1: Two-Phase Approach).
      * This is a separate endpoint that can be called asynchronously after getting ML results.
@@ -129,4 +175,57 @@ public class AIController {
                     .build());
         }
     }
+
+    /**
+     * Stream a Gemini 2.5 summary over server-sent events as it is generated.
+     * Each "chunk" event carries {"text": ...} for the next piece of the summary; a final "done"
+     * event carries the GeminiSummaryResponse with the whole summary, unsuccessful when Gemini is
+     * not configured or failed part way. The upstream call is cancelled if the client disconnects.
+     *
+     * @param request Contains the ML recommendation and trade route info
+     * @param principal Authenticated user principal
+     * @return Event stream of summary chunks followed by the done event
+     */
+    @PostMapping(value = "/gemini-summary/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<Flux<ServerSentEvent<Object>>> streamGeminiSummary(
+            @Valid @RequestBody GeminiSummaryRequest request,
+            @AuthenticationPrincipal User principal) {
+
+        if (principal == null) {
+            log.warn("Attempted Gemini summary stream without authentication");
+            return ResponseEntity.status(401).build();
+        }
+
+        ProfileType userProfile = userInfoRepository.findByEmail(principal.getUsername())
+                .map(UserInfo::getProfileType)
+                .orElse(ProfileType.BUSINESS_OWNER); // Default if not set
+
+        log.info("🤖 [Controller] Streaming Gemini summary for user: {} ({})", principal.getUsername(), userProfile);
+
+        StringBuilder summary = new StringBuilder();
+        Flux<ServerSentEvent<Object>> events = geminiSummaryService.streamGeminiSummary(
+                        request.getRecommendation(),
+                        userProfile,
+                        request.getImporterCode(),
+                        request.getHs6Code())
+                .doOnNext(summary::append)
+                .map(text -> ServerSentEvent.<Object>builder(Map.of("text", text)).event("chunk").build())
+                .concatWith(Mono.fromSupplier(() -> summaryDone(summary, userProfile, summary.length() > 0)))
+                .onErrorResume(e -> {
+                    log.error("Error streaming Gemini summary", e);
+                    return Mono.just(summaryDone(summary, userProfile, false));
+                });
+
+        return ResponseEntity.ok(events);
+    }
+
+    private static ServerSentEvent<Object> summaryDone(StringBuilder summary, ProfileType userProfile, boolean success) {
+        return ServerSentEvent.<Object>builder(GeminiSummaryResponse.builder()
+                        .summary(summary.toString())
+                        .profileType(userProfile)
+                        .success(success)
+                        .build())
+                .event("done")
+                .build();
+    }
 }
@@ -1,17 +1,29 @@
 package com.verbosegarbonzo.tariff.controller;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
 import java.util.List;
+import java.util.function.Function;
 
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.verbosegarbonzo.tariff.model.BatchCalculateResult;
 import com.verbosegarbonzo.tariff.model.CalculateRequest;
 import com.verbosegarbonzo.tariff.model.CalculateResponse;
+import com.verbosegarbonzo.tariff.service.BatchCalculationService;
+import com.verbosegarbonzo.tariff.service.BatchStreamCodec;
 import com.verbosegarbonzo.tariff.service.TariffService;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 
 @RestController
@@ -19,9 +31,16 @@ import jakarta.validation.Valid;
 public class TariffController {
 
     private final TariffService service;
+    private final BatchCalculationService batchService;
+    private final BatchStreamCodec streamCodec;
 
-    public TariffController(TariffService service) {
+    private static final String TEXT_CSV_VALUE = "text/csv";
+
+    public TariffController(TariffService service, BatchCalculationService batchService,
+            BatchStreamCodec streamCodec) {
         this.service = service;
+        this.batchService = batchService;
+        this.streamCodec = streamCodec;
     }
 
     @PostMapping("/calculate")
@@ -34,12 +53,37 @@ public class TariffController {
     }
 
     @PostMapping("/calculate/batch")
-    public ResponseEntity<List<CalculateResponse>> calculateBatch(@Valid @RequestBody List<CalculateRequest> requests) {
-        List<CalculateResponse> responses = requests.stream()
-                .map(service::calculate)
-                .collect(java.util.stream.Collectors.toList());
+    public ResponseEntity<List<BatchCalculateResult>> calculateBatch(@Valid @RequestBody List<CalculateRequest> requests) {
+        // items run concurrently; failed items carry an error code instead of failing the batch
+        List<BatchCalculateResult> results = batchService.calculateAll(requests);
+
+        return ResponseEntity.ok().body(results);
+    }
+
+    @PostMapping(value = "/calculate/stream",
+            consumes = { MediaType.APPLICATION_NDJSON_VALUE, TEXT_CSV_VALUE },
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void calculateStream(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        // Read and write line by line on this thread: the request body is never buffered whole,
+        // and a slow client holds back reading through the blocking response writes
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8));
+        Iterator<String> lines = reader.lines().iterator();
+
+        Function<String, CalculateRequest> parser;
+        if (MediaType.parseMediaType(request.getContentType()).isCompatibleWith(MediaType.parseMediaType(TEXT_CSV_VALUE))) {
+            if (!lines.hasNext()) {
+                return;
+            }
+            parser = streamCodec.csvParser(lines.next());
+        } else {
+            parser = streamCodec::parseJson;
+        }
 
-        return ResponseEntity.ok().body(responses);
+        batchService.calculateStream(lines, parser, streamCodec.ndjsonSink(response.getOutputStream()));
     }
 
 }
@@ -2,11 +2,14 @@ package com.verbosegarbonzo.tariff.controller.admin;
 
 import com.verbosegarbonzo.tariff.dto.MeasureDTO;
 import com.verbosegarbonzo.tariff.model.Measure;
+import com.verbosegarbonzo.tariff.model.MeasureTrainingRow;
 import com.verbosegarbonzo.tariff.model.Country;
 import com.verbosegarbonzo.tariff.model.Product;
 import com.verbosegarbonzo.tariff.repository.MeasureRepository;
 import com.verbosegarbonzo.tariff.repository.CountryRepository;
 import com.verbosegarbonzo.tariff.repository.ProductRepository;
+import com.verbosegarbonzo.tariff.service.RateIndexService;
+import com.verbosegarbonzo.tariff.service.TariffMLService;
 import jakarta.validation.Valid;
 import lombok.NonNull;
 
@@ -27,13 +30,19 @@ public class AdminMeasureController {
     private final MeasureRepository measureRepository;
     private final CountryRepository countryRepository;
     private final ProductRepository productRepository;
+    private final RateIndexService rateIndexService;
+    private final TariffMLService mlService;
 
     public AdminMeasureController(MeasureRepository measureRepository,
             CountryRepository countryRepository,
-            ProductRepository productRepository) {
+            ProductRepository productRepository,
+            RateIndexService rateIndexService,
+            TariffMLService mlService) {
         this.measureRepository = measureRepository;
         this.countryRepository = countryRepository;
         this.productRepository = productRepository;
+        this.rateIndexService = rateIndexService;
+        this.mlService = mlService;
     }
 
     private void validateRequiredFields(String importerCode, String productCode, LocalDate validFrom) {
@@ -95,6 +104,8 @@ public class AdminMeasureController {
         }
         Measure measure = toEntity(dto);
         Measure created = measureRepository.save(measure);
+        rateIndexService.indexMeasure(created);
+        mlService.applyMeasureChange(null, MeasureTrainingRow.of(created));
         return ResponseEntity.status(201).body(toDTO(created));
     }
 
@@ -150,6 +161,7 @@ public class AdminMeasureController {
                 }
             }
 
+            MeasureTrainingRow before = MeasureTrainingRow.of(measure);
             measure.setImporter(importer);
             measure.setProduct(product);
             measure.setValidFrom(dto.getValidFrom());
@@ -157,6 +169,8 @@ public class AdminMeasureController {
             measure.setMfnAdvalRate(dto.getMfnAdvalRate());
             measure.setSpecificRatePerKg(dto.getSpecificRatePerKg());
             Measure saved = measureRepository.save(measure);
+            rateIndexService.indexMeasure(saved);
+            mlService.applyMeasureChange(before, MeasureTrainingRow.of(saved));
             return ResponseEntity.ok(toDTO(saved));
         }
         throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Measure not found: " + id);
@@ -165,8 +179,12 @@ public class AdminMeasureController {
     // Delete Measure by ID
     @DeleteMapping("/{id}")
     public ResponseEntity<?> deleteMeasureById(@PathVariable @NonNull Integer id) {
-        if (measureRepository.existsById(id)) {
+        Optional<Measure> existing = measureRepository.findById(id);
+        if (existing.isPresent()) {
+            MeasureTrainingRow removed = MeasureTrainingRow.of(existing.get());
             measureRepository.deleteById(id);
+            rateIndexService.removeMeasure(id);
+            mlService.applyMeasureChange(removed, null);
             return ResponseEntity.noContent().build();
         }
         throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Measure not found: " + id);
@@ -0,0 +1,100 @@
+package com.verbosegarbonzo.tariff.controller.admin;
+
+import com.verbosegarbonzo.tariff.service.BacktestService;
+import com.verbosegarbonzo.tariff.service.FeatureStore;
+import com.verbosegarbonzo.tariff.service.ForecastMaterializationService;
+import com.verbosegarbonzo.tariff.service.RecommendationCache;
+import com.verbosegarbonzo.tariff.service.TariffMLService;
+
+import java.util.Map;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+@RestController
+@RequestMapping("/api/admin/models")
+public class AdminModelController {
+
+    private final TariffMLService mlService;
+    private final BacktestService backtestService;
+    private final ForecastMaterializationService forecastMaterializationService;
+    private final FeatureStore featureStore;
+    private final RecommendationCache recommendationCache;
+
+    public AdminModelController(TariffMLService mlService, BacktestService backtestService,
+            ForecastMaterializationService forecastMaterializationService, FeatureStore featureStore,
+            RecommendationCache recommendationCache) {
+        this.mlService = mlService;
+        this.backtestService = backtestService;
+        this.forecastMaterializationService = forecastMaterializationService;
+        this.featureStore = featureStore;
+        this.recommendationCache = recommendationCache;
+    }
+
+    // Get the status of the forecasting models, including the current registry version
+    @GetMapping
+    public Map<String, Object> getModelStatus() {
+        return mlService.getModelStatus();
+    }
+
+    // Get training progress, or the timings of the last run when idle
+    @GetMapping("/training")
+    public Map<String, Object> getTrainingStatus() {
+        return mlService.getTrainingStatus();
+    }
+
+    // Start a training run in the background, or join the one in progress
+    @PostMapping("/training")
+    public ResponseEntity<Map<String, Object>> startTraining() {
+        mlService.trainInBackground("admin");
+        return ResponseEntity.accepted().body(mlService.getTrainingStatus());
+    }
+
+    // Restore the previous model version without retraining
+    @PostMapping("/rollback")
+    public ResponseEntity<Map<String, Object>> rollback() {
+        if (mlService.rollbackModels().isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "No earlier model version to roll back to");
+        }
+        return ResponseEntity.ok(mlService.getModelStatus());
+    }
+
+    // Get the number of hot routes and how many have a materialized forecast for today
+    @GetMapping("/forecasts")
+    public Map<String, Object> getForecastStatus() {
+        return forecastMaterializationService.getStatus();
+    }
+
+    // Get whether the feature store is loaded and how many routes it holds
+    @GetMapping("/features")
+    public Map<String, Object> getFeatureStoreStatus() {
+        return featureStore.getStatus();
+    }
+
+    // Get the size and hit counts of the recommendation cache
+    @GetMapping("/recommendations")
+    public Map<String, Object> getRecommendationCacheStatus() {
+        return recommendationCache.getStatus();
+    }
+
+    // Backtest the current model settings on historical measures; parameters default to app.ml.backtest
+    @PostMapping("/backtest")
+    public Map<String, Object> backtest(
+            @RequestParam(required = false) Integer folds,
+            @RequestParam(required = false) Integer horizonMonths,
+            @RequestParam(required = false) Integer stepMonths) {
+        BacktestService.Settings defaults = backtestService.defaultSettings();
+        BacktestService.Settings settings = new BacktestService.Settings(
+                folds != null ? folds : defaults.folds(),
+                horizonMonths != null ? horizonMonths : defaults.horizonMonths(),
+                stepMonths != null ? stepMonths : defaults.stepMonths(),
+                defaults.asOf());
+        try {
+            return backtestService.run(settings).toMap();
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+}
@@ -2,11 +2,14 @@ package com.verbosegarbonzo.tariff.controller.admin;
 
 import com.verbosegarbonzo.tariff.dto.PreferenceDTO;
 import com.verbosegarbonzo.tariff.model.Preference;
+import com.verbosegarbonzo.tariff.model.PreferenceTrainingRow;
 import com.verbosegarbonzo.tariff.model.Country;
 import com.verbosegarbonzo.tariff.model.Product;
 import com.verbosegarbonzo.tariff.repository.PreferenceRepository;
 import com.verbosegarbonzo.tariff.repository.CountryRepository;
 import com.verbosegarbonzo.tariff.repository.ProductRepository;
+import com.verbosegarbonzo.tariff.service.RateIndexService;
+import com.verbosegarbonzo.tariff.service.TariffMLService;
 import jakarta.validation.Valid;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -25,13 +28,19 @@ public class AdminPreferenceController {
     private final PreferenceRepository preferenceRepository;
     private final CountryRepository countryRepository;
     private final ProductRepository productRepository;
+    private final RateIndexService rateIndexService;
+    private final TariffMLService mlService;
 
     public AdminPreferenceController(PreferenceRepository preferenceRepository,
             CountryRepository countryRepository,
-            ProductRepository productRepository) {
+            ProductRepository productRepository,
+            RateIndexService rateIndexService,
+            TariffMLService mlService) {
         this.preferenceRepository = preferenceRepository;
         this.countryRepository = countryRepository;
         this.productRepository = productRepository;
+        this.rateIndexService = rateIndexService;
+        this.mlService = mlService;
     }
 
     // Helper to map entity to DTO
@@ -102,6 +111,8 @@ public class AdminPreferenceController {
         }
         Preference preference = toEntity(dto);
         Preference created = preferenceRepository.save(preference);
+        rateIndexService.indexPreference(created);
+        mlService.applyPreferenceChange(null, PreferenceTrainingRow.of(created));
         return ResponseEntity.status(201).body(toDTO(created));
     }
 
@@ -161,6 +172,7 @@ public class AdminPreferenceController {
             }
         }
 
+        PreferenceTrainingRow before = PreferenceTrainingRow.of(preference);
         preference.setImporter(importer);
         preference.setExporter(exporter);
         preference.setProduct(product);
@@ -168,17 +180,21 @@ public class AdminPreferenceController {
         preference.setValidTo(dto.getValidTo());
         preference.setPrefAdValRate(dto.getPrefAdValRate());
         Preference saved = preferenceRepository.save(preference);
+        rateIndexService.indexPreference(saved);
+        mlService.applyPreferenceChange(before, PreferenceTrainingRow.of(saved));
         return ResponseEntity.ok(toDTO(saved));
     }
 
     // Delete Preference by ID
     @DeleteMapping("/{id}")
     public ResponseEntity<?> deletePreferenceById(@PathVariable Integer id) {
-        if (!preferenceRepository.existsById(id)) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND,
-                    "Preference not found: " + id);
-        }
+        Preference existing = preferenceRepository.findById(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
+                        "Preference not found: " + id));
+        PreferenceTrainingRow removed = PreferenceTrainingRow.of(existing);
         preferenceRepository.deleteById(id);
+        rateIndexService.removePreference(id);
+        mlService.applyPreferenceChange(removed, null);
         return ResponseEntity.noContent().build();
     }
 
@@ -2,11 +2,14 @@ package com.verbosegarbonzo.tariff.controller.admin;
 
 import com.verbosegarbonzo.tariff.dto.SuspensionDTO;
 import com.verbosegarbonzo.tariff.model.Suspension;
+import com.verbosegarbonzo.tariff.model.SuspensionTrainingRow;
 import com.verbosegarbonzo.tariff.model.Country;
 import com.verbosegarbonzo.tariff.model.Product;
 import com.verbosegarbonzo.tariff.repository.SuspensionRepository;
 import com.verbosegarbonzo.tariff.repository.CountryRepository;
 import com.verbosegarbonzo.tariff.repository.ProductRepository;
+import com.verbosegarbonzo.tariff.service.RateIndexService;
+import com.verbosegarbonzo.tariff.service.TariffMLService;
 import jakarta.validation.Valid;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -25,13 +28,19 @@ public class AdminSuspensionController {
     private final SuspensionRepository suspensionRepository;
     private final CountryRepository countryRepository;
     private final ProductRepository productRepository;
+    private final RateIndexService rateIndexService;
+    private final TariffMLService mlService;
 
     public AdminSuspensionController(SuspensionRepository suspensionRepository,
             CountryRepository countryRepository,
-            ProductRepository productRepository) {
+            ProductRepository productRepository,
+            RateIndexService rateIndexService,
+            TariffMLService mlService) {
         this.suspensionRepository = suspensionRepository;
         this.countryRepository = countryRepository;
         this.productRepository = productRepository;
+        this.rateIndexService = rateIndexService;
+        this.mlService = mlService;
     }
 
     // Helper: entity to DTO
@@ -96,6 +105,8 @@ public class AdminSuspensionController {
         }
         Suspension suspension = toEntity(dto);
         Suspension created = suspensionRepository.save(suspension);
+        rateIndexService.indexSuspension(created);
+        mlService.applySuspensionChange(null, SuspensionTrainingRow.of(created));
         return ResponseEntity.status(201).body(toDTO(created));
     }
 
@@ -151,6 +162,7 @@ public class AdminSuspensionController {
             }
         }
 
+        SuspensionTrainingRow before = SuspensionTrainingRow.of(suspension);
         suspension.setImporter(importer);
         suspension.setProduct(product);
         suspension.setValidFrom(dto.getValidFrom());
@@ -159,17 +171,21 @@ public class AdminSuspensionController {
         suspension.setSuspensionNote(dto.getSuspensionNote());
         suspension.setSuspensionRate(dto.getSuspensionRate());
         Suspension saved = suspensionRepository.save(suspension);
+        rateIndexService.indexSuspension(saved);
+        mlService.applySuspensionChange(before, SuspensionTrainingRow.of(saved));
         return ResponseEntity.ok(toDTO(saved));
     }
 
     // Delete Suspension by ID
     @DeleteMapping("/{id}")
     public ResponseEntity<?> deleteSuspensionById(@PathVariable Integer id) {
-        if (!suspensionRepository.existsById(id)) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND,
-                    "Suspension not found: " + id);
-        }
+        Suspension existing = suspensionRepository.findById(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
+                        "Suspension not found: " + id));
+        SuspensionTrainingRow removed = SuspensionTrainingRow.of(existing);
         suspensionRepository.deleteById(id);
+        rateIndexService.removeSuspension(id);
+        mlService.applySuspensionChange(removed, null);
         return ResponseEntity.noContent().build();
     }
 
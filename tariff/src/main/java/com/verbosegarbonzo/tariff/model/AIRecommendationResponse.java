@@ -25,4 +25,6 @@ public class AIRecommendationResponse {
     private Integer averageConfidence;
     private String modelVersion;
     private Boolean hasInsufficientData;
+    // True when the current rate is a default estimate because no measure could be read
+    private Boolean degraded;
 }
@@ -0,0 +1,34 @@
+package com.verbosegarbonzo.tariff.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+
+import lombok.Getter;
+
+//Per-item output of /api/calculate/batch: either the calculation (unwrapped) or an error code and message
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchCalculateResult {
+    private final int index; // position of the item in the submitted batch
+
+    @JsonUnwrapped
+    private final CalculateResponse result;
+
+    private final String error;
+    private final String message;
+
+    private BatchCalculateResult(int index, CalculateResponse result, String error, String message) {
+        this.index = index;
+        this.result = result;
+        this.error = error;
+        this.message = message;
+    }
+
+    public static BatchCalculateResult success(int index, CalculateResponse result) {
+        return new BatchCalculateResult(index, result, null, null);
+    }
+
+    public static BatchCalculateResult failure(int index, String error, String message) {
+        return new BatchCalculateResult(index, null, error, message);
+    }
+}
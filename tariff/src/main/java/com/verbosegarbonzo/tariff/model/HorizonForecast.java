@@ -0,0 +1,63 @@
+package com.verbosegarbonzo.tariff.model;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Daily forecast over a horizon, one array slot per day from startDate.
+ * Rates are rounded to 2 decimals, as ForecastResult.predictedRate is.
+ *
+ * @param startDate         the first forecast day (index 0)
+ * @param rates             predicted rate per day
+ * @param confidence        confidence percent per day
+ * @param hasHistoricalData false when the route has no history and every rate is zero
+ */
+public record HorizonForecast(
+        LocalDate startDate,
+        double[] rates,
+        int[] confidence,
+        boolean hasHistoricalData) {
+
+    public int days() {
+        return rates.length;
+    }
+
+    /**
+     * Aggregate into consecutive 7-day ranges from startDate in one pass over the arrays.
+     * The last range may hold fewer days but still ends 6 days after its start.
+     */
+    public List<DateRangeForecast> weekly() {
+        return weeklyTotals().ranges();
+    }
+
+    /**
+     * The 7-day ranges of weekly() in their compact form.
+     */
+    public WeeklyForecast weeklyTotals() {
+        int weeks = (rates.length + 6) / 7;
+        int[] sumCents = new int[weeks];
+        int[] minCents = new int[weeks];
+        int[] maxCents = new int[weeks];
+        int[] weekConfidence = new int[weeks];
+        for (int week = 0; week < weeks; week++) {
+            int start = week * 7;
+            int end = Math.min(start + 7, rates.length);
+            int sum = 0;
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            int confidenceSum = 0;
+            for (int day = start; day < end; day++) {
+                int cents = (int) Math.round(rates[day] * 100);
+                sum += cents;
+                min = Math.min(min, cents);
+                max = Math.max(max, cents);
+                confidenceSum += confidence[day];
+            }
+            sumCents[week] = sum;
+            minCents[week] = min;
+            maxCents[week] = max;
+            weekConfidence[week] = confidenceSum / (end - start);
+        }
+        return new WeeklyForecast(startDate, rates.length, sumCents, minCents, maxCents, weekConfidence, hasHistoricalData);
+    }
+}
@@ -0,0 +1,24 @@
+package com.verbosegarbonzo.tariff.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Flat projection of a measure row for the rate index: its id, route keys, validity and rates,
+ * without loading the Measure entity or its Country and Product associations.
+ */
+public record MeasureIndexRow(
+        Integer measureId,
+        String importerCode,
+        String hs6Code,
+        LocalDate validFrom,
+        LocalDate validTo,
+        BigDecimal mfnAdvalRate,
+        BigDecimal specificRatePerKg) {
+
+    public static MeasureIndexRow of(Measure measure) {
+        return new MeasureIndexRow(measure.getMeasureId(), measure.getImporter().getCountryCode(),
+                measure.getProduct().getHs6Code(), measure.getValidFrom(), measure.getValidTo(),
+                measure.getMfnAdvalRate(), measure.getSpecificRatePerKg());
+    }
+}
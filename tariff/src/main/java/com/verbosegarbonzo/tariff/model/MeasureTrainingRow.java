@@ -0,0 +1,26 @@
+package com.verbosegarbonzo.tariff.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Flat projection of a measure row for model training: the route keys, validity and rate, without
+ * loading the Measure entity or its Country and Product associations.
+ */
+public record MeasureTrainingRow(
+        String importerCode,
+        String hs6Code,
+        LocalDate validFrom,
+        LocalDate validTo,
+        BigDecimal mfnAdvalRate) {
+
+    // Open-ended row
+    public MeasureTrainingRow(String importerCode, String hs6Code, LocalDate validFrom, BigDecimal mfnAdvalRate) {
+        this(importerCode, hs6Code, validFrom, null, mfnAdvalRate);
+    }
+
+    public static MeasureTrainingRow of(Measure measure) {
+        return new MeasureTrainingRow(measure.getImporter().getCountryCode(), measure.getProduct().getHs6Code(),
+                measure.getValidFrom(), measure.getValidTo(), measure.getMfnAdvalRate());
+    }
+}
@@ -0,0 +1,19 @@
+package com.verbosegarbonzo.tariff.model;
+
+import lombok.*;
+
+import java.util.List;
+
+/**
+ * Request DTO for AI timing recommendations on many trade routes at once.
+ * Without routes, the user's most traded routes are used.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PortfolioRecommendationRequest {
+
+    private List<AIRecommendationRequest> routes;
+}
@@ -0,0 +1,24 @@
+package com.verbosegarbonzo.tariff.model;
+
+import lombok.*;
+
+import java.util.List;
+
+/**
+ * Response DTO containing AI timing recommendations for many trade routes.
+ * Routes that failed carry an error instead of a recommendation; the rest are still returned.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PortfolioRecommendationResponse {
+
+    private ProfileType profileType;
+    private List<PortfolioRouteResult> routes;
+    private Integer succeeded;
+    private Integer failed;
+    private Long readMs; // reading the history and current rates shared by the routes
+    private Long elapsedMs;
+}
@@ -0,0 +1,42 @@
+package com.verbosegarbonzo.tariff.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.Getter;
+
+//Per-route output of /api/ai/recommendation/portfolio: either the recommendation or an error code and message
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PortfolioRouteResult {
+    private final String importerCode;
+    private final String exporterCode;
+    private final String hs6Code;
+
+    private final AIRecommendationResponse recommendation;
+
+    private final String error;
+    private final String message;
+
+    private final long elapsedMs; // time spent on this route, after the shared reads
+
+    private PortfolioRouteResult(String importerCode, String exporterCode, String hs6Code,
+            AIRecommendationResponse recommendation, String error, String message, long elapsedMs) {
+        this.importerCode = importerCode;
+        this.exporterCode = exporterCode;
+        this.hs6Code = hs6Code;
+        this.recommendation = recommendation;
+        this.error = error;
+        this.message = message;
+        this.elapsedMs = elapsedMs;
+    }
+
+    public static PortfolioRouteResult success(String importerCode, String exporterCode, String hs6Code,
+            AIRecommendationResponse recommendation, long elapsedMs) {
+        return new PortfolioRouteResult(importerCode, exporterCode, hs6Code, recommendation, null, null, elapsedMs);
+    }
+
+    public static PortfolioRouteResult failure(String importerCode, String exporterCode, String hs6Code,
+            String error, String message, long elapsedMs) {
+        return new PortfolioRouteResult(importerCode, exporterCode, hs6Code, null, error, message, elapsedMs);
+    }
+}
@@ -0,0 +1,23 @@
+package com.verbosegarbonzo.tariff.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Flat projection of a preference row for the rate index, as MeasureIndexRow is for measures.
+ */
+public record PreferenceIndexRow(
+        Integer preferenceId,
+        String importerCode,
+        String exporterCode,
+        String hs6Code,
+        LocalDate validFrom,
+        LocalDate validTo,
+        BigDecimal prefAdValRate) {
+
+    public static PreferenceIndexRow of(Preference preference) {
+        return new PreferenceIndexRow(preference.getPreferenceId(), preference.getImporter().getCountryCode(),
+                preference.getExporter().getCountryCode(), preference.getProduct().getHs6Code(),
+                preference.getValidFrom(), preference.getValidTo(), preference.getPrefAdValRate());
+    }
+}
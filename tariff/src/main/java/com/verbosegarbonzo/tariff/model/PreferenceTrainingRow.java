@@ -0,0 +1,22 @@
+package com.verbosegarbonzo.tariff.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Flat projection of a preference row for model training, as MeasureTrainingRow is for measures.
+ */
+public record PreferenceTrainingRow(
+        String importerCode,
+        String exporterCode,
+        String hs6Code,
+        LocalDate validFrom,
+        LocalDate validTo,
+        BigDecimal prefAdValRate) {
+
+    public static PreferenceTrainingRow of(Preference preference) {
+        return new PreferenceTrainingRow(preference.getImporter().getCountryCode(),
+                preference.getExporter().getCountryCode(), preference.getProduct().getHs6Code(),
+                preference.getValidFrom(), preference.getValidTo(), preference.getPrefAdValRate());
+    }
+}
@@ -0,0 +1,27 @@
+package com.verbosegarbonzo.tariff.model;
+
+import java.math.BigDecimal;
+
+/**
+ * Summary of a rate table's content as FeatureStore holds it: the row count, the sum of the rows'
+ * validFrom epoch days and the sum of their rates (rows without a rate count as zero). Two
+ * tables with the same fingerprint almost surely hold the same rows.
+ */
+public record RateTableFingerprint(long rows, long dayTotal, double rateTotal) {
+
+    private static final long SECONDS_PER_DAY = 86_400;
+
+    // Aggregate query result; the sums are null for an empty table
+    public RateTableFingerprint(Long rows, Number validFromSeconds, BigDecimal rateTotal) {
+        this(rows, validFromSeconds != null ? validFromSeconds.longValue() / SECONDS_PER_DAY : 0,
+                rateTotal != null ? rateTotal.doubleValue() : 0);
+    }
+
+    /**
+     * Whether the two describe the same rows, allowing for the rounding of rates summed as doubles.
+     */
+    public boolean matches(RateTableFingerprint other) {
+        return rows == other.rows && dayTotal == other.dayTotal
+                && Math.abs(rateTotal - other.rateTotal) <= 1e-6 * Math.max(1, Math.abs(rateTotal));
+    }
+}
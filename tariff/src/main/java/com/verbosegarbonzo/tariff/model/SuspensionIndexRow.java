@@ -0,0 +1,23 @@
+package com.verbosegarbonzo.tariff.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Flat projection of an active (flagged) suspension row for the rate index, as MeasureIndexRow is
+ * for measures. A null rate suspends the duty entirely.
+ */
+public record SuspensionIndexRow(
+        Integer suspensionId,
+        String importerCode,
+        String hs6Code,
+        LocalDate validFrom,
+        LocalDate validTo,
+        BigDecimal suspensionRate) {
+
+    public static SuspensionIndexRow of(Suspension suspension) {
+        return new SuspensionIndexRow(suspension.getSuspensionId(), suspension.getImporter().getCountryCode(),
+                suspension.getProduct().getHs6Code(), suspension.getValidFrom(), suspension.getValidTo(),
+                suspension.getSuspensionRate());
+    }
+}
@@ -0,0 +1,22 @@
+package com.verbosegarbonzo.tariff.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Flat projection of an active (flagged) suspension row for model training, as MeasureTrainingRow
+ * is for measures. A null rate suspends the duty entirely.
+ */
+public record SuspensionTrainingRow(
+        String importerCode,
+        String hs6Code,
+        LocalDate validFrom,
+        LocalDate validTo,
+        BigDecimal suspensionRate) {
+
+    public static SuspensionTrainingRow of(Suspension suspension) {
+        return new SuspensionTrainingRow(suspension.getImporter().getCountryCode(),
+                suspension.getProduct().getHs6Code(), suspension.getValidFrom(), suspension.getValidTo(),
+                suspension.getSuspensionRate());
+    }
+}
@@ -0,0 +1,56 @@
+package com.verbosegarbonzo.tariff.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A HorizonForecast aggregated into consecutive 7-day ranges, held as one int per range and
+ * figure (rates in hundredths of a percent) so it can be kept for many routes at once.
+ *
+ * @param startDate         start of the first range
+ * @param days              days in the horizon; the last range holds the remainder
+ * @param sumCents          sum of the daily rates in each range
+ * @param minCents          lowest daily rate in each range
+ * @param maxCents          highest daily rate in each range
+ * @param confidence        mean daily confidence percent in each range, rounded down
+ * @param hasHistoricalData false when the route has no history and every rate is zero
+ */
+public record WeeklyForecast(
+        LocalDate startDate,
+        int days,
+        int[] sumCents,
+        int[] minCents,
+        int[] maxCents,
+        int[] confidence,
+        boolean hasHistoricalData) {
+
+    public int weeks() {
+        return sumCents.length;
+    }
+
+    /**
+     * The ranges as HorizonForecast.weekly() returns them.
+     */
+    public List<DateRangeForecast> ranges() {
+        List<DateRangeForecast> ranges = new ArrayList<>(sumCents.length);
+        for (int week = 0; week < sumCents.length; week++) {
+            int count = Math.min(7, days - week * 7);
+            LocalDate weekStart = startDate.plusDays(week * 7L);
+
+            ranges.add(DateRangeForecast.builder()
+                    .startDate(weekStart)
+                    .endDate(weekStart.plusDays(6))
+                    .avgRate(BigDecimal.valueOf(sumCents[week], 2)
+                            .divide(BigDecimal.valueOf(count), 2, RoundingMode.HALF_UP))
+                    .minRate(hasHistoricalData ? BigDecimal.valueOf(minCents[week], 2) : BigDecimal.ZERO)
+                    .maxRate(hasHistoricalData ? BigDecimal.valueOf(maxCents[week], 2) : BigDecimal.ZERO)
+                    .confidencePercent(confidence[week])
+                    .dayCount((long) count)
+                    .build());
+        }
+        return ranges;
+    }
+}
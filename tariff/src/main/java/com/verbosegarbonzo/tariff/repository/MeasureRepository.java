@@ -2,15 +2,22 @@ package com.verbosegarbonzo.tariff.repository;
 
 import com.verbosegarbonzo.tariff.model.Country;
 import com.verbosegarbonzo.tariff.model.Measure;
+import com.verbosegarbonzo.tariff.model.MeasureIndexRow;
+import com.verbosegarbonzo.tariff.model.MeasureTrainingRow;
 import com.verbosegarbonzo.tariff.model.Product;
+import com.verbosegarbonzo.tariff.model.RateTableFingerprint;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.*;
 import org.springframework.data.jpa.repository.*;
 import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface MeasureRepository extends JpaRepository<Measure, Integer> {
     @Query("""
@@ -25,6 +32,21 @@ public interface MeasureRepository extends JpaRepository<Measure, Integer> {
         @Param("hs6") Product hs6,
         @Param("date") LocalDate date);
 
+    // findValidRate for many of one importer's products at once, as flat rows
+    @Query("""
+        SELECT new com.verbosegarbonzo.tariff.model.MeasureTrainingRow(
+            m.importer.countryCode, m.product.hs6Code, m.validFrom, m.validTo, m.mfnAdvalRate)
+        FROM Measure m
+        WHERE m.importer.countryCode = :importerCode
+          AND m.product.hs6Code IN :hs6Codes
+          AND m.validFrom <= :date
+          AND (m.validTo IS NULL OR m.validTo >= :date)
+        """)
+    List<MeasureTrainingRow> findValidRows(
+        @Param("importerCode") String importerCode,
+        @Param("hs6Codes") Collection<String> hs6Codes,
+        @Param("date") LocalDate date);
+
     // Search by importer code or product code
     Page<Measure> findByImporterCountryCodeContainingIgnoreCaseOrProductHs6CodeContainingIgnoreCase(
             String importerCode, String productCode, Pageable pageable);
@@ -44,6 +66,68 @@ public interface MeasureRepository extends JpaRepository<Measure, Integer> {
         @Param("startDate") LocalDate startDate,
         @Param("endDate") LocalDate endDate);
 
+    // Every measure as a flat row, ordered by route then date, for model training.
+    // Read through a cursor in fetch-size chunks; must be consumed inside a transaction and closed.
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("""
+        SELECT new com.verbosegarbonzo.tariff.model.MeasureTrainingRow(
+            m.importer.countryCode, m.product.hs6Code, m.validFrom, m.validTo, m.mfnAdvalRate)
+        FROM Measure m
+        ORDER BY m.importer.countryCode, m.product.hs6Code, m.validFrom
+        """)
+    Stream<MeasureTrainingRow> streamTrainingRows();
+
+    // Fingerprint of the rows streamTrainingRows returns, for FeatureStore to check its saved file against
+    @Query("""
+        SELECT new com.verbosegarbonzo.tariff.model.RateTableFingerprint(
+            COUNT(m), SUM(EXTRACT(EPOCH FROM m.validFrom)), SUM(m.mfnAdvalRate))
+        FROM Measure m
+        """)
+    RateTableFingerprint fingerprint();
+
+    // Every measure as RateIndexService indexes it, read as columns rather than managed entities
+    @Query("""
+        SELECT new com.verbosegarbonzo.tariff.model.MeasureIndexRow(
+            m.measureId, m.importer.countryCode, m.product.hs6Code, m.validFrom, m.validTo, m.mfnAdvalRate,
+            m.specificRatePerKg)
+        FROM Measure m
+        """)
+    List<MeasureIndexRow> findIndexRows();
+
+    // One route's rows as streamTrainingRows gives them, for retraining a single route
+    @Query("""
+        SELECT new com.verbosegarbonzo.tariff.model.MeasureTrainingRow(
+            m.importer.countryCode, m.product.hs6Code, m.validFrom, m.validTo, m.mfnAdvalRate)
+        FROM Measure m
+        WHERE m.importer.countryCode = :importerCode
+          AND m.product.hs6Code = :hs6Code
+        ORDER BY m.validFrom
+        """)
+    List<MeasureTrainingRow> findTrainingRows(
+        @Param("importerCode") String importerCode,
+        @Param("hs6Code") String hs6Code);
+
+    // findHistoricalRates for many of one importer's products at once, as flat rows ordered by
+    // product then date, for bulk feature extraction
+    @Query("""
+        SELECT new com.verbosegarbonzo.tariff.model.MeasureTrainingRow(
+            m.importer.countryCode, m.product.hs6Code, m.validFrom, m.validTo, m.mfnAdvalRate)
+        FROM Measure m
+        WHERE m.importer.countryCode = :importerCode
+          AND m.product.hs6Code IN :hs6Codes
+          AND m.validFrom >= :startDate
+          AND m.validFrom <= :endDate
+        ORDER BY m.product.hs6Code, m.validFrom
+        """)
+    List<MeasureTrainingRow> findHistoricalRows(
+        @Param("importerCode") String importerCode,
+        @Param("hs6Codes") Collection<String> hs6Codes,
+        @Param("startDate") LocalDate startDate,
+        @Param("endDate") LocalDate endDate);
+
     // Count historical records to check data availability
     @Query("""
         SELECT COUNT(m) FROM Measure m
@@ -2,10 +2,17 @@ package com.verbosegarbonzo.tariff.repository;
 
 import com.verbosegarbonzo.tariff.model.Country;
 import com.verbosegarbonzo.tariff.model.Preference;
+import com.verbosegarbonzo.tariff.model.PreferenceIndexRow;
+import com.verbosegarbonzo.tariff.model.PreferenceTrainingRow;
 import com.verbosegarbonzo.tariff.model.Product;
+import com.verbosegarbonzo.tariff.model.RateTableFingerprint;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.*;
 import org.springframework.data.jpa.repository.*;
 import org.springframework.stereotype.Repository;
@@ -53,4 +60,71 @@ public interface PreferenceRepository extends JpaRepository<Preference, Integer>
         @Param("hs6Code") String hs6Code,
         @Param("startDate") LocalDate startDate,
         @Param("endDate") LocalDate endDate);
+
+    // Every preference as a flat row, ordered by importer, product, exporter then date, for model
+    // training alongside MeasureRepository.streamTrainingRows; must be consumed inside a transaction and closed.
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("""
+        SELECT new com.verbosegarbonzo.tariff.model.PreferenceTrainingRow(
+            p.importer.countryCode, p.exporter.countryCode, p.product.hs6Code, p.validFrom, p.validTo, p.prefAdValRate)
+        FROM Preference p
+        ORDER BY p.importer.countryCode, p.product.hs6Code, p.exporter.countryCode, p.validFrom
+        """)
+    Stream<PreferenceTrainingRow> streamTrainingRows();
+
+    // Fingerprint of the rows streamTrainingRows returns, for FeatureStore to check its saved file against
+    @Query("""
+        SELECT new com.verbosegarbonzo.tariff.model.RateTableFingerprint(
+            COUNT(p), SUM(EXTRACT(EPOCH FROM p.validFrom)), SUM(p.prefAdValRate))
+        FROM Preference p
+        """)
+    RateTableFingerprint fingerprint();
+
+    // Every preference as RateIndexService indexes it, read as columns rather than managed entities
+    @Query("""
+        SELECT new com.verbosegarbonzo.tariff.model.PreferenceIndexRow(
+            p.preferenceId, p.importer.countryCode, p.exporter.countryCode, p.product.hs6Code, p.validFrom,
+            p.validTo, p.prefAdValRate)
+        FROM Preference p
+        """)
+    List<PreferenceIndexRow> findIndexRows();
+
+    // Preferences of one importer and product for every exporter, as streamTrainingRows gives them
+    @Query("""
+        SELECT new com.verbosegarbonzo.tariff.model.PreferenceTrainingRow(
+            p.importer.countryCode, p.exporter.countryCode, p.product.hs6Code, p.validFrom, p.validTo, p.prefAdValRate)
+        FROM Preference p
+        WHERE p.importer.countryCode = :importerCode
+          AND p.product.hs6Code = :hs6Code
+        ORDER BY p.exporter.countryCode, p.validFrom
+        """)
+    List<PreferenceTrainingRow> findTrainingRows(
+        @Param("importerCode") String importerCode,
+        @Param("hs6Code") String hs6Code);
+
+    // findHistoricalPreferences for many of one importer's exporters and products at once, as flat
+    // rows ordered by product, exporter then date, for bulk feature extraction
+    @Query("""
+        SELECT new com.verbosegarbonzo.tariff.model.PreferenceTrainingRow(
+            p.importer.countryCode, p.exporter.countryCode, p.product.hs6Code, p.validFrom, p.validTo, p.prefAdValRate)
+        FROM Preference p
+        WHERE p.importer.countryCode = :importerCode
+          AND p.exporter.countryCode IN :exporterCodes
+          AND p.product.hs6Code IN :hs6Codes
+          AND p.validFrom >= :startDate
+          AND p.validFrom <= :endDate
+        ORDER BY p.product.hs6Code, p.exporter.countryCode, p.validFrom
+        """)
+    List<PreferenceTrainingRow> findHistoricalRows(
+        @Param("importerCode") String importerCode,
+        @Param("exporterCodes") Collection<String> exporterCodes,
+        @Param("hs6Codes") Collection<String> hs6Codes,
+        @Param("startDate") LocalDate startDate,
+        @Param("endDate") LocalDate endDate);
+
+    // Whether any exporter has a preference for the importer and product
+    boolean existsByImporterCountryCodeAndProductHs6Code(String importerCode, String hs6Code);
 }
@@ -2,14 +2,21 @@ package com.verbosegarbonzo.tariff.repository;
 
 import com.verbosegarbonzo.tariff.model.Country;
 import com.verbosegarbonzo.tariff.model.Product;
+import com.verbosegarbonzo.tariff.model.RateTableFingerprint;
 import com.verbosegarbonzo.tariff.model.Suspension;
+import com.verbosegarbonzo.tariff.model.SuspensionIndexRow;
+import com.verbosegarbonzo.tariff.model.SuspensionTrainingRow;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.*;
 import org.springframework.data.jpa.repository.*;
 import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface SuspensionRepository extends JpaRepository<Suspension, Integer> {
 
@@ -51,4 +58,83 @@ public interface SuspensionRepository extends JpaRepository<Suspension, Integer>
         @Param("hs6Code") String hs6Code,
         @Param("startDate") LocalDate startDate,
         @Param("endDate") LocalDate endDate);
+
+    // findHistoricalSuspensions for many of one importer's products at once, as flat rows ordered
+    // by product then date, for bulk feature extraction
+    @Query("""
+        SELECT new com.verbosegarbonzo.tariff.model.SuspensionTrainingRow(
+            s.importer.countryCode, s.product.hs6Code, s.validFrom, s.validTo, s.suspensionRate)
+        FROM Suspension s
+        WHERE s.importer.countryCode = :importerCode
+          AND s.product.hs6Code IN :hs6Codes
+          AND s.validFrom >= :startDate
+          AND s.validFrom <= :endDate
+        ORDER BY s.product.hs6Code, s.validFrom
+        """)
+    List<SuspensionTrainingRow> findHistoricalRows(
+        @Param("importerCode") String importerCode,
+        @Param("hs6Codes") Collection<String> hs6Codes,
+        @Param("startDate") LocalDate startDate,
+        @Param("endDate") LocalDate endDate);
+
+    // Every active suspension as a flat row, ordered by route then date, for model training
+    // alongside MeasureRepository.streamTrainingRows; must be consumed inside a transaction and closed.
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("""
+        SELECT new com.verbosegarbonzo.tariff.model.SuspensionTrainingRow(
+            s.importer.countryCode, s.product.hs6Code, s.validFrom, s.validTo, s.suspensionRate)
+        FROM Suspension s
+        WHERE s.suspensionFlag = true
+        ORDER BY s.importer.countryCode, s.product.hs6Code, s.validFrom
+        """)
+    Stream<SuspensionTrainingRow> streamTrainingRows();
+
+    // Every suspension, flagged or not, as findHistoricalRows reads them, ordered by route then
+    // date, for FeatureStore; must be consumed inside a transaction and closed.
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("""
+        SELECT new com.verbosegarbonzo.tariff.model.SuspensionTrainingRow(
+            s.importer.countryCode, s.product.hs6Code, s.validFrom, s.validTo, s.suspensionRate)
+        FROM Suspension s
+        ORDER BY s.importer.countryCode, s.product.hs6Code, s.validFrom
+        """)
+    Stream<SuspensionTrainingRow> streamFeatureRows();
+
+    // Fingerprint of the rows streamFeatureRows returns, for FeatureStore to check its saved file against
+    @Query("""
+        SELECT new com.verbosegarbonzo.tariff.model.RateTableFingerprint(
+            COUNT(s), SUM(EXTRACT(EPOCH FROM s.validFrom)), SUM(s.suspensionRate))
+        FROM Suspension s
+        """)
+    RateTableFingerprint fingerprint();
+
+    // Every active suspension as RateIndexService indexes it, read as columns rather than managed entities
+    @Query("""
+        SELECT new com.verbosegarbonzo.tariff.model.SuspensionIndexRow(
+            s.suspensionId, s.importer.countryCode, s.product.hs6Code, s.validFrom, s.validTo,
+            s.suspensionRate)
+        FROM Suspension s
+        WHERE s.suspensionFlag = true
+        """)
+    List<SuspensionIndexRow> findIndexRows();
+
+    // One route's active suspensions as streamTrainingRows gives them
+    @Query("""
+        SELECT new com.verbosegarbonzo.tariff.model.SuspensionTrainingRow(
+            s.importer.countryCode, s.product.hs6Code, s.validFrom, s.validTo, s.suspensionRate)
+        FROM Suspension s
+        WHERE s.importer.countryCode = :importerCode
+          AND s.product.hs6Code = :hs6Code
+          AND s.suspensionFlag = true
+        ORDER BY s.validFrom
+        """)
+    List<SuspensionTrainingRow> findTrainingRows(
+        @Param("importerCode") String importerCode,
+        @Param("hs6Code") String hs6Code);
 }
@@ -3,8 +3,10 @@ package com.verbosegarbonzo.tariff.repository;
 import com.verbosegarbonzo.tariff.model.Transaction;
 import com.verbosegarbonzo.tariff.model.UserInfo;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.*;
 import org.springframework.data.repository.query.Param;
+import java.time.LocalDate;
 import java.util.List;
 
 public interface TransactionRepository extends JpaRepository<Transaction, Integer> {
@@ -24,4 +26,26 @@ public interface TransactionRepository extends JpaRepository<Transaction, Intege
         ORDER BY COUNT(t) DESC
         """)
     List<Object[]> getUserProductPatterns(@Param("user") UserInfo user);
+
+    // getUserProductPatterns per route, for portfolio recommendations; exporter is null for
+    // transactions without one
+    @Query("""
+        SELECT t.importer.countryCode, e.countryCode, t.product.hs6Code, COUNT(t) as frequency
+        FROM Transaction t LEFT JOIN t.exporter e
+        WHERE t.user = :user
+        GROUP BY t.importer.countryCode, e.countryCode, t.product.hs6Code
+        ORDER BY COUNT(t) DESC
+        """)
+    List<Object[]> getUserRoutePatterns(@Param("user") UserInfo user, Pageable pageable);
+
+    // Most traded routes across all users, for forecast materialization; exporter is null for
+    // transactions without one
+    @Query("""
+        SELECT t.importer.countryCode, e.countryCode, t.product.hs6Code, COUNT(t) as frequency
+        FROM Transaction t LEFT JOIN t.exporter e
+        WHERE t.tDate >= :since
+        GROUP BY t.importer.countryCode, e.countryCode, t.product.hs6Code
+        ORDER BY COUNT(t) DESC
+        """)
+    List<Object[]> getRoutePatterns(@Param("since") LocalDate since, Pageable pageable);
 }
\ No newline at end of file
@@ -4,7 +4,6 @@ import com.verbosegarbonzo.tariff.model.*;
 import com.verbosegarbonzo.tariff.repository.*;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
@@ -23,15 +22,21 @@ import java.util.stream.Collectors;
 @Slf4j
 public class AIRecommendationService {
 
+    // Current rate assumed for a route without a readable measure
+    private static final BigDecimal DEFAULT_CURRENT_RATE = BigDecimal.valueOf(5.0);
+
     private final TariffMLService mlService;
     private final MeasureRepository measureRepository;
     private final CountryRepository countryRepository;
     private final ProductRepository productRepository;
+    private final ForecastMaterializationService materializedForecasts;
+    private final RecommendationCache recommendationCache;
 
     /**
      * Get AI timing recommendations for a specific trade route.
+     * Served from RecommendationCache for the day, or briefly when degraded; errors are returned as an
+     * error response and not cached.
      */
-    @Cacheable(value = "aiRecommendations", key = "#importerCode + '-' + #exporterCode + '-' + #hs6Code + '-' + #userProfile")
     public AIRecommendationResponse getTimingRecommendation(
             String importerCode,
             String exporterCode,
@@ -39,55 +44,15 @@ public class AIRecommendationService {
             ProfileType userProfile) {
 
         try {
-            log.info("Generating AI recommendations for {}/{}/{} - Profile: {}",
-                importerCode, exporterCode, hs6Code, userProfile);
-
-            LocalDate today = LocalDate.now();
-            LocalDate endDate = today.plusDays(365);
-
-            // Get current rate
-            BigDecimal currentRate = getCurrentRate(importerCode, hs6Code);
+            return recommendationCache.get(importerCode, exporterCode, hs6Code, userProfile, () -> {
+                log.info("Generating AI recommendations for {}/{}/{} - Profile: {}",
+                    importerCode, exporterCode, hs6Code, userProfile);
 
-            // Predict rates for next 365 days
-            log.info("*** About to call mlService.predictRateRange() ***");
-            List<DateRangeForecast> forecasts = mlService.predictRateRange(
-                importerCode, exporterCode, hs6Code, today, endDate);
-            log.info("*** Returned from mlService.predictRateRange() - got {} forecasts", forecasts.size());
-
-            if (forecasts.isEmpty()) {
-                log.warn("No forecasts available for {}/{}", importerCode, hs6Code);
-                return createEmptyResponse(currentRate);
-            }
+                // Get current rate
+                BigDecimal currentRate = getCurrentRate(importerCode, hs6Code).orElse(null);
 
-            // Identify optimal and avoid periods
-            List<OptimalPeriod> optimalPeriods = findOptimalPeriods(forecasts, currentRate, importerCode, hs6Code);
-            List<AvoidPeriod> avoidPeriods = findAvoidPeriods(forecasts, currentRate, importerCode, hs6Code);
-
-            // Calculate potential savings - get both the percentage and dollar amount
-            BigDecimal potentialSavingsPercent = calculatePotentialSavingsPercent(optimalPeriods);
-            BigDecimal potentialSavings = calculatePotentialSavingsAmount(optimalPeriods);
-
-            // Calculate average confidence
-            int avgConfidence = (int) forecasts.stream()
-                .mapToInt(DateRangeForecast::getConfidencePercent)
-                .average()
-                .orElse(70);
-
-            // Generate personalized explanation
-            String explanation = generateExplanation(
-                optimalPeriods, avoidPeriods, userProfile, importerCode, hs6Code);
-
-            return AIRecommendationResponse.builder()
-                .optimalPeriods(optimalPeriods)
-                .avoidPeriods(avoidPeriods)
-                .explanation(explanation)
-                .currentRate(currentRate)
-                .potentialSavings(potentialSavings)
-                .potentialSavingsPercent(potentialSavingsPercent)
-                .averageConfidence(avgConfidence)
-                .modelVersion("1.0.0")
-                .hasInsufficientData(false)
-                .build();
+                return getTimingRecommendation(importerCode, exporterCode, hs6Code, userProfile, currentRate, null);
+            });
 
         } catch (Exception e) {
             log.error("Error generating AI recommendations", e);
@@ -95,6 +60,75 @@ public class AIRecommendationService {
         }
     }
 
+    /**
+     * Get AI timing recommendations for a route whose current rate and history are already read,
+     * as portfolio recommendations do for many routes at once. Not cached, and errors are thrown
+     * rather than returned as an error response.
+     *
+     * @param currentRate the route's rate today, from getCurrentRates, or null when it has none; the
+     *                    default estimate is then used and the response marked degraded
+     * @param measures    the route's history from TariffMLService.recentHistories, or null to read it
+     */
+    public AIRecommendationResponse getTimingRecommendation(
+            String importerCode,
+            String exporterCode,
+            String hs6Code,
+            ProfileType userProfile,
+            BigDecimal currentRate,
+            RateHistory measures) {
+
+        boolean degraded = currentRate == null;
+        if (degraded) {
+            currentRate = DEFAULT_CURRENT_RATE;
+        }
+
+        LocalDate today = LocalDate.now();
+        LocalDate endDate = today.plusDays(365);
+
+        // Hot routes are precomputed; otherwise score the next 365 days in one pass, then aggregate by week
+        List<DateRangeForecast> forecasts = materializedForecasts.lookup(
+                importerCode, exporterCode, hs6Code, today, endDate)
+            .orElseGet(() -> (measures != null
+                ? mlService.scoreHorizon(importerCode, exporterCode, hs6Code, today, endDate, measures)
+                : mlService.scoreHorizon(importerCode, exporterCode, hs6Code, today, endDate)).weekly());
+
+        if (forecasts.isEmpty()) {
+            log.warn("No forecasts available for {}/{}", importerCode, hs6Code);
+            return createEmptyResponse(currentRate, degraded);
+        }
+
+        // Identify optimal and avoid periods
+        List<OptimalPeriod> optimalPeriods = findOptimalPeriods(forecasts, currentRate, importerCode, hs6Code);
+        List<AvoidPeriod> avoidPeriods = findAvoidPeriods(forecasts, currentRate, importerCode, hs6Code);
+
+        // Calculate potential savings - get both the percentage and dollar amount
+        BigDecimal potentialSavingsPercent = calculatePotentialSavingsPercent(optimalPeriods);
+        BigDecimal potentialSavings = calculatePotentialSavingsAmount(optimalPeriods);
+
+        // Calculate average confidence
+        int avgConfidence = (int) forecasts.stream()
+            .mapToInt(DateRangeForecast::getConfidencePercent)
+            .average()
+            .orElse(70);
+
+        // Generate personalized explanation
+        String explanation = generateExplanation(
+            optimalPeriods, avoidPeriods, userProfile, importerCode, hs6Code);
+
+        return AIRecommendationResponse.builder()
+            .optimalPeriods(optimalPeriods)
+            .avoidPeriods(avoidPeriods)
+            .explanation(explanation)
+            .currentRate(currentRate)
+            .potentialSavings(potentialSavings)
+            .potentialSavingsPercent(potentialSavingsPercent)
+            .averageConfidence(avgConfidence)
+            .modelVersion("1.0.0")
+            .hasInsufficientData(false)
+            .degraded(degraded)
+            .build();
+    }
+
     /**
      * Find optimal periods (lowest rates) from forecasts.
      */
@@ -288,9 +322,10 @@ public class AIRecommendationService {
     }
 
     /**
-     * Get current tariff rate for importer-product combination.
+     * Get current tariff rate for importer-product combination, empty when it has no measure or the
+     * measure could not be read.
      */
-    private BigDecimal getCurrentRate(String importerCode, String hs6Code) {
+    private Optional<BigDecimal> getCurrentRate(String importerCode, String hs6Code) {
         try {
             // Load Country and Product from database
             Optional<Country> country = countryRepository.findById(importerCode);
@@ -304,20 +339,42 @@ public class AIRecommendationService {
 
                 if (currentMeasure.isPresent()) {
                     BigDecimal rate = currentMeasure.get().getMfnAdvalRate();
-                    return rate != null ? rate : BigDecimal.ZERO;
+                    return Optional.of(rate != null ? rate : BigDecimal.ZERO);
                 }
             }
         } catch (Exception e) {
             log.warn("Could not fetch current rate, using default", e);
         }
 
-        return BigDecimal.valueOf(5.0); // Default estimate
+        return Optional.empty();
+    }
+
+    /**
+     * getCurrentRate for many of one importer's products in one query.
+     *
+     * @return each product's current rate by HS6 code; products without a measure are left out
+     */
+    public Map<String, BigDecimal> getCurrentRates(String importerCode, Collection<String> hs6Codes) {
+        // Latest validFrom wins where rows overlap
+        Map<String, MeasureTrainingRow> valid = measureRepository.findValidRows(importerCode, hs6Codes, LocalDate.now())
+            .stream()
+            .collect(Collectors.toMap(MeasureTrainingRow::hs6Code, row -> row,
+                (a, b) -> a.validFrom().isAfter(b.validFrom()) ? a : b));
+
+        Map<String, BigDecimal> rates = new HashMap<>();
+        for (String hs6Code : hs6Codes) {
+            MeasureTrainingRow row = valid.get(hs6Code);
+            if (row != null) {
+                rates.put(hs6Code, row.mfnAdvalRate() != null ? row.mfnAdvalRate() : BigDecimal.ZERO);
+            }
+        }
+        return rates;
     }
 
     /**
      * Create response when no recommendations available.
      */
-    private AIRecommendationResponse createEmptyResponse(BigDecimal currentRate) {
+    private AIRecommendationResponse createEmptyResponse(BigDecimal currentRate, boolean degraded) {
         return AIRecommendationResponse.builder()
             .optimalPeriods(new ArrayList<>())
             .avoidPeriods(new ArrayList<>())
@@ -328,6 +385,7 @@ public class AIRecommendationService {
             .averageConfidence(30)
             .modelVersion("1.0.0")
             .hasInsufficientData(true)
+            .degraded(degraded)
             .build();
     }
 
@@ -0,0 +1,52 @@
+package com.verbosegarbonzo.tariff.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Command-line mode: started with --backtest, the application runs a backtest with the
+ * app.ml.backtest settings, prints the report as JSON and exits, with status 1 when a gate is
+ * not met. Runs before the application is ready, so no startup training is triggered.
+ *
+ * Example: java -jar tariff.jar --backtest --spring.main.web-application-type=none
+ *     --app.ml.backtest.max-mape=15 --app.ml.backtest.min-coverage=0.6
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class BacktestRunner implements ApplicationRunner {
+
+    static final String OPTION = "backtest";
+
+    private final BacktestService backtestService;
+    private final ConfigurableApplicationContext context;
+    private final ObjectMapper objectMapper;
+
+    // Replaced in tests
+    IntConsumer exit = System::exit;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        if (!args.containsOption(OPTION)) {
+            return;
+        }
+
+        log.info("Running backtest from the command line");
+        BacktestService.Report report = backtestService.run(backtestService.defaultSettings());
+        System.out.println(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(report.toMap()));
+        if (!report.passed()) {
+            log.error("Backtest failed: {}", String.join("; ", report.failures()));
+        }
+
+        int status = report.passed() ? 0 : 1;
+        exit.accept(SpringApplication.exit(context, () -> status));
+    }
+}
@@ -0,0 +1,396 @@
+package com.verbosegarbonzo.tariff.service;
+
+import com.verbosegarbonzo.tariff.config.MLModelProperties;
+import com.verbosegarbonzo.tariff.model.ForecastResult;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how accurate and how fast TariffMLService predictions are on historical measures.
+ *
+ * For each cutoff, every route gets a model trained only on its rows before the cutoff, as the
+ * weekly training would have trained it then, or the statistical fallback when it has too few
+ * rows. Each rated row in the horizon after the cutoff is then forecast for its validFrom date
+ * and compared with its actual rate. Routes are read one at a time from TrainingDataReader and
+ * evaluated in parallel, like training.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BacktestService {
+
+    // Routes handed to the pool but not yet evaluated, per thread; bounds memory while streaming
+    private static final int ROUTES_IN_FLIGHT_PER_THREAD = 4;
+
+    private final TrainingDataReader trainingDataReader;
+    private final TariffMLService mlService;
+    private final MLModelProperties mlProperties;
+
+    /**
+     * What to backtest.
+     *
+     * @param folds         number of cutoffs
+     * @param horizonMonths months after each cutoff that are forecast
+     * @param stepMonths    months between cutoffs
+     * @param asOf          the last cutoff is horizonMonths before this date
+     */
+    public record Settings(int folds, int horizonMonths, int stepMonths, LocalDate asOf) {
+
+        /**
+         * Cutoffs in ascending order.
+         */
+        public List<LocalDate> cutoffs() {
+            List<LocalDate> cutoffs = new ArrayList<>(folds);
+            LocalDate last = asOf.minusMonths(horizonMonths);
+            for (int fold = folds - 1; fold >= 0; fold--) {
+                cutoffs.add(last.minusMonths((long) fold * stepMonths));
+            }
+            return cutoffs;
+        }
+    }
+
+    /**
+     * Settings from app.ml.backtest, with the last cutoff horizonMonths before today.
+     */
+    public Settings defaultSettings() {
+        MLModelProperties.Backtest backtest = mlProperties.getBacktest();
+        return new Settings(backtest.getFolds(), backtest.getHorizonMonths(), backtest.getStepMonths(), LocalDate.now());
+    }
+
+    /**
+     * Run the backtest over every route and check the result against the configured gates.
+     */
+    public Report run(Settings settings) {
+        if (settings.folds() < 1 || settings.horizonMonths() < 1 || settings.stepMonths() < 1) {
+            throw new IllegalArgumentException("folds, horizonMonths and stepMonths must be at least 1");
+        }
+
+        long started = System.nanoTime();
+        List<LocalDate> cutoffs = settings.cutoffs();
+        int parallelism = parallelism();
+        Totals totals = new Totals(cutoffs.size());
+        long routes;
+
+        try (ForkJoinPool pool = new ForkJoinPool(parallelism)) {
+            Semaphore inFlight = new Semaphore(parallelism * ROUTES_IN_FLIGHT_PER_THREAD);
+            long[] routeCount = new long[1];
+            trainingDataReader.forEachRoute(route -> {
+                routeCount[0]++;
+                inFlight.acquireUninterruptibly();
+                pool.execute(() -> {
+                    try {
+                        totals.add(evaluate(route, cutoffs, settings.horizonMonths()));
+                    } catch (Exception e) {
+                        log.warn("Backtest failed for route {}: {}", route.tradeRoute(), e.getMessage());
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            });
+            routes = routeCount[0];
+        } // close() waits for the queued routes
+
+        Report report = totals.toReport(settings, cutoffs, routes, System.nanoTime() - started, mlProperties);
+        log.info("Backtest over {} routes and {} cutoffs: {} predictions, MAE {}, MAPE {}%, coverage {}, {} predictions/s, passed: {}",
+            routes, cutoffs.size(), report.overall().predictions(), report.overall().mae(), report.overall().mape(),
+            report.overall().coverage(), report.predictionsPerSecond(), report.passed());
+        return report;
+    }
+
+    /**
+     * Every cutoff for one route.
+     */
+    private RouteResult evaluate(TrainingDataReader.RouteSeries route, List<LocalDate> cutoffs, int horizonMonths) {
+        RouteResult result = new RouteResult(cutoffs.size());
+        LocalDate[] validFrom = route.validFrom();
+        double[] rates = route.rates();
+
+        for (int fold = 0; fold < cutoffs.size(); fold++) {
+            LocalDate cutoff = cutoffs.get(fold);
+            int train = firstOnOrAfter(validFrom, cutoff);
+            int end = firstOnOrAfter(validFrom, cutoff.plusMonths(horizonMonths));
+            if (train == 0 || train == end) {
+                continue; // Nothing to learn from, or nothing to check
+            }
+
+            // As the fallback and the 3-year average feature see the route on the cutoff date
+            int historyStart = firstOnOrAfter(validFrom, cutoff.minusYears(3));
+            double historySum = 0;
+            for (int i = historyStart; i < train; i++) {
+                historySum += Double.isNaN(rates[i]) ? 0 : rates[i];
+            }
+            int historyCount = train - historyStart;
+            double average = historyCount > 0 ? historySum / historyCount : 0;
+
+            TariffMLService.TariffMLModel model = null;
+            if (train >= mlProperties.getModel().getMinTrainingSamples()) {
+                long trainStarted = System.nanoTime();
+                model = mlService.trainModelForRoute(new TrainingDataReader.RouteSeries(
+                    route.tradeRoute(), Arrays.copyOf(validFrom, train), Arrays.copyOf(rates, train)));
+                result.trainNanos += System.nanoTime() - trainStarted;
+            }
+            result.routeFolds++;
+
+            Accuracy accuracy = model != null ? result.model : result.fallback;
+            for (int i = train; i < end; i++) {
+                if (Double.isNaN(rates[i])) {
+                    continue;
+                }
+                long forecastStarted = System.nanoTime();
+                ForecastResult forecast;
+                if (model != null) {
+                    double[] features = FeatureSchema.newVector();
+                    FeatureSchema.writeSeasonality(validFrom[i], features, 0);
+                    features[FeatureSchema.AVG_RATE_3Y] = average;
+                    forecast = mlService.forecastWithModel(model, features, validFrom[i]);
+                } else {
+                    forecast = mlService.fallbackForecast(BigDecimal.valueOf(average).setScale(2, RoundingMode.HALF_UP),
+                        historyCount, cutoff, validFrom[i], true);
+                }
+                result.forecastNanos += System.nanoTime() - forecastStarted;
+
+                accuracy.add(forecast, rates[i]);
+                result.byCutoff[fold].add(forecast, rates[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Index of the first date on or after day in the sorted dates, or dates.length.
+     */
+    private static int firstOnOrAfter(LocalDate[] dates, LocalDate day) {
+        int low = 0;
+        int high = dates.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (dates[mid].isBefore(day)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int parallelism() {
+        int configured = mlProperties.getBacktest().getParallelism();
+        return configured > 0 ? configured : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Forecast errors against actual rates.
+     */
+    private static final class Accuracy {
+        private long predictions;
+        private double absoluteError;
+        private double absolutePercentError;
+        private long nonZeroActuals; // MAPE is undefined for a zero rate
+        private long covered;
+
+        void add(ForecastResult forecast, double actual) {
+            double error = Math.abs(forecast.getPredictedRate().doubleValue() - actual);
+            predictions++;
+            absoluteError += error;
+            if (actual != 0) {
+                absolutePercentError += error / Math.abs(actual);
+                nonZeroActuals++;
+            }
+            if (forecast.getConfidenceLower().doubleValue() <= actual && actual <= forecast.getConfidenceUpper().doubleValue()) {
+                covered++;
+            }
+        }
+
+        void add(Accuracy other) {
+            predictions += other.predictions;
+            absoluteError += other.absoluteError;
+            absolutePercentError += other.absolutePercentError;
+            nonZeroActuals += other.nonZeroActuals;
+            covered += other.covered;
+        }
+
+        Metrics toMetrics() {
+            return new Metrics(
+                predictions,
+                predictions > 0 ? absoluteError / predictions : 0,
+                nonZeroActuals > 0 ? 100 * absolutePercentError / nonZeroActuals : 0,
+                predictions > 0 ? (double) covered / predictions : 0);
+        }
+    }
+
+    /**
+     * One route's results, merged into Totals when the route is done.
+     */
+    private static final class RouteResult {
+        final Accuracy model = new Accuracy();
+        final Accuracy fallback = new Accuracy();
+        final Accuracy[] byCutoff;
+        int routeFolds;
+        long trainNanos;
+        long forecastNanos;
+
+        RouteResult(int cutoffs) {
+            byCutoff = new Accuracy[cutoffs];
+            Arrays.setAll(byCutoff, i -> new Accuracy());
+        }
+    }
+
+    /**
+     * Results of every route so far, added from the backtest threads.
+     */
+    private static final class Totals {
+        private final RouteResult sum;
+        private long routesEvaluated;
+
+        Totals(int cutoffs) {
+            sum = new RouteResult(cutoffs);
+        }
+
+        synchronized void add(RouteResult route) {
+            if (route.routeFolds > 0) {
+                routesEvaluated++;
+            }
+            sum.model.add(route.model);
+            sum.fallback.add(route.fallback);
+            for (int i = 0; i < sum.byCutoff.length; i++) {
+                sum.byCutoff[i].add(route.byCutoff[i]);
+            }
+            sum.routeFolds += route.routeFolds;
+            sum.trainNanos += route.trainNanos;
+            sum.forecastNanos += route.forecastNanos;
+        }
+
+        synchronized Report toReport(Settings settings, List<LocalDate> cutoffs, long routes, long totalNanos,
+                MLModelProperties properties) {
+            Accuracy overall = new Accuracy();
+            overall.add(sum.model);
+            overall.add(sum.fallback);
+            Metrics metrics = overall.toMetrics();
+
+            Map<String, Metrics> byCutoff = new LinkedHashMap<>();
+            for (int i = 0; i < cutoffs.size(); i++) {
+                byCutoff.put(cutoffs.get(i).toString(), sum.byCutoff[i].toMetrics());
+            }
+
+            double predictionsPerSecond = sum.forecastNanos > 0
+                ? metrics.predictions() * (double) TimeUnit.SECONDS.toNanos(1) / sum.forecastNanos : 0;
+
+            MLModelProperties.Backtest gates = properties.getBacktest();
+            List<String> failures = new ArrayList<>();
+            if (gates.getMaxMape() > 0 && metrics.mape() > gates.getMaxMape()) {
+                failures.add(String.format("MAPE %.2f%% is above %.2f%%", metrics.mape(), gates.getMaxMape()));
+            }
+            if (gates.getMinCoverage() > 0 && metrics.coverage() < gates.getMinCoverage()) {
+                failures.add(String.format("coverage %.3f is below %.3f", metrics.coverage(), gates.getMinCoverage()));
+            }
+            if (gates.getMinPredictionsPerSecond() > 0 && predictionsPerSecond < gates.getMinPredictionsPerSecond()) {
+                failures.add(String.format("%.0f predictions/s is below %.0f", predictionsPerSecond, gates.getMinPredictionsPerSecond()));
+            }
+
+            return new Report(
+                settings,
+                cutoffs,
+                properties.getModel().getBackend(),
+                routes,
+                routesEvaluated,
+                metrics,
+                sum.model.toMetrics(),
+                sum.fallback.toMetrics(),
+                byCutoff,
+                TimeUnit.NANOSECONDS.toMillis(totalNanos),
+                TimeUnit.NANOSECONDS.toMillis(sum.trainNanos),
+                predictionsPerSecond,
+                failures.isEmpty(),
+                failures);
+        }
+    }
+
+    /**
+     * Accuracy of a set of predictions.
+     *
+     * @param predictions rated rows forecast
+     * @param mae         mean absolute error, in rate units
+     * @param mape        mean absolute percentage error over rows with a non-zero rate, in percent
+     * @param coverage    share of actual rates inside [confidenceLower, confidenceUpper]
+     */
+    public record Metrics(long predictions, double mae, double mape, double coverage) {
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("predictions", predictions);
+            map.put("mae", mae);
+            map.put("mape", mape);
+            map.put("coverage", coverage);
+            return map;
+        }
+    }
+
+    /**
+     * Result of a backtest.
+     *
+     * @param routes               routes in the measure table
+     * @param routesEvaluated      routes with history before and rows after at least one cutoff
+     * @param overall              every forecast
+     * @param model                predictions from a trained model
+     * @param fallback             predictions from the statistical fallback
+     * @param byCutoff             every forecast, per cutoff date
+     * @param totalMillis          the whole run: read, train and forecast
+     * @param trainMillis          time spent training, summed over threads
+     * @param predictionsPerSecond predictions per second of forecasting time on one thread
+     * @param passed               whether every configured gate is met
+     * @param failures             the gates not met
+     */
+    public record Report(
+            Settings settings,
+            List<LocalDate> cutoffs,
+            MLModelProperties.Backend backend,
+            long routes,
+            long routesEvaluated,
+            Metrics overall,
+            Metrics model,
+            Metrics fallback,
+            Map<String, Metrics> byCutoff,
+            long totalMillis,
+            long trainMillis,
+            double predictionsPerSecond,
+            boolean passed,
+            List<String> failures) {
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> cutoffMetrics = new LinkedHashMap<>();
+            byCutoff.forEach((cutoff, metrics) -> cutoffMetrics.put(cutoff, metrics.toMap()));
+
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("folds", settings.folds());
+            map.put("horizonMonths", settings.horizonMonths());
+            map.put("stepMonths", settings.stepMonths());
+            map.put("cutoffs", cutoffs.stream().map(LocalDate::toString).toList());
+            map.put("backend", backend.name());
+            map.put("routes", routes);
+            map.put("routesEvaluated", routesEvaluated);
+            map.put("overall", overall.toMap());
+            map.put("model", model.toMap());
+            map.put("fallback", fallback.toMap());
+            map.put("byCutoff", cutoffMetrics);
+            map.put("totalMillis", totalMillis);
+            map.put("trainMillis", trainMillis);
+            map.put("predictionsPerSecond", predictionsPerSecond);
+            map.put("passed", passed);
+            map.put("failures", failures);
+            return map;
+        }
+    }
+}
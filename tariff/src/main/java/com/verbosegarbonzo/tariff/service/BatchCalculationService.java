@@ -0,0 +1,247 @@
+package com.verbosegarbonzo.tariff.service;
+
+import com.verbosegarbonzo.tariff.config.BatchProperties;
+import com.verbosegarbonzo.tariff.exception.InvalidRateException;
+import com.verbosegarbonzo.tariff.exception.InvalidRequestException;
+import com.verbosegarbonzo.tariff.exception.RateNotFoundException;
+import com.verbosegarbonzo.tariff.exception.WeightRequiredException;
+import com.verbosegarbonzo.tariff.model.BatchCalculateResult;
+import com.verbosegarbonzo.tariff.model.CalculateRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * Concurrent engine behind /api/calculate/batch.
+ *
+ * Items are grouped by (importer, exporter, hs6, date) so each distinct rate lookup runs once:
+ * the first item of a group resolves the rate (including any WITS fallback, which writes the rate
+ * back into the index) and the rest of the group then hit the index. If the first item finds no
+ * rate, the rest of its group fail the same way without repeating the lookup.
+ *
+ * Groups run on virtual threads, at most app.batch.max-concurrency at a time across all batches,
+ * so batch latency tracks the slowest lookup rather than the sum. A failing item never fails the
+ * batch; results come back in submission order with an error code per failed item.
+ *
+ * calculateStream serves /api/calculate/stream: items are read, calculated and written one at a
+ * time through a bounded window, so memory stays flat regardless of input size.
+ */
+@Service
+@Slf4j
+public class BatchCalculationService {
+
+    private final TariffService tariffService;
+    private final Semaphore permits;
+    private final int streamWindow;
+
+    public BatchCalculationService(TariffService tariffService, BatchProperties batchProperties) {
+        this.tariffService = tariffService;
+        this.permits = new Semaphore(Math.max(1, batchProperties.getMaxConcurrency()), true);
+        this.streamWindow = Math.max(1, batchProperties.getStreamWindow());
+    }
+
+    /**
+     * Destination for streamed results, written in input order.
+     */
+    public interface ResultSink {
+        void write(BatchCalculateResult result) throws IOException;
+
+        void flush() throws IOException;
+    }
+
+    private record LookupKey(String importerCode, String exporterCode, String hs6, LocalDate date) {
+
+        static LookupKey of(CalculateRequest req) {
+            String exporter = req.getExporterCode() != null && !req.getExporterCode().isBlank()
+                    ? req.getExporterCode()
+                    : null;
+            return new LookupKey(req.getImporterCode(), exporter, req.getHs6(), req.getTransactionDate());
+        }
+    }
+
+    public List<BatchCalculateResult> calculateAll(List<CalculateRequest> requests) {
+        long start = System.currentTimeMillis();
+
+        Map<LookupKey, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            groups.computeIfAbsent(LookupKey.of(requests.get(i)), k -> new ArrayList<>()).add(i);
+        }
+
+        AtomicReferenceArray<BatchCalculateResult> results = new AtomicReferenceArray<>(requests.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (List<Integer> group : groups.values()) {
+                // Acquire before submitting so at most maxConcurrency threads exist per batch
+                permits.acquireUninterruptibly();
+                executor.execute(() -> {
+                    try {
+                        calculateGroup(requests, group, results);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        } // close() waits for every group to finish
+
+        List<BatchCalculateResult> ordered = new ArrayList<>(requests.size());
+        int failed = 0;
+        for (int i = 0; i < requests.size(); i++) {
+            BatchCalculateResult result = results.get(i);
+            if (result.getError() != null) {
+                failed++;
+            }
+            ordered.add(result);
+        }
+
+        log.info("Batch of {} items ({} distinct lookups) completed in {} ms, {} failed",
+                requests.size(), groups.size(), System.currentTimeMillis() - start, failed);
+        return ordered;
+    }
+
+    /**
+     * Calculate a stream of raw input lines and write each result as soon as it and every earlier
+     * item are done. Blank lines are skipped and do not take an index.
+     *
+     * At most streamWindow items are in flight or waiting to be written. When the window is full
+     * the reader blocks on the oldest item, and a slow client blocks the writer, so neither input
+     * nor output is buffered beyond the window.
+     *
+     * @param lines  raw input lines, read lazily
+     * @param parser turns one line into a request; throws InvalidRequestException on bad input
+     * @param sink   receives results in input order
+     * @return number of items processed
+     */
+    public long calculateStream(Iterator<String> lines, Function<String, CalculateRequest> parser,
+            ResultSink sink) throws IOException {
+        long start = System.currentTimeMillis();
+        Deque<Future<BatchCalculateResult>> window = new ArrayDeque<>();
+        int index = 0;
+        int failed = 0;
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            try {
+                while (lines.hasNext()) {
+                    String line = lines.next();
+                    if (line.isBlank()) {
+                        continue;
+                    }
+
+                    int itemIndex = index++;
+                    permits.acquireUninterruptibly();
+                    FutureTask<BatchCalculateResult> item = new FutureTask<>(() -> calculateItem(itemIndex, line, parser)) {
+                        @Override
+                        protected void done() {
+                            // Runs once, also for an item cancelled before its thread started
+                            permits.release();
+                        }
+                    };
+                    window.add(item);
+                    executor.execute(item);
+
+                    // Write whatever is ready; wait on the oldest item only when the window is full
+                    while (!window.isEmpty() && (window.peek().isDone() || window.size() >= streamWindow)) {
+                        if (!window.peek().isDone()) {
+                            sink.flush();
+                        }
+                        failed += writeNext(window, sink);
+                    }
+                }
+
+                while (!window.isEmpty()) {
+                    if (!window.peek().isDone()) {
+                        sink.flush();
+                    }
+                    failed += writeNext(window, sink);
+                }
+                sink.flush();
+            } catch (IOException | RuntimeException e) {
+                // Client went away or input broke off: drop the items still in flight
+                window.forEach(f -> f.cancel(true));
+                throw e;
+            }
+        }
+
+        log.info("Streamed batch of {} items completed in {} ms, {} failed",
+                index, System.currentTimeMillis() - start, failed);
+        return index;
+    }
+
+    // Permits free for new items; visible for tests
+    int availablePermits() {
+        return permits.availablePermits();
+    }
+
+    private int writeNext(Deque<Future<BatchCalculateResult>> window, ResultSink sink) throws IOException {
+        BatchCalculateResult result;
+        try {
+            result = window.poll().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for batch item", e);
+        } catch (ExecutionException e) {
+            // calculateItem maps every Throwable to a failure result, so only cancellation gets here
+            throw new IllegalStateException("Batch item failed unexpectedly", e.getCause());
+        }
+        sink.write(result);
+        return result.getError() != null ? 1 : 0;
+    }
+
+    private BatchCalculateResult calculateItem(int index, String line, Function<String, CalculateRequest> parser) {
+        try {
+            return BatchCalculateResult.success(index, tariffService.calculate(parser.apply(line)));
+        } catch (Throwable e) {
+            return failure(index, e);
+        }
+    }
+
+    private void calculateGroup(List<CalculateRequest> requests, List<Integer> group,
+            AtomicReferenceArray<BatchCalculateResult> results) {
+        RateNotFoundException notFound = null;
+        for (int index : group) {
+            if (notFound != null) {
+                results.set(index, BatchCalculateResult.failure(index, "RATE_NOT_FOUND", notFound.getMessage()));
+                continue;
+            }
+            try {
+                results.set(index, BatchCalculateResult.success(index, tariffService.calculate(requests.get(index))));
+            } catch (RateNotFoundException e) {
+                notFound = e;
+                results.set(index, failure(index, e));
+            } catch (Throwable e) {
+                // Errors too: an empty slot would fail the whole batch when results are collected
+                results.set(index, failure(index, e));
+            }
+        }
+    }
+
+    private static BatchCalculateResult failure(int index, Throwable e) {
+        return BatchCalculateResult.failure(index, errorCode(e), e.getMessage());
+    }
+
+    private static String errorCode(Throwable e) {
+        if (e instanceof RateNotFoundException) {
+            return "RATE_NOT_FOUND";
+        }
+        if (e instanceof InvalidRequestException) {
+            return "INVALID_REQUEST";
+        }
+        if (e instanceof InvalidRateException) {
+            return "INVALID_RATE";
+        }
+        if (e instanceof WeightRequiredException) {
+            return "WEIGHT_REQUIRED";
+        }
+        log.error("Unexpected error in batch item", e);
+        return "CALCULATION_ERROR";
+    }
+}
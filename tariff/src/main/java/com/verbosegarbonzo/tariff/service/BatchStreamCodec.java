@@ -0,0 +1,136 @@
+package com.verbosegarbonzo.tariff.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.verbosegarbonzo.tariff.exception.InvalidRequestException;
+import com.verbosegarbonzo.tariff.model.BatchCalculateResult;
+import com.verbosegarbonzo.tariff.model.CalculateRequest;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Line-level reading and writing for /api/calculate/stream.
+ *
+ * Input lines are either NDJSON objects or CSV rows whose header names match the CalculateRequest
+ * JSON fields (e.g. importerCode,exporterCode,hs6,tradeOriginal,transactionDate). Each parsed line
+ * goes through the same bean validation as the JSON endpoints; a bad line becomes an
+ * InvalidRequestException for that item only. Output is one BatchCalculateResult JSON per line.
+ */
+@Component
+public class BatchStreamCodec {
+
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+
+    public BatchStreamCodec(ObjectMapper objectMapper, Validator validator) {
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+    }
+
+    public CalculateRequest parseJson(String line) {
+        try {
+            return validate(objectMapper.readValue(line, CalculateRequest.class));
+        } catch (JsonProcessingException e) {
+            throw new InvalidRequestException("Malformed JSON line: " + e.getOriginalMessage());
+        }
+    }
+
+    /**
+     * Build a parser for CSV rows described by the given header line.
+     */
+    public Function<String, CalculateRequest> csvParser(String headerLine) {
+        List<String> columns = splitCsv(headerLine.startsWith("\uFEFF") ? headerLine.substring(1) : headerLine)
+                .stream().map(String::trim).toList();
+
+        return line -> {
+            List<String> cells = splitCsv(line);
+            if (cells.size() > columns.size()) {
+                throw new InvalidRequestException("CSV row has " + cells.size() + " cells but header has "
+                        + columns.size() + " columns");
+            }
+            Map<String, String> fields = new HashMap<>();
+            for (int i = 0; i < cells.size(); i++) {
+                String cell = cells.get(i).trim();
+                if (!cell.isEmpty()) {
+                    fields.put(columns.get(i), cell);
+                }
+            }
+            try {
+                return validate(objectMapper.convertValue(fields, CalculateRequest.class));
+            } catch (IllegalArgumentException e) {
+                throw new InvalidRequestException("Malformed CSV row: " + rootMessage(e));
+            }
+        };
+    }
+
+    /**
+     * Sink writing each result as one JSON line to the given stream.
+     */
+    public BatchCalculationService.ResultSink ndjsonSink(OutputStream out) {
+        return new BatchCalculationService.ResultSink() {
+            @Override
+            public void write(BatchCalculateResult result) throws IOException {
+                out.write(objectMapper.writeValueAsBytes(result));
+                out.write('\n');
+            }
+
+            @Override
+            public void flush() throws IOException {
+                out.flush();
+            }
+        };
+    }
+
+    private CalculateRequest validate(CalculateRequest req) {
+        Set<ConstraintViolation<CalculateRequest>> violations = validator.validate(req);
+        if (!violations.isEmpty()) {
+            throw new InvalidRequestException(violations.stream()
+                    .map(v -> v.getPropertyPath() + ": " + v.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining("; ")));
+        }
+        return req;
+    }
+
+    private static String rootMessage(IllegalArgumentException e) {
+        return e.getCause() instanceof JsonProcessingException jpe ? jpe.getOriginalMessage() : e.getMessage();
+    }
+
+    /**
+     * Split one CSV row, honouring double-quoted cells with "" escapes. Rows may not span lines.
+     */
+    static List<String> splitCsv(String line) {
+        List<String> cells = new ArrayList<>();
+        StringBuilder cell = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    cell.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    cell.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                cells.add(cell.toString());
+                cell.setLength(0);
+            } else {
+                cell.append(c);
+            }
+        }
+        cells.add(cell.toString());
+        return cells;
+    }
+}
@@ -1,5 +1,6 @@
 package com.verbosegarbonzo.tariff.service;
 
+import jakarta.annotation.PostConstruct;
 import org.springframework.cache.CacheManager;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
@@ -13,15 +14,53 @@ import lombok.extern.slf4j.Slf4j;
  * - freightData: Cleared every 24 hours (prices update daily)
  * - countryData: Cleared every 7 days (static data, rarely changes)
  * - productData: Cleared every 7 days (static data, rarely changes)
+ * - tariffForecasts: Cleared whenever route models or the rates behind them change
  */
 @Service
 @Slf4j
-public class CacheRefreshService {
+public class CacheRefreshService implements TariffMLService.ModelUpdateListener {
+
+    private static final String TARIFF_FORECASTS = "tariffForecasts";
 
     private final CacheManager cacheManager;
+    private final TariffMLService mlService;
 
-    public CacheRefreshService(CacheManager cacheManager) {
+    public CacheRefreshService(CacheManager cacheManager, TariffMLService mlService) {
         this.cacheManager = cacheManager;
+        this.mlService = mlService;
+    }
+
+    @PostConstruct
+    void register() {
+        mlService.addModelUpdateListener(this);
+    }
+
+    /**
+     * A route's forecasts changed. Cached predictTariffRate results are keyed by route and day
+     * rather than grouped by route, so the whole forecast cache is cleared.
+     */
+    @Override
+    public void routeUpdated(String importerCode, String hs6Code) {
+        clearForecasts();
+    }
+
+    /**
+     * Training published new models or they were rolled back: every cached forecast is stale.
+     */
+    @Override
+    public void allRoutesUpdated() {
+        clearForecasts();
+    }
+
+    private void clearForecasts() {
+        try {
+            var cache = cacheManager.getCache(TARIFF_FORECASTS);
+            if (cache != null) {
+                cache.clear();
+            }
+        } catch (Exception e) {
+            log.error("✗ Error clearing forecast cache", e);
+        }
     }
 
     /**
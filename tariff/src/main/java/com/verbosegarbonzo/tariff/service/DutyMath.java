@@ -0,0 +1,162 @@
+package com.verbosegarbonzo.tariff.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Duty and insurance arithmetic for the calculate path.
+ *
+ * Works on {@link Fixed} values (a BigDecimal plus its unscaled long and scale, converted once) and
+ * does the multiply and the HALF_UP rounding to 2 decimals in long arithmetic. Results are
+ * bit-identical to the BigDecimal expressions TariffService used before, value and scale both:
+ * whenever an operand or intermediate does not fit in a long, the method falls back to exactly
+ * that BigDecimal expression.
+ */
+public final class DutyMath {
+
+    private static final BigDecimal ONE_PERCENT = BigDecimal.valueOf(0.01);
+
+    private static final long[] POW10 = new long[19];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    // Marks a long computation that overflowed; the BigDecimal fallback handles that input
+    private static final long NO_FIT = Long.MIN_VALUE;
+
+    private DutyMath() {
+    }
+
+    /**
+     * A decimal with its unscaled value and scale cached for long arithmetic.
+     * Values with negative scale or more than 18 digits keep only the BigDecimal.
+     */
+    public static final class Fixed {
+
+        public static final Fixed ZERO = new Fixed(BigDecimal.ZERO);
+        public static final Fixed ONE = new Fixed(BigDecimal.ONE);
+
+        private final BigDecimal value;
+        private final long unscaled;
+        private final int scale;
+        private final boolean compact;
+
+        private Fixed(BigDecimal value) {
+            this.value = value;
+            this.scale = value.scale();
+            this.compact = scale >= 0 && scale <= 18 && value.precision() <= 18;
+            this.unscaled = compact ? value.unscaledValue().longValue() : 0;
+        }
+
+        public static Fixed of(BigDecimal value) {
+            return value == null ? null : new Fixed(value);
+        }
+
+        public BigDecimal value() {
+            return value;
+        }
+    }
+
+    /**
+     * amount * percent / 100, rounded HALF_UP to 2 decimals.
+     * Same result as {@code amount.multiply(percent.multiply(BigDecimal.valueOf(0.01))).setScale(2, HALF_UP)}
+     * and {@code amount.multiply(percent).divide(BigDecimal.valueOf(100), 2, HALF_UP)}.
+     */
+    public static BigDecimal percentOf(Fixed amount, Fixed percent) {
+        if (amount.compact && percent.compact) {
+            long product = multiply(amount.unscaled, percent.unscaled);
+            long rounded = roundToCents(product, amount.scale + percent.scale + 2);
+            if (rounded != NO_FIT) {
+                return BigDecimal.valueOf(rounded, 2);
+            }
+        }
+        return scaleMoney(amount.value.multiply(percent.value.multiply(ONE_PERCENT)));
+    }
+
+    /**
+     * quantity * rate, rounded HALF_UP to 2 decimals (specific duty per kg).
+     */
+    public static BigDecimal times(Fixed quantity, Fixed rate) {
+        if (quantity.compact && rate.compact) {
+            long product = multiply(quantity.unscaled, rate.unscaled);
+            long rounded = roundToCents(product, quantity.scale + rate.scale);
+            if (rounded != NO_FIT) {
+                return BigDecimal.valueOf(rounded, 2);
+            }
+        }
+        return scaleMoney(quantity.value.multiply(rate.value));
+    }
+
+    /**
+     * amount * advalPercent / 100 + quantity * specificRate, rounded HALF_UP to 2 decimals once.
+     */
+    public static BigDecimal compound(Fixed amount, Fixed advalPercent, Fixed quantity, Fixed specificRate) {
+        if (amount.compact && advalPercent.compact && quantity.compact && specificRate.compact) {
+            int advalScale = amount.scale + advalPercent.scale + 2;
+            int specificScale = quantity.scale + specificRate.scale;
+            int scale = Math.max(advalScale, specificScale);
+
+            long adval = rescale(multiply(amount.unscaled, advalPercent.unscaled), scale - advalScale);
+            long specific = rescale(multiply(quantity.unscaled, specificRate.unscaled), scale - specificScale);
+            long rounded = roundToCents(add(adval, specific), scale);
+            if (rounded != NO_FIT) {
+                return BigDecimal.valueOf(rounded, 2);
+            }
+        }
+        return scaleMoney(amount.value.multiply(advalPercent.value.multiply(ONE_PERCENT))
+                .add(quantity.value.multiply(specificRate.value)));
+    }
+
+    public static BigDecimal scaleMoney(BigDecimal value) {
+        return (value == null) ? BigDecimal.ZERO : value.setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static long multiply(long a, long b) {
+        long low = a * b;
+        long high = Math.multiplyHigh(a, b);
+        // The 128-bit product fits in a long only if the high word is the sign extension of the low word
+        return (high == (low >> 63) && low != NO_FIT) ? low : NO_FIT;
+    }
+
+    private static long add(long a, long b) {
+        if (a == NO_FIT || b == NO_FIT) {
+            return NO_FIT;
+        }
+        long sum = a + b;
+        // Overflow iff both operands have the same sign and the sum's sign differs
+        return (((a ^ sum) & (b ^ sum)) < 0 || sum == NO_FIT) ? NO_FIT : sum;
+    }
+
+    private static long rescale(long value, int upBy) {
+        if (value == NO_FIT || upBy >= POW10.length) {
+            return NO_FIT;
+        }
+        return upBy == 0 ? value : multiply(value, POW10[upBy]);
+    }
+
+    /**
+     * Round an unscaled value at the given scale to scale 2, HALF_UP (ties away from zero).
+     */
+    private static long roundToCents(long value, int scale) {
+        if (value == NO_FIT) {
+            return NO_FIT;
+        }
+        if (scale <= 2) {
+            return rescale(value, 2 - scale);
+        }
+        if (scale - 2 >= POW10.length) {
+            return NO_FIT;
+        }
+        long divisor = POW10[scale - 2];
+        long quotient = value / divisor;
+        long remainder = Math.abs(value % divisor);
+        if (remainder >= divisor - remainder) {
+            quotient += Long.signum(value);
+        }
+        return quotient;
+    }
+}
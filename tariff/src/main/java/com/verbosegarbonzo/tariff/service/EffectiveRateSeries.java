@@ -0,0 +1,147 @@
+package com.verbosegarbonzo.tariff.service;
+
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Builds a route's effective ad valorem rate over time from its measures, active suspensions and,
+ * for one exporter, preferences, with the precedence TariffService.calculate applies on a given
+ * day: a preference over a suspension over the MFN measure. Within each kind, overlapping rows
+ * resolve to the one with the latest validFrom, as in RateIndexService.
+ *
+ * The three validFrom-sorted interval lists are merged in one pass over the days on which
+ * something starts or the row in force ends, so a route costs time linear in its rows rather than
+ * one lookup per day. The series has a row each time the row in force changes, dated the day it
+ * takes effect; days when nothing is in force are left out.
+ */
+public final class EffectiveRateSeries {
+
+    /**
+     * One row's validity and ad valorem rate, NaN when it has none.
+     *
+     * @param validTo last day in force, inclusive; null when open-ended
+     */
+    public record Interval(LocalDate validFrom, LocalDate validTo, double rate) {
+
+        long fromDay() {
+            return validFrom.toEpochDay();
+        }
+
+        long toDay() {
+            return validTo != null ? validTo.toEpochDay() : Long.MAX_VALUE;
+        }
+    }
+
+    private static final Interval[] NONE = new Interval[0];
+
+    private EffectiveRateSeries() {
+    }
+
+    /**
+     * Merge the route's rows into its effective-rate series. Each array must be sorted by validFrom.
+     *
+     * @param tradeRoute  the key of the series
+     * @param measures    MFN measures
+     * @param suspensions active suspensions, with rate 0 where the duty is suspended entirely
+     * @param preferences the exporter's preferences; empty for the importer's rate to every exporter
+     */
+    public static TrainingDataReader.RouteSeries merge(String tradeRoute, Interval[] measures,
+            Interval[] suspensions, Interval[] preferences) {
+        // In order of precedence
+        Layer[] layers = { new Layer(preferences), new Layer(suspensions), new Layer(measures) };
+        Layer measureLayer = layers[2];
+
+        int capacity = measures.length + suspensions.length + preferences.length;
+        LocalDate[] validFrom = new LocalDate[capacity];
+        double[] rates = new double[capacity];
+        int size = 0;
+        boolean measureRowsOnly = true;
+
+        Interval inForce = null;
+        long day = nextStart(layers);
+        while (day != Long.MAX_VALUE) {
+            Layer source = null;
+            Interval resolved = null;
+            for (Layer layer : layers) {
+                Interval top = layer.advance(day);
+                if (resolved == null && top != null) {
+                    source = layer;
+                    resolved = top;
+                }
+            }
+
+            if (resolved != inForce) {
+                inForce = resolved;
+                if (resolved != null) {
+                    if (size == validFrom.length) {
+                        validFrom = Arrays.copyOf(validFrom, size * 2 + 1);
+                        rates = Arrays.copyOf(rates, size * 2 + 1);
+                    }
+                    validFrom[size] = LocalDate.ofEpochDay(day);
+                    rates[size] = resolved.rate();
+                    size++;
+                    // A measure taking effect again after an override or a later measure ends
+                    measureRowsOnly &= source == measureLayer && resolved.fromDay() == day;
+                }
+            }
+
+            // The next day something starts, or the row in force of some kind ends
+            long next = nextStart(layers);
+            for (Layer layer : layers) {
+                Interval top = layer.started.peek();
+                if (top != null && top.toDay() != Long.MAX_VALUE) {
+                    next = Math.min(next, top.toDay() + 1);
+                }
+            }
+            day = next;
+        }
+
+        return new TrainingDataReader.RouteSeries(tradeRoute, Arrays.copyOf(validFrom, size),
+            Arrays.copyOf(rates, size), measureRowsOnly);
+    }
+
+    /**
+     * An empty list, for a route without rows of a kind.
+     */
+    public static Interval[] none() {
+        return NONE;
+    }
+
+    private static long nextStart(Layer[] layers) {
+        long next = Long.MAX_VALUE;
+        for (Layer layer : layers) {
+            if (layer.next < layer.rows.length) {
+                next = Math.min(next, layer.rows[layer.next].fromDay());
+            }
+        }
+        return next;
+    }
+
+    /**
+     * The rows of one kind started so far, latest validFrom on top. Rows that have ended are
+     * dropped as they reach the top, since only the top can be in force.
+     */
+    private static final class Layer {
+        final Interval[] rows;
+        final ArrayDeque<Interval> started = new ArrayDeque<>();
+        int next;
+
+        Layer(Interval[] rows) {
+            this.rows = rows;
+        }
+
+        /**
+         * The row of this kind in force on the day, or null.
+         */
+        Interval advance(long day) {
+            while (next < rows.length && rows[next].fromDay() <= day) {
+                started.push(rows[next++]);
+            }
+            while (!started.isEmpty() && started.peek().toDay() < day) {
+                started.pop();
+            }
+            return started.peek();
+        }
+    }
+}
@@ -9,12 +9,18 @@ import org.springframework.stereotype.Service;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
-import java.util.List;
-import java.util.Objects;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.stream.Collectors;
 
 /**
  * Service for extracting features from historical data for ML model training and inference.
  * Transforms raw tariff data into meaningful features that the ML model can learn from.
+ *
+ * Every field is computed from RateHistory window sums of a route's measure rates as doubles.
+ * Once the FeatureStore is loaded the histories come from it without a query; until then
+ * extractFeatures(Collection) fetches the history of each importer's products with one query per
+ * table rather than three per route.
  */
 @Service
 @RequiredArgsConstructor
@@ -24,6 +30,16 @@ public class FeatureEngineeringService {
     private final MeasureRepository measureRepository;
     private final PreferenceRepository preferenceRepository;
     private final SuspensionRepository suspensionRepository;
+    private final FeatureStore featureStore;
+
+    // Products per bulk query, bounding the IN lists
+    private static final int PRODUCTS_PER_QUERY = 500;
+
+    /**
+     * A trade route and the date to extract its features for.
+     */
+    public record FeatureKey(String importerCode, String exporterCode, String hs6Code, LocalDate targetDate) {
+    }
 
     /**
      * Extracts features for a given date and trade parameters.
@@ -35,6 +51,11 @@ public class FeatureEngineeringService {
             String hs6Code,
             LocalDate targetDate) {
 
+        FeatureKey key = new FeatureKey(importerCode, exporterCode, hs6Code, targetDate);
+        if (featureStore.isReady()) {
+            return fromStore(key);
+        }
+
         // Fetch historical data (5 years back)
         LocalDate fiveYearsAgo = targetDate.minusYears(5);
         List<Measure> historicalMeasures = measureRepository.findHistoricalRates(
@@ -49,19 +70,150 @@ public class FeatureEngineeringService {
         List<Suspension> historicalSuspensions = suspensionRepository.findHistoricalSuspensions(
             importerCode, hs6Code, fiveYearsAgo, targetDate);
 
+        LocalDate earliestFTA = historicalPreferences == null ? null : historicalPreferences.stream()
+            .map(Preference::getValidFrom)
+            .min(LocalDate::compareTo)
+            .orElse(null);
+
+        return features(key, RateHistory.of(historicalMeasures, Measure::getValidFrom, Measure::getMfnAdvalRate),
+            earliestFTA, !historicalSuspensions.isEmpty());
+    }
+
+    /**
+     * extractFeatures for many routes and dates. Without the FeatureStore, the 5 years of history
+     * before each key's date are read per importer, for up to PRODUCTS_PER_QUERY products in one
+     * query per table, and each key's features computed from its slice of the rows.
+     *
+     * @return the features of each distinct key
+     */
+    public Map<FeatureKey, TariffFeatures> extractFeatures(Collection<FeatureKey> keys) {
+        Map<FeatureKey, TariffFeatures> features = new HashMap<>();
+        if (featureStore.isReady()) {
+            for (FeatureKey key : keys) {
+                features.computeIfAbsent(key, this::fromStore);
+            }
+            return features;
+        }
+
+        Map<String, List<FeatureKey>> keysByImporter = keys.stream()
+            .collect(Collectors.groupingBy(FeatureKey::importerCode));
+
+        for (Map.Entry<String, List<FeatureKey>> importer : keysByImporter.entrySet()) {
+            Map<String, List<FeatureKey>> keysByProduct = importer.getValue().stream()
+                .collect(Collectors.groupingBy(FeatureKey::hs6Code));
+            List<String> hs6Codes = new ArrayList<>(keysByProduct.keySet());
+
+            for (int start = 0; start < hs6Codes.size(); start += PRODUCTS_PER_QUERY) {
+                List<String> chunk = hs6Codes.subList(start, Math.min(start + PRODUCTS_PER_QUERY, hs6Codes.size()));
+                List<FeatureKey> chunkKeys = chunk.stream().flatMap(hs6 -> keysByProduct.get(hs6).stream()).toList();
+                extractChunk(importer.getKey(), chunk, chunkKeys, features);
+            }
+        }
+        return features;
+    }
+
+    /**
+     * extractFeatures(Collection) as FeatureSchema rows, one per key in order, in a single
+     * row-major array.
+     */
+    public double[] extractFeatureVectors(List<FeatureKey> keys) {
+        Map<FeatureKey, TariffFeatures> features = extractFeatures(keys);
+        double[] vectors = new double[keys.size() * FeatureSchema.SIZE];
+        for (int i = 0; i < keys.size(); i++) {
+            FeatureKey key = keys.get(i);
+            writeFeatureVector(features.get(key), key.targetDate(), vectors, i * FeatureSchema.SIZE);
+        }
+        return vectors;
+    }
+
+    private void extractChunk(String importerCode, List<String> hs6Codes, List<FeatureKey> keys,
+            Map<FeatureKey, TariffFeatures> features) {
+        LocalDate startDate = keys.stream().map(FeatureKey::targetDate).min(LocalDate::compareTo).orElseThrow().minusYears(5);
+        LocalDate endDate = keys.stream().map(FeatureKey::targetDate).max(LocalDate::compareTo).orElseThrow();
+        Set<String> exporterCodes = keys.stream()
+            .map(FeatureKey::exporterCode)
+            .filter(code -> code != null && !code.isEmpty())
+            .collect(Collectors.toSet());
+
+        Map<String, RateHistory> measures = RateHistory.byKey(
+            measureRepository.findHistoricalRows(importerCode, hs6Codes, startDate, endDate),
+            MeasureTrainingRow::hs6Code, MeasureTrainingRow::validFrom, MeasureTrainingRow::mfnAdvalRate);
+        Map<String, RateHistory> suspensions = RateHistory.byKey(
+            suspensionRepository.findHistoricalRows(importerCode, hs6Codes, startDate, endDate),
+            SuspensionTrainingRow::hs6Code, SuspensionTrainingRow::validFrom, SuspensionTrainingRow::suspensionRate);
+        Map<String, RateHistory> preferences = exporterCodes.isEmpty() ? Map.of() : RateHistory.byKey(
+            preferenceRepository.findHistoricalRows(importerCode, exporterCodes, hs6Codes, startDate, endDate),
+            row -> row.exporterCode() + "-" + row.hs6Code(), PreferenceTrainingRow::validFrom,
+            PreferenceTrainingRow::prefAdValRate);
+
+        for (FeatureKey key : keys) {
+            RateHistory routePreferences = key.exporterCode() != null
+                ? preferences.getOrDefault(key.exporterCode() + "-" + key.hs6Code(), RateHistory.EMPTY)
+                : RateHistory.EMPTY;
+            features.put(key, features(key, measures.getOrDefault(key.hs6Code(), RateHistory.EMPTY),
+                suspensions.getOrDefault(key.hs6Code(), RateHistory.EMPTY), routePreferences));
+        }
+    }
+
+    private TariffFeatures fromStore(FeatureKey key) {
+        boolean hasExporter = key.exporterCode() != null && !key.exporterCode().isEmpty();
+        return features(key,
+            featureStore.measures(key.importerCode(), key.hs6Code()),
+            featureStore.suspensions(key.importerCode(), key.hs6Code()),
+            hasExporter ? featureStore.preferences(key.importerCode(), key.exporterCode(), key.hs6Code())
+                : RateHistory.EMPTY);
+    }
+
+    /**
+     * The features of one key from the rows of its histories in the 5 years to its date, the
+     * rows findHistoricalRates and the others would give.
+     */
+    private static TariffFeatures features(FeatureKey key, RateHistory measures, RateHistory suspensions,
+            RateHistory preferences) {
+        long fiveYearsAgo = key.targetDate().minusYears(5).toEpochDay();
+        long targetDay = key.targetDate().toEpochDay();
+
+        int preferenceFrom = preferences.from(fiveYearsAgo);
+        LocalDate earliestFTA = preferenceFrom < preferences.to(targetDay)
+            ? LocalDate.ofEpochDay(preferences.day(preferenceFrom)) : null;
+        boolean hasSuspension = suspensions.from(fiveYearsAgo) < suspensions.to(targetDay);
+        return features(key, measures, earliestFTA, hasSuspension);
+    }
+
+    /**
+     * The features of one key from window sums over its measures in the 5 years to its date.
+     *
+     * @param earliestFTA first preference in the window, null when there is none
+     */
+    private static TariffFeatures features(FeatureKey key, RateHistory measures, LocalDate earliestFTA,
+            boolean hasSuspension) {
+        LocalDate targetDate = key.targetDate();
+        long targetDay = targetDate.toEpochDay();
+        long threeYearsAgo = targetDate.minusYears(3).toEpochDay();
+        long fiveYearsAgo = targetDate.minusYears(5).toEpochDay();
+
+        // Averages divide by every row, rated or not; the trend compares the older and newer half
+        int from = measures.from(fiveYearsAgo);
+        int to = measures.to(targetDay);
+        int count = to - from;
+        int mid = from + count / 2;
+        double sum = measures.sum(from, to);
+        double sumLast3Years = measures.sum(measures.from(threeYearsAgo + 1), to);
+        double sumLast5Years = measures.sum(measures.from(fiveYearsAgo + 1), to);
+
         return TariffFeatures.builder()
             // Temporal features
             .year(targetDate.getYear())
             .quarter((targetDate.getMonthValue() - 1) / 3 + 1)
             .month(targetDate.getMonthValue())
             .dayOfYear(targetDate.getDayOfYear())
-            .daysSinceEpoch(calculateDaysSinceEpoch(targetDate))
+            .daysSinceEpoch(targetDate.toEpochDay())
 
             // Rate history features
-            .avgRateLast3Years(calculateAverageRate(historicalMeasures, targetDate.minusYears(3)))
-            .avgRateLast5Years(calculateAverageRate(historicalMeasures, targetDate.minusYears(5)))
-            .rateVolatility(calculateVolatility(historicalMeasures))
-            .trendDirection(calculateTrend(historicalMeasures))
+            .avgRateLast3Years(round2(sumLast3Years / Math.max(1, count)))
+            .avgRateLast5Years(round2(sumLast5Years / Math.max(1, count)))
+            .rateVolatility(calculateVolatility(count, measures.rated(from, to), sum, measures.sumOfSquares(from, to)))
+            .trendDirection(calculateTrend(count, measures.sum(from, mid), measures.sum(mid, to)))
 
             // Trade pattern features
             .tradeFrequency(0L) // Will be set by context when available
@@ -69,52 +221,68 @@ public class FeatureEngineeringService {
             .avgWeight(BigDecimal.ZERO) // Will be set by context when available
 
             // Policy indicator features
-            .hasPreference(historicalPreferences != null && !historicalPreferences.isEmpty())
-            .hasSuspension(!historicalSuspensions.isEmpty())
-            .yearsSinceFTA(calculateYearsSinceFTA(historicalPreferences, targetDate))
+            .hasPreference(earliestFTA != null)
+            .hasSuspension(hasSuspension)
+            .yearsSinceFTA(earliestFTA != null ? (int) ChronoUnit.YEARS.between(earliestFTA, targetDate) : null)
 
             // Geographic encoding features
-            .importerCodeHash(importerCode != null ? importerCode.hashCode() : 0)
-            .exporterCodeHash(exporterCode != null ? exporterCode.hashCode() : 0)
+            .importerCodeHash(key.importerCode() != null ? key.importerCode().hashCode() : 0)
+            .exporterCodeHash(key.exporterCode() != null ? key.exporterCode().hashCode() : 0)
 
             .build();
     }
 
     /**
-     * Calculates the average rate for a given period.
+     * extractFeatures as a FeatureSchema vector, for model training and inference.
      */
-    private BigDecimal calculateAverageRate(List<Measure> measures, LocalDate startDate) {
-        return measures.stream()
-            .filter(m -> m.getValidFrom().isAfter(startDate))
-            .map(Measure::getMfnAdvalRate)
-            .filter(Objects::nonNull)
-            .reduce(BigDecimal.ZERO, BigDecimal::add)
-            .divide(
-                BigDecimal.valueOf(Math.max(1, measures.size())),
-                2,
-                RoundingMode.HALF_UP);
+    public double[] extractFeatureVector(
+            String importerCode,
+            String exporterCode,
+            String hs6Code,
+            LocalDate targetDate) {
+
+        double[] vector = FeatureSchema.newVector();
+        writeFeatureVector(extractFeatures(importerCode, exporterCode, hs6Code, targetDate), targetDate, vector, 0);
+        return vector;
+    }
+
+    /**
+     * Write features into the FeatureSchema row starting at offset, so callers can fill
+     * preallocated bulk arrays. Missing values are written as 0.
+     */
+    public static void writeFeatureVector(TariffFeatures features, LocalDate targetDate, double[] vector, int offset) {
+        FeatureSchema.writeSeasonality(targetDate, vector, offset);
+        vector[offset + FeatureSchema.AVG_RATE_3Y] = toDouble(features.getAvgRateLast3Years());
+        vector[offset + FeatureSchema.AVG_RATE_5Y] = toDouble(features.getAvgRateLast5Years());
+        vector[offset + FeatureSchema.RATE_VOLATILITY] = toDouble(features.getRateVolatility());
+        vector[offset + FeatureSchema.TREND_DIRECTION] =
+            features.getTrendDirection() != null ? features.getTrendDirection() : 0;
+        vector[offset + FeatureSchema.HAS_PREFERENCE] = Boolean.TRUE.equals(features.getHasPreference()) ? 1 : 0;
+        vector[offset + FeatureSchema.HAS_SUSPENSION] = Boolean.TRUE.equals(features.getHasSuspension()) ? 1 : 0;
+        vector[offset + FeatureSchema.YEARS_SINCE_FTA] =
+            features.getYearsSinceFTA() != null ? features.getYearsSinceFTA() : 0;
+    }
+
+    private static double toDouble(BigDecimal value) {
+        return value != null ? value.doubleValue() : 0;
+    }
+
+    private static BigDecimal round2(double value) {
+        return BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP);
     }
 
     /**
-     * Calculates standard deviation (volatility) of rates.
+     * Calculates standard deviation (volatility) of rates around their mean rounded to 2 places,
+     * from the sums of the rated rows.
      */
-    private BigDecimal calculateVolatility(List<Measure> measures) {
-        if (measures.isEmpty()) {
+    private static BigDecimal calculateVolatility(int count, int rated, double sum, double sumOfSquares) {
+        if (count == 0) {
             return BigDecimal.ZERO;
         }
 
-        BigDecimal mean = measures.stream()
-            .map(Measure::getMfnAdvalRate)
-            .filter(Objects::nonNull)
-            .reduce(BigDecimal.ZERO, BigDecimal::add)
-            .divide(BigDecimal.valueOf(measures.size()), 2, RoundingMode.HALF_UP);
-
-        BigDecimal variance = measures.stream()
-            .map(Measure::getMfnAdvalRate)
-            .filter(Objects::nonNull)
-            .map(rate -> rate.subtract(mean).pow(2))
-            .reduce(BigDecimal.ZERO, BigDecimal::add)
-            .divide(BigDecimal.valueOf(measures.size()), 2, RoundingMode.HALF_UP);
+        double mean = round2(sum / count).doubleValue();
+        double squaredDeviations = Math.max(0, sumOfSquares - 2 * mean * sum + rated * mean * mean);
+        BigDecimal variance = round2(squaredDeviations / count);
 
         // Return square root of variance (simplified - using approximation)
         return new BigDecimal(Math.sqrt(variance.doubleValue()));
@@ -123,28 +291,14 @@ public class FeatureEngineeringService {
     /**
      * Calculates trend direction: -1 (decreasing), 0 (stable), 1 (increasing).
      */
-    private Integer calculateTrend(List<Measure> measures) {
-        if (measures.size() < 2) {
+    private static Integer calculateTrend(int count, double olderSum, double recentSum) {
+        if (count < 2) {
             return 0; // Stable if not enough data
         }
 
         // Compare recent vs older rates
-        int mid = measures.size() / 2;
-        BigDecimal recentAvg = measures.stream()
-            .skip(mid)
-            .map(Measure::getMfnAdvalRate)
-            .filter(Objects::nonNull)
-            .reduce(BigDecimal.ZERO, BigDecimal::add)
-            .divide(BigDecimal.valueOf(Math.max(1, measures.size() - mid)), 2, RoundingMode.HALF_UP);
-
-        BigDecimal olderAvg = measures.stream()
-            .limit(mid)
-            .map(Measure::getMfnAdvalRate)
-            .filter(Objects::nonNull)
-            .reduce(BigDecimal.ZERO, BigDecimal::add)
-            .divide(BigDecimal.valueOf(Math.max(1, mid)), 2, RoundingMode.HALF_UP);
-
-        BigDecimal change = recentAvg.subtract(olderAvg);
+        int mid = count / 2;
+        BigDecimal change = round2(recentSum / (count - mid)).subtract(round2(olderSum / mid));
 
         if (change.compareTo(new BigDecimal("0.5")) > 0) {
             return 1; // Increasing
@@ -154,29 +308,4 @@ public class FeatureEngineeringService {
             return 0; // Stable
         }
     }
-
-    /**
-     * Calculates years since FTA (if preference exists).
-     */
-    private Integer calculateYearsSinceFTA(List<Preference> preferences, LocalDate targetDate) {
-        if (preferences == null || preferences.isEmpty()) {
-            return null;
-        }
-
-        // Find earliest FTA validity date
-        LocalDate earliestFTA = preferences.stream()
-            .map(Preference::getValidFrom)
-            .min(LocalDate::compareTo)
-            .orElse(targetDate);
-
-        return (int) java.time.temporal.ChronoUnit.YEARS.between(earliestFTA, targetDate);
-    }
-
-    /**
-     * Calculates days since epoch for temporal encoding.
-     */
-    private Long calculateDaysSinceEpoch(LocalDate date) {
-        return java.time.temporal.ChronoUnit.DAYS.between(
-            LocalDate.ofEpochDay(0), date);
-    }
 }
@@ -0,0 +1,71 @@
+package com.verbosegarbonzo.tariff.service;
+
+import java.time.LocalDate;
+
+/**
+ * Fixed layout of the ML feature vector: a double[] of SIZE slots, one per named index.
+ *
+ * Models record the VERSION they were trained with; bump it whenever a slot is added, removed or
+ * changes meaning so that models saved with another layout are retrained instead of loaded.
+ * Bulk inputs are row-major, row i starting at i * SIZE.
+ */
+public final class FeatureSchema {
+
+    public static final int VERSION = 1;
+
+    // Seasonality
+    public static final int MONTH_SIN = 0;
+    public static final int MONTH_COS = 1;
+    public static final int DAY_OF_YEAR_NORM = 2;
+
+    // Rate history
+    public static final int AVG_RATE_3Y = 3;
+    public static final int AVG_RATE_5Y = 4;
+    public static final int RATE_VOLATILITY = 5;
+    public static final int TREND_DIRECTION = 6;
+
+    // Policy indicators (1 or 0)
+    public static final int HAS_PREFERENCE = 7;
+    public static final int HAS_SUSPENSION = 8;
+    public static final int YEARS_SINCE_FTA = 9;
+
+    public static final int SIZE = 10;
+
+    private static final String[] NAMES = {
+        "month_sin", "month_cos", "day_of_year_norm",
+        "avg_rate_3y", "avg_rate_5y", "rate_volatility", "trend_direction",
+        "has_preference", "has_suspension", "years_since_fta"
+    };
+
+    // Indexed by month 1..12
+    private static final double[] MONTH_SIN_TABLE = new double[13];
+    private static final double[] MONTH_COS_TABLE = new double[13];
+
+    static {
+        for (int month = 1; month <= 12; month++) {
+            MONTH_SIN_TABLE[month] = Math.sin(2 * Math.PI * month / 12);
+            MONTH_COS_TABLE[month] = Math.cos(2 * Math.PI * month / 12);
+        }
+    }
+
+    private FeatureSchema() {
+    }
+
+    public static double[] newVector() {
+        return new double[SIZE];
+    }
+
+    public static String name(int index) {
+        return NAMES[index];
+    }
+
+    /**
+     * Write the seasonality slots for the date into the row starting at offset.
+     */
+    public static void writeSeasonality(LocalDate date, double[] vector, int offset) {
+        int month = date.getMonthValue();
+        vector[offset + MONTH_SIN] = MONTH_SIN_TABLE[month];
+        vector[offset + MONTH_COS] = MONTH_COS_TABLE[month];
+        vector[offset + DAY_OF_YEAR_NORM] = date.getDayOfYear() / 365.0;
+    }
+}
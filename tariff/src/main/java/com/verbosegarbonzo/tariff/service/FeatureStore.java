@@ -0,0 +1,555 @@
+package com.verbosegarbonzo.tariff.service;
+
+import com.verbosegarbonzo.tariff.config.MLModelProperties;
+import com.verbosegarbonzo.tariff.model.MeasureTrainingRow;
+import com.verbosegarbonzo.tariff.model.PreferenceTrainingRow;
+import com.verbosegarbonzo.tariff.model.RateTableFingerprint;
+import com.verbosegarbonzo.tariff.model.SuspensionTrainingRow;
+import com.verbosegarbonzo.tariff.repository.MeasureRepository;
+import com.verbosegarbonzo.tariff.repository.PreferenceRepository;
+import com.verbosegarbonzo.tariff.repository.SuspensionRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Per-route history of the measure, preference and suspension tables for feature extraction,
+ * held in memory as RateHistory aggregates so FeatureEngineeringService and TariffMLService read a
+ * route's count, sum, sum of squares and first and last validFrom over any date window without
+ * a query.
+ *
+ * Measures and suspensions are keyed importerCode-hs6Code and preferences
+ * importerCode-exporterCode-hs6Code, with every row the findHistorical queries would return
+ * (suspensions flagged or not). Admin writes and the write-behind flush pass each row change
+ * to apply*Change, which replaces the route's history with an updated copy. The store is saved to
+ * FILE_NAME under the model path after each burst of changes and loaded at startup when the
+ * fingerprint saved with each table (row count, validFrom and rate totals) still matches the
+ * database; otherwise, and on the configured schedule to pick up rows
+ * written around the application, it is rebuilt from one cursor per table.
+ */
+@Service
+@Slf4j
+public class FeatureStore {
+
+    public static final String FILE_NAME = "feature-store.bin";
+
+    static final int MAGIC = 0x54524653; // "TRFS"
+    static final int FORMAT_VERSION = 2;
+
+    // Bounds of the per-route reload queries
+    private static final LocalDate FIRST_DAY = LocalDate.of(1900, 1, 1);
+    private static final LocalDate LAST_DAY = LocalDate.of(9999, 12, 31);
+
+    // Rounds of route reloads after a rebuild before changes still arriving are left to deltas
+    private static final int MAX_RELOAD_ROUNDS = 5;
+
+    private final MeasureRepository measureRepository;
+    private final PreferenceRepository preferenceRepository;
+    private final SuspensionRepository suspensionRepository;
+    private final MLModelProperties mlProperties;
+
+    // Null until loaded or built; replaced whole by a rebuild
+    private volatile Tables tables;
+
+    // Routes changed while a rebuild runs, reloaded from the database once it is published
+    private final Object rebuildLock = new Object();
+    private Set<RouteRef> changedDuringRebuild;
+
+    // The file is written by one background thread; a burst of changes is saved once
+    private final ExecutorService persistenceExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "feature-store-persistence");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile CompletableFuture<Void> pendingPersistence = CompletableFuture.completedFuture(null);
+    private final AtomicBoolean changesUnsaved = new AtomicBoolean();
+
+    private final List<ChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Told after a measure, preference or suspension row of the importer's product is written,
+     * whether or not the store is loaded. Called on the writing thread, so implementations should
+     * be quick.
+     */
+    public interface ChangeListener {
+
+        void routeChanged(String importerCode, String hs6Code);
+    }
+
+    public FeatureStore(MeasureRepository measureRepository, PreferenceRepository preferenceRepository,
+            SuspensionRepository suspensionRepository, MLModelProperties mlProperties) {
+        this.measureRepository = measureRepository;
+        this.preferenceRepository = preferenceRepository;
+        this.suspensionRepository = suspensionRepository;
+        this.mlProperties = mlProperties;
+    }
+
+    private enum Kind { MEASURE, PREFERENCE, SUSPENSION }
+
+    private record RouteRef(Kind kind, String importerCode, String exporterCode, String hs6Code) {
+
+        String key() {
+            return exporterCode != null ? importerCode + "-" + exporterCode + "-" + hs6Code : importerCode + "-" + hs6Code;
+        }
+    }
+
+    private record Tables(Map<String, RateHistory> measures, Map<String, RateHistory> preferences,
+            Map<String, RateHistory> suspensions) {
+
+        Tables() {
+            this(new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+        }
+
+        Map<String, RateHistory> of(Kind kind) {
+            return switch (kind) {
+                case MEASURE -> measures;
+                case PREFERENCE -> preferences;
+                case SUSPENSION -> suspensions;
+            };
+        }
+    }
+
+    public void addChangeListener(ChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * Whether the store has been loaded; until then readers query the tables.
+     */
+    public boolean isReady() {
+        return tables != null && mlProperties.getFeatures().isEnabled();
+    }
+
+    /**
+     * The importer's measures of the product, empty when it has none. Only meaningful once ready.
+     */
+    public RateHistory measures(String importerCode, String hs6Code) {
+        return lookup(Kind.MEASURE, importerCode + "-" + hs6Code);
+    }
+
+    public RateHistory preferences(String importerCode, String exporterCode, String hs6Code) {
+        return lookup(Kind.PREFERENCE, importerCode + "-" + exporterCode + "-" + hs6Code);
+    }
+
+    public RateHistory suspensions(String importerCode, String hs6Code) {
+        return lookup(Kind.SUSPENSION, importerCode + "-" + hs6Code);
+    }
+
+    private RateHistory lookup(Kind kind, String key) {
+        Tables current = tables;
+        return current != null ? current.of(kind).getOrDefault(key, RateHistory.EMPTY) : RateHistory.EMPTY;
+    }
+
+    // ---- Incremental updates ----
+
+    /**
+     * Record a measure write: removed is the row as it was before an update or delete, added the
+     * row after a create or update; either may be null.
+     */
+    public void applyMeasureChange(MeasureTrainingRow removed, MeasureTrainingRow added) {
+        apply(removed != null ? new RouteRef(Kind.MEASURE, removed.importerCode(), null, removed.hs6Code()) : null,
+            removed != null ? removed.validFrom() : null, removed != null ? removed.mfnAdvalRate() : null,
+            added != null ? new RouteRef(Kind.MEASURE, added.importerCode(), null, added.hs6Code()) : null,
+            added != null ? added.validFrom() : null, added != null ? added.mfnAdvalRate() : null);
+    }
+
+    public void applyPreferenceChange(PreferenceTrainingRow removed, PreferenceTrainingRow added) {
+        apply(removed != null ? new RouteRef(Kind.PREFERENCE, removed.importerCode(), removed.exporterCode(),
+                removed.hs6Code()) : null,
+            removed != null ? removed.validFrom() : null, removed != null ? removed.prefAdValRate() : null,
+            added != null ? new RouteRef(Kind.PREFERENCE, added.importerCode(), added.exporterCode(),
+                added.hs6Code()) : null,
+            added != null ? added.validFrom() : null, added != null ? added.prefAdValRate() : null);
+    }
+
+    public void applySuspensionChange(SuspensionTrainingRow removed, SuspensionTrainingRow added) {
+        apply(removed != null ? new RouteRef(Kind.SUSPENSION, removed.importerCode(), null, removed.hs6Code()) : null,
+            removed != null ? removed.validFrom() : null, removed != null ? removed.suspensionRate() : null,
+            added != null ? new RouteRef(Kind.SUSPENSION, added.importerCode(), null, added.hs6Code()) : null,
+            added != null ? added.validFrom() : null, added != null ? added.suspensionRate() : null);
+    }
+
+    private void apply(RouteRef from, LocalDate removedFrom, BigDecimal removedRate,
+            RouteRef to, LocalDate addedFrom, BigDecimal addedRate) {
+        if (from == null && to == null) {
+            return;
+        }
+        synchronized (rebuildLock) {
+            if (changedDuringRebuild != null) {
+                if (from != null) {
+                    changedDuringRebuild.add(from);
+                }
+                if (to != null) {
+                    changedDuringRebuild.add(to);
+                }
+            }
+        }
+        Tables current = tables;
+        if (current != null) {
+            if (from != null) {
+                current.of(from.kind()).computeIfPresent(from.key(), (key, history) -> {
+                    RateHistory updated = history.withoutRow(removedFrom.toEpochDay(), RateHistory.rateOf(removedRate));
+                    return updated.size() > 0 ? updated : null;
+                });
+            }
+            if (to != null) {
+                current.of(to.kind()).merge(to.key(),
+                    RateHistory.EMPTY.withRow(addedFrom.toEpochDay(), RateHistory.rateOf(addedRate)),
+                    (history, row) -> history.withRow(row.day(0), row.rate(0)));
+            }
+            saveChangesAsync();
+        }
+        notifyChanged(from);
+        if (to != null && (from == null || !from.importerCode().equals(to.importerCode())
+                || !from.hs6Code().equals(to.hs6Code()))) {
+            notifyChanged(to);
+        }
+    }
+
+    private void notifyChanged(RouteRef route) {
+        if (route == null) {
+            return;
+        }
+        for (ChangeListener listener : changeListeners) {
+            try {
+                listener.routeChanged(route.importerCode(), route.hs6Code());
+            } catch (RuntimeException e) {
+                log.warn("Feature store change listener failed for {}: {}", route.key(), e.getMessage());
+            }
+        }
+    }
+
+    // ---- Loading and rebuilding ----
+
+    /**
+     * Load the saved store, or build it when there is none or its fingerprints no longer match the
+     * tables. Runs once the application is ready.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void initialize() {
+        if (!mlProperties.getFeatures().isEnabled()) {
+            return;
+        }
+        if (!loadFromDisk()) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Rebuild every route from the tables and publish the result whole. Routes changed while the
+     * cursors were read are then reloaded one by one, so no write is lost or counted twice.
+     */
+    @Scheduled(cron = "${app.ml.features.cron:0 20 * * * *}")
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        if (!mlProperties.getFeatures().isEnabled()) {
+            return;
+        }
+        synchronized (rebuildLock) {
+            if (changedDuringRebuild != null) {
+                log.info("Feature store rebuild already running");
+                return;
+            }
+            changedDuringRebuild = new HashSet<>();
+        }
+        try {
+            long start = System.currentTimeMillis();
+            Tables rebuilt = new Tables();
+            long rows;
+            try (Stream<MeasureTrainingRow> measures = measureRepository.streamTrainingRows();
+                 Stream<PreferenceTrainingRow> preferences = preferenceRepository.streamTrainingRows();
+                 Stream<SuspensionTrainingRow> suspensions = suspensionRepository.streamFeatureRows()) {
+                rows = collect(measures, row -> row.importerCode() + "-" + row.hs6Code(),
+                        MeasureTrainingRow::validFrom, MeasureTrainingRow::mfnAdvalRate, rebuilt.measures())
+                    + collect(preferences, row -> row.importerCode() + "-" + row.exporterCode() + "-" + row.hs6Code(),
+                        PreferenceTrainingRow::validFrom, PreferenceTrainingRow::prefAdValRate, rebuilt.preferences())
+                    + collect(suspensions, row -> row.importerCode() + "-" + row.hs6Code(),
+                        SuspensionTrainingRow::validFrom, SuspensionTrainingRow::suspensionRate, rebuilt.suspensions());
+            }
+            tables = rebuilt;
+            int reloaded = reloadChangedRoutes();
+
+            log.info("Feature store rebuilt in {} ms: {} rows, {} measure routes, {} preference routes, "
+                    + "{} suspension routes, {} reloaded after concurrent writes", System.currentTimeMillis() - start,
+                rows, rebuilt.measures().size(), rebuilt.preferences().size(), rebuilt.suspensions().size(), reloaded);
+            saveChangesAsync();
+        } catch (Exception e) {
+            log.error("Failed to rebuild feature store", e);
+        } finally {
+            synchronized (rebuildLock) {
+                changedDuringRebuild = null;
+            }
+        }
+    }
+
+    /**
+     * Reload the routes written to during the rebuild from the database until no more arrive.
+     * A write during a reload is both applied and queued, so its route is read again.
+     *
+     * @return the number of route reloads
+     */
+    private int reloadChangedRoutes() {
+        int reloaded = 0;
+        for (int round = 0; round < MAX_RELOAD_ROUNDS; round++) {
+            Set<RouteRef> changed;
+            synchronized (rebuildLock) {
+                if (changedDuringRebuild.isEmpty()) {
+                    break;
+                }
+                changed = changedDuringRebuild;
+                changedDuringRebuild = new HashSet<>();
+            }
+            for (RouteRef route : changed) {
+                RateHistory history = readRoute(route);
+                Map<String, RateHistory> histories = tables.of(route.kind());
+                if (history.size() > 0) {
+                    histories.put(route.key(), history);
+                } else {
+                    histories.remove(route.key());
+                }
+                reloaded++;
+            }
+        }
+        return reloaded;
+    }
+
+    private RateHistory readRoute(RouteRef route) {
+        List<String> hs6Codes = List.of(route.hs6Code());
+        return switch (route.kind()) {
+            case MEASURE -> RateHistory.of(
+                measureRepository.findHistoricalRows(route.importerCode(), hs6Codes, FIRST_DAY, LAST_DAY),
+                MeasureTrainingRow::validFrom, MeasureTrainingRow::mfnAdvalRate);
+            case PREFERENCE -> RateHistory.of(
+                preferenceRepository.findHistoricalRows(route.importerCode(), List.of(route.exporterCode()), hs6Codes,
+                    FIRST_DAY, LAST_DAY),
+                PreferenceTrainingRow::validFrom, PreferenceTrainingRow::prefAdValRate);
+            case SUSPENSION -> RateHistory.of(
+                suspensionRepository.findHistoricalRows(route.importerCode(), hs6Codes, FIRST_DAY, LAST_DAY),
+                SuspensionTrainingRow::validFrom, SuspensionTrainingRow::suspensionRate);
+        };
+    }
+
+    /**
+     * Group rows that arrive sorted by key, then date, into one history per key.
+     *
+     * @return the number of rows read
+     */
+    private static <T> long collect(Stream<T> rows, Function<T, String> key, Function<T, LocalDate> validFrom,
+            Function<T, BigDecimal> rate, Map<String, RateHistory> histories) {
+        long count = 0;
+        String currentKey = null;
+        List<T> routeRows = new ArrayList<>();
+        for (T row : (Iterable<T>) rows::iterator) {
+            String rowKey = key.apply(row);
+            if (!rowKey.equals(currentKey)) {
+                if (currentKey != null) {
+                    histories.put(currentKey, RateHistory.of(routeRows, validFrom, rate));
+                }
+                currentKey = rowKey;
+                routeRows = new ArrayList<>();
+            }
+            routeRows.add(row);
+            count++;
+        }
+        if (currentKey != null) {
+            histories.put(currentKey, RateHistory.of(routeRows, validFrom, rate));
+        }
+        return count;
+    }
+
+    // ---- Persistence ----
+
+    /**
+     * Queue a save after changes. A save already queued picks up every change made before it runs.
+     */
+    private synchronized void saveChangesAsync() {
+        if (changesUnsaved.compareAndSet(false, true)) {
+            pendingPersistence = pendingPersistence.thenRunAsync(() -> {
+                changesUnsaved.set(false);
+                saveToDisk();
+            }, persistenceExecutor);
+        }
+    }
+
+    /**
+     * Completes when every change made so far has been written to disk.
+     */
+    public CompletableFuture<Void> getPendingPersistence() {
+        return pendingPersistence;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        try {
+            pendingPersistence.get(30, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            log.warn("Feature store file may be incomplete: {}", e.getMessage());
+        }
+        persistenceExecutor.shutdown();
+    }
+
+    private Path file() {
+        return Paths.get(mlProperties.getModel().getPath()).resolve(FILE_NAME);
+    }
+
+    /**
+     * Write the store next to its file and move it into place.
+     *
+     * Layout (big-endian): magic, format version, then measures, preferences and suspensions,
+     * each as its fingerprint (row count and day total as longs, rate total as a double) and a
+     * route count, followed per route by its key (modified UTF-8), row count and rows of epoch day
+     * (long) and rate (double, NaN for none).
+     */
+    private void saveToDisk() {
+        Tables current = tables;
+        if (current == null) {
+            return;
+        }
+        try {
+            long started = System.nanoTime();
+            Path file = file();
+            Files.createDirectories(file.getParent());
+            Path temp = file.resolveSibling(FILE_NAME + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                for (Kind kind : Kind.values()) {
+                    // A snapshot, so the count matches the routes written while writes go on
+                    List<Map.Entry<String, RateHistory>> routes = List.copyOf(current.of(kind).entrySet());
+                    RateTableFingerprint fingerprint = fingerprint(routes);
+                    out.writeLong(fingerprint.rows());
+                    out.writeLong(fingerprint.dayTotal());
+                    out.writeDouble(fingerprint.rateTotal());
+                    out.writeInt(routes.size());
+                    for (Map.Entry<String, RateHistory> route : routes) {
+                        RateHistory history = route.getValue();
+                        out.writeUTF(route.getKey());
+                        out.writeInt(history.size());
+                        for (int i = 0; i < history.size(); i++) {
+                            out.writeLong(history.day(i));
+                            out.writeDouble(history.rate(i));
+                        }
+                    }
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("Saved feature store in {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        } catch (IOException e) {
+            log.error("Failed to save feature store", e);
+        }
+    }
+
+    /**
+     * The fingerprint of a table's routes, as its fingerprint query computes it from the rows.
+     */
+    private static RateTableFingerprint fingerprint(List<Map.Entry<String, RateHistory>> routes) {
+        long rows = 0;
+        long dayTotal = 0;
+        double rateTotal = 0;
+        for (Map.Entry<String, RateHistory> route : routes) {
+            RateHistory history = route.getValue();
+            rows += history.size();
+            for (int i = 0; i < history.size(); i++) {
+                dayTotal += history.day(i);
+                if (!Double.isNaN(history.rate(i))) {
+                    rateTotal += history.rate(i);
+                }
+            }
+        }
+        return new RateTableFingerprint(rows, dayTotal, rateTotal);
+    }
+
+    /**
+     * Load the saved store if the fingerprint saved for each table matches the database.
+     */
+    private boolean loadFromDisk() {
+        Path file = file();
+        if (!Files.exists(file)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                log.info("Ignoring feature store {} in another format", file);
+                return false;
+            }
+            Tables loaded = new Tables();
+            RateTableFingerprint[] saved = new RateTableFingerprint[Kind.values().length];
+            for (Kind kind : Kind.values()) {
+                Map<String, RateHistory> histories = loaded.of(kind);
+                saved[kind.ordinal()] = new RateTableFingerprint(in.readLong(), in.readLong(), in.readDouble());
+                int routes = in.readInt();
+                for (int r = 0; r < routes; r++) {
+                    String key = in.readUTF();
+                    int size = in.readInt();
+                    long[] days = new long[size];
+                    double[] rates = new double[size];
+                    for (int i = 0; i < size; i++) {
+                        days[i] = in.readLong();
+                        rates[i] = in.readDouble();
+                    }
+                    histories.put(key, new RateHistory(days, rates));
+                }
+            }
+
+            RateTableFingerprint[] database = {
+                measureRepository.fingerprint(), preferenceRepository.fingerprint(), suspensionRepository.fingerprint()};
+            for (Kind kind : Kind.values()) {
+                if (!saved[kind.ordinal()].matches(database[kind.ordinal()])) {
+                    log.info("Feature store {} is stale ({} saved as {}, table has {}); rebuilding", file,
+                        kind, saved[kind.ordinal()], database[kind.ordinal()]);
+                    return false;
+                }
+            }
+            tables = loaded;
+            log.info("Loaded feature store from {}: {} measure routes, {} preference routes, {} suspension routes",
+                file, loaded.measures().size(), loaded.preferences().size(), loaded.suspensions().size());
+            return true;
+        } catch (IOException e) {
+            log.warn("Failed to load feature store from {}: {}", file, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Get store status information.
+     */
+    public Map<String, Object> getStatus() {
+        Tables current = tables;
+        return Map.of(
+            "ready", isReady(),
+            "measureRoutes", current != null ? current.measures().size() : 0,
+            "preferenceRoutes", current != null ? current.preferences().size() : 0,
+            "suspensionRoutes", current != null ? current.suspensions().size() : 0);
+    }
+}
@@ -0,0 +1,267 @@
+package com.verbosegarbonzo.tariff.service;
+
+import com.verbosegarbonzo.tariff.config.MLModelProperties;
+import com.verbosegarbonzo.tariff.model.DateRangeForecast;
+import com.verbosegarbonzo.tariff.model.WeeklyForecast;
+import com.verbosegarbonzo.tariff.repository.TransactionRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Weekly forecasts of the hot routes, computed ahead so recommendation requests for them are
+ * served from memory instead of scoring the horizon.
+ *
+ * Each night the most traded routes (TransactionRepository.getRoutePatterns) and the most
+ * requested since the previous run are scored in parallel on a ForkJoinPool, and their weekly
+ * ranges kept in compact form (WeeklyForecast). An entry serves only the day it was computed for.
+ * When a measure, preference or suspension write or a retrain changes a route's forecast, its
+ * entries are dropped at once and recomputed in the background; until then requests score the
+ * route as usual.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ForecastMaterializationService implements TariffMLService.ModelUpdateListener {
+
+    // Days scored from today, as AIRecommendationService does
+    static final int HORIZON_DAYS = 365;
+
+    // Routes requested per day that are counted towards the next run's hot routes
+    private static final int MAX_TRACKED_ROUTES = 10_000;
+
+    private final TariffMLService mlService;
+    private final TransactionRepository transactionRepository;
+    private final MLModelProperties mlProperties;
+
+    private final Map<RouteKey, WeeklyForecast> forecasts = new ConcurrentHashMap<>();
+    private volatile Map<RouteKey, LongAdder> requests = new ConcurrentHashMap<>();
+    private volatile Set<RouteKey> hotRoutes = Set.of();
+    private volatile Instant lastRefresh;
+
+    // Refreshes run one at a time on their own thread, in the order they were asked for
+    private final ExecutorService refreshExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "forecast-materialization");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * An importer, exporter and product as a recommendation request names them.
+     */
+    public record RouteKey(String importerCode, String exporterCode, String hs6Code) {
+    }
+
+    @PostConstruct
+    public void registerForModelUpdates() {
+        mlService.addModelUpdateListener(this);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
+    /**
+     * The route's materialized weekly forecast for startDate to endDate (exclusive), if it is a
+     * hot route and the forecast is current. Counts the request towards the next run's hot routes.
+     */
+    public Optional<List<DateRangeForecast>> lookup(
+            String importerCode,
+            String exporterCode,
+            String hs6Code,
+            LocalDate startDate,
+            LocalDate endDate) {
+
+        if (!mlProperties.getForecasts().isEnabled()) {
+            return Optional.empty();
+        }
+        RouteKey key = new RouteKey(importerCode, exporterCode, hs6Code);
+        Map<RouteKey, LongAdder> counts = requests;
+        LongAdder count = counts.get(key);
+        if (count == null && counts.size() < MAX_TRACKED_ROUTES) {
+            count = counts.computeIfAbsent(key, k -> new LongAdder());
+        }
+        if (count != null) {
+            count.increment();
+        }
+
+        WeeklyForecast forecast = forecasts.get(key);
+        if (forecast == null || !forecast.startDate().equals(startDate)
+                || forecast.days() != ChronoUnit.DAYS.between(startDate, endDate)) {
+            return Optional.empty();
+        }
+        return Optional.of(forecast.ranges());
+    }
+
+    /**
+     * Scheduled nightly refresh of the hot routes and their forecasts. Only queues the refresh,
+     * so the shared scheduler thread is not held while routes are scored.
+     */
+    @Scheduled(cron = "${app.ml.forecasts.cron:0 10 0 * * *}")
+    public void scheduleRefresh() {
+        refreshInBackground();
+    }
+
+    /**
+     * Pick the hot routes once the application is ready. Their forecasts are computed now if
+     * models are loaded, otherwise once the first training run publishes.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void refreshOnStartup() {
+        refreshInBackground();
+    }
+
+    /**
+     * Re-select the hot routes and recompute their forecasts on the materialization thread.
+     */
+    public CompletableFuture<Void> refreshInBackground() {
+        if (!mlProperties.getForecasts().isEnabled()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(this::refresh, refreshExecutor);
+    }
+
+    /**
+     * Completes once every refresh queued so far has run.
+     */
+    CompletableFuture<Void> pendingRefreshes() {
+        return CompletableFuture.runAsync(() -> { }, refreshExecutor);
+    }
+
+    @Override
+    public void routeUpdated(String importerCode, String hs6Code) {
+        List<RouteKey> affected = hotRoutes.stream()
+            .filter(key -> key.importerCode().equals(importerCode) && key.hs6Code().equals(hs6Code))
+            .toList();
+        if (affected.isEmpty()) {
+            return;
+        }
+        affected.forEach(forecasts::remove);
+        refreshExecutor.execute(() -> materialize(affected, LocalDate.now()));
+    }
+
+    @Override
+    public void allRoutesUpdated() {
+        Set<RouteKey> routes = hotRoutes;
+        if (routes.isEmpty()) {
+            return;
+        }
+        forecasts.clear();
+        refreshExecutor.execute(() -> materialize(routes, LocalDate.now()));
+    }
+
+    /**
+     * The hot routes, how many have a current forecast and when they were last selected.
+     */
+    public Map<String, Object> getStatus() {
+        LocalDate today = LocalDate.now();
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", mlProperties.getForecasts().isEnabled());
+        status.put("hotRoutes", hotRoutes.size());
+        status.put("materialized", forecasts.values().stream().filter(f -> f.startDate().equals(today)).count());
+        status.put("lastRefresh", lastRefresh != null ? lastRefresh.toString() : null);
+        return status;
+    }
+
+    /**
+     * Select the hot routes and compute their forecasts; runs on the materialization thread.
+     */
+    void refresh() {
+        try {
+            long started = System.nanoTime();
+            LocalDate today = LocalDate.now();
+            Set<RouteKey> selected = selectHotRoutes(today);
+            hotRoutes = selected;
+            forecasts.keySet().retainAll(selected);
+            lastRefresh = Instant.now();
+
+            if (mlProperties.getModel().isEnabled() && !mlService.hasTrainedModels()) {
+                // Scoring now would only give fallbacks; the first publish materializes them
+                log.info("Selected {} hot routes; forecasts wait for the first trained models", selected.size());
+                return;
+            }
+            int count = materialize(selected, today);
+            log.info("Materialized forecasts for {} of {} hot routes in {} ms",
+                count, selected.size(), (System.nanoTime() - started) / 1_000_000);
+        } catch (Exception e) {
+            log.error("Error materializing forecasts", e);
+        }
+    }
+
+    /**
+     * The most traded routes over the lookback window and the most requested since the last
+     * selection, one request counting as one transaction.
+     */
+    private Set<RouteKey> selectHotRoutes(LocalDate today) {
+        MLModelProperties.Forecasts settings = mlProperties.getForecasts();
+        Map<RouteKey, Long> counts = new HashMap<>();
+        List<Object[]> traded = transactionRepository.getRoutePatterns(
+            today.minusDays(settings.getLookbackDays()), PageRequest.of(0, settings.getHotRoutes()));
+        for (Object[] row : traded) {
+            counts.merge(new RouteKey((String) row[0], (String) row[1], (String) row[2]),
+                ((Number) row[3]).longValue(), Long::sum);
+        }
+
+        Map<RouteKey, LongAdder> requested = requests;
+        requests = new ConcurrentHashMap<>();
+        requested.forEach((key, count) -> counts.merge(key, count.sum(), Long::sum));
+
+        return counts.entrySet().stream()
+            .sorted(Map.Entry.<RouteKey, Long>comparingByValue().reversed())
+            .limit(settings.getHotRoutes())
+            .map(Map.Entry::getKey)
+            .collect(Collectors.toUnmodifiableSet());
+    }
+
+    /**
+     * Score the routes in parallel and store the forecasts of those still hot.
+     *
+     * @return the number of routes materialized
+     */
+    private int materialize(Collection<RouteKey> routes, LocalDate today) {
+        Map<RouteKey, WeeklyForecast> computed = new ConcurrentHashMap<>();
+        try (ForkJoinPool pool = new ForkJoinPool(parallelism())) {
+            pool.submit(() -> routes.parallelStream().forEach(route -> {
+                try {
+                    computed.put(route, mlService.scoreHorizon(route.importerCode(), route.exporterCode(),
+                        route.hs6Code(), today, today.plusDays(HORIZON_DAYS)).weeklyTotals());
+                } catch (Exception e) {
+                    log.warn("Failed to materialize forecast for {}: {}", route, e.getMessage());
+                }
+            })).join();
+        }
+        computed.keySet().retainAll(hotRoutes);
+        forecasts.putAll(computed);
+        return computed.size();
+    }
+
+    private int parallelism() {
+        int configured = mlProperties.getForecasts().getParallelism();
+        return configured > 0 ? configured : Runtime.getRuntime().availableProcessors();
+    }
+}
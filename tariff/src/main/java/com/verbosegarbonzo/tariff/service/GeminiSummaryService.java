@@ -2,29 +2,39 @@ package com.verbosegarbonzo.tariff.service;
 
 import com.verbosegarbonzo.tariff.model.AIRecommendationResponse;
 import com.verbosegarbonzo.tariff.model.ProfileType;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.client.RestClientException;
+import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import reactor.core.publisher.Flux;
+
+import java.net.URI;
 
 /**
  * Service for generating AI-powered summaries using Google Gemini 2.5 API.
  * Enhances ML-generated recommendations with conversational AI insights.
  */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class GeminiSummaryService {
 
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> SSE_TYPE =
+        new ParameterizedTypeReference<>() {};
+
     private final RestTemplate restTemplate;
     private final ObjectMapper objectMapper;
+    private final WebClient geminiWebClient;
 
     @Value("${gemini.api.key:}")
     private String geminiApiKey;
@@ -32,6 +42,16 @@ public class GeminiSummaryService {
     @Value("${gemini.api.url:https://generativelanguage.googleapis.com/v1/models/gemini-2.5-flash:generateContent}")
     private String geminiApiUrl;
 
+    @Value("${gemini.api.stream-url:https://generativelanguage.googleapis.com/v1/models/gemini-2.5-flash:streamGenerateContent}")
+    private String geminiStreamUrl;
+
+    public GeminiSummaryService(RestTemplate restTemplate, ObjectMapper objectMapper,
+            @Qualifier("geminiWebClient") WebClient geminiWebClient) {
+        this.restTemplate = restTemplate;
+        this.objectMapper = objectMapper;
+        this.geminiWebClient = geminiWebClient;
+    }
+
     /**
      * Generate a Gemini 2.5-powered summary of AI recommendations.
      * Tailors the summary based on user profile type.
@@ -73,6 +93,46 @@ public class GeminiSummaryService {
         }
     }
 
+    /**
+     * Stream a Gemini 2.5 summary as it is generated, one element per chunk of text from the
+     * streaming endpoint, each relayed as soon as it arrives. Cancelling the subscription, as a
+     * client disconnect does, closes the upstream connection so generation stops too.
+     *
+     * @return the summary text in chunks; empty when Gemini is not configured, an error when the call fails
+     */
+    public Flux<String> streamGeminiSummary(
+            AIRecommendationResponse recommendation,
+            ProfileType profileType,
+            String importerCode,
+            String hs6Code) {
+
+        if (!isGeminiConfigured()) {
+            log.warn("❌ Gemini API key not configured - GEMINI_API_KEY environment variable is missing");
+            return Flux.empty();
+        }
+
+        return Flux.defer(() -> {
+            String requestBody;
+            try {
+                requestBody = buildGeminiRequest(buildPrompt(recommendation, profileType, importerCode, hs6Code));
+            } catch (Exception e) {
+                return Flux.error(e);
+            }
+            log.info("📡 Streaming Gemini 2.5 summary from: {}", geminiStreamUrl);
+            return geminiWebClient.post()
+                .uri(URI.create(geminiStreamUrl + "?alt=sse&key=" + geminiApiKey))
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .bodyValue(requestBody)
+                .retrieve()
+                .bodyToFlux(SSE_TYPE)
+                .mapNotNull(ServerSentEvent::data)
+                .map(this::extractChunkText)
+                .filter(text -> !text.isEmpty())
+                .doOnCancel(() -> log.info("Gemini stream cancelled, closing the upstream call"));
+        });
+    }
+
     /**
      * Check if Gemini API is properly configured.
      */
@@ -268,6 +328,22 @@ public class GeminiSummaryService {
         }
     }
 
+    /**
+     * Text of one streamed chunk: candidates[0].content.parts[*].text, empty when it has none.
+     */
+    private String extractChunkText(String chunk) {
+        try {
+            StringBuilder text = new StringBuilder();
+            JsonNode parts = objectMapper.readTree(chunk).path("candidates").path(0).path("content").path("parts");
+            for (JsonNode part : parts) {
+                text.append(part.path("text").asText(""));
+            }
+            return text.toString();
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Malformed Gemini stream chunk", e);
+        }
+    }
+
     /**
      * Escape special characters for JSON string.
      */
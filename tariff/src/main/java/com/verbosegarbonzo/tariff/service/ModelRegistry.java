@@ -0,0 +1,235 @@
+package com.verbosegarbonzo.tariff.service;
+
+import com.verbosegarbonzo.tariff.service.TariffMLService.TariffMLModel;
+
+import java.time.Instant;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * Versioned, immutable sets of trained route models.
+ *
+ * Every publish builds a new snapshot with the next version number and swaps it in with a single
+ * compare-and-set, so readers take current() without locking and always see a complete set of
+ * models. The snapshots it replaced are kept, newest first, up to the retained count, so
+ * rollback() can restore one without retraining or restarting.
+ *
+ * Single-route updates between training runs (publishRoute) share the current models instead of
+ * copying them, and are not rollback points of their own.
+ */
+public final class ModelRegistry {
+
+    /**
+     * One published set of models. Version 0 is the empty registry before anything is published.
+     *
+     * @param version     increases with every publish, never reused
+     * @param models      unmodifiable, keyed by trade route
+     * @param publishedAt when the snapshot was swapped in
+     * @param source      what produced it, e.g. training or disk
+     */
+    public record Snapshot(long version, Map<String, TariffMLModel> models, Instant publishedAt, String source) {
+
+        public TariffMLModel model(String tradeRoute) {
+            return models.get(tradeRoute);
+        }
+
+        public boolean isEmpty() {
+            return models.isEmpty();
+        }
+    }
+
+    private record State(Snapshot current, List<Snapshot> previous) {
+    }
+
+    private static final Snapshot EMPTY = new Snapshot(0, Map.of(), Instant.EPOCH, "empty");
+
+    private final int retained;
+    private final AtomicLong versions = new AtomicLong();
+    private final AtomicReference<State> state = new AtomicReference<>(new State(EMPTY, List.of()));
+
+    /**
+     * @param retained how many replaced snapshots to keep for rollback
+     */
+    public ModelRegistry(int retained) {
+        this.retained = retained;
+    }
+
+    public Snapshot current() {
+        return state.get().current();
+    }
+
+    /**
+     * Publish the models the update derives from the current ones. The update may run more than
+     * once if another publish or rollback lands in between, so it must not have side effects.
+     */
+    public Snapshot publish(String source, UnaryOperator<Map<String, TariffMLModel>> update) {
+        return swap(source, true, current -> Map.copyOf(update.apply(current)));
+    }
+
+    /**
+     * Publish the models as they are, without copying them. For maps that are already
+     * unmodifiable and expensive to copy, such as a ModelStore view that decodes routes lazily.
+     */
+    public Snapshot publishAll(String source, Map<String, TariffMLModel> models) {
+        return swap(source, true, current -> models);
+    }
+
+    /**
+     * Replace one route's model, or remove it when model is null, and keep every other route's
+     * model as it is. The snapshot this replaces is not kept for rollback, so rollback() still
+     * goes back to the set before the last full publish, dropping any route updates since.
+     */
+    public Snapshot publishRoute(String source, String tradeRoute, TariffMLModel model) {
+        return swap(source, false, current -> Overlay.with(current, tradeRoute, model));
+    }
+
+    private Snapshot swap(String source, boolean retainReplaced, UnaryOperator<Map<String, TariffMLModel>> update) {
+        while (true) {
+            State before = state.get();
+            Snapshot next = new Snapshot(versions.incrementAndGet(),
+                update.apply(before.current().models()), Instant.now(), source);
+
+            List<Snapshot> previous = new ArrayList<>(retained);
+            if (retainReplaced && before.current() != EMPTY && retained > 0) {
+                previous.add(before.current());
+            }
+            for (Snapshot snapshot : before.previous()) {
+                if (previous.size() == retained) {
+                    break;
+                }
+                previous.add(snapshot);
+            }
+
+            if (state.compareAndSet(before, new State(next, List.copyOf(previous)))) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * Make the most recently replaced snapshot current again and drop the current one.
+     *
+     * @return the restored snapshot, or empty when there is nothing to go back to
+     */
+    public Optional<Snapshot> rollback() {
+        while (true) {
+            State before = state.get();
+            if (before.previous().isEmpty()) {
+                return Optional.empty();
+            }
+            Snapshot restored = before.previous().get(0);
+            List<Snapshot> rest = before.previous().subList(1, before.previous().size());
+            if (state.compareAndSet(before, new State(restored, List.copyOf(rest)))) {
+                return Optional.of(restored);
+            }
+        }
+    }
+
+    /**
+     * The current version and what rollback could restore, for status reporting.
+     */
+    public Map<String, Object> describe() {
+        State now = state.get();
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("version", now.current().version());
+        map.put("source", now.current().source());
+        map.put("publishedAt", now.current() != EMPTY ? now.current().publishedAt().toString() : null);
+        map.put("previousVersions", now.previous().stream().map(Snapshot::version).toList());
+        return map;
+    }
+
+    /**
+     * Route models replaced or removed (null) on top of an unchanged base map. Each route update
+     * copies only the changes; once they reach a sixteenth of the base they are folded into a
+     * plain copy, so a lookup is never more than two map reads.
+     */
+    private static final class Overlay extends AbstractMap<String, TariffMLModel> {
+
+        private static final int MIN_CHANGES_BEFORE_FLATTEN = 16;
+
+        private final Map<String, TariffMLModel> base;
+        private final Map<String, TariffMLModel> changes;
+        private final int size;
+
+        private Overlay(Map<String, TariffMLModel> base, Map<String, TariffMLModel> changes, int size) {
+            this.base = base;
+            this.changes = changes;
+            this.size = size;
+        }
+
+        static Map<String, TariffMLModel> with(Map<String, TariffMLModel> current, String tradeRoute, TariffMLModel model) {
+            Map<String, TariffMLModel> base = current instanceof Overlay overlay ? overlay.base : current;
+            Map<String, TariffMLModel> changes = current instanceof Overlay overlay ? new HashMap<>(overlay.changes) : new HashMap<>();
+            changes.put(tradeRoute, model);
+
+            if (changes.size() > Math.max(MIN_CHANGES_BEFORE_FLATTEN, base.size() / 16)) {
+                Map<String, TariffMLModel> flat = new HashMap<>(base);
+                changes.forEach((route, changed) -> {
+                    if (changed != null) {
+                        flat.put(route, changed);
+                    } else {
+                        flat.remove(route);
+                    }
+                });
+                return Map.copyOf(flat);
+            }
+
+            int size = base.size();
+            for (Map.Entry<String, TariffMLModel> change : changes.entrySet()) {
+                boolean inBase = base.containsKey(change.getKey());
+                if (change.getValue() != null && !inBase) {
+                    size++;
+                } else if (change.getValue() == null && inBase) {
+                    size--;
+                }
+            }
+            return new Overlay(base, changes, size);
+        }
+
+        @Override
+        public TariffMLModel get(Object key) {
+            return changes.containsKey(key) ? changes.get(key) : base.get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return changes.containsKey(key) ? changes.get(key) != null : base.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Set<Entry<String, TariffMLModel>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, TariffMLModel>> iterator() {
+                    return Stream.concat(
+                            base.entrySet().stream().filter(entry -> !changes.containsKey(entry.getKey())),
+                            changes.entrySet().stream().filter(entry -> entry.getValue() != null))
+                        .map(entry -> Map.entry(entry.getKey(), entry.getValue()))
+                        .iterator();
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+    }
+}
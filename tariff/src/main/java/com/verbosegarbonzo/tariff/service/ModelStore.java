@@ -0,0 +1,350 @@
+package com.verbosegarbonzo.tariff.service;
+
+import com.verbosegarbonzo.tariff.config.MLModelProperties;
+import com.verbosegarbonzo.tariff.service.TariffMLService.TariffMLModel;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * All route models in one binary file, read through a memory-mapped buffer.
+ *
+ * Layout (big-endian):
+ * - header: magic, format version, feature schema version, backend ordinal, route count, the
+ *   offsets of the sections below, then the model version as length-prefixed UTF-8
+ * - index: per route, the offset and length of its key in the key section, sorted by key bytes
+ * - keys: the route keys, UTF-8
+ * - records: per route, in index order, a fixed-width record of mean, stdDev, confidenceBase and
+ *   the RateStats M2 (doubles), the RateStats count (long), and the offset and length of its
+ *   trees in the tree section (-1 and 0 for none)
+ * - trees: TreeRateModel arrays as written by TreeRateModel.writeTo
+ *
+ * open() only reads the header, so startup does not depend on the number of routes. A route is
+ * found by binary search over the index and decoded the first time it is asked for.
+ */
+public final class ModelStore {
+
+    public static final String FILE_NAME = "tariff-models.bin";
+
+    static final int MAGIC = 0x54524D53; // "TRMS"
+    static final int FORMAT_VERSION = 3; // 3: routes trained on effective rates, including per-exporter routes
+
+    private static final int HEADER_BYTES = 40;
+    private static final int INDEX_ENTRY_BYTES = 8;
+    private static final int RECORD_BYTES = 48;
+
+    /**
+     * What the models in a file were trained for; a file is only used when all of it matches.
+     */
+    public record Header(int featureSchemaVersion, MLModelProperties.Backend backend, String modelVersion) {
+    }
+
+    private final Path path;
+    private final Header header;
+    private final MappedByteBuffer buffer;
+    private final int routeCount;
+    private final int indexOffset;
+    private final int recordsOffset;
+    private final int treesOffset;
+    private final AtomicReferenceArray<TariffMLModel> decoded;
+
+    private ModelStore(Path path, Header header, MappedByteBuffer buffer, int routeCount,
+            int indexOffset, int recordsOffset, int treesOffset) {
+        this.path = path;
+        this.header = header;
+        this.buffer = buffer;
+        this.routeCount = routeCount;
+        this.indexOffset = indexOffset;
+        this.recordsOffset = recordsOffset;
+        this.treesOffset = treesOffset;
+        this.decoded = new AtomicReferenceArray<>(routeCount);
+    }
+
+    /**
+     * Write the models to path. The file is written next to it and moved into place, so readers of
+     * the old file, including mapped ones, are not disturbed.
+     */
+    public static void write(Path path, Header header, Map<String, TariffMLModel> models) throws IOException {
+        String[] routes = models.keySet().toArray(String[]::new);
+        byte[][] keys = new byte[routes.length][];
+        for (int i = 0; i < routes.length; i++) {
+            keys[i] = routes[i].getBytes(StandardCharsets.UTF_8);
+        }
+        Integer[] order = new Integer[routes.length];
+        Arrays.setAll(order, i -> i);
+        Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(keys[a], keys[b]));
+
+        byte[] modelVersion = header.modelVersion().getBytes(StandardCharsets.UTF_8);
+        int keyBytes = 0;
+        int treeBytes = 0;
+        for (int i = 0; i < routes.length; i++) {
+            keyBytes += keys[i].length;
+            TreeRateModel trees = models.get(routes[i]).getTrees();
+            treeBytes += trees != null ? trees.encodedSize() : 0;
+        }
+        int indexOffset = HEADER_BYTES + Integer.BYTES + modelVersion.length;
+        int keysOffset = indexOffset + routes.length * INDEX_ENTRY_BYTES;
+        int recordsOffset = keysOffset + keyBytes;
+        int treesOffset = recordsOffset + routes.length * RECORD_BYTES;
+        if ((long) treesOffset + treeBytes > Integer.MAX_VALUE) {
+            throw new IOException("Model file would exceed 2 GB");
+        }
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(header.featureSchemaVersion());
+            out.writeInt(header.backend().ordinal());
+            out.writeInt(routes.length);
+            out.writeInt(indexOffset);
+            out.writeInt(keysOffset);
+            out.writeInt(recordsOffset);
+            out.writeInt(treesOffset);
+            out.writeInt(treesOffset + treeBytes);
+            out.writeInt(modelVersion.length);
+            out.write(modelVersion);
+
+            int keyAt = 0;
+            for (Integer i : order) {
+                out.writeInt(keyAt);
+                out.writeInt(keys[i].length);
+                keyAt += keys[i].length;
+            }
+            for (Integer i : order) {
+                out.write(keys[i]);
+            }
+
+            int treeAt = 0;
+            for (Integer i : order) {
+                TariffMLModel model = models.get(routes[i]);
+                TreeRateModel trees = model.getTrees();
+                out.writeDouble(model.getMean());
+                out.writeDouble(model.getStdDev());
+                out.writeDouble(model.getConfidenceBase());
+                out.writeDouble(model.getStats().m2());
+                out.writeLong(model.getStats().count());
+                out.writeInt(trees != null ? treeAt : -1);
+                out.writeInt(trees != null ? trees.encodedSize() : 0);
+                treeAt += trees != null ? trees.encodedSize() : 0;
+            }
+            for (Integer i : order) {
+                TreeRateModel trees = models.get(routes[i]).getTrees();
+                if (trees != null) {
+                    trees.writeTo(out);
+                }
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Map the file and read its header; no route is decoded yet.
+     *
+     * @throws IOException if the file cannot be read or is not a model file of this format
+     */
+    public static ModelStore open(Path path) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path)) {
+            if (channel.size() < HEADER_BYTES + Integer.BYTES) {
+                throw new IOException("Model file " + path + " is truncated");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a model file: " + path);
+        }
+        if (buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Model file " + path + " has format " + buffer.getInt(4) + ", expected " + FORMAT_VERSION);
+        }
+        if (buffer.getInt(36) != buffer.capacity()) {
+            throw new IOException("Model file " + path + " is truncated");
+        }
+
+        MLModelProperties.Backend[] backends = MLModelProperties.Backend.values();
+        int backend = buffer.getInt(12);
+        byte[] modelVersion = new byte[buffer.getInt(HEADER_BYTES)];
+        buffer.get(HEADER_BYTES + Integer.BYTES, modelVersion);
+        Header header = new Header(
+            buffer.getInt(8),
+            backend >= 0 && backend < backends.length ? backends[backend] : null,
+            new String(modelVersion, StandardCharsets.UTF_8));
+
+        return new ModelStore(path, header, buffer, buffer.getInt(16), buffer.getInt(20),
+            buffer.getInt(28), buffer.getInt(32));
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public Header header() {
+        return header;
+    }
+
+    public int size() {
+        return routeCount;
+    }
+
+    /**
+     * The route's model, decoded on first use; null if the file has no model for it.
+     */
+    public TariffMLModel get(String tradeRoute) {
+        int index = find(tradeRoute.getBytes(StandardCharsets.UTF_8));
+        return index >= 0 ? decode(index) : null;
+    }
+
+    /**
+     * Routes decoded so far.
+     */
+    public int decodedCount() {
+        int count = 0;
+        for (int i = 0; i < routeCount; i++) {
+            if (decoded.get(i) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The models as an unmodifiable map. get decodes one route; iterating decodes every route.
+     */
+    public Map<String, TariffMLModel> asMap() {
+        return new MappedModels();
+    }
+
+    private int find(byte[] key) {
+        int low = 0;
+        int high = routeCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareKey(mid, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int compareKey(int index, byte[] key) {
+        int entry = indexOffset + index * INDEX_ENTRY_BYTES;
+        int keyAt = keysStart() + buffer.getInt(entry);
+        int length = buffer.getInt(entry + 4);
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int cmp = Byte.compareUnsigned(buffer.get(keyAt + i), key[i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    private int keysStart() {
+        return indexOffset + routeCount * INDEX_ENTRY_BYTES;
+    }
+
+    private String key(int index) {
+        int entry = indexOffset + index * INDEX_ENTRY_BYTES;
+        byte[] key = new byte[buffer.getInt(entry + 4)];
+        buffer.get(keysStart() + buffer.getInt(entry), key);
+        return new String(key, StandardCharsets.UTF_8);
+    }
+
+    private TariffMLModel decode(int index) {
+        TariffMLModel model = decoded.get(index);
+        if (model != null) {
+            return model;
+        }
+
+        int record = recordsOffset + index * RECORD_BYTES;
+        model = new TariffMLModel(key(index));
+        model.setModelVersion(header.modelVersion());
+        model.setFeatureSchemaVersion(header.featureSchemaVersion());
+        model.setBackend(header.backend());
+        model.setMean(buffer.getDouble(record));
+        model.setStdDev(buffer.getDouble(record + 8));
+        model.setConfidenceBase(buffer.getDouble(record + 16));
+        long count = buffer.getLong(record + 32);
+        if (count > 0) {
+            model.setStats(new RateStats(count, model.getMean(), buffer.getDouble(record + 24)));
+        }
+        int treeOffset = buffer.getInt(record + 40);
+        if (treeOffset >= 0) {
+            model.setTrees(TreeRateModel.readFrom(buffer, treesOffset + treeOffset));
+        }
+
+        // Another thread may have decoded it meanwhile; keep the first
+        return decoded.compareAndSet(index, null, model) ? model : decoded.get(index);
+    }
+
+    private final class MappedModels extends AbstractMap<String, TariffMLModel> {
+
+        @Override
+        public TariffMLModel get(Object key) {
+            return key instanceof String tradeRoute ? ModelStore.this.get(tradeRoute) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String tradeRoute && find(tradeRoute.getBytes(StandardCharsets.UTF_8)) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return routeCount;
+        }
+
+        @Override
+        public Set<Entry<String, TariffMLModel>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, TariffMLModel>> iterator() {
+                    return new Iterator<>() {
+                        private int next;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < routeCount;
+                        }
+
+                        @Override
+                        public Entry<String, TariffMLModel> next() {
+                            if (next >= routeCount) {
+                                throw new NoSuchElementException();
+                            }
+                            TariffMLModel model = decode(next++);
+                            return Map.entry(model.getTradeRoute(), model);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return routeCount;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.verbosegarbonzo.tariff.service;
+
+import com.verbosegarbonzo.tariff.config.MLModelProperties;
+import com.verbosegarbonzo.tariff.exception.InvalidRequestException;
+import com.verbosegarbonzo.tariff.model.AIRecommendationRequest;
+import com.verbosegarbonzo.tariff.model.PortfolioRecommendationResponse;
+import com.verbosegarbonzo.tariff.model.PortfolioRouteResult;
+import com.verbosegarbonzo.tariff.model.ProfileType;
+import com.verbosegarbonzo.tariff.model.UserInfo;
+import com.verbosegarbonzo.tariff.repository.TransactionRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.Collectors;
+
+/**
+ * Concurrent engine behind /api/ai/recommendation/portfolio.
+ *
+ * What the routes share is read once up front, per importer: the current rate of each product in
+ * one query, and the products' history (TariffMLService.recentHistories) in another, or from the
+ * FeatureStore once it is loaded. Each distinct route's recommendation is then computed from those
+ * reads on a virtual thread, at most app.ml.portfolio.max-concurrency at a time across all
+ * portfolios, so latency tracks the slowest route rather than the sum.
+ *
+ * A failing route never fails the portfolio: results come back in request order, each with its own
+ * timing, and a failed route carries an error code instead of a recommendation. Routes are not
+ * served from RecommendationCache and do not fill it.
+ */
+@Service
+@Slf4j
+public class PortfolioRecommendationService {
+
+    private final AIRecommendationService recommendationService;
+    private final TariffMLService mlService;
+    private final TransactionRepository transactionRepository;
+    private final MLModelProperties mlProperties;
+    private final Semaphore permits;
+
+    public PortfolioRecommendationService(AIRecommendationService recommendationService, TariffMLService mlService,
+            TransactionRepository transactionRepository, MLModelProperties mlProperties) {
+        this.recommendationService = recommendationService;
+        this.mlService = mlService;
+        this.transactionRepository = transactionRepository;
+        this.mlProperties = mlProperties;
+        this.permits = new Semaphore(Math.max(1, mlProperties.getPortfolio().getMaxConcurrency()), true);
+    }
+
+    private record Route(String importerCode, String exporterCode, String hs6Code) {
+
+        static Route of(AIRecommendationRequest request) {
+            String exporter = request.getExporterCode() != null && !request.getExporterCode().isBlank()
+                    ? request.getExporterCode()
+                    : null;
+            return new Route(request.getImporterCode(), exporter, request.getHs6Code());
+        }
+
+        boolean isValid() {
+            return importerCode != null && !importerCode.isBlank() && hs6Code != null && !hs6Code.isBlank();
+        }
+    }
+
+    /**
+     * One importer's current rates and history for the products the portfolio names.
+     */
+    private record ImporterReads(Map<String, BigDecimal> currentRates, Map<String, RateHistory> histories,
+            long elapsedMs) {
+    }
+
+    /**
+     * The user's most traded routes, app.ml.portfolio.history-routes at most, most traded first.
+     */
+    public List<AIRecommendationRequest> routesFromHistory(UserInfo user) {
+        return transactionRepository.getUserRoutePatterns(user,
+                PageRequest.of(0, Math.max(1, mlProperties.getPortfolio().getHistoryRoutes())))
+            .stream()
+            .map(row -> new AIRecommendationRequest((String) row[0], (String) row[1], (String) row[2]))
+            .toList();
+    }
+
+    /**
+     * Recommendations for each distinct route, in the order first requested.
+     *
+     * @throws InvalidRequestException when there are more routes than app.ml.portfolio.max-routes
+     */
+    public PortfolioRecommendationResponse recommend(List<AIRecommendationRequest> requests, ProfileType userProfile) {
+        int maxRoutes = mlProperties.getPortfolio().getMaxRoutes();
+        if (requests.size() > maxRoutes) {
+            throw new InvalidRequestException("A portfolio can have at most " + maxRoutes + " routes");
+        }
+        long start = System.currentTimeMillis();
+        List<Route> routes = requests.stream().map(Route::of).distinct().toList();
+
+        AtomicReferenceArray<PortfolioRouteResult> results = new AtomicReferenceArray<>(routes.size());
+        Map<String, CompletableFuture<ImporterReads>> reads;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            // Shared reads run first, one task per importer; routes wait on their importer's reads
+            reads = routes.stream()
+                .filter(Route::isValid)
+                .collect(Collectors.groupingBy(Route::importerCode, LinkedHashMap::new,
+                    Collectors.mapping(Route::hs6Code, Collectors.toCollection(LinkedHashSet::new))))
+                .entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey,
+                    importer -> CompletableFuture.supplyAsync(() -> read(importer.getKey(), importer.getValue()), executor)));
+
+            for (int i = 0; i < routes.size(); i++) {
+                int index = i;
+                Route route = routes.get(i);
+                // Acquire before submitting so at most maxConcurrency routes run across all portfolios
+                permits.acquireUninterruptibly();
+                executor.execute(() -> {
+                    try {
+                        results.set(index, recommendRoute(route, reads.get(route.importerCode()), userProfile));
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        } // close() waits for every route to finish
+
+        List<PortfolioRouteResult> ordered = new ArrayList<>(routes.size());
+        int failed = 0;
+        for (int i = 0; i < routes.size(); i++) {
+            PortfolioRouteResult result = results.get(i);
+            if (result.getError() != null) {
+                failed++;
+            }
+            ordered.add(result);
+        }
+        long readMs = reads.values().stream()
+            .filter(read -> !read.isCompletedExceptionally())
+            .mapToLong(read -> read.join().elapsedMs())
+            .max()
+            .orElse(0);
+        long elapsedMs = System.currentTimeMillis() - start;
+
+        log.info("Portfolio of {} routes ({} importers) completed in {} ms ({} ms reading), {} failed",
+                routes.size(), reads.size(), elapsedMs, readMs, failed);
+        return PortfolioRecommendationResponse.builder()
+            .profileType(userProfile)
+            .routes(ordered)
+            .succeeded(routes.size() - failed)
+            .failed(failed)
+            .readMs(readMs)
+            .elapsedMs(elapsedMs)
+            .build();
+    }
+
+    private ImporterReads read(String importerCode, Collection<String> hs6Codes) {
+        long start = System.currentTimeMillis();
+        Map<String, BigDecimal> currentRates = recommendationService.getCurrentRates(importerCode, hs6Codes);
+        Map<String, RateHistory> histories = mlService.recentHistories(importerCode, hs6Codes);
+        return new ImporterReads(currentRates, histories, System.currentTimeMillis() - start);
+    }
+
+    private PortfolioRouteResult recommendRoute(Route route, CompletableFuture<ImporterReads> reads,
+            ProfileType userProfile) {
+        if (!route.isValid()) {
+            return PortfolioRouteResult.failure(route.importerCode(), route.exporterCode(), route.hs6Code(),
+                    "INVALID_REQUEST", "Importer and HS6 code are required", 0);
+        }
+        long start = System.currentTimeMillis();
+        try {
+            ImporterReads shared = reads.join();
+            start = System.currentTimeMillis();
+            return PortfolioRouteResult.success(route.importerCode(), route.exporterCode(), route.hs6Code(),
+                    recommendationService.getTimingRecommendation(route.importerCode(), route.exporterCode(),
+                        route.hs6Code(), userProfile, shared.currentRates().get(route.hs6Code()),
+                        shared.histories().get(route.hs6Code())),
+                    System.currentTimeMillis() - start);
+        } catch (Throwable e) {
+            // Errors too: an empty slot would fail the whole portfolio when results are collected
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            log.error("Portfolio recommendation failed for {}", route, cause);
+            return PortfolioRouteResult.failure(route.importerCode(), route.exporterCode(), route.hs6Code(),
+                    "RECOMMENDATION_ERROR", cause.getMessage(), System.currentTimeMillis() - start);
+        }
+    }
+}
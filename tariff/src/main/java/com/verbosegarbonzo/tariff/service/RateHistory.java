@@ -0,0 +1,180 @@
+package com.verbosegarbonzo.tariff.service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * One route's rows of a kind as validFrom epoch days, ascending, and their rates (NaN where a row
+ * has none), with running sums of the rates so the count, sum and sum of squares of the rows in
+ * any date window take two binary searches and a subtraction.
+ *
+ * Window sums are rounded to 6 decimal places (SUM_SCALE). That drops the error of subtracting
+ * running sums, so for rates with fewer decimals a window gives the same sum however far into the
+ * history it starts, and features match whether the rows came from a query or the FeatureStore.
+ *
+ * Rows without a rate count towards size but not towards the sums. Instances are immutable;
+ * withRow and withoutRow return a copy, which is how FeatureStore updates a route as rows are
+ * written.
+ */
+public final class RateHistory {
+
+    public static final RateHistory EMPTY = new RateHistory(new long[0], new double[0]);
+
+    private static final double SUM_SCALE = 1e6;
+
+    private final long[] days;
+    private final double[] rates;
+
+    // Sums over the rows before index i, so a window [from, to) is prefix[to] - prefix[from]
+    private final double[] sums;
+    private final double[] sumsOfSquares;
+    private final int[] rated;
+
+    RateHistory(long[] days, double[] rates) {
+        this.days = days;
+        this.rates = rates;
+        this.sums = new double[days.length + 1];
+        this.sumsOfSquares = new double[days.length + 1];
+        this.rated = new int[days.length + 1];
+        for (int i = 0; i < days.length; i++) {
+            double rate = rates[i];
+            boolean hasRate = !Double.isNaN(rate);
+            sums[i + 1] = sums[i] + (hasRate ? rate : 0);
+            sumsOfSquares[i + 1] = sumsOfSquares[i] + (hasRate ? rate * rate : 0);
+            rated[i + 1] = rated[i] + (hasRate ? 1 : 0);
+        }
+    }
+
+    public int size() {
+        return days.length;
+    }
+
+    public long day(int index) {
+        return days[index];
+    }
+
+    public double rate(int index) {
+        return rates[index];
+    }
+
+    /**
+     * Index of the first row on or after the day.
+     */
+    public int from(long day) {
+        int low = 0;
+        int high = days.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (days[mid] < day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Index past the last row on or before the day.
+     */
+    public int to(long day) {
+        return from(day + 1);
+    }
+
+    /**
+     * Sum of the rates of rows [from, to).
+     */
+    public double sum(int from, int to) {
+        return Math.rint((sums[to] - sums[from]) * SUM_SCALE) / SUM_SCALE;
+    }
+
+    public double sumOfSquares(int from, int to) {
+        return Math.rint((sumsOfSquares[to] - sumsOfSquares[from]) * SUM_SCALE) / SUM_SCALE;
+    }
+
+    /**
+     * Number of rows in [from, to) that have a rate.
+     */
+    public int rated(int from, int to) {
+        return rated[to] - rated[from];
+    }
+
+    /**
+     * A copy with the row added after any rows of the same day.
+     */
+    public RateHistory withRow(long day, double rate) {
+        int at = to(day);
+        long[] newDays = new long[days.length + 1];
+        double[] newRates = new double[days.length + 1];
+        System.arraycopy(days, 0, newDays, 0, at);
+        System.arraycopy(rates, 0, newRates, 0, at);
+        newDays[at] = day;
+        newRates[at] = rate;
+        System.arraycopy(days, at, newDays, at + 1, days.length - at);
+        System.arraycopy(rates, at, newRates, at + 1, days.length - at);
+        return new RateHistory(newDays, newRates);
+    }
+
+    /**
+     * A copy without one row of the day and rate, or this history when it has no such row.
+     */
+    public RateHistory withoutRow(long day, double rate) {
+        for (int i = from(day); i < days.length && days[i] == day; i++) {
+            if (Double.compare(rates[i], rate) == 0) {
+                if (days.length == 1) {
+                    return EMPTY;
+                }
+                long[] newDays = new long[days.length - 1];
+                double[] newRates = new double[days.length - 1];
+                System.arraycopy(days, 0, newDays, 0, i);
+                System.arraycopy(rates, 0, newRates, 0, i);
+                System.arraycopy(days, i + 1, newDays, i, days.length - i - 1);
+                System.arraycopy(rates, i + 1, newRates, i, days.length - i - 1);
+                return new RateHistory(newDays, newRates);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * A history of rows already sorted by validFrom.
+     */
+    public static <T> RateHistory of(List<T> rows, Function<T, LocalDate> validFrom, Function<T, BigDecimal> rate) {
+        if (rows.isEmpty()) {
+            return EMPTY;
+        }
+        long[] days = new long[rows.size()];
+        double[] rates = new double[rows.size()];
+        for (int i = 0; i < days.length; i++) {
+            T row = rows.get(i);
+            days[i] = validFrom.apply(row).toEpochDay();
+            rates[i] = rateOf(rate.apply(row));
+        }
+        return new RateHistory(days, rates);
+    }
+
+    /**
+     * Split rows sorted by date within each key into one history per key.
+     */
+    public static <T> Map<String, RateHistory> byKey(List<T> rows, Function<T, String> key,
+            Function<T, LocalDate> validFrom, Function<T, BigDecimal> rate) {
+        Map<String, List<T>> grouped = rows.stream()
+            .collect(Collectors.groupingBy(key, LinkedHashMap::new, Collectors.toList()));
+        Map<String, RateHistory> histories = new HashMap<>(grouped.size() * 2);
+        grouped.forEach((k, keyRows) -> histories.put(k, of(keyRows, validFrom, rate)));
+        return histories;
+    }
+
+    /**
+     * A row's rate as stored here: NaN when it has none.
+     */
+    public static double rateOf(BigDecimal rate) {
+        return rate != null ? rate.doubleValue() : Double.NaN;
+    }
+}
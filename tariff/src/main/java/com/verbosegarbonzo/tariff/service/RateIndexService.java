@@ -0,0 +1,460 @@
+package com.verbosegarbonzo.tariff.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.verbosegarbonzo.tariff.model.Measure;
+import com.verbosegarbonzo.tariff.model.MeasureIndexRow;
+import com.verbosegarbonzo.tariff.model.Preference;
+import com.verbosegarbonzo.tariff.model.PreferenceIndexRow;
+import com.verbosegarbonzo.tariff.model.Suspension;
+import com.verbosegarbonzo.tariff.model.SuspensionIndexRow;
+import com.verbosegarbonzo.tariff.repository.MeasureRepository;
+import com.verbosegarbonzo.tariff.repository.PreferenceRepository;
+import com.verbosegarbonzo.tariff.repository.SuspensionRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * In-memory index of Measure, Preference and Suspension validity intervals.
+ *
+ * Holds one validFrom-sorted array per (importer, hs6) or (importer, exporter, hs6) key so that
+ * rate resolution in TariffService.calculate is a binary search instead of a JPQL range query.
+ * The index is warmed at startup, updated by admin writes and WITS write-back, and fully reloaded
+ * on a schedule to pick up writes made by other application instances. Reloads read the columns
+ * the index needs rather than entities, and scheduled ones run on their own thread. Writes that
+ * arrive while a reload reads the tables are applied again on top of what it read, so none is
+ * lost to the snapshot.
+ */
+@Service
+@Slf4j
+public class RateIndexService {
+
+    private final MeasureRepository measureRepository;
+    private final PreferenceRepository preferenceRepository;
+    private final SuspensionRepository suspensionRepository;
+
+    private final IntervalIndex<MeasureRate> measures = new IntervalIndex<>();
+    private final IntervalIndex<PreferenceRate> preferences = new IntervalIndex<>();
+    private final IntervalIndex<SuspensionRate> suspensions = new IntervalIndex<>();
+
+    // Reloads run one at a time; scheduled ones on their own thread, off the shared scheduler
+    private final Object reloadLock = new Object();
+    private final ExecutorService reloadExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "rate-index-reload");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public RateIndexService(MeasureRepository measureRepository,
+            PreferenceRepository preferenceRepository,
+            SuspensionRepository suspensionRepository) {
+        this.measureRepository = measureRepository;
+        this.preferenceRepository = preferenceRepository;
+        this.suspensionRepository = suspensionRepository;
+    }
+
+    /**
+     * Common shape of an indexed rate row: an id and a closed validity interval (validTo null = open-ended).
+     */
+    public interface RateInterval {
+        Integer id();
+        LocalDate validFrom();
+        LocalDate validTo();
+    }
+
+    /*
+     * The rate records also carry what TariffService needs per call, computed once when the row
+     * is indexed: the rates as DutyMath.Fixed values and the appliedRate JSON of the response.
+     * The appliedRate node is shared by every response for that row and must not be modified.
+     */
+
+    public record MeasureRate(Integer id, LocalDate validFrom, LocalDate validTo,
+            BigDecimal mfnAdvalRate, BigDecimal specificRatePerKg,
+            DutyMath.Fixed mfnAdval, DutyMath.Fixed specific, JsonNode appliedRate) implements RateInterval {
+
+        public MeasureRate(Integer id, LocalDate validFrom, LocalDate validTo,
+                BigDecimal mfnAdvalRate, BigDecimal specificRatePerKg) {
+            this(id, validFrom, validTo, mfnAdvalRate, specificRatePerKg,
+                    DutyMath.Fixed.of(mfnAdvalRate), DutyMath.Fixed.of(specificRatePerKg),
+                    appliedRateNode(null, mfnAdvalRate, specificRatePerKg, null));
+        }
+    }
+
+    public record PreferenceRate(Integer id, LocalDate validFrom, LocalDate validTo,
+            BigDecimal prefAdValRate, DutyMath.Fixed prefAdval, JsonNode appliedRate) implements RateInterval {
+
+        public PreferenceRate(Integer id, LocalDate validFrom, LocalDate validTo, BigDecimal prefAdValRate) {
+            this(id, validFrom, validTo, prefAdValRate, DutyMath.Fixed.of(prefAdValRate),
+                    appliedRateNode(prefAdValRate, null, null, null));
+        }
+    }
+
+    public record SuspensionRate(Integer id, LocalDate validFrom, LocalDate validTo,
+            BigDecimal suspensionRate, DutyMath.Fixed suspension, JsonNode appliedRate) implements RateInterval {
+
+        // A suspension without a rate suspends the duty entirely
+        public SuspensionRate(Integer id, LocalDate validFrom, LocalDate validTo, BigDecimal suspensionRate) {
+            this(id, validFrom, validTo, suspensionRate,
+                    suspensionRate != null ? DutyMath.Fixed.of(suspensionRate) : DutyMath.Fixed.ZERO,
+                    appliedRateNode(null, null, null, suspensionRate != null ? suspensionRate : BigDecimal.ZERO));
+        }
+    }
+
+    /**
+     * The appliedRate JSON of a calculate response; null rates are left out.
+     */
+    public static ObjectNode appliedRateNode(BigDecimal prefAdval, BigDecimal mfnAdval, BigDecimal specific,
+            BigDecimal suspension) {
+        JsonNodeFactory nodes = JsonNodeFactory.instance;
+        ObjectNode rateNode = nodes.objectNode();
+        if (prefAdval != null)
+            rateNode.set("prefAdval", nodes.numberNode(prefAdval));
+        if (mfnAdval != null)
+            rateNode.set("mfnAdval", nodes.numberNode(mfnAdval));
+        if (specific != null)
+            rateNode.set("specific", nodes.numberNode(specific));
+        if (suspension != null)
+            rateNode.set("suspension", nodes.numberNode(suspension));
+        return rateNode;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reloadExecutor.shutdownNow();
+    }
+
+    /**
+     * Scheduled refresh of the whole index. Only queues the reload, so the shared scheduler thread
+     * is not held while the tables are read.
+     */
+    @Scheduled(cron = "${app.rates.index.refresh.cron:0 */15 * * * *}")
+    public void scheduleReload() {
+        reloadInBackground();
+    }
+
+    /**
+     * Reload the whole index on the reload thread.
+     */
+    public CompletableFuture<Void> reloadInBackground() {
+        return CompletableFuture.runAsync(this::reload, reloadExecutor);
+    }
+
+    /**
+     * Rebuild the whole index from the database. Runs once the application is ready, before
+     * requests rely on it, and then from scheduleReload.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void reload() {
+        synchronized (reloadLock) {
+            measures.beginReload();
+            preferences.beginReload();
+            suspensions.beginReload();
+            try {
+                long start = System.currentTimeMillis();
+
+                Map<String, List<MeasureRate>> measureRows = new HashMap<>();
+                for (MeasureIndexRow m : measureRepository.findIndexRows()) {
+                    measureRows.computeIfAbsent(routeKey(m.importerCode(), m.hs6Code()), k -> new ArrayList<>())
+                            .add(new MeasureRate(m.measureId(), m.validFrom(), m.validTo(), m.mfnAdvalRate(),
+                                    m.specificRatePerKg()));
+                }
+
+                Map<String, List<PreferenceRate>> preferenceRows = new HashMap<>();
+                for (PreferenceIndexRow p : preferenceRepository.findIndexRows()) {
+                    preferenceRows.computeIfAbsent(routeKey(p.importerCode(), p.exporterCode(), p.hs6Code()),
+                            k -> new ArrayList<>())
+                            .add(new PreferenceRate(p.preferenceId(), p.validFrom(), p.validTo(), p.prefAdValRate()));
+                }
+
+                // Only flagged suspensions are read; they alone take part in rate resolution
+                Map<String, List<SuspensionRate>> suspensionRows = new HashMap<>();
+                for (SuspensionIndexRow s : suspensionRepository.findIndexRows()) {
+                    suspensionRows.computeIfAbsent(routeKey(s.importerCode(), s.hs6Code()), k -> new ArrayList<>())
+                            .add(new SuspensionRate(s.suspensionId(), s.validFrom(), s.validTo(), s.suspensionRate()));
+                }
+
+                measures.replaceAll(measureRows);
+                preferences.replaceAll(preferenceRows);
+                suspensions.replaceAll(suspensionRows);
+
+                log.info("Rate index loaded in {} ms: {} measures, {} preferences, {} active suspensions",
+                        System.currentTimeMillis() - start, measures.size(), preferences.size(), suspensions.size());
+            } catch (Exception e) {
+                log.error("Failed to load rate index", e);
+            } finally {
+                measures.endReload();
+                preferences.endReload();
+                suspensions.endReload();
+            }
+        }
+    }
+
+    // ---- Lookups ----
+
+    public Optional<MeasureRate> findMeasure(String importerCode, String hs6, LocalDate date) {
+        return measures.find(routeKey(importerCode, hs6), date);
+    }
+
+    public Optional<PreferenceRate> findPreference(String importerCode, String exporterCode, String hs6,
+            LocalDate date) {
+        return preferences.find(routeKey(importerCode, exporterCode, hs6), date);
+    }
+
+    public Optional<SuspensionRate> findActiveSuspension(String importerCode, String hs6, LocalDate date) {
+        return suspensions.find(routeKey(importerCode, hs6), date);
+    }
+
+    // ---- Write-through updates ----
+
+    public void indexMeasure(Measure measure) {
+        if (measure.getMeasureId() != null) {
+            measures.put(measureKey(measure), toRate(measure));
+        }
+    }
+
+    public void indexPreference(Preference preference) {
+        if (preference.getPreferenceId() != null) {
+            preferences.put(preferenceKey(preference), toRate(preference));
+        }
+    }
+
+    public void indexSuspension(Suspension suspension) {
+        if (suspension.getSuspensionId() == null) {
+            return;
+        }
+        // Only flagged suspensions take part in rate resolution
+        if (suspension.isSuspensionFlag()) {
+            suspensions.put(suspensionKey(suspension), toRate(suspension));
+        } else {
+            suspensions.remove(suspension.getSuspensionId());
+        }
+    }
+
+    public void removeMeasure(Integer measureId) {
+        measures.remove(measureId);
+    }
+
+    public void removePreference(Integer preferenceId) {
+        preferences.remove(preferenceId);
+    }
+
+    public void removeSuspension(Integer suspensionId) {
+        suspensions.remove(suspensionId);
+    }
+
+    /**
+     * Get index size information.
+     */
+    public Map<String, Object> getIndexStatus() {
+        return Map.of(
+                "measures", measures.size(),
+                "preferences", preferences.size(),
+                "activeSuspensions", suspensions.size());
+    }
+
+    // ---- Key and row mapping ----
+
+    static String routeKey(String importerCode, String hs6) {
+        return importerCode + "|" + hs6;
+    }
+
+    static String routeKey(String importerCode, String exporterCode, String hs6) {
+        return importerCode + "|" + exporterCode + "|" + hs6;
+    }
+
+    private static String measureKey(Measure m) {
+        return routeKey(m.getImporter().getCountryCode(), m.getProduct().getHs6Code());
+    }
+
+    private static String preferenceKey(Preference p) {
+        return routeKey(p.getImporter().getCountryCode(), p.getExporter().getCountryCode(),
+                p.getProduct().getHs6Code());
+    }
+
+    private static String suspensionKey(Suspension s) {
+        return routeKey(s.getImporter().getCountryCode(), s.getProduct().getHs6Code());
+    }
+
+    private static MeasureRate toRate(Measure m) {
+        return new MeasureRate(m.getMeasureId(), m.getValidFrom(), m.getValidTo(),
+                m.getMfnAdvalRate(), m.getSpecificRatePerKg());
+    }
+
+    private static PreferenceRate toRate(Preference p) {
+        return new PreferenceRate(p.getPreferenceId(), p.getValidFrom(), p.getValidTo(), p.getPrefAdValRate());
+    }
+
+    private static SuspensionRate toRate(Suspension s) {
+        return new SuspensionRate(s.getSuspensionId(), s.getValidFrom(), s.getValidTo(), s.getSuspensionRate());
+    }
+
+    /**
+     * Per-key sorted interval arrays with copy-on-write updates.
+     *
+     * Each key maps to an immutable {@link Intervals} snapshot, so readers never lock.
+     * Writers are serialized on the index so the id-to-key map stays consistent with the arrays.
+     * Between beginReload and replaceAll, writes are also kept and replayed onto the reloaded rows.
+     */
+    static final class IntervalIndex<T extends RateInterval> {
+
+        private volatile Map<String, Intervals> byKey = new ConcurrentHashMap<>();
+        private volatile Map<Integer, String> keyById = new ConcurrentHashMap<>();
+
+        // Writes made since beginReload, in order; null when no reload is reading
+        private List<Runnable> writesDuringReload;
+
+        @SuppressWarnings("unchecked")
+        Optional<T> find(String key, LocalDate date) {
+            Intervals intervals = byKey.get(key);
+            if (intervals == null || date == null) {
+                return Optional.empty();
+            }
+            return Optional.ofNullable((T) intervals.find(date));
+        }
+
+        synchronized void put(String key, T row) {
+            putInternal(key, row);
+            if (writesDuringReload != null) {
+                writesDuringReload.add(() -> putInternal(key, row));
+            }
+        }
+
+        synchronized void remove(Integer id) {
+            removeInternal(id);
+            if (writesDuringReload != null) {
+                writesDuringReload.add(() -> removeInternal(id));
+            }
+        }
+
+        synchronized void beginReload() {
+            writesDuringReload = new ArrayList<>();
+        }
+
+        synchronized void endReload() {
+            writesDuringReload = null;
+        }
+
+        /**
+         * Publish rows read from the tables, then replay the writes made while they were read:
+         * a write may have landed after its table was read, and the rows would otherwise undo it.
+         */
+        synchronized void replaceAll(Map<String, ? extends List<T>> rows) {
+            Map<String, Intervals> newByKey = new ConcurrentHashMap<>();
+            Map<Integer, String> newKeyById = new ConcurrentHashMap<>();
+            rows.forEach((key, list) -> {
+                newByKey.put(key, Intervals.of(list));
+                list.forEach(row -> newKeyById.put(row.id(), key));
+            });
+            this.byKey = newByKey;
+            this.keyById = newKeyById;
+            if (writesDuringReload != null) {
+                writesDuringReload.forEach(Runnable::run);
+                writesDuringReload = new ArrayList<>();
+            }
+        }
+
+        int size() {
+            return keyById.size();
+        }
+
+        private void putInternal(String key, T row) {
+            removeInternal(row.id());
+            byKey.compute(key, (k, current) -> current == null
+                    ? Intervals.of(List.of(row))
+                    : current.with(row));
+            keyById.put(row.id(), key);
+        }
+
+        private void removeInternal(Integer id) {
+            String key = keyById.remove(id);
+            if (key != null) {
+                byKey.computeIfPresent(key, (k, current) -> current.without(id));
+            }
+        }
+    }
+
+    /**
+     * Immutable validFrom-sorted interval array for one key.
+     *
+     * maxEnd[i] holds the latest validTo (as epoch day, open-ended = Long.MAX_VALUE) among entries 0..i,
+     * so a backwards scan from the binary-search position stops as soon as no earlier interval can
+     * still cover the date. Overlapping rows resolve to the one with the latest validFrom.
+     */
+    static final class Intervals {
+
+        private final RateInterval[] entries;
+        private final long[] maxEnd;
+
+        private Intervals(RateInterval[] entries) {
+            this.entries = entries;
+            this.maxEnd = new long[entries.length];
+            long running = Long.MIN_VALUE;
+            for (int i = 0; i < entries.length; i++) {
+                running = Math.max(running, endOf(entries[i]));
+                maxEnd[i] = running;
+            }
+        }
+
+        static Intervals of(List<? extends RateInterval> rows) {
+            RateInterval[] sorted = rows.toArray(new RateInterval[0]);
+            Arrays.sort(sorted, Comparator.comparing(RateInterval::validFrom));
+            return new Intervals(sorted);
+        }
+
+        RateInterval find(LocalDate date) {
+            long day = date.toEpochDay();
+
+            // First index whose validFrom is after the date
+            int lo = 0;
+            int hi = entries.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (entries[mid].validFrom().toEpochDay() > day) {
+                    hi = mid;
+                } else {
+                    lo = mid + 1;
+                }
+            }
+
+            for (int i = lo - 1; i >= 0 && maxEnd[i] >= day; i--) {
+                if (endOf(entries[i]) >= day) {
+                    return entries[i];
+                }
+            }
+            return null;
+        }
+
+        Intervals with(RateInterval row) {
+            List<RateInterval> rows = new ArrayList<>(Arrays.asList(entries));
+            rows.add(row);
+            return of(rows);
+        }
+
+        Intervals without(Integer id) {
+            List<RateInterval> rows = new ArrayList<>(entries.length);
+            for (RateInterval entry : entries) {
+                if (!Objects.equals(entry.id(), id)) {
+                    rows.add(entry);
+                }
+            }
+            return rows.isEmpty() ? null : of(rows);
+        }
+
+        private static long endOf(RateInterval row) {
+            return row.validTo() == null ? Long.MAX_VALUE : row.validTo().toEpochDay();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.verbosegarbonzo.tariff.service;
+
+/**
+ * Count, mean and sum of squared deviations from the mean (Welford's M2) of a route's MFN rates.
+ *
+ * The statistics can be updated one rate at a time, in either direction, and two sets of rows
+ * can be merged, without the rows themselves. Sum and sum of squares follow from these and are
+ * not kept separately, since the sum of squares loses precision when the rates are large
+ * compared to their spread. NaN rates, i.e. rows without a rate, are ignored as in training.
+ *
+ * @param count rates included
+ * @param mean  their mean, 0 when count is 0
+ * @param m2    sum of squared deviations from the mean
+ */
+public record RateStats(long count, double mean, double m2) {
+
+    public static final RateStats EMPTY = new RateStats(0, 0, 0);
+
+    /**
+     * Statistics of the rates, computed in two passes.
+     */
+    public static RateStats of(double[] rates) {
+        long count = 0;
+        double sum = 0;
+        for (double rate : rates) {
+            if (!Double.isNaN(rate)) {
+                sum += rate;
+                count++;
+            }
+        }
+        if (count == 0) {
+            return EMPTY;
+        }
+
+        double mean = sum / count;
+        double m2 = 0;
+        for (double rate : rates) {
+            if (!Double.isNaN(rate)) {
+                double deviation = rate - mean;
+                m2 += deviation * deviation;
+            }
+        }
+        return new RateStats(count, mean, m2);
+    }
+
+    public RateStats add(double rate) {
+        if (Double.isNaN(rate)) {
+            return this;
+        }
+        long n = count + 1;
+        double delta = rate - mean;
+        double newMean = mean + delta / n;
+        return new RateStats(n, newMean, m2 + delta * (rate - newMean));
+    }
+
+    /**
+     * Take out a rate that was added before.
+     */
+    public RateStats remove(double rate) {
+        if (Double.isNaN(rate) || count == 0) {
+            return this;
+        }
+        long n = count - 1;
+        if (n == 0) {
+            return EMPTY;
+        }
+        double newMean = (count * mean - rate) / n;
+        // Rounding can take M2 just below zero when the remaining rates are all equal
+        return new RateStats(n, newMean, Math.max(0, m2 - (rate - mean) * (rate - newMean)));
+    }
+
+    /**
+     * Statistics of both sets of rates together.
+     */
+    public RateStats merge(RateStats other) {
+        if (other.count == 0) {
+            return this;
+        }
+        if (count == 0) {
+            return other;
+        }
+        long n = count + other.count;
+        double delta = other.mean - mean;
+        return new RateStats(n, mean + delta * other.count / n,
+            m2 + other.m2 + delta * delta * ((double) count * other.count / n));
+    }
+
+    public double sum() {
+        return mean * count;
+    }
+
+    public double sumOfSquares() {
+        return m2 + mean * mean * count;
+    }
+
+    /**
+     * Population standard deviation, as training has always used.
+     */
+    public double stdDev() {
+        return count > 0 ? Math.sqrt(m2 / count) : 0;
+    }
+}
@@ -0,0 +1,317 @@
+package com.verbosegarbonzo.tariff.service;
+
+import com.verbosegarbonzo.tariff.model.Country;
+import com.verbosegarbonzo.tariff.model.Measure;
+import com.verbosegarbonzo.tariff.model.MeasureTrainingRow;
+import com.verbosegarbonzo.tariff.model.Preference;
+import com.verbosegarbonzo.tariff.model.PreferenceTrainingRow;
+import com.verbosegarbonzo.tariff.model.Product;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Write-behind persistence for rates discovered through the WITS fallback.
+ *
+ * TariffService hands a newly fetched rate to enqueueMeasure/enqueuePreference and returns
+ * straight away. The rate goes into the rate index at once under a provisional (negative) id and
+ * into a pending map keyed by the table's unique key, so repeats of the same discovery collapse
+ * to one row. A scheduled flush batch-inserts pending rows with ON CONFLICT DO NOTHING, which
+ * keeps any row already in the table (e.g. entered by an admin), then swaps the provisional index
+ * entries for the stored rows. Rows actually inserted are passed on to the route models and the
+ * feature store. Pending rows are flushed once more on shutdown.
+ *
+ * A batch the database rejects is retried one row at a time, so one bad row cannot hold back the
+ * rest: a row refused for its data is logged and dropped, while any other failure (e.g. a lost
+ * connection) leaves the remaining rows pending for the next flush.
+ */
+@Service
+@Slf4j
+public class RateWriteBehindService {
+
+    // ON CONFLICT DO NOTHING is PostgreSQL syntax (H2 accepts it in PostgreSQL mode for the tests)
+    private static final String INSERT_MEASURE = "INSERT INTO measure "
+            + "(importer_code, product_code, valid_from, valid_to, mfn_adval_rate, specific_rate_per_kg) "
+            + "VALUES (?, ?, ?, ?, ?, NULL) ON CONFLICT DO NOTHING";
+
+    private static final String INSERT_PREFERENCE = "INSERT INTO preference "
+            + "(importer_code, exporter_code, product_code, valid_from, valid_to, pref_adval_rate) "
+            + "VALUES (?, ?, ?, ?, ?, ?) ON CONFLICT DO NOTHING";
+
+    private static final String SELECT_MEASURE = "SELECT measure_id, valid_to, mfn_adval_rate, specific_rate_per_kg "
+            + "FROM measure WHERE importer_code = ? AND product_code = ? AND valid_from = ?";
+
+    private static final String SELECT_PREFERENCE = "SELECT preference_id, valid_to, pref_adval_rate "
+            + "FROM preference WHERE importer_code = ? AND exporter_code = ? AND product_code = ? AND valid_from = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final RateIndexService rateIndex;
+    private final TariffMLService mlService;
+    private final int batchSize;
+    private final int maxPending;
+
+    private final Map<String, Measure> pendingMeasures = new ConcurrentHashMap<>();
+    private final Map<String, Preference> pendingPreferences = new ConcurrentHashMap<>();
+    private final AtomicInteger provisionalIds = new AtomicInteger();
+
+    public RateWriteBehindService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+            RateIndexService rateIndex, TariffMLService mlService,
+            @Value("${app.rates.write-behind.batch-size:500}") int batchSize,
+            @Value("${app.rates.write-behind.max-pending:10000}") int maxPending) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.rateIndex = rateIndex;
+        this.mlService = mlService;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxPending = maxPending;
+    }
+
+    private enum Outcome { INSERTED, EXISTED, REJECTED }
+
+    /**
+     * Queue an MFN rate valid for the calendar year of the given date.
+     */
+    public void enqueueMeasure(Country importer, Product product, BigDecimal rate, LocalDate date) {
+        Measure measure = new Measure();
+        measure.setImporter(importer);
+        measure.setProduct(product);
+        measure.setValidFrom(date.withDayOfYear(1)); // Start of year
+        measure.setValidTo(date.withDayOfYear(date.lengthOfYear())); // End of year
+        measure.setMfnAdvalRate(rate);
+
+        String key = RateIndexService.routeKey(importer.getCountryCode(), product.getHs6Code())
+                + "|" + measure.getValidFrom();
+        if (pendingMeasures.size() >= maxPending && !pendingMeasures.containsKey(key)) {
+            log.warn("Write-behind queue full, not persisting measure {}", key);
+            return;
+        }
+        measure.setMeasureId(provisionalIds.decrementAndGet());
+        if (pendingMeasures.putIfAbsent(key, measure) == null) {
+            rateIndex.indexMeasure(measure);
+        }
+    }
+
+    /**
+     * Queue a preferential rate valid for the calendar year of the given date.
+     */
+    public void enqueuePreference(Country importer, Country exporter, Product product, BigDecimal rate,
+            LocalDate date) {
+        Preference preference = new Preference();
+        preference.setImporter(importer);
+        preference.setExporter(exporter);
+        preference.setProduct(product);
+        preference.setValidFrom(date.withDayOfYear(1)); // Start of year
+        preference.setValidTo(date.withDayOfYear(date.lengthOfYear())); // End of year
+        preference.setPrefAdValRate(rate);
+
+        String key = RateIndexService.routeKey(importer.getCountryCode(), exporter.getCountryCode(),
+                product.getHs6Code()) + "|" + preference.getValidFrom();
+        if (pendingPreferences.size() >= maxPending && !pendingPreferences.containsKey(key)) {
+            log.warn("Write-behind queue full, not persisting preference {}", key);
+            return;
+        }
+        preference.setPreferenceId(provisionalIds.decrementAndGet());
+        if (pendingPreferences.putIfAbsent(key, preference) == null) {
+            rateIndex.indexPreference(preference);
+        }
+    }
+
+    /**
+     * Persist everything pending. Runs on a fixed delay and once more on shutdown.
+     */
+    @Scheduled(fixedDelayString = "${app.rates.write-behind.flush-delay-ms:2000}")
+    public synchronized void flush() {
+        if (pendingMeasures.isEmpty() && pendingPreferences.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        int measures = flushMeasures();
+        int preferences = flushPreferences();
+        log.info("Write-behind flushed {} measures and {} preferences in {} ms",
+                measures, preferences, System.currentTimeMillis() - start);
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        log.info("Flushing write-behind queue on shutdown");
+        flush();
+    }
+
+    /**
+     * Get queue size information.
+     */
+    public Map<String, Object> getQueueStatus() {
+        return Map.of(
+                "pendingMeasures", pendingMeasures.size(),
+                "pendingPreferences", pendingPreferences.size());
+    }
+
+    private int flushMeasures() {
+        Map<String, Measure> batch = new HashMap<>(pendingMeasures);
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        Map<String, Outcome> outcomes = insert("measure", INSERT_MEASURE, batch,
+                (ps, m) -> {
+                    ps.setString(1, m.getImporter().getCountryCode());
+                    ps.setString(2, m.getProduct().getHs6Code());
+                    ps.setDate(3, Date.valueOf(m.getValidFrom()));
+                    ps.setDate(4, Date.valueOf(m.getValidTo()));
+                    ps.setBigDecimal(5, m.getMfnAdvalRate());
+                });
+
+        batch.forEach((key, pending) -> {
+            Outcome outcome = outcomes.get(key);
+            if (outcome == null) {
+                return; // Stays pending and is retried on the next flush
+            }
+            pendingMeasures.remove(key, pending);
+            if (outcome == Outcome.REJECTED) {
+                rateIndex.removeMeasure(pending.getMeasureId());
+                return;
+            }
+            try {
+                jdbcTemplate.query(SELECT_MEASURE, rs -> {
+                    Measure stored = new Measure();
+                    stored.setMeasureId(rs.getInt("measure_id"));
+                    stored.setImporter(pending.getImporter());
+                    stored.setProduct(pending.getProduct());
+                    stored.setValidFrom(pending.getValidFrom());
+                    Date validTo = rs.getDate("valid_to");
+                    stored.setValidTo(validTo != null ? validTo.toLocalDate() : null);
+                    stored.setMfnAdvalRate(rs.getBigDecimal("mfn_adval_rate"));
+                    stored.setSpecificRatePerKg(rs.getBigDecimal("specific_rate_per_kg"));
+                    rateIndex.indexMeasure(stored);
+                }, pending.getImporter().getCountryCode(), pending.getProduct().getHs6Code(),
+                        Date.valueOf(pending.getValidFrom()));
+            } catch (Exception e) {
+                // The scheduled index reload picks the row up later
+                log.warn("Failed to re-index measure {}: {}", key, e.getMessage());
+            }
+            // Drop the provisional entry only after the stored row is indexed
+            rateIndex.removeMeasure(pending.getMeasureId());
+        });
+
+        // A row that hit ON CONFLICT was already in the table, and in the models
+        batch.forEach((key, row) -> {
+            if (outcomes.get(key) == Outcome.INSERTED) {
+                mlService.applyMeasureChange(null, MeasureTrainingRow.of(row));
+            }
+        });
+        return outcomes.size();
+    }
+
+    private int flushPreferences() {
+        Map<String, Preference> batch = new HashMap<>(pendingPreferences);
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        Map<String, Outcome> outcomes = insert("preference", INSERT_PREFERENCE, batch, (ps, p) -> {
+                    ps.setString(1, p.getImporter().getCountryCode());
+                    ps.setString(2, p.getExporter().getCountryCode());
+                    ps.setString(3, p.getProduct().getHs6Code());
+                    ps.setDate(4, Date.valueOf(p.getValidFrom()));
+                    ps.setDate(5, Date.valueOf(p.getValidTo()));
+                    ps.setBigDecimal(6, p.getPrefAdValRate());
+                });
+
+        batch.forEach((key, pending) -> {
+            Outcome outcome = outcomes.get(key);
+            if (outcome == null) {
+                return;
+            }
+            pendingPreferences.remove(key, pending);
+            if (outcome == Outcome.REJECTED) {
+                rateIndex.removePreference(pending.getPreferenceId());
+                return;
+            }
+            try {
+                jdbcTemplate.query(SELECT_PREFERENCE, rs -> {
+                    Preference stored = new Preference();
+                    stored.setPreferenceId(rs.getInt("preference_id"));
+                    stored.setImporter(pending.getImporter());
+                    stored.setExporter(pending.getExporter());
+                    stored.setProduct(pending.getProduct());
+                    stored.setValidFrom(pending.getValidFrom());
+                    Date validTo = rs.getDate("valid_to");
+                    stored.setValidTo(validTo != null ? validTo.toLocalDate() : null);
+                    stored.setPrefAdValRate(rs.getBigDecimal("pref_adval_rate"));
+                    rateIndex.indexPreference(stored);
+                }, pending.getImporter().getCountryCode(), pending.getExporter().getCountryCode(),
+                        pending.getProduct().getHs6Code(), Date.valueOf(pending.getValidFrom()));
+            } catch (Exception e) {
+                log.warn("Failed to re-index preference {}: {}", key, e.getMessage());
+            }
+            rateIndex.removePreference(pending.getPreferenceId());
+        });
+
+        batch.forEach((key, row) -> {
+            if (outcomes.get(key) == Outcome.INSERTED) {
+                mlService.applyPreferenceChange(null, PreferenceTrainingRow.of(row));
+            }
+        });
+        return outcomes.size();
+    }
+
+    /**
+     * Insert rows batchSize at a time. Each batch runs in its own transaction, so a failed batch
+     * leaves nothing behind whatever the driver does with the rows before the failing one, and is
+     * retried row by row: a row refused for its data (DataIntegrityViolationException) is
+     * REJECTED, and any other failure stops the flush.
+     *
+     * @return the outcome per pending key of each row that reached the database; rows missing
+     *         from it stay pending
+     */
+    private <T> Map<String, Outcome> insert(String table, String sql, Map<String, T> batch,
+            ParameterizedPreparedStatementSetter<T> setter) {
+        List<Map.Entry<String, T>> rows = new ArrayList<>(batch.entrySet());
+        Map<String, Outcome> outcomes = new HashMap<>();
+        for (int from = 0; from < rows.size(); from += batchSize) {
+            List<Map.Entry<String, T>> chunk = rows.subList(from, Math.min(from + batchSize, rows.size()));
+            try {
+                int[] counts = transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(sql, chunk,
+                        chunk.size(), (ps, row) -> setter.setValues(ps, row.getValue()))[0]);
+                for (int i = 0; i < chunk.size(); i++) {
+                    outcomes.put(chunk.get(i).getKey(), inserted(counts[i]) ? Outcome.INSERTED : Outcome.EXISTED);
+                }
+            } catch (Exception batchFailure) {
+                log.warn("Batch insert of {} {} rows failed, inserting one at a time: {}",
+                        chunk.size(), table, batchFailure.getMessage());
+                for (Map.Entry<String, T> row : chunk) {
+                    try {
+                        int count = jdbcTemplate.update(sql, ps -> setter.setValues(ps, row.getValue()));
+                        outcomes.put(row.getKey(), inserted(count) ? Outcome.INSERTED : Outcome.EXISTED);
+                    } catch (DataIntegrityViolationException e) {
+                        log.error("Dropping {} {} rejected by the database: {}", table, row.getKey(), e.getMessage());
+                        outcomes.put(row.getKey(), Outcome.REJECTED);
+                    } catch (Exception e) {
+                        // Not about this row: the rest stay pending and are retried on the next flush
+                        log.error("Failed to flush {} rows: {}", table, e.getMessage());
+                        return outcomes;
+                    }
+                }
+            }
+        }
+        return outcomes;
+    }
+
+    private static boolean inserted(int count) {
+        return count > 0 || count == Statement.SUCCESS_NO_INFO;
+    }
+}
@@ -0,0 +1,283 @@
+package com.verbosegarbonzo.tariff.service;
+
+import com.verbosegarbonzo.tariff.config.MLModelProperties;
+import com.verbosegarbonzo.tariff.model.AIRecommendationResponse;
+import com.verbosegarbonzo.tariff.model.ProfileType;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Cache of AIRecommendationService.getTimingRecommendation results.
+ *
+ * A recommendation looks a year ahead from the day it was computed, so entries are keyed by route,
+ * profile and that day, and a new day misses. An entry is fresh for app.ml.recommendations.ttl;
+ * for max-stale after that it is still served while it is recomputed once in the background, so a
+ * hot route is refreshed without a request waiting on it. Older entries are recomputed on the
+ * request, and concurrent requests for one key share one computation. Failures are not cached,
+ * and a degraded recommendation (built on an estimated current rate) is kept for degraded-ttl
+ * only, with no stale period, so a measure that becomes readable is picked up soon.
+ *
+ * A write to a route's measures, preferences or suspensions (FeatureStore) or a single-route model
+ * update evicts that importer and product for every exporter and profile. A training run or
+ * rollback marks every entry stale instead, so each is recomputed in the background on its next
+ * request. At most max-entries are kept: when full, expired entries are dropped, then the least
+ * recently used tenth.
+ */
+@Service
+@Slf4j
+public class RecommendationCache implements TariffMLService.ModelUpdateListener {
+
+    private final MLModelProperties mlProperties;
+    private final FeatureStore featureStore;
+    private final TariffMLService mlService;
+
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<Key, Load> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // Recomputes of stale entries, one at a time; a burst of stale hits is coalesced per key
+    private final ExecutorService revalidationExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "recommendation-revalidation");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Overridable so tests can move time forward
+    LongSupplier ticker = System::nanoTime;
+
+    public RecommendationCache(MLModelProperties mlProperties, FeatureStore featureStore, TariffMLService mlService) {
+        this.mlProperties = mlProperties;
+        this.featureStore = featureStore;
+        this.mlService = mlService;
+    }
+
+    record Key(String importerCode, String exporterCode, String hs6Code, ProfileType profile, LocalDate day) {
+    }
+
+    private static final class Entry {
+        final AIRecommendationResponse response;
+        final long expiresAt;
+        volatile long staleAt;
+        volatile long lastAccess;
+
+        Entry(AIRecommendationResponse response, long now, long ttlNanos, long maxStaleNanos) {
+            this.response = response;
+            this.staleAt = now + ttlNanos;
+            this.expiresAt = now + ttlNanos + maxStaleNanos;
+            this.lastAccess = now;
+        }
+    }
+
+    /**
+     * A computation in progress. Evictions and staleness that arrive meanwhile are recorded on it,
+     * so a result computed from data that has since changed is not served as fresh.
+     */
+    private static final class Load {
+        final CompletableFuture<AIRecommendationResponse> result = new CompletableFuture<>();
+        volatile boolean invalidated;
+        volatile boolean stale;
+    }
+
+    @PostConstruct
+    void register() {
+        featureStore.addChangeListener(this::routeUpdated);
+        mlService.addModelUpdateListener(this);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        revalidationExecutor.shutdownNow();
+    }
+
+    /**
+     * The cached recommendation for the route and profile today, computed with loader on a miss.
+     * Exceptions from loader are thrown to every caller waiting on that computation.
+     */
+    public AIRecommendationResponse get(String importerCode, String exporterCode, String hs6Code,
+            ProfileType profile, Supplier<AIRecommendationResponse> loader) {
+        if (!mlProperties.getRecommendations().isCacheEnabled()) {
+            return loader.get();
+        }
+        Key key = new Key(importerCode, exporterCode, hs6Code, profile, LocalDate.now());
+        long now = ticker.getAsLong();
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            if (now - entry.staleAt < 0) {
+                hits.increment();
+                entry.lastAccess = now;
+                return entry.response;
+            }
+            if (now - entry.expiresAt < 0) {
+                staleHits.increment();
+                entry.lastAccess = now;
+                revalidate(key, loader);
+                return entry.response;
+            }
+            entries.remove(key, entry);
+        }
+        misses.increment();
+
+        Load load = new Load();
+        Load existing = inFlight.putIfAbsent(key, load);
+        if (existing != null) {
+            try {
+                return existing.result.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        return compute(key, loader, load);
+    }
+
+    private void revalidate(Key key, Supplier<AIRecommendationResponse> loader) {
+        Load load = new Load();
+        if (inFlight.putIfAbsent(key, load) != null) {
+            return;
+        }
+        try {
+            revalidationExecutor.execute(() -> {
+                try {
+                    compute(key, loader, load);
+                } catch (RuntimeException e) {
+                    log.warn("Could not revalidate recommendation for {}: {}", key, e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(key, load);
+        }
+    }
+
+    private AIRecommendationResponse compute(Key key, Supplier<AIRecommendationResponse> loader, Load load) {
+        try {
+            AIRecommendationResponse response = loader.get();
+            store(key, response, load);
+            load.result.complete(response);
+            return response;
+        } catch (Throwable e) {
+            // Errors too: callers waiting on this load would otherwise block forever
+            load.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, load);
+        }
+    }
+
+    private void store(Key key, AIRecommendationResponse response, Load load) {
+        if (load.invalidated) {
+            return;
+        }
+        MLModelProperties.Recommendations settings = mlProperties.getRecommendations();
+        long now = ticker.getAsLong();
+        if (entries.size() >= settings.getMaxEntries() && !entries.containsKey(key)) {
+            trim(settings.getMaxEntries(), now);
+        }
+        Entry entry = Boolean.TRUE.equals(response.getDegraded())
+            ? new Entry(response, now, settings.getDegradedTtl().toNanos(), 0)
+            : new Entry(response, now, settings.getTtl().toNanos(), settings.getMaxStale().toNanos());
+        entries.put(key, entry);
+        // Evictions and staleness mark in-flight loads before touching entries, so checking again
+        // after the put catches one that ran between the first check and the put
+        if (load.invalidated) {
+            entries.remove(key, entry);
+        } else if (load.stale) {
+            entry.staleAt = now;
+        }
+    }
+
+    /**
+     * Make room below maxEntries: drop entries that expired or belong to an earlier day, then the
+     * least recently used tenth if that was not enough.
+     */
+    private void trim(int maxEntries, long now) {
+        LocalDate today = LocalDate.now();
+        entries.entrySet().removeIf(e -> now - e.getValue().expiresAt >= 0 || !e.getKey().day().equals(today));
+        if (entries.size() < maxEntries) {
+            return;
+        }
+        List<Map.Entry<Key, Entry>> byAccess = entries.entrySet().stream()
+            .sorted(Comparator.comparingLong(e -> e.getValue().lastAccess))
+            .toList();
+        int excess = entries.size() - maxEntries + Math.max(1, maxEntries / 10);
+        for (int i = 0; i < Math.min(excess, byAccess.size()); i++) {
+            Map.Entry<Key, Entry> oldest = byAccess.get(i);
+            entries.remove(oldest.getKey(), oldest.getValue());
+        }
+    }
+
+    /**
+     * Evict every exporter and profile of the importer's product, including computations still
+     * running for it.
+     */
+    @Override
+    public void routeUpdated(String importerCode, String hs6Code) {
+        inFlight.forEach((key, load) -> {
+            if (matches(key, importerCode, hs6Code)) {
+                load.invalidated = true;
+            }
+        });
+        entries.entrySet().removeIf(e -> {
+            boolean match = matches(e.getKey(), importerCode, hs6Code);
+            if (match) {
+                evictions.increment();
+            }
+            return match;
+        });
+    }
+
+    /**
+     * Every forecast may have changed: serve what is cached once more while it is recomputed.
+     */
+    @Override
+    public void allRoutesUpdated() {
+        inFlight.values().forEach(load -> load.stale = true);
+        long now = ticker.getAsLong();
+        entries.values().forEach(entry -> entry.staleAt = now);
+    }
+
+    private static boolean matches(Key key, String importerCode, String hs6Code) {
+        return Objects.equals(key.importerCode(), importerCode) && Objects.equals(key.hs6Code(), hs6Code);
+    }
+
+    public void clear() {
+        inFlight.values().forEach(load -> load.invalidated = true);
+        entries.clear();
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", mlProperties.getRecommendations().isCacheEnabled());
+        status.put("entries", entries.size());
+        status.put("maxEntries", mlProperties.getRecommendations().getMaxEntries());
+        status.put("hits", hits.sum());
+        status.put("staleHits", staleHits.sum());
+        status.put("misses", misses.sum());
+        status.put("evictions", evictions.sum());
+        status.put("computing", inFlight.size());
+        return status;
+    }
+}
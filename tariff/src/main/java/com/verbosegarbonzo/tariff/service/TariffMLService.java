@@ -4,9 +4,12 @@ import com.verbosegarbonzo.tariff.config.MLModelProperties;
 import com.verbosegarbonzo.tariff.model.*;
 import com.verbosegarbonzo.tariff.repository.*;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
@@ -16,9 +19,27 @@ import java.math.RoundingMode;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
 
 /**
  * Machine Learning service for tariff rate forecasting.
@@ -31,11 +52,64 @@ import java.util.*;
 public class TariffMLService {
 
     private final MeasureRepository measureRepository;
+    private final TrainingDataReader trainingDataReader;
     private final MLModelProperties mlProperties;
+    private final FeatureStore featureStore;
 
-    private LocalDate lastModelTrainDate;
-    private boolean modelTrained = false;
-    private Map<String, TariffMLModel> tradeRouteModels = new HashMap<>();
+    // Routes handed to the pool but not yet trained, per training thread; bounds memory while streaming
+    private static final int ROUTES_IN_FLIGHT_PER_THREAD = 4;
+
+    // Replaced snapshots kept for rollback
+    private static final int RETAINED_SNAPSHOTS = 3;
+
+    // Readers take the current snapshot without locking; training publishes a new one
+    private final ModelRegistry registry = new ModelRegistry(RETAINED_SNAPSHOTS);
+    private volatile TrainingMetrics lastTrainingMetrics;
+
+    // Training runs on its own thread, one run at a time
+    private final ExecutorService trainingExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ml-model-training");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicReference<TrainingRun> currentRun = new AtomicReference<>();
+
+    // Orders route updates from measure writes with the publish at the end of a training run
+    private final Object modelUpdateLock = new Object();
+
+    // The model file is written by one background thread, in publish order
+    private final ExecutorService persistenceExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ml-model-persistence");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile CompletableFuture<Void> pendingPersistence = CompletableFuture.completedFuture(null);
+    private final AtomicBoolean routeUpdatesUnsaved = new AtomicBoolean();
+
+    private final List<ModelUpdateListener> updateListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Told when forecasts may have changed: for one importer and product after a measure,
+     * preference or suspension write, or for every route after training publishes or a rollback. Called on the thread that made
+     * the change, possibly holding locks, so implementations should hand work off.
+     */
+    public interface ModelUpdateListener {
+
+        void routeUpdated(String importerCode, String hs6Code);
+
+        void allRoutesUpdated();
+    }
+
+    public void addModelUpdateListener(ModelUpdateListener listener) {
+        updateListeners.add(listener);
+    }
+
+    /**
+     * Whether any route model has been trained or loaded yet.
+     */
+    public boolean hasTrainedModels() {
+        return !registry.current().isEmpty();
+    }
 
     /**
      * Initialize: load or prepare ML models.
@@ -52,89 +126,271 @@ public class TariffMLService {
             if (mlProperties.getModel().isEnabled()) {
                 if (loadModelsFromDisk()) {
                     log.info("Successfully loaded existing ML models");
-                    this.modelTrained = true;
                 } else {
                     log.info("No existing models found. Models will be trained on first request.");
-                    this.modelTrained = false;
                 }
             }
-
-            this.lastModelTrainDate = LocalDate.now();
         } catch (Exception e) {
             log.error("Failed to initialize ML model service", e);
-            this.modelTrained = false;
         }
     }
 
     /**
-     * Train new ML models on historical data.
-     * Trains separate models for different trade routes based on historical patterns.
+     * Train new ML models on historical data and wait for them.
+     * Joins the run already in progress, if any, rather than starting another; see trainInBackground.
      */
     public void trainNewModel() {
-        log.info("trainNewModel() called - mlEnabled: {}, modelTrained: {}",
-            mlProperties.getModel().isEnabled(), modelTrained);
+        trainInBackground("manual").join();
+    }
 
+    /**
+     * Start training on the training thread unless a run is already in progress (single flight):
+     * every caller during a run gets that run's future. Completes when the run is done, whether
+     * or not it trained anything; failures are logged, not propagated.
+     *
+     * @param trigger what asked for the run, reported in the training status
+     */
+    public CompletableFuture<Void> trainInBackground(String trigger) {
         if (!mlProperties.getModel().isEnabled()) {
             log.info("ML model training disabled in configuration");
-            return;
+            return CompletableFuture.completedFuture(null);
         }
 
-        try {
-            log.info("*** STARTING ML MODEL TRAINING ON HISTORICAL DATA ***");
+        while (true) {
+            TrainingRun running = currentRun.get();
+            if (running != null) {
+                log.debug("Training already in progress ({}), joining it", running.trigger);
+                return running.done;
+            }
+            TrainingRun run = new TrainingRun(trigger);
+            if (currentRun.compareAndSet(null, run)) {
+                try {
+                    trainingExecutor.execute(() -> {
+                        try {
+                            train(run);
+                        } finally {
+                            currentRun.compareAndSet(run, null);
+                            run.done.complete(null);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    log.warn("Training not started - service is shutting down");
+                    currentRun.compareAndSet(run, null);
+                    run.done.complete(null);
+                }
+                return run.done;
+            }
+        }
+    }
 
-            // Fetch all historical measures
-            List<Measure> historicalData = measureRepository.findAll();
+    /**
+     * Start the first training in the background once the application is ready, so the first
+     * requests after a deploy get the fallback instead of waiting for a full training run.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void trainOnStartup() {
+        if (registry.current().isEmpty()) {
+            trainInBackground("startup");
+        }
+    }
+
+    /**
+     * Trains separate models for different trade routes based on historical patterns.
+     * Routes are read one at a time from TrainingDataReader and trained in parallel on a
+     * ForkJoinPool while the next route is read. The new models are published to the registry
+     * as one snapshot once all routes are done, and written to disk in the background; until
+     * then, and if training fails, predictions keep using the current snapshot.
+     */
+    private void train(TrainingRun run) {
+        log.info("Training started ({}) - modelTrained: {}", run.trigger, !registry.current().isEmpty());
 
-            if (historicalData.isEmpty()) {
+        try {
+            long started = System.nanoTime();
+            int parallelism = trainingParallelism();
+            int minSamples = mlProperties.getModel().getMinTrainingSamples();
+
+            Map<String, TariffMLModel> trained = new ConcurrentHashMap<>();
+            RouteTimings timings = new RouteTimings();
+            long rowCount;
+
+            // Train a model for each significant trade route as soon as its rows are read
+            try (ForkJoinPool pool = new ForkJoinPool(parallelism)) {
+                Semaphore inFlight = new Semaphore(parallelism * ROUTES_IN_FLIGHT_PER_THREAD);
+                rowCount = trainingDataReader.forEachRoute(route -> {
+                    run.routesRead.incrementAndGet();
+                    run.rowsRead.addAndGet(route.size());
+                    if (route.size() < minSamples) { // Need minimum configured records for meaningful model
+                        log.debug("Skipping trade route {} - only {} records (need {})",
+                            route.tradeRoute(), route.size(), minSamples);
+                        return;
+                    }
+                    inFlight.acquireUninterruptibly();
+                    pool.execute(() -> {
+                        try {
+                            long routeStarted = System.nanoTime();
+                            trained.put(route.tradeRoute(), trainModelForRoute(route));
+                            timings.record(route.tradeRoute(), System.nanoTime() - routeStarted);
+                            run.routesTrained.incrementAndGet();
+                            log.debug("Trained model for trade route: {} with {} records", route.tradeRoute(), route.size());
+                        } catch (Exception e) {
+                            log.warn("Failed to train model for route {}: {}", route.tradeRoute(), e.getMessage());
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                });
+            } // close() waits for the queued routes
+
+            if (rowCount == 0) {
                 log.warn("No historical data available for training");
-                this.modelTrained = false;
                 return;
             }
 
-            log.info("Training models on {} historical records", historicalData.size());
-
-            // Group data by importer and product
-            Map<String, List<Measure>> groupedData = groupByTradeRoute(historicalData);
-            log.info("Grouped data into {} trade routes", groupedData.size());
-
-            // Train a model for each significant trade route
-            int trainedCount = 0;
-            int skippedCount = 0;
-            for (Map.Entry<String, List<Measure>> entry : groupedData.entrySet()) {
-                String tradeRoute = entry.getKey();
-                List<Measure> routeData = entry.getValue();
-
-                log.info("Trade route {}: {} records", tradeRoute, routeData.size());
-
-                int minSamples = mlProperties.getModel().getMinTrainingSamples();
-                if (routeData.size() >= minSamples) { // Need minimum configured records for meaningful model
-                    try {
-                        TariffMLModel model = trainModelForRoute(tradeRoute, routeData);
-                        tradeRouteModels.put(tradeRoute, model);
-                        trainedCount++;
-                        log.info("Trained model for trade route: {} with {} records", tradeRoute, routeData.size());
-                    } catch (Exception e) {
-                        log.warn("Failed to train model for route {}: {}", tradeRoute, e.getMessage());
-                    }
-                } else {
-                    skippedCount++;
-                    log.debug("Skipping trade route {} - only {} records (need {})", tradeRoute, routeData.size(), minSamples);
+            ModelRegistry.Snapshot published;
+            Set<Route> changedDuringRun;
+            synchronized (modelUpdateLock) {
+                published = registry.current();
+                if (!trained.isEmpty()) {
+                    // Routes that were not retrained keep their current model
+                    published = registry.publish("training", current -> {
+                        Map<String, TariffMLModel> updated = new HashMap<>(current);
+                        updated.putAll(trained);
+                        return updated;
+                    });
                 }
+                run.published = true;
+                changedDuringRun = Set.copyOf(run.changedRoutes);
+            }
+            if (!trained.isEmpty()) {
+                saveModelsAsync(published.models());
             }
 
-            this.lastModelTrainDate = LocalDate.now();
-            this.modelTrained = !tradeRouteModels.isEmpty();
-
-            if (modelTrained) {
-                saveModelsToDisk();
+            // The run may have read these routes before or after their measures changed
+            for (Route route : changedDuringRun) {
+                synchronized (modelUpdateLock) {
+                    retrainRoute(route);
+                }
+            }
+            if (!changedDuringRun.isEmpty()) {
+                log.info("Retrained {} routes whose measures changed during training", changedDuringRun.size());
+                saveRouteUpdatesAsync();
+            }
+            if (!trained.isEmpty() || !changedDuringRun.isEmpty()) {
+                updateListeners.forEach(ModelUpdateListener::allRoutesUpdated);
             }
 
-            log.info("ML model training completed. Trained: {}, Skipped: {}, Total models: {}",
-                trainedCount, skippedCount, tradeRouteModels.size());
+            this.lastTrainingMetrics = timings.toMetrics(run.routesRead.get(), System.nanoTime() - started);
+            log.info("ML model training completed on {} records. Trained: {}, Skipped: {}, Total models: {} (version {}), took {} ms",
+                rowCount, trained.size(), run.routesRead.get() - trained.size(), published.models().size(),
+                published.version(), lastTrainingMetrics.totalMillis());
 
         } catch (Exception e) {
             log.error("Error during ML model training", e);
-            this.modelTrained = false;
+        }
+    }
+
+    /**
+     * A training run in progress. The counters are updated from the reading and training threads
+     * and read by getTrainingStatus.
+     */
+    private static final class TrainingRun {
+        final String trigger;
+        final Instant startedAt = Instant.now();
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        final AtomicInteger routesRead = new AtomicInteger();
+        final AtomicLong rowsRead = new AtomicLong();
+        final AtomicInteger routesTrained = new AtomicInteger();
+
+        // Guarded by modelUpdateLock: routes whose measures changed before the run published
+        final Set<Route> changedRoutes = new HashSet<>();
+        boolean published;
+
+        TrainingRun(String trigger) {
+            this.trigger = trigger;
+        }
+    }
+
+    /**
+     * Whether training is running and how far it has got, plus the timings of the last run.
+     */
+    public Map<String, Object> getTrainingStatus() {
+        TrainingRun run = currentRun.get();
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("running", run != null);
+        if (run != null) {
+            status.put("trigger", run.trigger);
+            status.put("startedAt", run.startedAt.toString());
+            status.put("elapsedMillis", Duration.between(run.startedAt, Instant.now()).toMillis());
+            status.put("routesRead", run.routesRead.get());
+            status.put("rowsRead", run.rowsRead.get());
+            status.put("routesTrained", run.routesTrained.get());
+        }
+        status.put("modelVersion", registry.current().version());
+        status.put("lastTraining", lastTrainingMetrics != null ? lastTrainingMetrics.toMap() : Map.of());
+        return status;
+    }
+
+    private int trainingParallelism() {
+        int configured = mlProperties.getTraining().getParallelism();
+        return configured > 0 ? configured : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Per-route training times, recorded from the training threads.
+     */
+    private static final class RouteTimings {
+        private int trained;
+        private long sumNanos;
+        private long maxNanos;
+        private String slowestRoute;
+
+        synchronized void record(String tradeRoute, long nanos) {
+            trained++;
+            sumNanos += nanos;
+            if (slowestRoute == null || nanos > maxNanos) {
+                maxNanos = nanos;
+                slowestRoute = tradeRoute;
+            }
+        }
+
+        synchronized TrainingMetrics toMetrics(int routes, long totalNanos) {
+            return new TrainingMetrics(
+                routes,
+                trained,
+                TimeUnit.NANOSECONDS.toMillis(totalNanos),
+                trained > 0 ? sumNanos / 1000.0 / trained : 0,
+                TimeUnit.NANOSECONDS.toMicros(maxNanos),
+                slowestRoute);
+        }
+    }
+
+    /**
+     * Timings of the last training run.
+     *
+     * @param routes            trade routes in the training data
+     * @param trainedRoutes     routes that got a model
+     * @param totalMillis       the whole run: read and train (excludes the background save)
+     * @param meanRouteMicros   mean time to train one route
+     * @param maxRouteMicros    slowest route
+     * @param slowestRoute      the route that took maxRouteMicros
+     */
+    public record TrainingMetrics(
+            int routes,
+            int trainedRoutes,
+            long totalMillis,
+            double meanRouteMicros,
+            long maxRouteMicros,
+            String slowestRoute) {
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("routes", routes);
+            map.put("trainedRoutes", trainedRoutes);
+            map.put("totalMillis", totalMillis);
+            map.put("meanRouteMicros", meanRouteMicros);
+            map.put("maxRouteMicros", maxRouteMicros);
+            map.put("slowestRoute", slowestRoute);
+            return map;
         }
     }
 
@@ -151,7 +407,9 @@ public class TariffMLService {
 
         try {
             // Check if we have recent historical data
-            long historicalCount = measureRepository.countHistoricalRecords(importerCode, hs6Code);
+            long historicalCount = featureStore.isReady()
+                ? featureStore.measures(importerCode, hs6Code).size()
+                : measureRepository.countHistoricalRecords(importerCode, hs6Code);
 
             if (historicalCount == 0) {
                 log.warn("No historical data for {}/{}", importerCode, hs6Code);
@@ -159,18 +417,19 @@ public class TariffMLService {
             }
 
             // Try to get trained model for this trade route
-            String tradeRoute = importerCode + "-" + hs6Code;
-            TariffMLModel model = tradeRouteModels.get(tradeRoute);
+            ModelRegistry.Snapshot models = registry.current();
+            TariffMLModel model = routeModel(models, importerCode, exporterCode, hs6Code);
+            String tradeRoute = model != null ? model.getTradeRoute() : importerCode + "-" + hs6Code;
 
-            if (model != null && modelTrained) {
+            if (model != null) {
                 // Use ML model prediction
                 log.info("✅ Using ML MODEL for {}", tradeRoute);
                 return predictWithMLModel(model, importerCode, exporterCode, hs6Code, targetDate);
             } else {
                 // Use statistical fallback when model not available
-                log.info("⚠️  Using FALLBACK for {} (model available: {}, modelTrained: {})",
-                    tradeRoute, model != null, modelTrained);
-                log.info("📊 Available models: {}", tradeRouteModels.keySet());
+                log.info("⚠️  Using FALLBACK for {} (model version: {}, modelTrained: {})",
+                    tradeRoute, models.version(), !models.isEmpty());
+                log.info("📊 Available models: {}", models.models().size());
                 return createFallbackForecast(importerCode, exporterCode, hs6Code, targetDate, true);
             }
 
@@ -181,123 +440,216 @@ public class TariffMLService {
     }
 
     /**
-     * Optimized prediction for batch operations.
-     * Uses pre-fetched historical data to avoid repeated database queries.
-     * Internal method used by predictRateRange() to minimize database calls.
+     * Predict rates for a date range using trained models.
+     * Used to identify optimal and avoid periods.
+     * Weekly averages, minimum, maximum and confidence of the daily horizon forecast.
      */
-    private ForecastResult predictTariffRateOptimized(
+    public List<DateRangeForecast> predictRateRange(
             String importerCode,
             String exporterCode,
             String hs6Code,
-            LocalDate targetDate,
-            List<Measure> cachedHistoricalRates) {
-
-        try {
-            if (cachedHistoricalRates.isEmpty()) {
-                return createFallbackForecastOptimized(importerCode, exporterCode, hs6Code, targetDate, false, cachedHistoricalRates);
-            }
+            LocalDate startDate,
+            LocalDate endDate) {
 
-            // Try to get trained model for this trade route
-            String tradeRoute = importerCode + "-" + hs6Code;
-            TariffMLModel model = tradeRouteModels.get(tradeRoute);
+        return scoreHorizon(importerCode, exporterCode, hs6Code, startDate, endDate).weekly();
+    }
 
-            if (model != null && modelTrained) {
-                // Use ML model prediction with cached features
-                return predictWithMLModelOptimized(model, importerCode, exporterCode, hs6Code, targetDate, cachedHistoricalRates);
-            } else {
-                // Use fallback with pre-fetched data
-                return createFallbackForecastOptimized(importerCode, exporterCode, hs6Code, targetDate, true, cachedHistoricalRates);
-            }
+    /**
+     * Score every day from startDate (inclusive) to endDate (exclusive) in one go.
+     *
+     * The route's history is fetched and aggregated once. The mean model's rate depends only on
+     * the month, so each month is scored once and copied across its days; tree models are scored
+     * one row per day in a single batch. Each row carries the same 3-year average as
+     * predictTariffRate's feature vector. The fallback rate is constant over the horizon. Gives the
+     * same daily rates and confidence as predictTariffRate.
+     */
+    public HorizonForecast scoreHorizon(
+            String importerCode,
+            String exporterCode,
+            String hs6Code,
+            LocalDate startDate,
+            LocalDate endDate) {
 
-        } catch (Exception e) {
-            log.error("Optimized prediction failed, using fallback", e);
-            return createFallbackForecastOptimized(importerCode, exporterCode, hs6Code, targetDate, true, cachedHistoricalRates);
-        }
+        return scoreHorizon(importerCode, exporterCode, hs6Code, startDate, endDate, recentRates(importerCode, hs6Code));
     }
 
     /**
-     * Predict rates for a date range using trained models.
-     * Used to identify optimal and avoid periods.
-     * Optimized to minimize database queries by caching historical data.
+     * scoreHorizon with the route's history already read by recentHistories, for scoring many
+     * routes over one set of reads.
      */
-    public List<DateRangeForecast> predictRateRange(
+    public HorizonForecast scoreHorizon(
             String importerCode,
             String exporterCode,
             String hs6Code,
             LocalDate startDate,
-            LocalDate endDate) {
+            LocalDate endDate,
+            RateHistory measures) {
+
+        return scoreHorizon(importerCode, exporterCode, hs6Code, startDate, endDate, recentRates(measures));
+    }
+
+    private HorizonForecast scoreHorizon(
+            String importerCode,
+            String exporterCode,
+            String hs6Code,
+            LocalDate startDate,
+            LocalDate endDate,
+            RecentRates recent) {
+
+        ModelRegistry.Snapshot models = registry.current();
+        log.debug("scoreHorizon() called - model version: {}, mlEnabled: {}, modelCount: {}",
+            models.version(), mlProperties.getModel().isEnabled(), models.models().size());
+
+        // Start training if there are no models yet; this request gets the fallback
+        if (models.isEmpty() && mlProperties.getModel().isEnabled()) {
+            log.info("Models not trained yet. Training in the background, using fallback meanwhile");
+            trainInBackground("first request");
+        }
+
+        int days = startDate.isBefore(endDate) ? (int) ChronoUnit.DAYS.between(startDate, endDate) : 0;
+        double[] rates = new double[days];
+        int[] confidence = new int[days];
+
+        if (recent.count() == 0) {
+            Arrays.fill(confidence, 40);
+            return new HorizonForecast(startDate, rates, confidence, false);
+        }
 
-        log.info("*** predictRateRange() called - modelTrained: {}, mlEnabled: {}, modelCount: {}",
-            modelTrained, mlProperties.getModel().isEnabled(), tradeRouteModels.size());
-
-        // Train models on first request if not already trained
-        if (!modelTrained && mlProperties.getModel().isEnabled()) {
-            log.info("*** Models not trained yet. Training on first request...");
-            trainNewModel();
-            log.info("*** Training completed. Models count: {}", tradeRouteModels.size());
-        }
-
-        // Pre-fetch historical data once instead of querying for every date
-        LocalDate threeYearsAgo = LocalDate.now().minusYears(3);
-        List<Measure> cachedHistoricalRates = measureRepository.findHistoricalRates(
-            importerCode, hs6Code, threeYearsAgo, LocalDate.now());
-        log.info("Pre-fetched {} historical records for {}-{} to optimize queries",
-            cachedHistoricalRates.size(), importerCode, hs6Code);
-
-        List<DateRangeForecast> results = new ArrayList<>();
-        LocalDate currentDate = startDate;
-
-        // Predict weekly averages for efficiency
-        while (currentDate.isBefore(endDate)) {
-            LocalDate weekEnd = currentDate.plusDays(6);
-            List<ForecastResult> weekForecasts = new ArrayList<>();
-
-            // Predict each day in the week
-            LocalDate dayIterator = currentDate;
-            while (dayIterator.isBefore(weekEnd.plusDays(1)) && dayIterator.isBefore(endDate)) {
-                ForecastResult forecast = predictTariffRateOptimized(importerCode, exporterCode, hs6Code, dayIterator, cachedHistoricalRates);
-                weekForecasts.add(forecast);
-                dayIterator = dayIterator.plusDays(1);
+        // As extractFeatures fills it for predictTariffRate
+        double averageRate3y = recent.average(4).doubleValue();
+        TariffMLModel model = routeModel(models, importerCode, exporterCode, hs6Code);
+        if (model != null && model.getTrees() != null) {
+            // One feature row per day, scored in a single batch
+            double[] dayFeatures = new double[days * FeatureSchema.SIZE];
+            LocalDate day = startDate;
+            for (int i = 0; i < days; i++, day = day.plusDays(1)) {
+                FeatureSchema.writeSeasonality(day, dayFeatures, i * FeatureSchema.SIZE);
+                dayFeatures[i * FeatureSchema.SIZE + FeatureSchema.AVG_RATE_3Y] = averageRate3y;
+            }
+            model.predictAll(dayFeatures, days, rates);
+            for (int i = 0; i < days; i++) {
+                rates[i] = BigDecimal.valueOf(rates[i]).setScale(2, RoundingMode.HALF_UP).doubleValue();
+            }
+            Arrays.fill(confidence, model.getConfidenceScore(dayFeatures));
+        } else if (model != null) {
+            // One feature row per calendar month, scored in a single batch
+            double[] monthFeatures = new double[12 * FeatureSchema.SIZE];
+            LocalDate firstOfMonth = startDate.withDayOfMonth(1);
+            for (int m = 0; m < 12; m++) {
+                LocalDate month = firstOfMonth.plusMonths(m);
+                int offset = (month.getMonthValue() - 1) * FeatureSchema.SIZE;
+                FeatureSchema.writeSeasonality(month, monthFeatures, offset);
+                monthFeatures[offset + FeatureSchema.AVG_RATE_3Y] = averageRate3y;
             }
+            double[] predicted = new double[12];
+            model.predictAll(monthFeatures, 12, predicted);
 
-            // Aggregate to weekly range
-            if (!weekForecasts.isEmpty()) {
-                BigDecimal avgRate = weekForecasts.stream()
-                    .map(ForecastResult::getPredictedRate)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add)
-                    .divide(BigDecimal.valueOf(weekForecasts.size()), 2, RoundingMode.HALF_UP);
-
-                BigDecimal minRate = weekForecasts.stream()
-                    .map(ForecastResult::getPredictedRate)
-                    .min(BigDecimal::compareTo)
-                    .orElse(BigDecimal.ZERO);
-
-                BigDecimal maxRate = weekForecasts.stream()
-                    .map(ForecastResult::getPredictedRate)
-                    .max(BigDecimal::compareTo)
-                    .orElse(BigDecimal.ZERO);
-
-                int avgConfidence = weekForecasts.stream()
-                    .mapToInt(ForecastResult::getConfidencePercent)
-                    .sum() / weekForecasts.size();
-
-                results.add(DateRangeForecast.builder()
-                    .startDate(currentDate)
-                    .endDate(weekEnd)
-                    .avgRate(avgRate)
-                    .minRate(minRate)
-                    .maxRate(maxRate)
-                    .confidencePercent(avgConfidence)
-                    .dayCount((long) weekForecasts.size())
-                    .build());
+            double[] monthRates = new double[13];
+            for (int month = 1; month <= 12; month++) {
+                monthRates[month] = BigDecimal.valueOf(predicted[month - 1]).setScale(2, RoundingMode.HALF_UP).doubleValue();
             }
 
-            currentDate = weekEnd.plusDays(1);
+            // Fill month by month
+            LocalDate day = startDate;
+            for (int i = 0; i < days; ) {
+                int length = Math.min(days - i, day.lengthOfMonth() - day.getDayOfMonth() + 1);
+                Arrays.fill(rates, i, i + length, monthRates[day.getMonthValue()]);
+                i += length;
+                day = day.plusDays(length);
+            }
+            Arrays.fill(confidence, model.getConfidenceScore(monthFeatures));
+        } else {
+            Arrays.fill(rates, recent.average(2).doubleValue());
+
+            // Confidence drops for days more than a year out
+            int base = historyConfidence(recent.count());
+            long farFrom = ChronoUnit.DAYS.between(startDate, LocalDate.now()) + 366;
+            int near = (int) Math.max(0, Math.min(days, farFrom));
+            Arrays.fill(confidence, 0, near, base);
+            Arrays.fill(confidence, near, days, Math.max(40, base - 15));
         }
 
-        log.info("✅ Completed rate range prediction. Total: {} weeks, Cached data reused: {} times",
-            results.size(), results.size() * 7); // ~7 days per week
-        return results;
+        return new HorizonForecast(startDate, rates, confidence, true);
+    }
+
+    /**
+     * The model for the exporter's own route, trained on its preferences, or else the importer's
+     * route, which applies to exporters without a preference.
+     */
+    private static TariffMLModel routeModel(ModelRegistry.Snapshot models, String importerCode, String exporterCode,
+            String hs6Code) {
+        TariffMLModel model = exporterCode != null && !exporterCode.isBlank()
+            ? models.model(importerCode + "-" + exporterCode + "-" + hs6Code) : null;
+        return model != null ? model : models.model(importerCode + "-" + hs6Code);
+    }
+
+    /**
+     * A route's MFN records in the 3 years to today: how many, and their summed rate.
+     *
+     * @param count number of records, with or without a rate
+     * @param sum   sum of the rates; records without one count as zero
+     */
+    private record RecentRates(int count, BigDecimal sum) {
+
+        BigDecimal average(int scale) {
+            return sum.divide(BigDecimal.valueOf(count), scale, RoundingMode.HALF_UP);
+        }
+    }
+
+    /**
+     * The route's recent records from the feature store once it is loaded, else from the measure table.
+     */
+    private RecentRates recentRates(String importerCode, String hs6Code) {
+        if (featureStore.isReady()) {
+            return recentRates(featureStore.measures(importerCode, hs6Code));
+        }
+
+        LocalDate today = LocalDate.now();
+        LocalDate threeYearsAgo = today.minusYears(3);
+        List<Measure> historicalRates = measureRepository.findHistoricalRates(
+            importerCode, hs6Code, threeYearsAgo, today);
+        return new RecentRates(historicalRates.size(), historicalRates.stream()
+            .map(Measure::getMfnAdvalRate)
+            .filter(Objects::nonNull)
+            .reduce(BigDecimal.ZERO, BigDecimal::add));
+    }
+
+    private static RecentRates recentRates(RateHistory measures) {
+        LocalDate today = LocalDate.now();
+        int from = measures.from(today.minusYears(3).toEpochDay());
+        int to = measures.to(today.toEpochDay());
+        return new RecentRates(to - from, BigDecimal.valueOf(measures.sum(from, to)));
+    }
+
+    /**
+     * The measure histories scoreHorizon reads, for many of one importer's products at once: from
+     * the FeatureStore once it is loaded, else the 3 years to today in one query. Products without
+     * measures map to RateHistory.EMPTY.
+     *
+     * @return each product's history by HS6 code
+     */
+    public Map<String, RateHistory> recentHistories(String importerCode, Collection<String> hs6Codes) {
+        Map<String, RateHistory> histories = new HashMap<>();
+        if (featureStore.isReady()) {
+            hs6Codes.forEach(hs6 -> histories.put(hs6, featureStore.measures(importerCode, hs6)));
+            return histories;
+        }
+
+        LocalDate today = LocalDate.now();
+        List<MeasureTrainingRow> rows = measureRepository.findHistoricalRows(
+            importerCode, hs6Codes, today.minusYears(3), today);
+        histories.putAll(RateHistory.byKey(rows, MeasureTrainingRow::hs6Code,
+            MeasureTrainingRow::validFrom, MeasureTrainingRow::mfnAdvalRate));
+        hs6Codes.forEach(hs6 -> histories.putIfAbsent(hs6, RateHistory.EMPTY));
+        return histories;
+    }
+
+    /**
+     * Fallback confidence from the number of historical records: 40 + 50 * log(records) / log(100), in [40, 100].
+     */
+    private static int historyConfidence(int numRecords) {
+        double logConfidence = 40.0 + (50.0 * Math.log(numRecords) / Math.log(100.0));
+        return (int) Math.min(100, Math.max(40, logConfidence));
     }
 
     /**
@@ -312,24 +664,8 @@ public class TariffMLService {
 
         try {
             // Extract features for prediction
-            Map<String, Double> features = extractFeatures(importerCode, hs6Code, targetDate);
-
-            // Get prediction from model (simulated)
-            Double predictedRate = model.predict(features);
-            Integer confidence = model.getConfidenceScore(features);
-
-            BigDecimal rate = BigDecimal.valueOf(predictedRate).setScale(2, RoundingMode.HALF_UP);
-
-            return ForecastResult.builder()
-                .forecastDate(targetDate)
-                .predictedRate(rate)
-                .confidenceLower(rate.multiply(new BigDecimal("0.9")))
-                .confidenceUpper(rate.multiply(new BigDecimal("1.1")))
-                .confidencePercent(confidence)
-                .modelVersion(mlProperties.getModel().getVersion())
-                .hasHistoricalData(true)
-                .isFromMLModel(true)
-                .build();
+            double[] features = extractFeatures(importerCode, hs6Code, targetDate);
+            return forecastWithModel(model, features, targetDate);
 
         } catch (Exception e) {
             log.warn("ML model prediction failed, falling back to statistical method", e);
@@ -338,42 +674,26 @@ public class TariffMLService {
     }
 
     /**
-     * Optimized ML model prediction using cached historical data.
-     * Reduces database calls for batch operations.
+     * The forecast a model gives for a FeatureSchema vector: its prediction at scale 2 with a
+     * +/-10% interval. Used by predictTariffRate and by backtesting.
      */
-    private ForecastResult predictWithMLModelOptimized(
-            TariffMLModel model,
-            String importerCode,
-            String exporterCode,
-            String hs6Code,
-            LocalDate targetDate,
-            List<Measure> cachedHistoricalRates) {
+    public ForecastResult forecastWithModel(TariffMLModel model, double[] features, LocalDate targetDate) {
+        // Get prediction from model (simulated)
+        double predictedRate = model.predict(features);
+        int confidence = model.getConfidenceScore(features);
 
-        try {
-            // Extract features using cached data
-            Map<String, Double> features = extractFeaturesOptimized(targetDate, cachedHistoricalRates);
-
-            // Get prediction from model
-            Double predictedRate = model.predict(features);
-            Integer confidence = model.getConfidenceScore(features);
-
-            BigDecimal rate = BigDecimal.valueOf(predictedRate).setScale(2, RoundingMode.HALF_UP);
-
-            return ForecastResult.builder()
-                .forecastDate(targetDate)
-                .predictedRate(rate)
-                .confidenceLower(rate.multiply(new BigDecimal("0.9")))
-                .confidenceUpper(rate.multiply(new BigDecimal("1.1")))
-                .confidencePercent(confidence)
-                .modelVersion(mlProperties.getModel().getVersion())
-                .hasHistoricalData(true)
-                .isFromMLModel(true)
-                .build();
+        BigDecimal rate = BigDecimal.valueOf(predictedRate).setScale(2, RoundingMode.HALF_UP);
 
-        } catch (Exception e) {
-            log.warn("Optimized ML model prediction failed, falling back to statistical method", e);
-            return createFallbackForecastOptimized(importerCode, exporterCode, hs6Code, targetDate, true, cachedHistoricalRates);
-        }
+        return ForecastResult.builder()
+            .forecastDate(targetDate)
+            .predictedRate(rate)
+            .confidenceLower(rate.multiply(new BigDecimal("0.9")))
+            .confidenceUpper(rate.multiply(new BigDecimal("1.1")))
+            .confidencePercent(confidence)
+            .modelVersion(mlProperties.getModel().getVersion())
+            .hasHistoricalData(true)
+            .isFromMLModel(true)
+            .build();
     }
 
     /**
@@ -387,20 +707,14 @@ public class TariffMLService {
             boolean hasHistoricalData) {
 
         BigDecimal predictedRate = BigDecimal.ZERO;
-        int confidence = 40;
+        int numRecords = 0;
 
         if (hasHistoricalData) {
             // Use 3-year average as fallback
-            LocalDate threeYearsAgo = LocalDate.now().minusYears(3);
-            List<Measure> historicalRates = measureRepository.findHistoricalRates(
-                importerCode, hs6Code, threeYearsAgo, LocalDate.now());
+            RecentRates recent = recentRates(importerCode, hs6Code);
 
-            if (!historicalRates.isEmpty()) {
-                predictedRate = historicalRates.stream()
-                    .map(Measure::getMfnAdvalRate)
-                    .filter(Objects::nonNull)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add)
-                    .divide(BigDecimal.valueOf(historicalRates.size()), 2, RoundingMode.HALF_UP);
+            if (recent.count() > 0) {
+                predictedRate = recent.average(2);
 
                 // Scale confidence based on number of historical records using logarithmic scaling
                 // Formula: 40 + 50 * log(records) / log(100), capped at 100%
@@ -411,62 +725,26 @@ public class TariffMLService {
                 // 10 records: 40 + 50 * log(10)/log(100) ≈ 67%
                 // 50 records: 40 + 50 * log(50)/log(100) ≈ 78%
                 // 100+ records: approaches 90-100%
-                int numRecords = historicalRates.size();
-                double logConfidence = 40.0 + (50.0 * Math.log(numRecords) / Math.log(100.0));
-                confidence = (int) Math.min(100, Math.max(40, logConfidence));
-                log.debug("Confidence scaled based on {} historical records using logarithmic formula: {}%", numRecords, confidence);
+                numRecords = recent.count();
+                log.debug("Confidence scaled based on {} historical records using logarithmic formula: {}%",
+                    numRecords, historyConfidence(numRecords));
             }
         }
 
-        // Adjust confidence based on forecast distance
-        long daysInFuture = ChronoUnit.DAYS.between(LocalDate.now(), targetDate);
-        if (daysInFuture > 365) {
-            confidence = Math.max(40, confidence - 15);
-        }
-
-        return ForecastResult.builder()
-            .forecastDate(targetDate)
-            .predictedRate(predictedRate)
-            .confidenceLower(predictedRate.multiply(new BigDecimal("0.8")))
-            .confidenceUpper(predictedRate.multiply(new BigDecimal("1.2")))
-            .confidencePercent(confidence)
-            .modelVersion(mlProperties.getModel().getVersion())
-            .hasHistoricalData(hasHistoricalData)
-            .isFromMLModel(false)
-            .build();
+        return fallbackForecast(predictedRate, numRecords, LocalDate.now(), targetDate, hasHistoricalData);
     }
 
     /**
-     * Optimized fallback forecast using pre-fetched historical data.
-     * Reduces database calls for batch operations.
+     * The statistical fallback from a route's average rate over the 3 years before asOf and the
+     * number of records it was taken from, with a +/-20% interval. Used by predictTariffRate,
+     * with asOf today, and by backtesting.
      */
-    private ForecastResult createFallbackForecastOptimized(
-            String importerCode,
-            String exporterCode,
-            String hs6Code,
-            LocalDate targetDate,
-            boolean hasHistoricalData,
-            List<Measure> cachedHistoricalRates) {
-
-        BigDecimal predictedRate = BigDecimal.ZERO;
-        int confidence = 40;
-
-        if (hasHistoricalData && !cachedHistoricalRates.isEmpty()) {
-            // Use cached historical data
-            predictedRate = cachedHistoricalRates.stream()
-                .map(Measure::getMfnAdvalRate)
-                .filter(Objects::nonNull)
-                .reduce(BigDecimal.ZERO, BigDecimal::add)
-                .divide(BigDecimal.valueOf(cachedHistoricalRates.size()), 2, RoundingMode.HALF_UP);
-
-            // Scale confidence based on number of historical records
-            int numRecords = cachedHistoricalRates.size();
-            double logConfidence = 40.0 + (50.0 * Math.log(numRecords) / Math.log(100.0));
-            confidence = (int) Math.min(100, Math.max(40, logConfidence));
-        }
+    public ForecastResult fallbackForecast(BigDecimal predictedRate, int numRecords, LocalDate asOf,
+            LocalDate targetDate, boolean hasHistoricalData) {
+        int confidence = numRecords > 0 ? historyConfidence(numRecords) : 40;
 
         // Adjust confidence based on forecast distance
-        long daysInFuture = ChronoUnit.DAYS.between(LocalDate.now(), targetDate);
+        long daysInFuture = ChronoUnit.DAYS.between(asOf, targetDate);
         if (daysInFuture > 365) {
             confidence = Math.max(40, confidence - 15);
         }
@@ -484,166 +762,362 @@ public class TariffMLService {
     }
 
     /**
-     * Scheduled task to retrain models weekly.
+     * Scheduled task to retrain models weekly. Only starts the run, so the shared scheduler thread
+     * is not held while it trains.
      */
     @Scheduled(cron = "0 0 2 ? * SUN")  // Every Sunday at 2 AM
     public void scheduleModelRetraining() {
         log.info("Starting scheduled weekly model retraining...");
-        trainNewModel();
+        trainInBackground("schedule");
     }
 
     /**
-     * Train a model for a specific trade route.
+     * Train a model for a specific trade route with the configured backend.
      */
-    private TariffMLModel trainModelForRoute(String tradeRoute, List<Measure> data) {
+    public TariffMLModel trainModelForRoute(TrainingDataReader.RouteSeries route) {
+        // Statistical properties of the historical data; rows without a rate are skipped
+        TariffMLModel model = newModel(route.tradeRoute(), RateStats.of(route.rates()));
+        if (!route.measureRowsOnly()) {
+            model.clearStats(); // Measure writes cannot be folded in one for one; see updateRoute
+        }
+
+        MLModelProperties.Tree tree = mlProperties.getModel().getTree();
+        switch (mlProperties.getModel().getBackend()) {
+            case CART -> model.setTrees(TreeRateModel.fit(route, 1, tree.getMaxDepth(), 1.0));
+            case GBT -> model.setTrees(TreeRateModel.fit(route, tree.getRounds(), tree.getMaxDepth(), tree.getLearningRate()));
+            case MEAN -> { }
+        }
+
+        return model;
+    }
+
+    /**
+     * A model for the current configuration from the route's rate statistics.
+     */
+    private TariffMLModel newModel(String tradeRoute, RateStats stats) {
         // Create a model with basic ML characteristics
         TariffMLModel model = new TariffMLModel(tradeRoute);
+        model.setModelVersion(mlProperties.getModel().getVersion());
+        model.setFeatureSchemaVersion(FeatureSchema.VERSION);
+        model.setBackend(mlProperties.getModel().getBackend());
+        if (stats.count() > 0) {
+            model.setStats(stats);
+            model.setConfidenceBase(Math.min(80, 50 + stats.count() / 10)); // Higher confidence with more data
+        }
+        return model;
+    }
 
-        // Calculate statistical properties from historical data
-        List<BigDecimal> rates = data.stream()
-            .map(Measure::getMfnAdvalRate)
-            .filter(Objects::nonNull)
-            .toList();
-
-        if (!rates.isEmpty()) {
-            BigDecimal mean = rates.stream()
-                .reduce(BigDecimal.ZERO, BigDecimal::add)
-                .divide(BigDecimal.valueOf(rates.size()), 4, RoundingMode.HALF_UP);
+    /**
+     * Fold a measure insert, update or delete into the affected route models, so forecasts see it
+     * without waiting for the weekly retrain. Call after the write is committed.
+     *
+     * With the mean backend the route's rate statistics are updated in place of retraining; tree
+     * models, routes without a model yet, and routes where suspensions or preferences also apply
+     * are retrained from the rows of that importer and product. Either way only
+     * the affected routes are republished. A change during a training run is applied now and the
+     * route retrained again once the run publishes, since the run may not have read it.
+     *
+     * The row is passed on to the FeatureStore first. Update listeners are told about both routes
+     * even when models are disabled, since the fallback forecast reads the measures too.
+     *
+     * @param removed the row as it was before the write, null for an insert
+     * @param added   the row as written, null for a delete
+     */
+    public void applyMeasureChange(MeasureTrainingRow removed, MeasureTrainingRow added) {
+        if (removed == null && added == null) {
+            return;
+        }
+        featureStore.applyMeasureChange(removed, added);
+        Route from = removed != null ? Route.of(removed) : null;
+        Route to = added != null ? Route.of(added) : null;
+        if (mlProperties.getModel().isEnabled()) {
+            updateRouteModels(removed, added, from, to);
+        }
 
-            BigDecimal variance = rates.stream()
-                .map(r -> r.subtract(mean).pow(2))
-                .reduce(BigDecimal.ZERO, BigDecimal::add)
-                .divide(BigDecimal.valueOf(rates.size()), 4, RoundingMode.HALF_UP);
+        Stream.of(from, to).filter(Objects::nonNull).distinct().forEach(route ->
+            updateListeners.forEach(listener -> listener.routeUpdated(route.importerCode(), route.hs6Code())));
+    }
 
-            model.setMean(mean.doubleValue());
-            model.setStdDev(Math.sqrt(variance.doubleValue()));
-            model.setConfidenceBase(Math.min(80, 50 + rates.size() / 10)); // Higher confidence with more data
+    /**
+     * Fold a preference insert, update or delete into the route models. A preference decides which
+     * exporters of the importer's product get their own model, so the product's routes are
+     * retrained from their rows, as for a measure write under a tree backend. The row is passed on
+     * to the FeatureStore first, and update listeners are told about each importer and product.
+     * Call after the write is committed.
+     *
+     * @param removed the row as it was before the write, null for an insert
+     * @param added   the row as written, null for a delete
+     */
+    public void applyPreferenceChange(PreferenceTrainingRow removed, PreferenceTrainingRow added) {
+        if (removed == null && added == null) {
+            return;
         }
+        featureStore.applyPreferenceChange(removed, added);
+        retrainAfterWrite(
+            removed != null ? new Route(removed.importerCode(), removed.hs6Code()) : null,
+            added != null ? new Route(added.importerCode(), added.hs6Code()) : null);
+    }
 
-        return model;
+    /**
+     * Fold a suspension insert, update or delete into the route models, as applyPreferenceChange
+     * does: training reads a route's suspensions with its measures, so the product's routes are
+     * retrained.
+     *
+     * @param removed the row as it was before the write, null for an insert
+     * @param added   the row as written, null for a delete
+     */
+    public void applySuspensionChange(SuspensionTrainingRow removed, SuspensionTrainingRow added) {
+        if (removed == null && added == null) {
+            return;
+        }
+        featureStore.applySuspensionChange(removed, added);
+        retrainAfterWrite(
+            removed != null ? new Route(removed.importerCode(), removed.hs6Code()) : null,
+            added != null ? new Route(added.importerCode(), added.hs6Code()) : null);
     }
 
     /**
-     * Extract features from historical data for ML training.
+     * Retrain the routes a preference or suspension write touched and tell update listeners. A
+     * write during a training run is retrained now and again once the run publishes.
      */
-    private Map<String, Double> extractFeatures(String importerCode, String hs6Code, LocalDate targetDate) {
-        Map<String, Double> features = new HashMap<>();
+    private void retrainAfterWrite(Route from, Route to) {
+        List<Route> routes = Stream.of(from, to).filter(Objects::nonNull).distinct().toList();
+        if (mlProperties.getModel().isEnabled()) {
+            try {
+                for (Route route : routes) {
+                    synchronized (modelUpdateLock) {
+                        TrainingRun run = currentRun.get();
+                        if (run != null && !run.published) {
+                            run.changedRoutes.add(route);
+                        }
+                        retrainRoute(route);
+                    }
+                }
+            } catch (Exception e) {
+                // The write itself has succeeded; the next training run picks it up
+                log.warn("Failed to retrain route models after a write: {}", e.getMessage());
+            }
+            saveRouteUpdatesAsync();
+        }
 
-        // Month-based seasonality
-        int month = targetDate.getMonthValue();
-        features.put("month_sin", Math.sin(2 * Math.PI * month / 12));
-        features.put("month_cos", Math.cos(2 * Math.PI * month / 12));
+        routes.forEach(route ->
+            updateListeners.forEach(listener -> listener.routeUpdated(route.importerCode(), route.hs6Code())));
+    }
 
-        // Days into year (trend)
-        int dayOfYear = targetDate.getDayOfYear();
-        features.put("day_of_year_norm", dayOfYear / 365.0);
+    private void updateRouteModels(MeasureTrainingRow removed, MeasureTrainingRow added, Route from, Route to) {
+        TrainingRun seen = currentRun.get();
+        try {
+            if (from != null && from.equals(to)) {
+                updateRoute(to, stats -> stats.remove(rateOf(removed)).add(rateOf(added)), seen);
+            } else {
+                if (from != null) {
+                    updateRoute(from, stats -> stats.remove(rateOf(removed)), seen);
+                }
+                if (to != null) {
+                    updateRoute(to, stats -> stats.add(rateOf(added)), seen);
+                }
+            }
+        } catch (Exception e) {
+            // The write itself has succeeded; the next training run picks it up
+            log.warn("Failed to update route models after a measure write: {}", e.getMessage());
+        }
+        saveRouteUpdatesAsync();
+    }
 
-        // Historical average as baseline
-        LocalDate threeYearsAgo = LocalDate.now().minusYears(3);
-        List<Measure> historicalRates = measureRepository.findHistoricalRates(
-            importerCode, hs6Code, threeYearsAgo, LocalDate.now());
+    private void updateRoute(Route route, UnaryOperator<RateStats> change, TrainingRun seen) {
+        synchronized (modelUpdateLock) {
+            TrainingRun run = currentRun.get();
+            if (run != null && !run.published) {
+                run.changedRoutes.add(route);
+            } else if (seen != null && seen.published) {
+                // A run published after the write; its model may already include the change
+                retrainRoute(route);
+                return;
+            }
 
-        if (!historicalRates.isEmpty()) {
-            BigDecimal avgRate = historicalRates.stream()
-                .map(Measure::getMfnAdvalRate)
-                .filter(Objects::nonNull)
-                .reduce(BigDecimal.ZERO, BigDecimal::add)
-                .divide(BigDecimal.valueOf(historicalRates.size()), 4, RoundingMode.HALF_UP);
-            features.put("historical_avg", avgRate.doubleValue());
+            TariffMLModel current = registry.current().model(route.tradeRoute());
+            if (current == null || current.getStats().count() == 0
+                    || mlProperties.getModel().getBackend() != MLModelProperties.Backend.MEAN
+                    || trainingDataReader.hasExporterRoutes(route.importerCode(), route.hs6Code())) {
+                retrainRoute(route);
+                return;
+            }
+
+            // Counts rated rows, where training counts all rows of the route
+            RateStats stats = change.apply(current.getStats());
+            registry.publishRoute("measure write", route.tradeRoute(),
+                stats.count() >= mlProperties.getModel().getMinTrainingSamples()
+                    ? newModel(route.tradeRoute(), stats) : null);
+            log.debug("Updated model for trade route {} from a measure write ({} rates)", route.tradeRoute(), stats.count());
         }
+    }
 
-        return features;
+    /**
+     * Train the routes of one importer and product, for every exporter and per exporter with
+     * preferences, from their rows in the database and publish them, or drop a route's model when
+     * it has too few rows. Called holding modelUpdateLock.
+     */
+    private void retrainRoute(Route route) {
+        for (TrainingDataReader.RouteSeries series : trainingDataReader.readRoutes(route.importerCode(), route.hs6Code())) {
+            TariffMLModel model = series.size() >= mlProperties.getModel().getMinTrainingSamples()
+                ? trainModelForRoute(series) : null;
+            registry.publishRoute("measure write", series.tradeRoute(), model);
+            log.debug("Retrained trade route {} from {} records", series.tradeRoute(), series.size());
+        }
+    }
+
+    private static double rateOf(MeasureTrainingRow row) {
+        return row.mfnAdvalRate() != null ? row.mfnAdvalRate().doubleValue() : Double.NaN;
     }
 
     /**
-     * Optimized feature extraction using cached historical data.
-     * Reduces database calls for batch operations.
+     * An importer and product; tradeRoute() is the key of the model for every exporter.
      */
-    private Map<String, Double> extractFeaturesOptimized(LocalDate targetDate, List<Measure> cachedHistoricalRates) {
-        Map<String, Double> features = new HashMap<>();
+    private record Route(String importerCode, String hs6Code) {
 
-        // Month-based seasonality
-        int month = targetDate.getMonthValue();
-        features.put("month_sin", Math.sin(2 * Math.PI * month / 12));
-        features.put("month_cos", Math.cos(2 * Math.PI * month / 12));
+        static Route of(MeasureTrainingRow row) {
+            return new Route(row.importerCode(), row.hs6Code());
+        }
 
-        // Days into year (trend)
-        int dayOfYear = targetDate.getDayOfYear();
-        features.put("day_of_year_norm", dayOfYear / 365.0);
+        String tradeRoute() {
+            return importerCode + "-" + hs6Code;
+        }
+    }
 
-        // Historical average as baseline (using cached data)
-        if (!cachedHistoricalRates.isEmpty()) {
-            BigDecimal avgRate = cachedHistoricalRates.stream()
-                .map(Measure::getMfnAdvalRate)
-                .filter(Objects::nonNull)
-                .reduce(BigDecimal.ZERO, BigDecimal::add)
-                .divide(BigDecimal.valueOf(cachedHistoricalRates.size()), 4, RoundingMode.HALF_UP);
-            features.put("historical_avg", avgRate.doubleValue());
+    /**
+     * Extract the FeatureSchema vector used for inference. Only the seasonality slots and the
+     * 3-year average are filled here; the remaining slots stay 0.
+     */
+    private double[] extractFeatures(String importerCode, String hs6Code, LocalDate targetDate) {
+        double[] features = FeatureSchema.newVector();
+        FeatureSchema.writeSeasonality(targetDate, features, 0);
+
+        // Historical average as baseline
+        RecentRates recent = recentRates(importerCode, hs6Code);
+        if (recent.count() > 0) {
+            features[FeatureSchema.AVG_RATE_3Y] = recent.average(4).doubleValue();
         }
 
         return features;
     }
 
     /**
-     * Group historical data by trade route.
+     * Queue the snapshot's models to be written to disk after any earlier save.
+     */
+    private synchronized void saveModelsAsync(Map<String, TariffMLModel> models) {
+        pendingPersistence = pendingPersistence.thenRunAsync(() -> saveModelsToDisk(models), persistenceExecutor);
+    }
+
+    /**
+     * Queue a save of the current models after route updates. A burst of updates is written
+     * once: a save already queued picks up every update published before it runs.
+     */
+    private synchronized void saveRouteUpdatesAsync() {
+        if (routeUpdatesUnsaved.compareAndSet(false, true)) {
+            pendingPersistence = pendingPersistence.thenRunAsync(() -> {
+                routeUpdatesUnsaved.set(false);
+                saveModelsToDisk(registry.current().models());
+            }, persistenceExecutor);
+        }
+    }
+
+    /**
+     * Make the previous model snapshot current again, e.g. after a bad retrain, and rewrite the
+     * model file to match it.
+     *
+     * @return the restored snapshot, or empty when no earlier snapshot is retained
+     */
+    public Optional<ModelRegistry.Snapshot> rollbackModels() {
+        Optional<ModelRegistry.Snapshot> restored = registry.rollback();
+        restored.ifPresentOrElse(
+            snapshot -> {
+                log.info("Rolled back to model version {} ({} models)", snapshot.version(), snapshot.models().size());
+                saveModelsAsync(snapshot.models());
+                updateListeners.forEach(ModelUpdateListener::allRoutesUpdated);
+            },
+            () -> log.info("No earlier model version to roll back to"));
+        return restored;
+    }
+
+    /**
+     * Completes when every model trained so far has been written to disk.
+     */
+    public CompletableFuture<Void> getPendingPersistence() {
+        return pendingPersistence;
+    }
+
+    /**
+     * Abandon any training run and finish writing model files.
      */
-    private Map<String, List<Measure>> groupByTradeRoute(List<Measure> data) {
-        Map<String, List<Measure>> grouped = new HashMap<>();
-        for (Measure measure : data) {
-            String importerCode = measure.getImporter() != null ? measure.getImporter().getCountryCode() : "UNKNOWN";
-            String productCode = measure.getProduct() != null ? measure.getProduct().getHs6Code() : "UNKNOWN";
-            String key = importerCode + "-" + productCode;
-            grouped.computeIfAbsent(key, k -> new ArrayList<>()).add(measure);
+    @PreDestroy
+    public void shutdown() {
+        trainingExecutor.shutdownNow();
+        try {
+            pendingPersistence.get(30, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            log.warn("Model files may be incomplete: {}", e.getMessage());
         }
-        return grouped;
+        persistenceExecutor.shutdown();
     }
 
     /**
-     * Save trained models to disk for persistence.
+     * What models trained with the current configuration are stored under.
      */
-    private void saveModelsToDisk() {
+    private ModelStore.Header storeHeader() {
+        return new ModelStore.Header(FeatureSchema.VERSION, mlProperties.getModel().getBackend(),
+            mlProperties.getModel().getVersion());
+    }
+
+    /**
+     * Save a full set of models to the model file, replacing it.
+     */
+    private void saveModelsToDisk(Map<String, TariffMLModel> models) {
         try {
+            long started = System.nanoTime();
             Path modelsDir = Paths.get(mlProperties.getModel().getPath());
             Files.createDirectories(modelsDir);
 
-            for (Map.Entry<String, TariffMLModel> entry : tradeRouteModels.entrySet()) {
-                String filename = entry.getKey().replace("-", "_") + ".model";
-                Path filepath = modelsDir.resolve(filename);
+            ModelStore.write(modelsDir.resolve(ModelStore.FILE_NAME), storeHeader(), models);
 
-                try (ObjectOutputStream oos = new ObjectOutputStream(Files.newOutputStream(filepath))) {
-                    oos.writeObject(entry.getValue());
-                }
-            }
-
-            log.info("Saved {} models to disk", tradeRouteModels.size());
+            log.info("Saved {} models to disk in {} ms", models.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
         } catch (IOException e) {
             log.error("Failed to save models to disk", e);
         }
     }
 
     /**
-     * Load previously trained models from disk.
+     * Map the model file saved by an earlier run. Only the header is read here; routes are
+     * decoded as predictions ask for them.
      */
     private boolean loadModelsFromDisk() {
+        Path modelsDir = Paths.get(mlProperties.getModel().getPath());
+        Path file = modelsDir.resolve(ModelStore.FILE_NAME);
+        if (!Files.exists(file)) {
+            try (Stream<Path> files = Files.list(modelsDir)) {
+                long legacy = files.filter(p -> p.toString().endsWith(".model")).count();
+                if (legacy > 0) {
+                    log.info("Ignoring {} model files in the old per-route format; models will be retrained", legacy);
+                }
+            } catch (IOException e) {
+                log.debug("Could not list {}: {}", modelsDir, e.getMessage());
+            }
+            return false;
+        }
+
         try {
-            Path modelsDir = Paths.get(mlProperties.getModel().getPath());
-            if (!Files.exists(modelsDir)) {
+            ModelStore store = ModelStore.open(file);
+            if (!store.header().equals(storeHeader())) {
+                log.info("Skipping model file {} - trained for version {} / feature schema {} / backend {}",
+                    file, store.header().modelVersion(), store.header().featureSchemaVersion(), store.header().backend());
                 return false;
             }
-
-            tradeRouteModels.clear();
-            Files.list(modelsDir)
-                .filter(p -> p.toString().endsWith(".model"))
-                .forEach(filepath -> {
-                    try (ObjectInputStream ois = new ObjectInputStream(Files.newInputStream(filepath))) {
-                        TariffMLModel model = (TariffMLModel) ois.readObject();
-                        tradeRouteModels.put(model.getTradeRoute(), model);
-                    } catch (IOException | ClassNotFoundException e) {
-                        log.warn("Failed to load model from {}: {}", filepath, e.getMessage());
-                    }
-                });
-
-            return !tradeRouteModels.isEmpty();
+            if (store.size() == 0) {
+                return false;
+            }
+            registry.publishAll("disk", store.asMap());
+            log.info("Mapped {} route models from {}", store.size(), file);
+            return true;
         } catch (IOException e) {
             log.error("Failed to load models from disk", e);
             return false;
@@ -654,13 +1128,19 @@ public class TariffMLService {
      * Get model status information.
      */
     public Map<String, Object> getModelStatus() {
+        ModelRegistry.Snapshot models = registry.current();
         return Map.of(
             "modelVersion", mlProperties.getModel().getVersion(),
-            "lastTrainDate", lastModelTrainDate != null ? lastModelTrainDate.toString() : "Not trained",
-            "modelTrained", modelTrained,
+            "featureSchemaVersion", FeatureSchema.VERSION,
+            "backend", mlProperties.getModel().getBackend().name(),
+            "lastTrainDate", models.version() > 0
+                ? LocalDate.ofInstant(models.publishedAt(), ZoneId.systemDefault()).toString() : "Not trained",
+            "modelTrained", !models.isEmpty(),
             "mlEnabled", mlProperties.getModel().isEnabled(),
-            "trainedRoutes", tradeRouteModels.size(),
-            "modelPath", mlProperties.getModel().getPath()
+            "trainedRoutes", models.models().size(),
+            "modelPath", mlProperties.getModel().getPath(),
+            "registry", registry.describe(),
+            "lastTraining", lastTrainingMetrics != null ? lastTrainingMetrics.toMap() : Map.of()
         );
     }
 
@@ -668,47 +1148,88 @@ public class TariffMLService {
      * Internal class representing a trained ML model for a specific trade route.
      */
     @Slf4j
-    public static class TariffMLModel implements Serializable {
-        private static final long serialVersionUID = 1L;
+    public static class TariffMLModel {
 
         private String tradeRoute;
         private double mean;
         private double stdDev;
         private double confidenceBase;
+        private String modelVersion;
+        private int featureSchemaVersion;
+        private MLModelProperties.Backend backend = MLModelProperties.Backend.MEAN;
+        private TreeRateModel trees; // Set for the CART and GBT backends
+        private RateStats stats = RateStats.EMPTY;
 
         public TariffMLModel(String tradeRoute) {
             this.tradeRoute = tradeRoute;
             this.confidenceBase = 60;
         }
 
-        public Double predict(Map<String, Double> features) {
-            // Simple prediction using historical mean and seasonal adjustment
-            double basePrediction = mean;
+        /**
+         * Predict from a FeatureSchema vector.
+         */
+        public double predict(double[] features) {
+            return predict(features, 0);
+        }
 
-            // Apply seasonal adjustment
-            if (features.containsKey("month_sin")) {
-                double seasonalFactor = features.get("month_sin") * 0.05 * stdDev;
-                basePrediction += seasonalFactor;
+        /**
+         * Predict from the FeatureSchema row starting at offset.
+         * Tree models use their trees; otherwise the historical mean with a seasonal adjustment.
+         */
+        public double predict(double[] features, int offset) {
+            if (trees != null) {
+                return Math.max(0, trees.predict(features, offset));
             }
-
-            return Math.max(0, basePrediction); // Ensure non-negative rate
+            double seasonalFactor = features[offset + FeatureSchema.MONTH_SIN] * 0.05 * stdDev;
+            return Math.max(0, mean + seasonalFactor); // Ensure non-negative rate
         }
 
-        public Integer getConfidenceScore(Map<String, Double> features) {
-            int confidence = (int) confidenceBase;
-
-            // Reduce confidence for distant forecasts
-            if (features.containsKey("day_of_year_norm")) {
-                confidence = Math.max(40, confidence - 10);
+        /**
+         * Predict count row-major FeatureSchema rows into out[0..count).
+         */
+        public void predictAll(double[] features, int count, double[] out) {
+            for (int i = 0; i < count; i++) {
+                out[i] = predict(features, i * FeatureSchema.SIZE);
             }
+        }
 
-            return confidence;
+        public int getConfidenceScore(double[] features) {
+            // Reduce confidence for distant forecasts
+            return Math.max(40, (int) confidenceBase - 10);
         }
 
         // Getters and setters
         public String getTradeRoute() { return tradeRoute; }
+        public String getModelVersion() { return modelVersion; }
+        public int getFeatureSchemaVersion() { return featureSchemaVersion; }
+        public MLModelProperties.Backend getBackend() { return backend != null ? backend : MLModelProperties.Backend.MEAN; }
+        public TreeRateModel getTrees() { return trees; }
+        public double getMean() { return mean; }
+        public double getStdDev() { return stdDev; }
+        public double getConfidenceBase() { return confidenceBase; }
+        public RateStats getStats() { return stats; }
+        public void setModelVersion(String modelVersion) { this.modelVersion = modelVersion; }
+        public void setFeatureSchemaVersion(int featureSchemaVersion) { this.featureSchemaVersion = featureSchemaVersion; }
         public void setMean(double mean) { this.mean = mean; }
         public void setStdDev(double stdDev) { this.stdDev = stdDev; }
         public void setConfidenceBase(double confidence) { this.confidenceBase = confidence; }
+        public void setBackend(MLModelProperties.Backend backend) { this.backend = backend; }
+        public void setTrees(TreeRateModel trees) { this.trees = trees; }
+
+        /**
+         * Drop the rate statistics, keeping the mean and standard deviation taken from them.
+         */
+        public void clearStats() {
+            this.stats = RateStats.EMPTY;
+        }
+
+        /**
+         * Set the rate statistics and the mean and standard deviation that follow from them.
+         */
+        public void setStats(RateStats stats) {
+            this.stats = stats;
+            this.mean = stats.mean();
+            this.stdDev = stats.stdDev();
+        }
     }
 }
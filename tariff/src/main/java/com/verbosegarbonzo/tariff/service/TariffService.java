@@ -1,29 +1,18 @@
 package com.verbosegarbonzo.tariff.service;
 
-import java.io.InputStream;
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
-import javax.xml.stream.XMLInputFactory;
-import javax.xml.stream.XMLStreamConstants;
-import javax.xml.stream.XMLStreamReader;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.core.io.buffer.DataBuffer;
-import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.verbosegarbonzo.tariff.config.WitsProperties;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.verbosegarbonzo.tariff.client.WitsTariffClient;
 import com.verbosegarbonzo.tariff.exception.InvalidRateException;
 import com.verbosegarbonzo.tariff.exception.InvalidRequestException;
 import com.verbosegarbonzo.tariff.exception.RateNotFoundException;
@@ -31,20 +20,15 @@ import com.verbosegarbonzo.tariff.exception.WeightRequiredException;
 import com.verbosegarbonzo.tariff.model.CalculateRequest;
 import com.verbosegarbonzo.tariff.model.CalculateResponse;
 import com.verbosegarbonzo.tariff.model.Country;
-import com.verbosegarbonzo.tariff.model.Measure;
-import com.verbosegarbonzo.tariff.model.Preference;
 import com.verbosegarbonzo.tariff.model.Product;
-import com.verbosegarbonzo.tariff.model.Suspension;
 import com.verbosegarbonzo.tariff.repository.CountryRepository;
-import com.verbosegarbonzo.tariff.repository.MeasureRepository;
-import com.verbosegarbonzo.tariff.repository.PreferenceRepository;
 import com.verbosegarbonzo.tariff.repository.ProductRepository;
-import com.verbosegarbonzo.tariff.repository.SuspensionRepository;
+import com.verbosegarbonzo.tariff.service.RateIndexService.MeasureRate;
+import com.verbosegarbonzo.tariff.service.RateIndexService.PreferenceRate;
+import com.verbosegarbonzo.tariff.service.RateIndexService.SuspensionRate;
 
 import jakarta.validation.Valid;
-import lombok.Generated;
 import lombok.NonNull;
-import reactor.core.publisher.Flux;
 
 @Service
 public class TariffService {
@@ -54,31 +38,25 @@ public class TariffService {
 
     private final CountryRepository countryRepository;
     private final ProductRepository productRepository;
-    private final PreferenceRepository preferenceRepo;
-    private final MeasureRepository measureRepo;
-    private final SuspensionRepository suspensionRepo;
-    private final WebClient tariffWebClient;
-    private final WitsProperties witsProperties;
+    private final WitsTariffClient witsTariffClient;
     private final FreightService freightService;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final RateIndexService rateIndex;
+    private final RateWriteBehindService rateWriteBehind;
 
-    public TariffService(PreferenceRepository preferenceRepo, MeasureRepository measureRepo,
-            SuspensionRepository suspensionRepo, CountryRepository countryRepository,
+    public TariffService(CountryRepository countryRepository,
             ProductRepository productRepository,
-            @Qualifier("tariffWebClient") WebClient tariffWebClient,
-            WitsProperties witsProperties, FreightService freightService) {
-        this.preferenceRepo = preferenceRepo;
-        this.measureRepo = measureRepo;
-        this.suspensionRepo = suspensionRepo;
+            WitsTariffClient witsTariffClient, FreightService freightService,
+            RateIndexService rateIndex, RateWriteBehindService rateWriteBehind) {
         this.countryRepository = countryRepository;
         this.productRepository = productRepository;
-        this.tariffWebClient = tariffWebClient;
-        this.witsProperties = witsProperties;
+        this.witsTariffClient = witsTariffClient;
         this.freightService = freightService;
+        this.rateIndex = rateIndex;
+        this.rateWriteBehind = rateWriteBehind;
     }
 
     private BigDecimal scaleMoney(BigDecimal value) {
-        return (value == null) ? BigDecimal.ZERO : value.setScale(2, RoundingMode.HALF_UP);
+        return DutyMath.scaleMoney(value);
     }
 
     public CalculateResponse calculate(@Valid @NonNull CalculateRequest req) {
@@ -101,35 +79,30 @@ public class TariffService {
 
         LocalDate date = req.getTransactionDate();
 
-        // Check suspension first
-        Optional<Suspension> suspOpt = suspensionRepo.findActiveSuspension(
-                countryRepository.findById(req.getImporterCode()).orElseThrow(),
-                productRepository.findById(req.getHs6()).orElseThrow(), date);
+        // Resolve reference data once and pass it through the rest of the calculation
+        TradeContext ctx = TradeContext.of(req, countryRepository.findById(req.getImporterCode()).orElse(null));
+
+        // Rates are resolved from the in-memory interval index, no database round-trip
+        Optional<SuspensionRate> suspOpt = rateIndex.findActiveSuspension(ctx.importerCode(), ctx.hs6(), date);
 
         // Check preference (if exporter provided) - preference can override suspension
-        Optional<Preference> prefOpt = (req.getExporterCode() != null && !req.getExporterCode().isBlank())
-                ? preferenceRepo.findValidRate(countryRepository.findById(req.getImporterCode()).orElseThrow(),
-                        countryRepository.findById(req.getExporterCode()).orElseThrow(),
-                        productRepository.findById(req.getHs6()).orElseThrow(),
-                        date)
+        Optional<PreferenceRate> prefOpt = ctx.hasExporter()
+                ? rateIndex.findPreference(ctx.importerCode(), ctx.exporterCode(), ctx.hs6(), date)
                 : Optional.empty();
 
         // If both suspension and preference exist, preference takes precedence (FTA
         // overrides suspension)
         if (prefOpt.isPresent()) {
             List<String> rateErrors = new ArrayList<>();
-            Preference pref = prefOpt.get();
+            PreferenceRate pref = prefOpt.get();
 
-            BigDecimal ratePref = pref.getPrefAdValRate();
+            BigDecimal ratePref = pref.prefAdValRate();
 
             if (ratePref.compareTo(BigDecimal.ZERO) < 0) {
                 rateErrors.add("Invalid preferential rate: " + ratePref);
             }
 
-            BigDecimal ratePrefCalc = ratePref.multiply(BigDecimal.valueOf(0.01));
-
-            BigDecimal duty = req.getTradeOriginal().multiply(ratePrefCalc);
-            duty = scaleMoney(duty);
+            BigDecimal duty = DutyMath.percentOf(ctx.tradeOriginal(), pref.prefAdval());
 
             // Check if user provided net weight but preference only has ad-valorem rate
             List<String> warnings = new ArrayList<>();
@@ -139,14 +112,14 @@ public class TariffService {
                 log.info("Net weight provided but preference only has ad-valorem rate");
             }
 
-            return buildResponse(req, TEMP_USER_ID, duty, null, null, ratePref, null, warnings);
+            return buildResponse(ctx, TEMP_USER_ID, duty, pref.appliedRate(), warnings);
         }
 
         // Apply suspension only if no preference was found
         if (suspOpt.isPresent()) {
-            Suspension susp = suspOpt.get();
+            SuspensionRate susp = suspOpt.get();
 
-            BigDecimal rateSusp = susp.getSuspensionRate();
+            BigDecimal rateSusp = susp.suspensionRate();
             if (rateSusp == null) {
                 rateSusp = BigDecimal.ZERO;
             }
@@ -155,10 +128,7 @@ public class TariffService {
                 throw new InvalidRateException("Invalid suspension rate: " + rateSusp);
             }
 
-            BigDecimal rateSuspCalc = rateSusp.multiply(BigDecimal.valueOf(0.01));
-
-            BigDecimal duty = req.getTradeOriginal().multiply(rateSuspCalc);
-            duty = scaleMoney(duty);
+            BigDecimal duty = DutyMath.percentOf(ctx.tradeOriginal(), susp.suspension());
 
             // Check if user provided net weight but suspension only has ad-valorem rate
             List<String> warnings = new ArrayList<>();
@@ -170,33 +140,27 @@ public class TariffService {
 
             
             // tariff suspended
-            return buildResponse(req, TEMP_USER_ID, duty, null, null, null, rateSusp, warnings);
+            return buildResponse(ctx, TEMP_USER_ID, duty, susp.appliedRate(), warnings);
         }
 
         // Otherwise, check measure
-        Optional<Measure> measureOpt = measureRepo.findValidRate(
-                countryRepository.findById(req.getImporterCode()).orElseThrow(),
-                productRepository.findById(req.getHs6()).orElseThrow(), date);
+        Optional<MeasureRate> measureOpt = rateIndex.findMeasure(ctx.importerCode(), ctx.hs6(), date);
         if (measureOpt.isPresent()) {
             List<String> rateErrors = new ArrayList<>();
-            Measure measure = measureOpt.get();
+            MeasureRate measure = measureOpt.get();
             BigDecimal duty = BigDecimal.ZERO;
             BigDecimal rateAdval = null, rateSpecific = null;
 
-            BigDecimal rateAdvalCalc = null;
-
             // normalize rates
-            if (measure.getMfnAdvalRate() != null) {
-                rateAdval = measure.getMfnAdvalRate();
+            if (measure.mfnAdvalRate() != null) {
+                rateAdval = measure.mfnAdvalRate();
 
                 if (rateAdval.compareTo(BigDecimal.ZERO) < 0) {
                     rateErrors.add("Invalid MFN ad-valorem rate: " + rateAdval);
-                } else {
-                    rateAdvalCalc = rateAdval.multiply(BigDecimal.valueOf(0.01));
                 }
             }
-            if (measure.getSpecificRatePerKg() != null) {
-                rateSpecific = measure.getSpecificRatePerKg(); // already per kg, no scaling
+            if (measure.specificRatePerKg() != null) {
+                rateSpecific = measure.specificRatePerKg(); // already per kg, no scaling
 
                 if (rateSpecific.compareTo(BigDecimal.ZERO) < 0) {
                     rateErrors.add("Invalid specific duty rate: " + rateSpecific);
@@ -221,44 +185,38 @@ public class TariffService {
 
             // compound case
             if (rateAdval != null && rateSpecific != null && req.getNetWeight() != null) {
-                duty = req.getTradeOriginal().multiply(rateAdvalCalc)
-                        .add(req.getNetWeight().multiply(rateSpecific));
-                duty = scaleMoney(duty);
+                duty = DutyMath.compound(ctx.tradeOriginal(), measure.mfnAdval(), ctx.netWeight(), measure.specific());
             }
             // ad-valorem only
             else if (rateAdval != null && req.getTradeOriginal() != null) {
-                duty = req.getTradeOriginal().multiply(rateAdvalCalc);
-                duty = scaleMoney(duty);
+                duty = DutyMath.percentOf(ctx.tradeOriginal(), measure.mfnAdval());
             }
             // specific only
             else if (rateSpecific != null && req.getNetWeight() != null) {
-                duty = req.getNetWeight().multiply(rateSpecific);
-                duty = scaleMoney(duty);
+                duty = DutyMath.times(ctx.netWeight(), measure.specific());
             }
 
-            return buildResponse(req, TEMP_USER_ID, duty, rateAdval, rateSpecific, null, null, warnings);
+            return buildResponse(ctx, TEMP_USER_ID, duty, measure.appliedRate(), warnings);
         }
 
         // 3. Try fetching from WITS API as fallback
         log.info("No tariff found in database, attempting to fetch from WITS API");
 
-        Country importer = countryRepository.findById(req.getImporterCode()).orElseThrow();
-        Product product = productRepository.findById(req.getHs6()).orElseThrow();
+        Country importer = Optional.ofNullable(ctx.importer()).orElseThrow();
+        Product product = productRepository.findById(ctx.hs6()).orElseThrow();
 
         // Try preferential first if exporter provided
-        if (req.getExporterCode() != null && !req.getExporterCode().isBlank()) {
-            Country exporter = countryRepository.findById(req.getExporterCode()).orElseThrow();
+        if (ctx.hasExporter()) {
+            Country exporter = countryRepository.findById(ctx.exporterCode()).orElseThrow();
             BigDecimal prefRate = fetchPreferentialRateFromWits(importer, exporter, product, date);
 
             if (prefRate != null) {
                 log.info("Found preferential rate from WITS: {}", prefRate);
 
-                // Save to database for future use
-                savePreferenceToDatabase(importer, exporter, product, prefRate, date);
+                // Index now, persist in the background
+                rateWriteBehind.enqueuePreference(importer, exporter, product, prefRate, date);
 
-                BigDecimal prefRateCalc = prefRate.multiply(BigDecimal.valueOf(0.01));
-                BigDecimal duty = req.getTradeOriginal().multiply(prefRateCalc);
-                duty = scaleMoney(duty);
+                BigDecimal duty = DutyMath.percentOf(ctx.tradeOriginal(), DutyMath.Fixed.of(prefRate));
 
                 // Check if user provided net weight - WITS only provides ad-valorem rates
                 List<String> warnings = new ArrayList<>();
@@ -268,7 +226,8 @@ public class TariffService {
                     log.info("Net weight provided but WITS only provides ad-valorem rates");
                 }
 
-                return buildResponse(req, TEMP_USER_ID, duty, null, null, prefRate, null, warnings);
+                return buildResponse(ctx, TEMP_USER_ID, duty,
+                        RateIndexService.appliedRateNode(prefRate, null, null, null), warnings);
             }
         }
 
@@ -277,12 +236,10 @@ public class TariffService {
         if (mfnRate != null) {
             log.info("Found MFN rate from WITS: {}", mfnRate);
 
-            // Save to database for future use
-            saveMeasureToDatabase(importer, product, mfnRate, date);
+            // Index now, persist in the background
+            rateWriteBehind.enqueueMeasure(importer, product, mfnRate, date);
 
-            BigDecimal mfnRateCalc = mfnRate.multiply(BigDecimal.valueOf(0.01));
-            BigDecimal duty = req.getTradeOriginal().multiply(mfnRateCalc);
-            duty = scaleMoney(duty);
+            BigDecimal duty = DutyMath.percentOf(ctx.tradeOriginal(), DutyMath.Fixed.of(mfnRate));
 
             // Check if user provided net weight - WITS only provides ad-valorem rates
             List<String> warnings = new ArrayList<>();
@@ -292,7 +249,8 @@ public class TariffService {
                 log.info("Net weight provided but WITS only provides ad-valorem rates");
             }
 
-            return buildResponse(req, TEMP_USER_ID, duty, mfnRate, null, null, null, warnings);
+            return buildResponse(ctx, TEMP_USER_ID, duty,
+                    RateIndexService.appliedRateNode(null, mfnRate, null, null), warnings);
         }
 
         // 4. Still nothing found
@@ -310,36 +268,10 @@ public class TariffService {
             return null;
         }
 
-        try {
-            String year = String.valueOf(date.getYear());
-            String uri = String.format("/%s/reporter/%s/partner/000/product/%s/year/%s/datatype/reported",
-                    witsProperties.getTariff().getDataset(),
-                    importer.getNumericCode(),
-                    product.getHs6Code(),
-                    year);
-
-            log.debug("Fetching from WITS: {}", uri);
-
-            Flux<DataBuffer> body = tariffWebClient.get()
-                    .uri(uri)
-                    .accept(org.springframework.http.MediaType.APPLICATION_XML)
-                    .retrieve()
-                    .bodyToFlux(DataBuffer.class);
-
-            InputStream is = DataBufferUtils.join(body)
-                    .map(db -> db.asInputStream(true))
-                    .block();
-
-            if (is == null) {
-                return null;
-            }
-
-            return parseWitsXmlForRate(is);
-
-        } catch (Exception e) {
-            log.error("Error fetching MFN rate from WITS: {}", e.getMessage());
-            return null;
-        }
+        // Coalesced, rate-limited and negatively cached by the client; failures and answers slower
+        // than wits.fetch.wait-timeout come back empty, so this join is bounded
+        return witsTariffClient.fetchRate(importer.getNumericCode(), WitsTariffClient.MFN_PARTNER,
+                product.getHs6Code(), date.getYear()).join().orElse(null);
     }
 
     private BigDecimal fetchPreferentialRateFromWits(Country importer, Country exporter,
@@ -350,160 +282,24 @@ public class TariffService {
             return null;
         }
 
-        try {
-            String year = String.valueOf(date.getYear());
-            String uri = String.format("/%s/reporter/%s/partner/%s/product/%s/year/%s/datatype/reported",
-                    witsProperties.getTariff().getDataset(),
-                    importer.getNumericCode(),
-                    exporter.getNumericCode(),
-                    product.getHs6Code(),
-                    year);
-
-            log.debug("Fetching preferential rate from WITS: {}", uri);
-
-            Flux<DataBuffer> body = tariffWebClient.get()
-                    .uri(uri)
-                    .accept(org.springframework.http.MediaType.APPLICATION_XML)
-                    .retrieve()
-                    .bodyToFlux(DataBuffer.class);
-
-            InputStream is = DataBufferUtils.join(body)
-                    .map(db -> db.asInputStream(true))
-                    .block();
-
-            if (is == null) {
-                return null;
-            }
-
-            return parseWitsXmlForRate(is);
-
-        } catch (Exception e) {
-            log.error("Error fetching preferential rate from WITS: {}", e.getMessage());
-            return null;
-        }
-    }
-
-    @Generated
-    private BigDecimal parseWitsXmlForRate(InputStream is) {
-        try (InputStream in = is) {
-            XMLInputFactory factory = XMLInputFactory.newFactory();
-            factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
-            XMLStreamReader reader = factory.createXMLStreamReader(in);
-
-            while (reader.hasNext()) {
-                int event = reader.next();
-
-                if (event != XMLStreamConstants.START_ELEMENT) {
-                    continue;
-                }
-
-                String tagName = reader.getLocalName();
-                if (!tagName.equalsIgnoreCase("Obs") && !tagName.equalsIgnoreCase("Observation")) {
-                    continue;
-                }
-
-                for (int i = 0; i < reader.getAttributeCount(); i++) {
-                    String attrName = reader.getAttributeLocalName(i);
-                    String attrValue = reader.getAttributeValue(i);
-
-                    if (!"OBS_VALUE".equalsIgnoreCase(attrName) && !"value".equalsIgnoreCase(attrName)) {
-                        continue;
-                    }
-
-
-                    try {
-                        return new BigDecimal(attrValue);
-                    } catch (NumberFormatException e) {
-                        log.warn("Invalid rate value in WITS XML: {}", attrValue);
-                    }
-                    
-                }
-
-            }
-
-            return null;
-
-        } catch (Exception e) {
-            log.error("Error parsing WITS XML: {}", e.getMessage());
-            return null;
-        }
-    }
-
-    @Generated
-    private void saveMeasureToDatabase(Country importer, Product product, BigDecimal rate, LocalDate date) {
-        try {
-            // Check if already exists to avoid duplicates
-            Optional<Measure> existing = measureRepo.findValidRate(importer, product, date);
-            if (existing.isPresent()) {
-                log.debug("Measure already exists in database, skipping save");
-                return;
-            }
-
-            Measure measure = new Measure();
-            measure.setImporter(importer);
-            measure.setProduct(product);
-            measure.setValidFrom(date.withDayOfYear(1)); // Start of year
-            measure.setValidTo(date.withDayOfYear(date.lengthOfYear())); // End of year
-            measure.setMfnAdvalRate(rate);
-            measure.setSpecificRatePerKg(null);
-
-            measureRepo.save(measure);
-            log.info("Saved MFN measure to database: {} - {} = {}",
-                    importer.getCountryCode(), product.getHs6Code(), rate);
-
-        } catch (Exception e) {
-            log.error("Failed to save measure to database: {}", e.getMessage());
-        }
-    }
-
-    @Generated
-    private void savePreferenceToDatabase(Country importer, Country exporter,
-            Product product, BigDecimal rate, LocalDate date) {
-        try {
-            // Check if already exists to avoid duplicates
-            Optional<Preference> existing = preferenceRepo.findValidRate(importer, exporter, product, date);
-            if (existing.isPresent()) {
-                log.debug("Preference already exists in database, skipping save");
-                return;
-            }
-
-            Preference preference = new Preference();
-            preference.setImporter(importer);
-            preference.setExporter(exporter);
-            preference.setProduct(product);
-            preference.setValidFrom(date.withDayOfYear(1)); // Start of year
-            preference.setValidTo(date.withDayOfYear(date.lengthOfYear())); // End of year
-            preference.setPrefAdValRate(rate);
-
-            preferenceRepo.save(preference);
-            log.info("Saved preference to database: {} -> {} - {} = {}",
-                    exporter.getCountryCode(), importer.getCountryCode(),
-                    product.getHs6Code(), rate);
-
-        } catch (Exception e) {
-            log.error("Failed to save preference to database: {}", e.getMessage());
-        }
+        return witsTariffClient.fetchRate(importer.getNumericCode(), exporter.getNumericCode(),
+                product.getHs6Code(), date.getYear()).join().orElse(null);
     }
 
     private CalculateResponse buildResponse(
-            CalculateRequest req,
+            TradeContext ctx,
             UUID uid,
             BigDecimal duty,
-            BigDecimal rateAdval,
-            BigDecimal rateSpecific,
-            BigDecimal ratePref,
-            BigDecimal rateSup,
+            JsonNode appliedRate,
             List<String> warnings) {
 
+        CalculateRequest req = ctx.request();
         long tid = System.currentTimeMillis();
 
         CalculateResponse resp = new CalculateResponse(tid, req);
 
-        // Set default valuation basis (CIF, CFR, FOB)
-        Country importer = countryRepository.findById(req.getImporterCode()).orElse(null);
-        String basisDeclared = importer != null && importer.getValuationBasis() != null
-                ? importer.getValuationBasis().toUpperCase()
-                : "CIF";
+        // Set default valuation basis (CIF, CFR, FOB), resolved once in the trade context
+        String basisDeclared = ctx.valuationBasis();
         resp.setValuationBasisDeclared(basisDeclared);
 
         // Debug logging
@@ -515,6 +311,9 @@ public class TariffService {
         BigDecimal freightCost = BigDecimal.ZERO;
         BigDecimal insuranceCost = BigDecimal.ZERO;
         BigDecimal insuranceRate = req.getInsuranceRate() != null ? req.getInsuranceRate() : BigDecimal.ONE;
+        DutyMath.Fixed insurancePercent = req.getInsuranceRate() != null
+                ? DutyMath.Fixed.of(insuranceRate)
+                : DutyMath.Fixed.ONE;
 
         String valuationApplied = basisDeclared;
 
@@ -555,9 +354,7 @@ public class TariffService {
             // === INSURANCE CALCULATION ===
             switch (basisDeclared) {
                 case "CIF":
-                    insuranceCost = req.getTradeOriginal()
-                            .multiply(insuranceRate)
-                            .divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP);
+                    insuranceCost = DutyMath.percentOf(ctx.tradeOriginal(), insurancePercent);
                     totalCost = totalCost.add(insuranceCost);
                     break;
                 case "CFR":
@@ -576,9 +373,7 @@ public class TariffService {
                     break;
                 default:
                     if (req.isIncludeInsurance()) {
-                        insuranceCost = req.getTradeOriginal()
-                                .multiply(insuranceRate)
-                                .divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP);
+                        insuranceCost = DutyMath.percentOf(ctx.tradeOriginal(), insurancePercent);
                         totalCost = totalCost.add(insuranceCost);
                     }
             }
@@ -592,18 +387,8 @@ public class TariffService {
         resp.setValuationBasisApplied(valuationApplied);
         resp.setTotalLandedCost(scaleMoney(totalCost));
 
-        // applied rate JSON
-        ObjectNode rateNode = objectMapper.createObjectNode();
-        if (ratePref != null)
-            rateNode.set("prefAdval", objectMapper.getNodeFactory().numberNode(ratePref));
-        if (rateAdval != null)
-            rateNode.set("mfnAdval", objectMapper.getNodeFactory().numberNode(rateAdval));
-        if (rateSpecific != null)
-            rateNode.set("specific", objectMapper.getNodeFactory().numberNode(rateSpecific));
-        if (rateSup != null)
-            rateNode.set("suspension", objectMapper.getNodeFactory().numberNode(rateSup));
-
-        resp.setAppliedRate(rateNode);
+        // applied rate JSON, prebuilt on the indexed rate row
+        resp.setAppliedRate(appliedRate);
         resp.setWarnings(warnings);
         resp.setTradeFinal(totalCost);
         return resp;
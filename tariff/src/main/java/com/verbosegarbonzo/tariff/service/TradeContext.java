@@ -0,0 +1,57 @@
+package com.verbosegarbonzo.tariff.service;
+
+import java.time.LocalDate;
+
+import com.verbosegarbonzo.tariff.model.CalculateRequest;
+import com.verbosegarbonzo.tariff.model.Country;
+
+/**
+ * Resolved reference data for a single calculate call.
+ *
+ * Built once at the top of TariffService.calculate and passed through rate lookup,
+ * WITS fallback and freight/insurance costing, so the importer is looked up exactly once
+ * per request instead of once per step. Product and exporter entities are only needed
+ * on the WITS fallback path and are resolved there, once each.
+ *
+ * @param request        the incoming calculate request
+ * @param exporterCode   exporter code, or null when the request has none (blank counts as none)
+ * @param importer       importer country, or null when the code is unknown
+ * @param valuationBasis declared valuation basis of the importer (CIF, CFR or FOB), defaults to CIF
+ * @param tradeOriginal  trade value converted once for DutyMath
+ * @param netWeight      net weight converted once for DutyMath, or null when the request has none
+ */
+public record TradeContext(
+        CalculateRequest request,
+        String exporterCode,
+        Country importer,
+        String valuationBasis,
+        DutyMath.Fixed tradeOriginal,
+        DutyMath.Fixed netWeight) {
+
+    public static TradeContext of(CalculateRequest request, Country importer) {
+        String exporterCode = request.getExporterCode() != null && !request.getExporterCode().isBlank()
+                ? request.getExporterCode()
+                : null;
+        String valuationBasis = importer != null && importer.getValuationBasis() != null
+                ? importer.getValuationBasis().toUpperCase()
+                : "CIF";
+        return new TradeContext(request, exporterCode, importer, valuationBasis,
+                DutyMath.Fixed.of(request.getTradeOriginal()), DutyMath.Fixed.of(request.getNetWeight()));
+    }
+
+    public String importerCode() {
+        return request.getImporterCode();
+    }
+
+    public String hs6() {
+        return request.getHs6();
+    }
+
+    public LocalDate date() {
+        return request.getTransactionDate();
+    }
+
+    public boolean hasExporter() {
+        return exporterCode != null;
+    }
+}
@@ -0,0 +1,237 @@
+package com.verbosegarbonzo.tariff.service;
+
+import com.verbosegarbonzo.tariff.model.MeasureTrainingRow;
+import com.verbosegarbonzo.tariff.model.PreferenceTrainingRow;
+import com.verbosegarbonzo.tariff.model.SuspensionTrainingRow;
+import com.verbosegarbonzo.tariff.repository.MeasureRepository;
+import com.verbosegarbonzo.tariff.repository.PreferenceRepository;
+import com.verbosegarbonzo.tariff.repository.SuspensionRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Stream;
+
+/**
+ * Reads the measure, suspension and preference tables for model training one importer and
+ * product at a time, as effective-rate series (see EffectiveRateSeries).
+ *
+ * Rows come from three cursors over flat projections, each ordered by importer then product, which
+ * are merged as they are read, so no entities (or their Country/Product proxies) are loaded and
+ * only the importer and product being assembled is held in memory. Each gives one series for the
+ * rate to every exporter, keyed importerCode-hs6Code, and one per exporter with preferences, keyed
+ * importerCode-exporterCode-hs6Code; they are handed to the consumer as soon as the first row of
+ * the next importer and product arrives.
+ */
+@Service
+@RequiredArgsConstructor
+public class TrainingDataReader {
+
+    private final MeasureRepository measureRepository;
+    private final PreferenceRepository preferenceRepository;
+    private final SuspensionRepository suspensionRepository;
+
+    /**
+     * One trade route's effective rates in date order.
+     *
+     * @param tradeRoute      the route key, importerCode-hs6Code or importerCode-exporterCode-hs6Code
+     *                        as TariffMLService uses
+     * @param validFrom       date each rate takes effect
+     * @param rates           effective ad valorem rate per row, NaN where the row in force has none
+     * @param measureRowsOnly whether each row is a measure taking effect with its MFN rate, so the
+     *                        rows change one for one with measure writes
+     */
+    public record RouteSeries(String tradeRoute, LocalDate[] validFrom, double[] rates, boolean measureRowsOnly) {
+
+        public RouteSeries(String tradeRoute, LocalDate[] validFrom, double[] rates) {
+            this(tradeRoute, validFrom, rates, true);
+        }
+
+        public int size() {
+            return validFrom.length;
+        }
+    }
+
+    /**
+     * Stream every route to the consumer. The consumer runs on the calling thread while the
+     * cursors are open; it should hand work off rather than block for long.
+     *
+     * @return the number of rows read
+     */
+    @Transactional(readOnly = true)
+    public long forEachRoute(Consumer<RouteSeries> consumer) {
+        try (Stream<MeasureTrainingRow> measures = measureRepository.streamTrainingRows();
+             Stream<SuspensionTrainingRow> suspensions = suspensionRepository.streamTrainingRows();
+             Stream<PreferenceTrainingRow> preferences = preferenceRepository.streamTrainingRows()) {
+            return mergeRoutes(measures, suspensions, preferences, consumer);
+        }
+    }
+
+    /**
+     * Read the routes of one importer and product, e.g. to retrain them after a measure changes:
+     * the rate to every exporter first, then one per exporter with preferences.
+     */
+    @Transactional(readOnly = true)
+    public List<RouteSeries> readRoutes(String importerCode, String hs6Code) {
+        List<RouteSeries> routes = new ArrayList<>();
+        mergeRoutes(
+            measureRepository.findTrainingRows(importerCode, hs6Code).stream(),
+            suspensionRepository.findTrainingRows(importerCode, hs6Code).stream(),
+            preferenceRepository.findTrainingRows(importerCode, hs6Code).stream(),
+            routes::add);
+        if (routes.isEmpty()) {
+            routes.add(new RouteSeries(importerCode + "-" + hs6Code, new LocalDate[0], new double[0]));
+        }
+        return routes;
+    }
+
+    /**
+     * Whether any exporter has its own route for the importer and product.
+     */
+    @Transactional(readOnly = true)
+    public boolean hasExporterRoutes(String importerCode, String hs6Code) {
+        return preferenceRepository.existsByImporterCountryCodeAndProductHs6Code(importerCode, hs6Code);
+    }
+
+    /**
+     * Group measure rows that arrive sorted by route into RouteSeries, without suspensions or
+     * preferences.
+     *
+     * @return the number of rows read
+     */
+    public static long groupRoutes(Stream<MeasureTrainingRow> rows, Consumer<RouteSeries> consumer) {
+        return mergeRoutes(rows, Stream.empty(), Stream.empty(), consumer);
+    }
+
+    /**
+     * Merge the three row streams, each sorted by importer then product (preferences then by
+     * exporter), and hand each importer and product's routes to the consumer.
+     *
+     * @return the number of rows read
+     */
+    public static long mergeRoutes(Stream<MeasureTrainingRow> measures, Stream<SuspensionTrainingRow> suspensions,
+            Stream<PreferenceTrainingRow> preferences, Consumer<RouteSeries> consumer) {
+        Cursor<MeasureTrainingRow> measureRows = new Cursor<>(measures.iterator(),
+            MeasureTrainingRow::importerCode, MeasureTrainingRow::hs6Code);
+        Cursor<SuspensionTrainingRow> suspensionRows = new Cursor<>(suspensions.iterator(),
+            SuspensionTrainingRow::importerCode, SuspensionTrainingRow::hs6Code);
+        Cursor<PreferenceTrainingRow> preferenceRows = new Cursor<>(preferences.iterator(),
+            PreferenceTrainingRow::importerCode, PreferenceTrainingRow::hs6Code);
+
+        long count = 0;
+        while (true) {
+            // The lowest importer and product any stream is at
+            RouteKey key = RouteKey.min(RouteKey.min(measureRows.key(), suspensionRows.key()), preferenceRows.key());
+            if (key == null) {
+                return count;
+            }
+
+            List<MeasureTrainingRow> routeMeasures = measureRows.take(key);
+            List<SuspensionTrainingRow> routeSuspensions = suspensionRows.take(key);
+            List<PreferenceTrainingRow> routePreferences = preferenceRows.take(key);
+            count += routeMeasures.size() + routeSuspensions.size() + routePreferences.size();
+
+            EffectiveRateSeries.Interval[] measureIntervals = intervals(routeMeasures,
+                MeasureTrainingRow::validFrom, MeasureTrainingRow::validTo, row -> rate(row.mfnAdvalRate(), Double.NaN));
+            EffectiveRateSeries.Interval[] suspensionIntervals = intervals(routeSuspensions,
+                SuspensionTrainingRow::validFrom, SuspensionTrainingRow::validTo, row -> rate(row.suspensionRate(), 0));
+
+            consumer.accept(EffectiveRateSeries.merge(key.importerCode() + "-" + key.hs6Code(),
+                measureIntervals, suspensionIntervals, EffectiveRateSeries.none()));
+
+            // One route per exporter; its rows are consecutive
+            for (int start = 0; start < routePreferences.size(); ) {
+                String exporterCode = routePreferences.get(start).exporterCode();
+                int end = start;
+                while (end < routePreferences.size() && routePreferences.get(end).exporterCode().equals(exporterCode)) {
+                    end++;
+                }
+                consumer.accept(EffectiveRateSeries.merge(key.importerCode() + "-" + exporterCode + "-" + key.hs6Code(),
+                    measureIntervals, suspensionIntervals,
+                    intervals(routePreferences.subList(start, end), PreferenceTrainingRow::validFrom,
+                        PreferenceTrainingRow::validTo, row -> rate(row.prefAdValRate(), Double.NaN))));
+                start = end;
+            }
+        }
+    }
+
+    private static <T> EffectiveRateSeries.Interval[] intervals(List<T> rows,
+            Function<T, LocalDate> validFrom, Function<T, LocalDate> validTo,
+            ToDoubleFunction<T> rate) {
+        EffectiveRateSeries.Interval[] intervals = new EffectiveRateSeries.Interval[rows.size()];
+        for (int i = 0; i < intervals.length; i++) {
+            T row = rows.get(i);
+            intervals[i] = new EffectiveRateSeries.Interval(validFrom.apply(row), validTo.apply(row), rate.applyAsDouble(row));
+        }
+        return intervals;
+    }
+
+    private static double rate(BigDecimal rate, double missing) {
+        return rate != null ? rate.doubleValue() : missing;
+    }
+
+    private record RouteKey(String importerCode, String hs6Code) implements Comparable<RouteKey> {
+
+        @Override
+        public int compareTo(RouteKey other) {
+            int byImporter = importerCode.compareTo(other.importerCode);
+            return byImporter != 0 ? byImporter : hs6Code.compareTo(other.hs6Code);
+        }
+
+        static RouteKey min(RouteKey a, RouteKey b) {
+            if (a == null || b == null) {
+                return a == null ? b : a;
+            }
+            return a.compareTo(b) <= 0 ? a : b;
+        }
+    }
+
+    /**
+     * A row stream with one row of lookahead.
+     */
+    private static final class Cursor<T> {
+        private final Iterator<T> rows;
+        private final Function<T, String> importerCode;
+        private final Function<T, String> hs6Code;
+        private T head;
+        private RouteKey headKey;
+
+        Cursor(Iterator<T> rows, Function<T, String> importerCode,
+                Function<T, String> hs6Code) {
+            this.rows = rows;
+            this.importerCode = importerCode;
+            this.hs6Code = hs6Code;
+            advance();
+        }
+
+        RouteKey key() {
+            return headKey;
+        }
+
+        /**
+         * The rows at the key, reading up to the first row past it.
+         */
+        List<T> take(RouteKey key) {
+            List<T> taken = new ArrayList<>();
+            while (head != null && Objects.equals(headKey, key)) {
+                taken.add(head);
+                advance();
+            }
+            return taken;
+        }
+
+        private void advance() {
+            head = rows.hasNext() ? rows.next() : null;
+            headKey = head != null ? new RouteKey(importerCode.apply(head), hs6Code.apply(head)) : null;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.verbosegarbonzo.tariff.service;
+
+import org.tribuo.MutableDataset;
+import org.tribuo.common.tree.LeafNode;
+import org.tribuo.common.tree.Node;
+import org.tribuo.common.tree.SplitNode;
+import org.tribuo.common.tree.TreeModel;
+import org.tribuo.impl.ArrayExample;
+import org.tribuo.provenance.SimpleDataSourceProvenance;
+import org.tribuo.regression.RegressionFactory;
+import org.tribuo.regression.Regressor;
+import org.tribuo.regression.rtree.CARTRegressionTrainer;
+import org.tribuo.regression.rtree.IndependentRegressionTreeModel;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Regression trees over FeatureSchema vectors, trained with Tribuo and compiled to flat arrays.
+ *
+ * A model is the route mean plus a sum of CART trees, each fitted to the residuals of the ones
+ * before it and scaled by the learning rate. One round with a learning rate of 1 is a single CART
+ * tree. Only the compiled arrays are kept, so prediction walks primitive arrays without allocating
+ * and the stored model stays small.
+ *
+ * The trees split on the seasonality slots only: the history and policy slots are the same for
+ * every row of a route, so a per-route tree cannot split on them.
+ */
+public final class TreeRateModel {
+
+    static final int[] FEATURE_SLOTS = {
+        FeatureSchema.MONTH_SIN, FeatureSchema.MONTH_COS, FeatureSchema.DAY_OF_YEAR_NORM
+    };
+
+    private static final String TARGET = "rate";
+    private static final RegressionFactory FACTORY = new RegressionFactory();
+
+    private final double base;
+    private final int[] roots;
+    // Per node: FeatureSchema slot split on, or -1 for a leaf
+    private final int[] slot;
+    // Per node: split value, or the scaled leaf output
+    private final double[] value;
+    private final int[] lessOrEqual;
+    private final int[] greater;
+
+    private TreeRateModel(double base, int[] roots, int[] slot, double[] value, int[] lessOrEqual, int[] greater) {
+        this.base = base;
+        this.roots = roots;
+        this.slot = slot;
+        this.value = value;
+        this.lessOrEqual = lessOrEqual;
+        this.greater = greater;
+    }
+
+    /**
+     * Predict from the FeatureSchema row starting at offset.
+     */
+    public double predict(double[] features, int offset) {
+        double sum = base;
+        for (int root : roots) {
+            int node = root;
+            while (slot[node] >= 0) {
+                node = features[offset + slot[node]] > value[node] ? greater[node] : lessOrEqual[node];
+            }
+            sum += value[node];
+        }
+        return sum;
+    }
+
+    public int getTreeCount() {
+        return roots.length;
+    }
+
+    public int getNodeCount() {
+        return slot.length;
+    }
+
+    /**
+     * Bytes writeTo produces.
+     */
+    int encodedSize() {
+        return Double.BYTES + 2 * Integer.BYTES + roots.length * Integer.BYTES
+            + slot.length * (3 * Integer.BYTES + Double.BYTES);
+    }
+
+    /**
+     * Write the arrays for ModelStore: base, tree and node counts, roots, then the node arrays.
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeDouble(base);
+        out.writeInt(roots.length);
+        out.writeInt(slot.length);
+        for (int root : roots) {
+            out.writeInt(root);
+        }
+        for (int i = 0; i < slot.length; i++) {
+            out.writeInt(slot[i]);
+        }
+        for (int i = 0; i < slot.length; i++) {
+            out.writeDouble(value[i]);
+        }
+        for (int i = 0; i < slot.length; i++) {
+            out.writeInt(lessOrEqual[i]);
+        }
+        for (int i = 0; i < slot.length; i++) {
+            out.writeInt(greater[i]);
+        }
+    }
+
+    /**
+     * Read what writeTo wrote, starting at offset; the buffer's position is not used.
+     */
+    static TreeRateModel readFrom(ByteBuffer buffer, int offset) {
+        double base = buffer.getDouble(offset);
+        int treeCount = buffer.getInt(offset + 8);
+        int nodeCount = buffer.getInt(offset + 12);
+        int at = offset + 16;
+
+        int[] roots = new int[treeCount];
+        for (int i = 0; i < treeCount; i++, at += 4) {
+            roots[i] = buffer.getInt(at);
+        }
+        int[] slot = new int[nodeCount];
+        for (int i = 0; i < nodeCount; i++, at += 4) {
+            slot[i] = buffer.getInt(at);
+        }
+        double[] value = new double[nodeCount];
+        for (int i = 0; i < nodeCount; i++, at += 8) {
+            value[i] = buffer.getDouble(at);
+        }
+        int[] lessOrEqual = new int[nodeCount];
+        for (int i = 0; i < nodeCount; i++, at += 4) {
+            lessOrEqual[i] = buffer.getInt(at);
+        }
+        int[] greater = new int[nodeCount];
+        for (int i = 0; i < nodeCount; i++, at += 4) {
+            greater[i] = buffer.getInt(at);
+        }
+        return new TreeRateModel(base, roots, slot, value, lessOrEqual, greater);
+    }
+
+    /**
+     * Fit the route's rates against the seasonality of their start dates; rows without a rate are
+     * skipped.
+     *
+     * @param rounds       number of trees; 1 with a learningRate of 1 gives a plain CART tree
+     * @param maxDepth     maximum depth of each tree
+     * @param learningRate scale applied to each tree's output
+     */
+    public static TreeRateModel fit(TrainingDataReader.RouteSeries route, int rounds, int maxDepth, double learningRate) {
+        int n = 0;
+        double[] features = new double[route.size() * FeatureSchema.SIZE];
+        double[] residuals = new double[route.size()];
+        for (int i = 0; i < route.size(); i++) {
+            double rate = route.rates()[i];
+            if (!Double.isNaN(rate)) {
+                FeatureSchema.writeSeasonality(route.validFrom()[i], features, n * FeatureSchema.SIZE);
+                residuals[n++] = rate;
+            }
+        }
+
+        double mean = 0;
+        for (int i = 0; i < n; i++) {
+            mean += residuals[i];
+        }
+        mean = n > 0 ? mean / n : 0;
+        for (int i = 0; i < n; i++) {
+            residuals[i] -= mean;
+        }
+
+        String[] names = new String[FEATURE_SLOTS.length];
+        for (int f = 0; f < FEATURE_SLOTS.length; f++) {
+            names[f] = FeatureSchema.name(FEATURE_SLOTS[f]);
+        }
+
+        Compiler compiler = new Compiler(learningRate);
+        int[] roots = new int[n > 0 ? rounds : 0];
+        CARTRegressionTrainer trainer = new CARTRegressionTrainer(maxDepth);
+        for (int round = 0; round < roots.length; round++) {
+            MutableDataset<Regressor> data = new MutableDataset<>(
+                new SimpleDataSourceProvenance(route.tradeRoute(), FACTORY), FACTORY);
+            for (int i = 0; i < n; i++) {
+                double[] row = new double[FEATURE_SLOTS.length];
+                for (int f = 0; f < FEATURE_SLOTS.length; f++) {
+                    row[f] = features[i * FeatureSchema.SIZE + FEATURE_SLOTS[f]];
+                }
+                data.add(new ArrayExample<>(new Regressor(TARGET, residuals[i]), names, row));
+            }
+
+            TreeModel<Regressor> tree = trainer.train(data);
+            int[] idToSlot = new int[FEATURE_SLOTS.length];
+            Arrays.fill(idToSlot, -1);
+            for (int f = 0; f < FEATURE_SLOTS.length; f++) {
+                int id = tree.getFeatureIDMap().getID(names[f]);
+                if (id >= 0) {
+                    idToSlot[id] = FEATURE_SLOTS[f];
+                }
+            }
+            roots[round] = compiler.add(((IndependentRegressionTreeModel) tree).getRoots().get(TARGET), idToSlot);
+
+            // Next round fits what this tree left over
+            int start = roots[round];
+            for (int i = 0; i < n; i++) {
+                residuals[i] -= compiler.walk(start, features, i * FeatureSchema.SIZE);
+            }
+        }
+
+        return compiler.build(mean, roots);
+    }
+
+    /**
+     * Flattens Tribuo trees into the parallel node arrays.
+     */
+    private static final class Compiler {
+        private final double scale;
+        private int[] slot = new int[64];
+        private double[] value = new double[64];
+        private int[] lessOrEqual = new int[64];
+        private int[] greater = new int[64];
+        private int size;
+
+        Compiler(double scale) {
+            this.scale = scale;
+        }
+
+        int add(Node<Regressor> node, int[] idToSlot) {
+            int index = size++;
+            if (index == slot.length) {
+                slot = Arrays.copyOf(slot, index * 2);
+                value = Arrays.copyOf(value, index * 2);
+                lessOrEqual = Arrays.copyOf(lessOrEqual, index * 2);
+                greater = Arrays.copyOf(greater, index * 2);
+            }
+            if (node.isLeaf()) {
+                slot[index] = -1;
+                value[index] = scale * ((LeafNode<Regressor>) node).getOutput().getValues()[0];
+            } else {
+                SplitNode<Regressor> split = (SplitNode<Regressor>) node;
+                slot[index] = idToSlot[split.getFeatureID()];
+                value[index] = split.splitValue();
+                int left = add(split.getLessThanOrEqual(), idToSlot);
+                int right = add(split.getGreaterThan(), idToSlot);
+                lessOrEqual[index] = left;
+                greater[index] = right;
+            }
+            return index;
+        }
+
+        double walk(int node, double[] features, int offset) {
+            while (slot[node] >= 0) {
+                node = features[offset + slot[node]] > value[node] ? greater[node] : lessOrEqual[node];
+            }
+            return value[node];
+        }
+
+        TreeRateModel build(double base, int[] roots) {
+            return new TreeRateModel(base, roots, Arrays.copyOf(slot, size), Arrays.copyOf(value, size),
+                Arrays.copyOf(lessOrEqual, size), Arrays.copyOf(greater, size));
+        }
+    }
+}
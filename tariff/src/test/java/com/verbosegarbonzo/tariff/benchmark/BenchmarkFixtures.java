@@ -0,0 +1,364 @@
+package com.verbosegarbonzo.tariff.benchmark;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.function.Function;
+
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.verbosegarbonzo.tariff.model.Country;
+import com.verbosegarbonzo.tariff.model.Measure;
+import com.verbosegarbonzo.tariff.model.MeasureIndexRow;
+import com.verbosegarbonzo.tariff.model.MeasureTrainingRow;
+import com.verbosegarbonzo.tariff.model.Preference;
+import com.verbosegarbonzo.tariff.model.PreferenceIndexRow;
+import com.verbosegarbonzo.tariff.model.PreferenceTrainingRow;
+import com.verbosegarbonzo.tariff.model.Product;
+import com.verbosegarbonzo.tariff.model.Suspension;
+import com.verbosegarbonzo.tariff.model.SuspensionIndexRow;
+import com.verbosegarbonzo.tariff.model.SuspensionTrainingRow;
+import com.verbosegarbonzo.tariff.repository.CountryRepository;
+import com.verbosegarbonzo.tariff.repository.MeasureRepository;
+import com.verbosegarbonzo.tariff.repository.PreferenceRepository;
+import com.verbosegarbonzo.tariff.repository.ProductRepository;
+import com.verbosegarbonzo.tariff.repository.SuspensionRepository;
+
+/**
+ * Synthetic reference data and in-memory repositories for the benchmarks.
+ *
+ * Every importer x product route gets one MFN measure per month for the given number of years
+ * up to today, a positive seasonal rate around a per-route base with occasional step changes.
+ * About a third of the routes also have a yearly preference for one exporter and one in twenty
+ * has a suspension in the current year. The default size (60 importers x 50 products x 6 years) is
+ * 3,000 routes and 216,000 measures.
+ *
+ * The repositories answer the queries used by the calculate, forecasting, feature and training
+ * paths from per-route lists, returning a fresh list per call as the JPA repositories do; any
+ * other method throws.
+ */
+public final class BenchmarkFixtures {
+
+    public static final int DEFAULT_IMPORTERS = 60;
+    public static final int DEFAULT_PRODUCTS = 50;
+    public static final int DEFAULT_YEARS = 6;
+
+    public record Route(String importerCode, String exporterCode, String hs6) {
+    }
+
+    private final List<Country> countries = new ArrayList<>();
+    private final List<Product> products = new ArrayList<>();
+    private final List<Measure> measures = new ArrayList<>();
+    private final List<Preference> preferences = new ArrayList<>();
+    private final List<Suspension> suspensions = new ArrayList<>();
+
+    private final Map<String, Country> countriesByCode = new HashMap<>();
+    private final Map<String, Product> productsByCode = new HashMap<>();
+    private final Map<String, List<Measure>> measuresByRoute = new HashMap<>();
+    private final Map<String, List<Preference>> preferencesByRoute = new HashMap<>();
+    private final Map<String, List<Suspension>> suspensionsByRoute = new HashMap<>();
+    private final Map<String, String> exporterByRoute = new HashMap<>();
+
+    public BenchmarkFixtures() {
+        this(DEFAULT_IMPORTERS, DEFAULT_PRODUCTS, DEFAULT_YEARS, 42L);
+    }
+
+    public BenchmarkFixtures(int importers, int productCount, int years, long seed) {
+        Random random = new Random(seed);
+        String[] bases = { "CIF", "CFR", "FOB" };
+
+        // Importers and the exporters they trade with share one country table
+        for (int i = 0; i < importers; i++) {
+            Country country = Country.builder()
+                    .countryCode(String.format("C%02d", i))
+                    .name("Country " + i)
+                    .numericCode(String.format("%03d", 100 + i))
+                    .valuationBasis(bases[i % bases.length])
+                    .build();
+            countries.add(country);
+            countriesByCode.put(country.getCountryCode(), country);
+        }
+        for (int i = 0; i < productCount; i++) {
+            Product product = new Product(String.format("%06d", 10_000 + i * 37), "Product " + i);
+            products.add(product);
+            productsByCode.put(product.getHs6Code(), product);
+        }
+
+        LocalDate firstMonth = LocalDate.now().withDayOfMonth(1).minusYears(years);
+        LocalDate thisMonth = LocalDate.now().withDayOfMonth(1);
+        int measureId = 1, preferenceId = 1, suspensionId = 1;
+
+        for (Country importer : countries) {
+            for (Product product : products) {
+                String route = key(importer.getCountryCode(), product.getHs6Code());
+                // MFN rates stay above zero: AIRecommendationService divides by the current rate
+                double base = 2 + random.nextDouble() * 18;
+                double amplitude = random.nextDouble() * 1.5;
+
+                List<Measure> routeMeasures = new ArrayList<>();
+                for (LocalDate month = firstMonth; !month.isAfter(thisMonth); month = month.plusMonths(1)) {
+                    if (random.nextInt(60) == 0) {
+                        base = Math.max(2, base + random.nextGaussian() * 2); // step change
+                    }
+                    double rate = base + amplitude * Math.sin(2 * Math.PI * month.getMonthValue() / 12);
+                    Measure measure = Measure.builder()
+                            .measureId(measureId++)
+                            .importer(importer)
+                            .product(product)
+                            .validFrom(month)
+                            .validTo(month.plusMonths(1).minusDays(1))
+                            .mfnAdvalRate(rate(rate))
+                            .specificRatePerKg(random.nextInt(25) == 0 ? rate(random.nextDouble()) : null)
+                            .build();
+                    routeMeasures.add(measure);
+                    measures.add(measure);
+                }
+                measuresByRoute.put(route, routeMeasures);
+
+                Country exporter = countries.get(random.nextInt(countries.size()));
+                if (exporter == importer) {
+                    exporter = countries.get((countries.indexOf(importer) + 1) % countries.size());
+                }
+                exporterByRoute.put(route, exporter.getCountryCode());
+
+                if (random.nextInt(3) == 0) {
+                    List<Preference> routePreferences = new ArrayList<>();
+                    LocalDate ftaStart = firstMonth.plusYears(random.nextInt(Math.max(1, years))).withDayOfYear(1);
+                    for (LocalDate year = ftaStart; !year.isAfter(thisMonth); year = year.plusYears(1)) {
+                        Preference preference = new Preference();
+                        preference.setPreferenceId(preferenceId++);
+                        preference.setImporter(importer);
+                        preference.setExporter(exporter);
+                        preference.setProduct(product);
+                        preference.setValidFrom(year);
+                        preference.setValidTo(year.plusYears(1).minusDays(1));
+                        preference.setPrefAdValRate(rate(base * random.nextDouble() * 0.5));
+                        routePreferences.add(preference);
+                        preferences.add(preference);
+                    }
+                    preferencesByRoute.put(key(importer.getCountryCode(), exporter.getCountryCode(),
+                            product.getHs6Code()), routePreferences);
+                }
+
+                if (random.nextInt(20) == 0) {
+                    Suspension suspension = new Suspension();
+                    suspension.setSuspensionId(suspensionId++);
+                    suspension.setImporter(importer);
+                    suspension.setProduct(product);
+                    suspension.setValidFrom(thisMonth.withDayOfYear(1));
+                    suspension.setValidTo(thisMonth.withDayOfYear(1).plusYears(1).minusDays(1));
+                    suspension.setSuspensionFlag(true);
+                    suspension.setSuspensionRate(rate(base * 0.25));
+                    suspensions.add(suspension);
+                    suspensionsByRoute.put(route, List.of(suspension));
+                }
+            }
+        }
+    }
+
+    private static BigDecimal rate(double value) {
+        return BigDecimal.valueOf(value).setScale(4, RoundingMode.HALF_UP);
+    }
+
+    private static String key(String... parts) {
+        return String.join("|", parts);
+    }
+
+    /**
+     * Quiet the per-call info logging of the services under test so it does not dominate timings.
+     */
+    public static void quietLogging() {
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+    }
+
+    /**
+     * Routes drawn uniformly with the given seed, each with its route's preference exporter.
+     */
+    public Route[] sampleRoutes(int count, long seed) {
+        Random random = new Random(seed);
+        Route[] routes = new Route[count];
+        for (int i = 0; i < count; i++) {
+            String importerCode = countries.get(random.nextInt(countries.size())).getCountryCode();
+            String hs6 = products.get(random.nextInt(products.size())).getHs6Code();
+            routes[i] = new Route(importerCode, exporterByRoute.get(key(importerCode, hs6)), hs6);
+        }
+        return routes;
+    }
+
+    public List<Measure> measures() {
+        return measures;
+    }
+
+    public List<Preference> preferences() {
+        return preferences;
+    }
+
+    public List<Suspension> suspensions() {
+        return suspensions;
+    }
+
+    public CountryRepository countryRepository() {
+        return repository(CountryRepository.class, (call) -> switch (call.method()) {
+            case "findById" -> Optional.ofNullable(countriesByCode.get((String) call.args()[0]));
+            case "findAll" -> new ArrayList<>(countries);
+            default -> unsupported(call);
+        });
+    }
+
+    public ProductRepository productRepository() {
+        return repository(ProductRepository.class, (call) -> switch (call.method()) {
+            case "findById" -> Optional.ofNullable(productsByCode.get((String) call.args()[0]));
+            case "findAll" -> new ArrayList<>(products);
+            default -> unsupported(call);
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    public MeasureRepository measureRepository() {
+        return repository(MeasureRepository.class, (call) -> switch (call.method()) {
+            case "findAll" -> new ArrayList<>(measures);
+            case "findIndexRows" -> measures.stream().map(MeasureIndexRow::of).toList();
+            case "findHistoricalRates" -> {
+                List<Measure> rows = measuresByRoute.getOrDefault(
+                        key((String) call.args()[0], (String) call.args()[1]), List.of());
+                yield between(rows, Measure::getValidFrom, (LocalDate) call.args()[2], (LocalDate) call.args()[3]);
+            }
+            case "streamTrainingRows" -> measuresByRoute.keySet().stream()
+                    .sorted()
+                    .flatMap(route -> measuresByRoute.get(route).stream())
+                    .map(MeasureTrainingRow::of);
+            case "findHistoricalRows" -> {
+                List<MeasureTrainingRow> rows = new ArrayList<>();
+                for (String hs6 : (Collection<String>) call.args()[1]) {
+                    between(measuresByRoute.getOrDefault(key((String) call.args()[0], hs6), List.of()),
+                            Measure::getValidFrom, (LocalDate) call.args()[2], (LocalDate) call.args()[3])
+                            .forEach(measure -> rows.add(MeasureTrainingRow.of(measure)));
+                }
+                yield rows;
+            }
+            case "countHistoricalRecords" -> (long) measuresByRoute.getOrDefault(
+                    key((String) call.args()[0], (String) call.args()[1]), List.of()).size();
+            case "findValidRate" -> {
+                Country importer = (Country) call.args()[0];
+                Product product = (Product) call.args()[1];
+                LocalDate date = (LocalDate) call.args()[2];
+                yield measuresByRoute.getOrDefault(key(importer.getCountryCode(), product.getHs6Code()), List.of())
+                        .stream()
+                        .filter(m -> !m.getValidFrom().isAfter(date)
+                                && (m.getValidTo() == null || !m.getValidTo().isBefore(date)))
+                        .findFirst();
+            }
+            default -> unsupported(call);
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    public PreferenceRepository preferenceRepository() {
+        return repository(PreferenceRepository.class, (call) -> switch (call.method()) {
+            case "findAll" -> new ArrayList<>(preferences);
+            case "findIndexRows" -> preferences.stream().map(PreferenceIndexRow::of).toList();
+            case "findHistoricalPreferences" -> {
+                List<Preference> rows = preferencesByRoute.getOrDefault(key((String) call.args()[0],
+                        (String) call.args()[1], (String) call.args()[2]), List.of());
+                yield between(rows, Preference::getValidFrom, (LocalDate) call.args()[3], (LocalDate) call.args()[4]);
+            }
+            case "findHistoricalRows" -> {
+                List<PreferenceTrainingRow> rows = new ArrayList<>();
+                for (String hs6 : (Collection<String>) call.args()[2]) {
+                    for (String exporter : (Collection<String>) call.args()[1]) {
+                        between(preferencesByRoute.getOrDefault(key((String) call.args()[0], exporter, hs6), List.of()),
+                                Preference::getValidFrom, (LocalDate) call.args()[3], (LocalDate) call.args()[4])
+                                .forEach(p -> rows.add(new PreferenceTrainingRow(p.getImporter().getCountryCode(),
+                                        exporter, hs6, p.getValidFrom(), p.getValidTo(), p.getPrefAdValRate())));
+                    }
+                }
+                yield rows;
+            }
+            // Keys are importer|exporter|hs6; training wants importer, hs6, then exporter order
+            case "streamTrainingRows" -> preferencesByRoute.values().stream()
+                    .flatMap(List::stream)
+                    .map(p -> new PreferenceTrainingRow(p.getImporter().getCountryCode(),
+                            p.getExporter().getCountryCode(), p.getProduct().getHs6Code(), p.getValidFrom(),
+                            p.getValidTo(), p.getPrefAdValRate()))
+                    .sorted(Comparator.comparing(PreferenceTrainingRow::importerCode)
+                            .thenComparing(PreferenceTrainingRow::hs6Code)
+                            .thenComparing(PreferenceTrainingRow::exporterCode)
+                            .thenComparing(PreferenceTrainingRow::validFrom));
+            default -> unsupported(call);
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    public SuspensionRepository suspensionRepository() {
+        return repository(SuspensionRepository.class, (call) -> switch (call.method()) {
+            case "findAll" -> new ArrayList<>(suspensions);
+            case "findIndexRows" -> suspensions.stream()
+                    .filter(Suspension::isSuspensionFlag)
+                    .map(SuspensionIndexRow::of)
+                    .toList();
+            case "findHistoricalSuspensions" -> {
+                List<Suspension> rows = suspensionsByRoute.getOrDefault(
+                        key((String) call.args()[0], (String) call.args()[1]), List.of());
+                yield between(rows, Suspension::getValidFrom, (LocalDate) call.args()[2], (LocalDate) call.args()[3]);
+            }
+            case "findHistoricalRows" -> {
+                List<SuspensionTrainingRow> rows = new ArrayList<>();
+                for (String hs6 : (Collection<String>) call.args()[1]) {
+                    between(suspensionsByRoute.getOrDefault(key((String) call.args()[0], hs6), List.of()),
+                            Suspension::getValidFrom, (LocalDate) call.args()[2], (LocalDate) call.args()[3])
+                            .forEach(s -> rows.add(new SuspensionTrainingRow(s.getImporter().getCountryCode(), hs6,
+                                    s.getValidFrom(), s.getValidTo(), s.getSuspensionRate())));
+                }
+                yield rows;
+            }
+            case "streamTrainingRows", "streamFeatureRows" -> suspensionsByRoute.keySet().stream()
+                    .sorted()
+                    .flatMap(route -> suspensionsByRoute.get(route).stream())
+                    .map(s -> new SuspensionTrainingRow(s.getImporter().getCountryCode(), s.getProduct().getHs6Code(),
+                            s.getValidFrom(), s.getValidTo(), s.getSuspensionRate()));
+            default -> unsupported(call);
+        });
+    }
+
+    private static <T> List<T> between(List<T> rows, Function<T, LocalDate> validFrom, LocalDate start,
+            LocalDate end) {
+        List<T> result = new ArrayList<>();
+        for (T row : rows) {
+            LocalDate from = validFrom.apply(row);
+            if (!from.isBefore(start) && !from.isAfter(end)) {
+                result.add(row);
+            }
+        }
+        return result;
+    }
+
+    private record Call(String method, Object[] args) {
+    }
+
+    private static Object unsupported(Call call) {
+        throw new UnsupportedOperationException(call.method());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <R> R repository(Class<R> type, Function<Call, Object> handler) {
+        return (R) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+            return switch (method.getName()) {
+                case "toString" -> "In-memory " + type.getSimpleName();
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "equals" -> proxy == args[0];
+                default -> handler.apply(new Call(method.getName(), args));
+            };
+        });
+    }
+}
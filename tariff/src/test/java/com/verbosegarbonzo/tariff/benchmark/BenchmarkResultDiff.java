@@ -0,0 +1,82 @@
+package com.verbosegarbonzo.tariff.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares two JMH JSON result files (as written by the benchmark profile) benchmark by benchmark.
+ *
+ * For each benchmark, mode and parameter set in both files it prints the baseline and current
+ * score, the change in percent and the allocation per operation (gc.alloc.rate.norm) when the
+ * gc profiler was on. A change counts as a regression when it is worse than the threshold in the
+ * direction of the mode: lower throughput, higher time per operation. The exit status is 1 if
+ * any benchmark regressed, so a build can fail on it.
+ *
+ * Usage (from the tariff directory, after mvn -Pbenchmark verify on both builds):
+ *   mvn test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=com.verbosegarbonzo.tariff.benchmark.BenchmarkResultDiff \
+ *       -Dexec.args="baseline.json target/jmh-result.json 10"
+ */
+public final class BenchmarkResultDiff {
+
+    private static final String ALLOC_NORM = "gc.alloc.rate.norm";
+
+    private BenchmarkResultDiff() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: BenchmarkResultDiff <baseline.json> <current.json> [threshold-percent]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10.0;
+
+        Map<String, JsonNode> baseline = read(new File(args[0]));
+        Map<String, JsonNode> current = read(new File(args[1]));
+
+        boolean regressed = false;
+        System.out.printf("%-70s %14s %14s %9s %22s%n", "Benchmark", "Baseline", "Current", "Change", "B/op");
+        for (Map.Entry<String, JsonNode> entry : current.entrySet()) {
+            JsonNode before = baseline.get(entry.getKey());
+            JsonNode after = entry.getValue();
+            if (before == null) {
+                System.out.printf("%-70s %14s %14.3f%n", entry.getKey(), "-", score(after));
+                continue;
+            }
+            double change = (score(after) - score(before)) / score(before) * 100;
+            // Throughput modes are better when higher, time modes when lower
+            boolean worse = after.path("mode").asText().equals("thrpt") ? change < -threshold : change > threshold;
+            regressed |= worse;
+            System.out.printf("%-70s %14.3f %14.3f %+8.1f%% %10s -> %-9s%s%n", entry.getKey(), score(before),
+                    score(after), change, allocation(before), allocation(after), worse ? "  REGRESSION" : "");
+        }
+        System.exit(regressed ? 1 : 0);
+    }
+
+    private static Map<String, JsonNode> read(File file) throws IOException {
+        Map<String, JsonNode> results = new LinkedHashMap<>();
+        for (JsonNode result : new ObjectMapper().readTree(file)) {
+            StringBuilder key = new StringBuilder(result.path("benchmark").asText())
+                    .append(' ').append(result.path("mode").asText());
+            for (Map.Entry<String, JsonNode> param : result.path("params").properties()) {
+                key.append(' ').append(param.getKey()).append('=').append(param.getValue().asText());
+            }
+            results.put(key.toString(), result);
+        }
+        return results;
+    }
+
+    private static double score(JsonNode result) {
+        return result.path("primaryMetric").path("score").asDouble();
+    }
+
+    private static String allocation(JsonNode result) {
+        JsonNode norm = result.path("secondaryMetrics").path(ALLOC_NORM);
+        return norm.isMissingNode() ? "-" : String.format("%.0f", norm.path("score").asDouble());
+    }
+}
@@ -0,0 +1,86 @@
+package com.verbosegarbonzo.tariff.benchmark;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.verbosegarbonzo.tariff.benchmark.BenchmarkFixtures.Route;
+import com.verbosegarbonzo.tariff.client.WitsTariffClient;
+import com.verbosegarbonzo.tariff.model.CalculateRequest;
+import com.verbosegarbonzo.tariff.model.CalculateResponse;
+import com.verbosegarbonzo.tariff.service.FreightService;
+import com.verbosegarbonzo.tariff.service.RateIndexService;
+import com.verbosegarbonzo.tariff.service.RateWriteBehindService;
+import com.verbosegarbonzo.tariff.service.TariffService;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * TariffService.calculate over the synthetic fixture: requests cycle through 1,024 routes,
+ * each resolved from the rate index loaded from the in-memory repositories. Routes with a
+ * preference send their exporter, so the preference, suspension and MFN paths all run.
+ *
+ * Run with the benchmark profile (see pom.xml):
+ *   mvn -Pbenchmark verify -Djmh.include=CalculateBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CalculateBenchmark {
+
+    private static final int ROUTES = 1024;
+
+    private TariffService tariffService;
+    private CalculateRequest[] requests;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        BenchmarkFixtures.quietLogging();
+        BenchmarkFixtures fixtures = new BenchmarkFixtures();
+
+        RateIndexService rateIndex = new RateIndexService(fixtures.measureRepository(),
+                fixtures.preferenceRepository(), fixtures.suspensionRepository());
+        rateIndex.reload();
+
+        tariffService = new TariffService(fixtures.countryRepository(), fixtures.productRepository(),
+                mock(WitsTariffClient.class), mock(FreightService.class), rateIndex,
+                mock(RateWriteBehindService.class));
+
+        requests = new CalculateRequest[ROUTES];
+        Route[] routes = fixtures.sampleRoutes(ROUTES, 7L);
+        for (int i = 0; i < ROUTES; i++) {
+            CalculateRequest request = new CalculateRequest();
+            request.setHs6(routes[i].hs6());
+            request.setImporterCode(routes[i].importerCode());
+            request.setExporterCode(routes[i].exporterCode());
+            request.setTransactionDate(LocalDate.now());
+            request.setTradeOriginal(BigDecimal.valueOf(100_000 + i * 1_337L, 2));
+            request.setNetWeight(BigDecimal.valueOf(50 + i % 200));
+            requests[i] = request;
+        }
+    }
+
+    @Benchmark
+    public CalculateResponse calculate() {
+        return tariffService.calculate(requests[next++ & (ROUTES - 1)]);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(CalculateBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,88 @@
+package com.verbosegarbonzo.tariff.benchmark;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.verbosegarbonzo.tariff.service.DutyMath;
+import com.verbosegarbonzo.tariff.service.DutyMath.Fixed;
+
+/**
+ * Duty and insurance arithmetic per calculate call.
+ * - legacy*: the BigDecimal expressions TariffService used before DutyMath
+ * - dutyMath*: DutyMath on rates converted once when indexed; the trade value is converted
+ *   per call, as TradeContext does
+ *
+ * Run with the benchmark profile (see pom.xml):
+ *   mvn -Pbenchmark verify -Djmh.include=DutyMathBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DutyMathBenchmark {
+
+    private BigDecimal trade;
+    private BigDecimal weight;
+    private BigDecimal advalRate;
+    private BigDecimal specificRate;
+    private BigDecimal insuranceRate;
+
+    private Fixed advalFixed;
+    private Fixed specificFixed;
+
+    @Setup
+    public void setUp() {
+        trade = new BigDecimal("12345.67");
+        weight = new BigDecimal("250.5");
+        advalRate = new BigDecimal("7.5000");
+        specificRate = new BigDecimal("0.3500");
+        insuranceRate = BigDecimal.ONE;
+
+        advalFixed = Fixed.of(advalRate);
+        specificFixed = Fixed.of(specificRate);
+    }
+
+    @Benchmark
+    public void legacyAdvalAndInsurance(Blackhole bh) {
+        bh.consume(trade.multiply(advalRate.multiply(BigDecimal.valueOf(0.01))).setScale(2, RoundingMode.HALF_UP));
+        bh.consume(trade.multiply(insuranceRate).divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP));
+    }
+
+    @Benchmark
+    public void dutyMathAdvalAndInsurance(Blackhole bh) {
+        Fixed amount = Fixed.of(trade);
+        bh.consume(DutyMath.percentOf(amount, advalFixed));
+        bh.consume(DutyMath.percentOf(amount, Fixed.ONE));
+    }
+
+    @Benchmark
+    public BigDecimal legacyCompound() {
+        return trade.multiply(advalRate.multiply(BigDecimal.valueOf(0.01)))
+                .add(weight.multiply(specificRate))
+                .setScale(2, RoundingMode.HALF_UP);
+    }
+
+    @Benchmark
+    public BigDecimal dutyMathCompound() {
+        return DutyMath.compound(Fixed.of(trade), advalFixed, Fixed.of(weight), specificFixed);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(DutyMathBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
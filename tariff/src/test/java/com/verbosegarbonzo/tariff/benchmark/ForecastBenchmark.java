@@ -0,0 +1,179 @@
+package com.verbosegarbonzo.tariff.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.verbosegarbonzo.tariff.benchmark.BenchmarkFixtures.Route;
+import com.verbosegarbonzo.tariff.config.MLModelProperties;
+import com.verbosegarbonzo.tariff.model.AIRecommendationResponse;
+import com.verbosegarbonzo.tariff.model.DateRangeForecast;
+import com.verbosegarbonzo.tariff.model.ProfileType;
+import com.verbosegarbonzo.tariff.model.TariffFeatures;
+import com.verbosegarbonzo.tariff.service.AIRecommendationService;
+import com.verbosegarbonzo.tariff.service.FeatureEngineeringService;
+import com.verbosegarbonzo.tariff.service.FeatureSchema;
+import com.verbosegarbonzo.tariff.service.FeatureStore;
+import com.verbosegarbonzo.tariff.service.ForecastMaterializationService;
+import com.verbosegarbonzo.tariff.service.RecommendationCache;
+import com.verbosegarbonzo.tariff.service.TariffMLService;
+import com.verbosegarbonzo.tariff.service.TrainingDataReader;
+
+/**
+ * The forecasting hot paths over the synthetic fixture, cycling through 1,024 routes:
+ * - predictRateRange: a 365-day weekly forecast
+ * - extractFeatures: the feature vector for one route and date
+ * - extractFeaturesBulk: the feature vectors of all 1,024 routes for today in one call
+ * - predictAll: one model scoring 365 preallocated FeatureSchema rows (no allocation per call)
+ * - timingRecommendation: AIRecommendationService without its cache, i.e. a cache miss
+ *
+ * modelTrained=true trains the per-route models once in setup (into a temporary directory);
+ * false disables the models so every forecast takes the statistical fallback.
+ *
+ * Run with the benchmark profile (see pom.xml):
+ *   mvn -Pbenchmark verify -Djmh.include=ForecastBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ForecastBenchmark {
+
+    private static final int ROUTES = 1024;
+
+    @Param({ "true", "false" })
+    public boolean modelTrained;
+
+    @Param({ "true", "false" })
+    public boolean featureStoreLoaded;
+
+    private Path modelDir;
+    private FeatureStore featureStore;
+    private TariffMLService mlService;
+    private FeatureEngineeringService featureService;
+    private AIRecommendationService recommendationService;
+    private Route[] routes;
+    private List<FeatureEngineeringService.FeatureKey> featureKeys;
+    private int next;
+
+    private static final int HORIZON_DAYS = 365;
+    private TariffMLService.TariffMLModel model;
+    private double[] horizonFeatures;
+    private double[] horizonPredictions;
+
+    @Setup
+    public void setUp() throws IOException {
+        BenchmarkFixtures.quietLogging();
+        BenchmarkFixtures fixtures = new BenchmarkFixtures();
+
+        modelDir = Files.createTempDirectory("tariff-bench-models");
+        MLModelProperties properties = new MLModelProperties();
+        properties.getModel().setPath(modelDir.toString());
+        properties.getModel().setEnabled(modelTrained);
+        properties.getForecasts().setEnabled(false); // Score every recommendation
+        properties.getRecommendations().setCacheEnabled(false);
+
+        featureStore = new FeatureStore(fixtures.measureRepository(), fixtures.preferenceRepository(),
+                fixtures.suspensionRepository(), properties);
+        if (featureStoreLoaded) {
+            featureStore.rebuild();
+        }
+        mlService = new TariffMLService(fixtures.measureRepository(),
+                new TrainingDataReader(fixtures.measureRepository(),
+                        fixtures.preferenceRepository(), fixtures.suspensionRepository()), properties, featureStore);
+        if (modelTrained) {
+            mlService.trainNewModel();
+        }
+        featureService = new FeatureEngineeringService(fixtures.measureRepository(),
+                fixtures.preferenceRepository(), fixtures.suspensionRepository(), featureStore);
+        recommendationService = new AIRecommendationService(mlService, fixtures.measureRepository(),
+                fixtures.countryRepository(), fixtures.productRepository(),
+                new ForecastMaterializationService(mlService, null, properties),
+                new RecommendationCache(properties, featureStore, mlService));
+
+        routes = fixtures.sampleRoutes(ROUTES, 11L);
+        featureKeys = Arrays.stream(routes)
+                .map(route -> new FeatureEngineeringService.FeatureKey(route.importerCode(), route.exporterCode(),
+                        route.hs6(), LocalDate.now()))
+                .toList();
+
+        model = new TariffMLService.TariffMLModel("C00-010000");
+        model.setMean(7.5);
+        model.setStdDev(1.2);
+        horizonFeatures = new double[HORIZON_DAYS * FeatureSchema.SIZE];
+        for (int day = 0; day < HORIZON_DAYS; day++) {
+            FeatureSchema.writeSeasonality(LocalDate.now().plusDays(day), horizonFeatures, day * FeatureSchema.SIZE);
+        }
+        horizonPredictions = new double[HORIZON_DAYS];
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        featureStore.shutdown();
+        try (Stream<Path> files = Files.walk(modelDir)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private Route nextRoute() {
+        return routes[next++ & (ROUTES - 1)];
+    }
+
+    @Benchmark
+    public List<DateRangeForecast> predictRateRange() {
+        Route route = nextRoute();
+        LocalDate today = LocalDate.now();
+        return mlService.predictRateRange(route.importerCode(), route.exporterCode(), route.hs6(),
+                today, today.plusDays(365));
+    }
+
+    @Benchmark
+    public TariffFeatures extractFeatures() {
+        Route route = nextRoute();
+        return featureService.extractFeatures(route.importerCode(), route.exporterCode(), route.hs6(),
+                LocalDate.now());
+    }
+
+    @Benchmark
+    public double[] extractFeaturesBulk() {
+        return featureService.extractFeatureVectors(featureKeys);
+    }
+
+    @Benchmark
+    public double[] predictAll() {
+        model.predictAll(horizonFeatures, HORIZON_DAYS, horizonPredictions);
+        return horizonPredictions;
+    }
+
+    @Benchmark
+    public AIRecommendationResponse timingRecommendation() {
+        Route route = nextRoute();
+        return recommendationService.getTimingRecommendation(route.importerCode(), route.exporterCode(),
+                route.hs6(), ProfileType.BUSINESS_OWNER);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ForecastBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,105 @@
+package com.verbosegarbonzo.tariff.benchmark;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.verbosegarbonzo.tariff.config.MLModelProperties;
+import com.verbosegarbonzo.tariff.service.FeatureSchema;
+import com.verbosegarbonzo.tariff.service.FeatureStore;
+import com.verbosegarbonzo.tariff.service.TariffMLService;
+import com.verbosegarbonzo.tariff.service.TrainingDataReader;
+
+/**
+ * The per-route model backends side by side, cycling through 256 fixture routes (72 rows each):
+ * - trainRoute: fit one route's model
+ * - predictAll: score 365 preallocated FeatureSchema rows with one route's model
+ *
+ * MEAN is the route mean with a seasonal adjustment; CART and GBT are Tribuo regression trees
+ * with the default app.ml.model.tree settings.
+ *
+ * Run with the benchmark profile (see pom.xml):
+ *   mvn -Pbenchmark verify -Djmh.include=ModelBackendBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModelBackendBenchmark {
+
+    private static final int ROUTES = 256;
+    private static final int HORIZON_DAYS = 365;
+
+    @Param({ "MEAN", "CART", "GBT" })
+    public MLModelProperties.Backend backend;
+
+    private TariffMLService mlService;
+    private TrainingDataReader.RouteSeries[] routes;
+    private TariffMLService.TariffMLModel[] models;
+    private double[] horizonFeatures;
+    private double[] horizonPredictions;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        BenchmarkFixtures.quietLogging();
+        BenchmarkFixtures fixtures = new BenchmarkFixtures();
+
+        // trainModelForRoute does not write model files, so no model directory is needed
+        MLModelProperties properties = new MLModelProperties();
+        properties.getModel().setBackend(backend);
+
+        TrainingDataReader reader = new TrainingDataReader(fixtures.measureRepository(),
+                fixtures.preferenceRepository(), fixtures.suspensionRepository());
+        mlService = new TariffMLService(fixtures.measureRepository(), reader, properties,
+                new FeatureStore(fixtures.measureRepository(), fixtures.preferenceRepository(),
+                        fixtures.suspensionRepository(), properties));
+
+        List<TrainingDataReader.RouteSeries> sample = new ArrayList<>();
+        reader.forEachRoute(route -> {
+            if (sample.size() < ROUTES) {
+                sample.add(route);
+            }
+        });
+        routes = sample.toArray(TrainingDataReader.RouteSeries[]::new);
+        models = new TariffMLService.TariffMLModel[ROUTES];
+        for (int i = 0; i < ROUTES; i++) {
+            models[i] = mlService.trainModelForRoute(routes[i]);
+        }
+
+        horizonFeatures = new double[HORIZON_DAYS * FeatureSchema.SIZE];
+        for (int day = 0; day < HORIZON_DAYS; day++) {
+            FeatureSchema.writeSeasonality(LocalDate.now().plusDays(day), horizonFeatures, day * FeatureSchema.SIZE);
+        }
+        horizonPredictions = new double[HORIZON_DAYS];
+    }
+
+    @Benchmark
+    public TariffMLService.TariffMLModel trainRoute() {
+        return mlService.trainModelForRoute(routes[next++ & (ROUTES - 1)]);
+    }
+
+    @Benchmark
+    public double[] predictAll() {
+        models[next++ & (ROUTES - 1)].predictAll(horizonFeatures, HORIZON_DAYS, horizonPredictions);
+        return horizonPredictions;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ModelBackendBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,148 @@
+package com.verbosegarbonzo.tariff.benchmark;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.verbosegarbonzo.tariff.client.WitsTariffClient;
+import com.verbosegarbonzo.tariff.model.CalculateRequest;
+import com.verbosegarbonzo.tariff.model.Country;
+import com.verbosegarbonzo.tariff.model.Measure;
+import com.verbosegarbonzo.tariff.model.Product;
+import com.verbosegarbonzo.tariff.repository.CountryRepository;
+import com.verbosegarbonzo.tariff.repository.MeasureRepository;
+import com.verbosegarbonzo.tariff.repository.PreferenceRepository;
+import com.verbosegarbonzo.tariff.repository.ProductRepository;
+import com.verbosegarbonzo.tariff.repository.SuspensionRepository;
+import com.verbosegarbonzo.tariff.service.FreightService;
+import com.verbosegarbonzo.tariff.service.RateIndexService;
+import com.verbosegarbonzo.tariff.service.RateWriteBehindService;
+import com.verbosegarbonzo.tariff.service.TariffService;
+import com.verbosegarbonzo.tariff.service.TradeContext;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Per-call cost of Country/Product reference lookups in the calculate path.
+ *
+ * Country and product repositories are stand-ins for the Spring cache proxy: every findById
+ * builds a key, hits a ConcurrentMapCache and wraps the result in a new Optional.
+ * - legacyReferenceLookups: the 6 importer + 4 product lookups the old calculate path made
+ * - contextReferenceLookups: the single importer lookup that builds the TradeContext
+ * - calculate: the full MFN ad-valorem path with the trade context
+ *
+ * Run with the benchmark profile (see pom.xml):
+ *   mvn -Pbenchmark verify -Djmh.include=TradeContextBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TradeContextBenchmark {
+
+    private CountryRepository countryRepository;
+    private ProductRepository productRepository;
+    private TariffService tariffService;
+    private CalculateRequest request;
+
+    @Setup
+    public void setUp() {
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+
+        Country importer = Country.builder().countryCode("SGP").name("Singapore").numericCode("702")
+                .valuationBasis("FOB").build();
+        Country exporter = Country.builder().countryCode("MYS").name("Malaysia").numericCode("458").build();
+        Product product = new Product("290531", "Benchmark product");
+
+        Cache countryCache = new ConcurrentMapCache("countryData");
+        countryCache.put("SGP", Optional.of(importer));
+        countryCache.put("MYS", Optional.of(exporter));
+        Cache productCache = new ConcurrentMapCache("productData");
+        productCache.put("290531", Optional.of(product));
+
+        countryRepository = cachedRepository(CountryRepository.class, countryCache);
+        productRepository = cachedRepository(ProductRepository.class, productCache);
+
+        MeasureRepository measureRepository = mock(MeasureRepository.class);
+        PreferenceRepository preferenceRepository = mock(PreferenceRepository.class);
+        RateIndexService rateIndex = new RateIndexService(measureRepository, preferenceRepository,
+                mock(SuspensionRepository.class));
+        rateIndex.indexMeasure(Measure.builder()
+                .measureId(1)
+                .importer(importer)
+                .product(product)
+                .validFrom(LocalDate.of(2024, 1, 1))
+                .mfnAdvalRate(new BigDecimal("7.5"))
+                .build());
+
+        tariffService = new TariffService(countryRepository, productRepository, mock(WitsTariffClient.class),
+                mock(FreightService.class), rateIndex, mock(RateWriteBehindService.class));
+
+        request = new CalculateRequest();
+        request.setHs6("290531");
+        request.setImporterCode("SGP");
+        request.setExporterCode("MYS");
+        request.setTransactionDate(LocalDate.of(2024, 6, 1));
+        request.setTradeOriginal(new BigDecimal("1000.00"));
+    }
+
+    /**
+     * Repository proxy that answers findById the way the @Cacheable proxy does on a cache hit.
+     */
+    @SuppressWarnings("unchecked")
+    private static <R> R cachedRepository(Class<R> type, Cache cache) {
+        return (R) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+            if (method.getName().equals("findById")) {
+                Cache.ValueWrapper hit = cache.get(args[0]);
+                Optional<?> cached = hit != null ? (Optional<?>) hit.get() : Optional.empty();
+                return cached.map(v -> v);
+            }
+            throw new UnsupportedOperationException(method.getName());
+        });
+    }
+
+    @Benchmark
+    public void legacyReferenceLookups(Blackhole bh) {
+        for (int i = 0; i < 6; i++) {
+            bh.consume(countryRepository.findById(request.getImporterCode()).orElse(null));
+        }
+        for (int i = 0; i < 4; i++) {
+            bh.consume(productRepository.findById(request.getHs6()).orElse(null));
+        }
+    }
+
+    @Benchmark
+    public TradeContext contextReferenceLookups() {
+        return TradeContext.of(request, countryRepository.findById(request.getImporterCode()).orElse(null));
+    }
+
+    @Benchmark
+    public Object calculate() {
+        return tariffService.calculate(request);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(TradeContextBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
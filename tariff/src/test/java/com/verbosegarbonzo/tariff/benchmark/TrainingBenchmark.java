@@ -0,0 +1,82 @@
+package com.verbosegarbonzo.tariff.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.verbosegarbonzo.tariff.config.MLModelProperties;
+import com.verbosegarbonzo.tariff.service.FeatureStore;
+import com.verbosegarbonzo.tariff.service.TariffMLService;
+import com.verbosegarbonzo.tariff.service.TrainingDataReader;
+
+/**
+ * A full retrain over the synthetic fixture (3,000 routes, 216,000 measures): read the routes
+ * through TrainingDataReader, fit every route model and queue the model files.
+ *
+ * The model files are written in the background; each invocation waits for them so one
+ * invocation's writes do not overlap the next.
+ *
+ * Run with the benchmark profile (see pom.xml):
+ *   mvn -Pbenchmark verify -Djmh.include=TrainingBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrainingBenchmark {
+
+    private Path modelDir;
+    private TariffMLService mlService;
+
+    @Setup
+    public void setUp() throws IOException {
+        BenchmarkFixtures.quietLogging();
+        BenchmarkFixtures fixtures = new BenchmarkFixtures();
+
+        modelDir = Files.createTempDirectory("tariff-bench-models");
+        MLModelProperties properties = new MLModelProperties();
+        properties.getModel().setPath(modelDir.toString());
+
+        mlService = new TariffMLService(fixtures.measureRepository(),
+                new TrainingDataReader(fixtures.measureRepository(),
+                        fixtures.preferenceRepository(), fixtures.suspensionRepository()), properties,
+                new FeatureStore(fixtures.measureRepository(), fixtures.preferenceRepository(),
+                        fixtures.suspensionRepository(), properties));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mlService.shutdown();
+        try (Stream<Path> files = Files.walk(modelDir)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public void trainNewModel() throws Exception {
+        mlService.trainNewModel();
+        mlService.getPendingPersistence().get();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(TrainingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,224 @@
+package com.verbosegarbonzo.tariff.client;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.verbosegarbonzo.tariff.config.WitsProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs WitsTariffClient against a local stub of the WITS tariff API.
+ */
+class WitsTariffClientTest {
+
+    private static final String RATE_XML =
+            "<message:StructureSpecificData xmlns:message=\"x\"><DataSet><Series>"
+                    + "<Obs OBS_VALUE=\"%s\"/></Series></DataSet></message:StructureSpecificData>";
+
+    private HttpServer server;
+    private WitsProperties props;
+
+    // Stub behaviour, set per test
+    private volatile int status = 200;
+    private volatile String rate = "5.5";
+    private volatile long delayMs = 0;
+    private volatile String body = null; // Raw response body, overriding rate when set
+
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger peakRunning = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+
+        props = new WitsProperties();
+        props.getTariff().setBaseUrl("http://127.0.0.1:" + server.getAddress().getPort());
+        props.getTariff().setDataset("TRN");
+        props.getFetch().setCallTimeout(Duration.ofSeconds(5));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        hits.incrementAndGet();
+        peakRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        try {
+            if (delayMs > 0) {
+                Thread.sleep(delayMs);
+            }
+            String text = body != null ? body
+                    : rate == null ? "<error>No data</error>"
+                    : String.format(RATE_XML, rate);
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/xml");
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private WitsTariffClient client() {
+        WebClient webClient = WebClient.builder().baseUrl(props.getTariff().getBaseUrl()).build();
+        return new WitsTariffClient(webClient, props);
+    }
+
+    @Test
+    void fetchRate_parsesRateFromWitsXml() {
+        assertEquals(Optional.of(new BigDecimal("5.5")),
+                client().fetchRate("702", WitsTariffClient.MFN_PARTNER, "290531", 2024).join());
+        assertEquals(1, hits.get());
+    }
+
+    @Test
+    void fetchRate_concurrentCallersForSameKeyShareOneCall() {
+        delayMs = 200;
+        WitsTariffClient client = client();
+
+        List<CompletableFuture<Optional<BigDecimal>>> calls = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            calls.add(client.fetchRate("702", "458", "290531", 2024));
+        }
+
+        calls.forEach(c -> assertEquals(Optional.of(new BigDecimal("5.5")), c.join()));
+        assertEquals(1, hits.get());
+    }
+
+    @Test
+    void fetchRate_noDataIsCachedUntilTtlExpires() throws Exception {
+        rate = null;
+        props.getFetch().setNegativeCacheTtl(Duration.ofMillis(300));
+        WitsTariffClient client = client();
+
+        assertTrue(client.fetchRate("702", "458", "290531", 2024).join().isEmpty());
+        assertTrue(client.fetchRate("702", "458", "290531", 2024).join().isEmpty());
+        assertEquals(1, hits.get());
+
+        // 404 is also a "no data" answer
+        status = 404;
+        assertTrue(client.fetchRate("702", "458", "290532", 2024).join().isEmpty());
+        assertTrue(client.fetchRate("702", "458", "290532", 2024).join().isEmpty());
+        assertEquals(2, hits.get());
+
+        Thread.sleep(400);
+        status = 200;
+        rate = "3";
+        assertEquals(Optional.of(new BigDecimal("3")), client.fetchRate("702", "458", "290531", 2024).join());
+        assertEquals(3, hits.get());
+    }
+
+    @Test
+    void fetchRate_serverErrorsAreNotCached() {
+        status = 500;
+        WitsTariffClient client = client();
+
+        assertTrue(client.fetchRate("702", "458", "290531", 2024).join().isEmpty());
+        status = 200;
+        assertEquals(Optional.of(new BigDecimal("5.5")), client.fetchRate("702", "458", "290531", 2024).join());
+        assertEquals(2, hits.get());
+    }
+
+    @Test
+    void fetchRate_malformedResponseIsNotCached() {
+        body = "<message:StructureSpecificData><Obs OBS_VALUE=";
+        WitsTariffClient client = client();
+
+        assertTrue(client.fetchRate("702", "458", "290531", 2024).join().isEmpty());
+        body = String.format(RATE_XML, "n/a");
+        assertTrue(client.fetchRate("702", "458", "290531", 2024).join().isEmpty());
+        body = null;
+        assertEquals(Optional.of(new BigDecimal("5.5")), client.fetchRate("702", "458", "290531", 2024).join());
+        assertEquals(3, hits.get());
+    }
+
+    @Test
+    void fetchRate_limitsConcurrentCallsAndFailsFastWithoutASlot() {
+        delayMs = 300;
+        props.getFetch().setMaxConcurrentCalls(3);
+        WitsTariffClient client = client();
+
+        // Distinct keys so nothing coalesces; fetchRate never blocks the caller
+        List<CompletableFuture<Optional<BigDecimal>>> calls = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            calls.add(client.fetchRate("702", "458", String.format("%06d", i), 2024));
+        }
+        long answeredAtOnce = calls.stream().filter(CompletableFuture::isDone).count();
+        calls.forEach(CompletableFuture::join);
+
+        assertEquals(9, answeredAtOnce);
+        assertEquals(3, hits.get());
+        assertTrue(peakRunning.get() <= 3, "peak concurrent WITS calls " + peakRunning.get());
+
+        // The skipped keys were not remembered as having no data
+        delayMs = 0;
+        assertEquals(Optional.of(new BigDecimal("5.5")), client.fetchRate("702", "458", "000011", 2024).join());
+    }
+
+    @Test
+    void fetchRate_callerStopsWaitingAfterWaitTimeout() {
+        delayMs = 500;
+        props.getFetch().setWaitTimeout(Duration.ofMillis(100));
+        WitsTariffClient client = client();
+
+        long start = System.nanoTime();
+        assertTrue(client.fetchRate("702", "458", "290531", 2024).join().isEmpty());
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 400);
+
+        // The call carried on: a caller arriving while it runs still gets its answer
+        props.getFetch().setWaitTimeout(Duration.ofSeconds(5));
+        assertEquals(Optional.of(new BigDecimal("5.5")), client.fetchRate("702", "458", "290531", 2024).join());
+        assertEquals(1, hits.get());
+    }
+
+    @Test
+    void circuitBreaker_opensAfterFailuresAndRecoversAfterPause() throws Exception {
+        status = 500;
+        props.getFetch().setBreakerFailureThreshold(3);
+        props.getFetch().setBreakerOpenDuration(Duration.ofMillis(300));
+        WitsTariffClient client = client();
+
+        for (int i = 0; i < 3; i++) {
+            client.fetchRate("702", "458", String.format("%06d", i), 2024).join();
+        }
+        assertEquals("OPEN", client.getStatus().get("circuitState"));
+
+        // Open circuit answers empty without calling WITS
+        assertTrue(client.fetchRate("702", "458", "999999", 2024).join().isEmpty());
+        assertEquals(3, hits.get());
+
+        Thread.sleep(400);
+        status = 200;
+        assertEquals(Optional.of(new BigDecimal("5.5")), client.fetchRate("702", "458", "999999", 2024).join());
+        assertEquals(4, hits.get());
+        assertEquals("CLOSED", client.getStatus().get("circuitState"));
+    }
+}
@@ -1,12 +1,17 @@
 package com.verbosegarbonzo.tariff.controller;
 
+import com.verbosegarbonzo.tariff.exception.InvalidRequestException;
+import com.verbosegarbonzo.tariff.model.AIRecommendationRequest;
 import com.verbosegarbonzo.tariff.model.AIRecommendationResponse;
+import com.verbosegarbonzo.tariff.model.PortfolioRecommendationResponse;
+import com.verbosegarbonzo.tariff.model.PortfolioRouteResult;
 import com.verbosegarbonzo.tariff.model.ProfileType;
 import com.verbosegarbonzo.tariff.model.UserInfo;
 import com.verbosegarbonzo.tariff.repository.UserInfoRepository;
 import com.verbosegarbonzo.tariff.service.AIRecommendationService;
 import com.verbosegarbonzo.tariff.service.GeminiSummaryService;
 import com.verbosegarbonzo.tariff.service.JwtService;
+import com.verbosegarbonzo.tariff.service.PortfolioRecommendationService;
 import com.verbosegarbonzo.tariff.service.UserInfoService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -18,14 +23,20 @@ import org.springframework.test.context.bean.override.mockito.MockitoBean;
 
 import io.restassured.RestAssured;
 import io.restassured.http.ContentType;
+import reactor.core.publisher.Flux;
 
 import java.math.BigDecimal;
+import java.util.List;
 import java.util.Map;
 
 import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -51,6 +62,9 @@ public class AIControllerTest {
     @MockitoBean
     private GeminiSummaryService geminiSummaryService;
 
+    @MockitoBean
+    private PortfolioRecommendationService portfolioRecommendationService;
+
     @Autowired
     private UserInfoService userInfoService;
 
@@ -228,6 +242,86 @@ public class AIControllerTest {
                 .statusCode(500);
     }
 
+    @Test
+    void getPortfolioRecommendation_WithRoutes_ReturnsPerRouteResults() {
+        PortfolioRecommendationResponse mockResponse = PortfolioRecommendationResponse.builder()
+                .profileType(ProfileType.STUDENT)
+                .routes(List.of(
+                        PortfolioRouteResult.success("USA", "CHN", "123456", AIRecommendationResponse.builder()
+                                .currentRate(new BigDecimal("0.10"))
+                                .hasInsufficientData(false)
+                                .build(), 12),
+                        PortfolioRouteResult.failure("USA", "CHN", "654321", "RECOMMENDATION_ERROR", "Scoring failed", 3)))
+                .succeeded(1)
+                .failed(1)
+                .readMs(5L)
+                .elapsedMs(20L)
+                .build();
+
+        when(portfolioRecommendationService.recommend(
+                argThat(routes -> routes.size() == 2 && "654321".equals(routes.get(1).getHs6Code())),
+                eq(ProfileType.STUDENT)))
+                .thenReturn(mockResponse);
+
+        Map<String, Object> request = Map.of("routes", List.of(
+                Map.of("importerCode", "USA", "exporterCode", "CHN", "hs6Code", "123456"),
+                Map.of("importerCode", "USA", "exporterCode", "CHN", "hs6Code", "654321")));
+
+        given()
+                .header("Authorization", "Bearer " + studentJwt)
+                .contentType(ContentType.JSON)
+                .body(request)
+                .when()
+                .post("/api/ai/recommendation/portfolio")
+                .then()
+                .statusCode(200)
+                .body("profileType", equalTo("STUDENT"))
+                .body("succeeded", equalTo(1))
+                .body("routes[0].recommendation.currentRate", equalTo(0.10f))
+                .body("routes[0].elapsedMs", equalTo(12))
+                .body("routes[1].error", equalTo("RECOMMENDATION_ERROR"))
+                .body("routes[1].message", equalTo("Scoring failed"));
+    }
+
+    @Test
+    void getPortfolioRecommendation_WithoutRoutes_UsesUserHistory() {
+        List<AIRecommendationRequest> history = List.of(new AIRecommendationRequest("USA", "CHN", "123456"));
+        when(portfolioRecommendationService.routesFromHistory(any(UserInfo.class))).thenReturn(history);
+        when(portfolioRecommendationService.recommend(history, ProfileType.BUSINESS_OWNER))
+                .thenReturn(PortfolioRecommendationResponse.builder()
+                        .profileType(ProfileType.BUSINESS_OWNER)
+                        .routes(List.of())
+                        .succeeded(0)
+                        .failed(0)
+                        .build());
+
+        given()
+                .header("Authorization", "Bearer " + userJwt)
+                .contentType(ContentType.JSON)
+                .body(Map.of())
+                .when()
+                .post("/api/ai/recommendation/portfolio")
+                .then()
+                .statusCode(200)
+                .body("profileType", equalTo("BUSINESS_OWNER"));
+    }
+
+    @Test
+    void getPortfolioRecommendation_TooManyRoutes_Returns400() {
+        when(portfolioRecommendationService.recommend(anyList(), any(ProfileType.class)))
+                .thenThrow(new InvalidRequestException("A portfolio can have at most 50 routes"));
+
+        given()
+                .header("Authorization", "Bearer " + userJwt)
+                .contentType(ContentType.JSON)
+                .body(Map.of("routes", List.of(Map.of("importerCode", "USA", "hs6Code", "123456"))))
+                .when()
+                .post("/api/ai/recommendation/portfolio")
+                .then()
+                .statusCode(400)
+                .body("error", equalTo("INVALID_REQUEST"));
+    }
+
     @Test
     void getGeminiSummary_Success() {
         // Create policy analyst user
@@ -324,6 +418,57 @@ public class AIControllerTest {
                 .statusCode(403);
     }
 
+    @Test
+    void streamGeminiSummary_SendsChunksThenDone() {
+        when(geminiSummaryService.streamGeminiSummary(
+                any(AIRecommendationResponse.class), eq(ProfileType.STUDENT), eq("USA"), eq("123456")))
+                .thenReturn(Flux.just("Import ", "in April."));
+
+        given()
+                .header("Authorization", "Bearer " + studentJwt)
+                .contentType(ContentType.JSON)
+                .body(Map.of("importerCode", "USA", "hs6Code", "123456",
+                        "recommendation", Map.of("currentRate", 0.10, "hasInsufficientData", false)))
+                .when()
+                .post("/api/ai/gemini-summary/stream")
+                .then()
+                .statusCode(200)
+                .contentType(containsString("text/event-stream"))
+                .body(equalTo("event:chunk\ndata:{\"text\":\"Import \"}\n\n"
+                        + "event:chunk\ndata:{\"text\":\"in April.\"}\n\n"
+                        + "event:done\ndata:{\"summary\":\"Import in April.\",\"profileType\":\"STUDENT\",\"success\":true}\n\n"));
+    }
+
+    @Test
+    void streamGeminiSummary_FailsPartWay_SendsUnsuccessfulDone() {
+        when(geminiSummaryService.streamGeminiSummary(
+                any(AIRecommendationResponse.class), any(ProfileType.class), anyString(), anyString()))
+                .thenReturn(Flux.concat(Flux.just("Import "), Flux.error(new IllegalStateException("Gemini unavailable"))));
+
+        given()
+                .header("Authorization", "Bearer " + userJwt)
+                .contentType(ContentType.JSON)
+                .body(Map.of("importerCode", "USA", "hs6Code", "123456",
+                        "recommendation", Map.of("currentRate", 0.10, "hasInsufficientData", false)))
+                .when()
+                .post("/api/ai/gemini-summary/stream")
+                .then()
+                .statusCode(200)
+                .body(containsString("event:chunk\ndata:{\"text\":\"Import \"}"))
+                .body(containsString("event:done\ndata:{\"summary\":\"Import \",\"profileType\":\"BUSINESS_OWNER\",\"success\":false}"));
+    }
+
+    @Test
+    void streamGeminiSummary_Unauthenticated_Returns403() {
+        given()
+                .contentType(ContentType.JSON)
+                .body(Map.of("importerCode", "USA", "hs6Code", "123456"))
+                .when()
+                .post("/api/ai/gemini-summary/stream")
+                .then()
+                .statusCode(403);
+    }
+
     @Test
     void getGeminiSummary_ServiceThrowsException_Returns500WithFailureResponse() {
         when(geminiSummaryService.generateGeminiSummary(
@@ -1,14 +1,20 @@
 package com.verbosegarbonzo.tariff.controller;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
 import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.when;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -16,6 +22,7 @@ import org.springframework.boot.test.web.server.LocalServerPort;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.verbosegarbonzo.tariff.exception.RateNotFoundException;
@@ -224,8 +231,10 @@ public class TariffControllerTest {
         rateNode3.put("advalorem", "0.05");
         mockResponse3.setAppliedRate(rateNode3);
 
-        when(tariffService.calculate(any(CalculateRequest.class)))
-                .thenReturn(mockResponse1, mockResponse2, mockResponse3);
+        // Batch items run concurrently, so stub per request rather than by call order
+        when(tariffService.calculate(argThat(r -> r != null && "123456".equals(r.getHs6())))).thenReturn(mockResponse1);
+        when(tariffService.calculate(argThat(r -> r != null && "654321".equals(r.getHs6())))).thenReturn(mockResponse2);
+        when(tariffService.calculate(argThat(r -> r != null && "789012".equals(r.getHs6())))).thenReturn(mockResponse3);
 
         String jsonString = String.format("["
             + "{\"importerCode\":\"USA\",\"exporterCode\":\"CHN\",\"hs6\":\"123456\",\"tradeOriginal\":\"1000.00\",\"transactionDate\":\"%s\"},"
@@ -321,9 +330,124 @@ public class TariffControllerTest {
                 .when()
                 .post("/api/calculate/batch")
                 .then()
-                .statusCode(404)
-                .body("error", equalTo("RATE_NOT_FOUND"))
-                .body("message", equalTo("No tariff rate found for the given parameters"));
+                .statusCode(200)
+                .body("size()", equalTo(1))
+                .body("[0].index", equalTo(0))
+                .body("[0].error", equalTo("RATE_NOT_FOUND"))
+                .body("[0].message", equalTo("No tariff rate found for the given parameters"));
+    }
+
+
+    @Test
+    void calculateBatch_MixedResults_KeepsOrderAndPerItemErrors() {
+        CalculateResponse okResponse = new CalculateResponse();
+        okResponse.setTransactionId(44444L);
+        okResponse.setHs6("123456");
+        okResponse.setTradeFinal(new BigDecimal("1100.00"));
+
+        when(tariffService.calculate(argThat(r -> r != null && "123456".equals(r.getHs6()))))
+                .thenReturn(okResponse);
+        when(tariffService.calculate(argThat(r -> r != null && "999999".equals(r.getHs6()))))
+                .thenThrow(new RateNotFoundException("No tariff rate found for the given parameters"));
+
+        String today = LocalDate.now().toString();
+        String jsonString = String.format("["
+            + "{\"importerCode\":\"USA\",\"hs6\":\"999999\",\"tradeOriginal\":\"10.00\",\"transactionDate\":\"%1$s\"},"
+            + "{\"importerCode\":\"USA\",\"hs6\":\"123456\",\"tradeOriginal\":\"1000.00\",\"transactionDate\":\"%1$s\"}"
+            + "]", today);
+
+        given()
+                .contentType(ContentType.JSON)
+                .body(jsonString)
+                .when()
+                .post("/api/calculate/batch")
+                .then()
+                .statusCode(200)
+                .body("size()", equalTo(2))
+                .body("[0].index", equalTo(0))
+                .body("[0].error", equalTo("RATE_NOT_FOUND"))
+                .body("[1].index", equalTo(1))
+                .body("[1].transactionId", equalTo(44444))
+                .body("[1].tradeFinal", equalTo(1100.00f));
+    }
+
+    private void stubStreamResponses() {
+        CalculateResponse okResponse = new CalculateResponse();
+        okResponse.setTransactionId(55555L);
+        okResponse.setHs6("123456");
+        okResponse.setTradeFinal(new BigDecimal("1100.00"));
+
+        when(tariffService.calculate(argThat(r -> r != null && "123456".equals(r.getHs6()))))
+                .thenReturn(okResponse);
+        when(tariffService.calculate(argThat(r -> r != null && "999999".equals(r.getHs6()))))
+                .thenThrow(new RateNotFoundException("No tariff rate found for the given parameters"));
+    }
+
+    private List<JsonNode> readNdjson(String body) throws Exception {
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : body.split("\n")) {
+            lines.add(objectMapper.readTree(line));
+        }
+        return lines;
+    }
+
+    @Test
+    void calculateStream_Ndjson_WritesOneResultPerLineInOrder() throws Exception {
+        stubStreamResponses();
+        String today = LocalDate.now().toString();
+        String body = String.format(
+            "{\"importerCode\":\"USA\",\"hs6\":\"123456\",\"tradeOriginal\":\"1000.00\",\"transactionDate\":\"%1$s\"}\n"
+            + "\n"
+            + "{\"importerCode\":\"USA\",\"hs6\":\"12AB\",\"tradeOriginal\":\"1000.00\",\"transactionDate\":\"%1$s\"}\n"
+            + "not json\n"
+            + "{\"importerCode\":\"USA\",\"hs6\":\"999999\",\"tradeOriginal\":\"10.00\",\"transactionDate\":\"%1$s\"}\n",
+            today);
+
+        String response = given()
+                .contentType("application/x-ndjson")
+                .body(body.getBytes(StandardCharsets.UTF_8))
+                .when()
+                .post("/api/calculate/stream")
+                .then()
+                .statusCode(200)
+                .contentType("application/x-ndjson")
+                .extract().asString();
+
+        List<JsonNode> results = readNdjson(response);
+        assertEquals(4, results.size());
+        assertEquals(55555, results.get(0).get("transactionId").asInt());
+        assertEquals("INVALID_REQUEST", results.get(1).get("error").asText());
+        assertTrue(results.get(1).get("message").asText().startsWith("hs6:"));
+        assertEquals("INVALID_REQUEST", results.get(2).get("error").asText());
+        assertEquals("RATE_NOT_FOUND", results.get(3).get("error").asText());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i, results.get(i).get("index").asInt());
+        }
+    }
+
+    @Test
+    void calculateStream_Csv_MapsHeaderColumnsToRequestFields() throws Exception {
+        stubStreamResponses();
+        String today = LocalDate.now().toString();
+        String body = "importerCode,exporterCode,hs6,tradeOriginal,transactionDate\n"
+            + "USA,CHN,123456,1000.00," + today + "\n"
+            + "USA,,999999,\"10.00\"," + today + "\n"
+            + "USA,CHN,123456,abc," + today + "\n";
+
+        String response = given()
+                .contentType("text/csv")
+                .body(body.getBytes(StandardCharsets.UTF_8))
+                .when()
+                .post("/api/calculate/stream")
+                .then()
+                .statusCode(200)
+                .extract().asString();
+
+        List<JsonNode> results = readNdjson(response);
+        assertEquals(3, results.size());
+        assertEquals(55555, results.get(0).get("transactionId").asInt());
+        assertEquals("RATE_NOT_FOUND", results.get(1).get("error").asText());
+        assertEquals("INVALID_REQUEST", results.get(2).get("error").asText());
     }
 
-}
\ No newline at end of file
+}
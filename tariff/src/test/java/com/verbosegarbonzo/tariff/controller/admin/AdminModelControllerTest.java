@@ -0,0 +1,192 @@
+package com.verbosegarbonzo.tariff.controller.admin;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.*;
+import io.restassured.RestAssured;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.TestPropertySource;
+
+import com.verbosegarbonzo.tariff.model.UserInfo;
+import com.verbosegarbonzo.tariff.repository.TransactionRepository;
+import com.verbosegarbonzo.tariff.repository.UserInfoRepository;
+import com.verbosegarbonzo.tariff.service.JwtService;
+import com.verbosegarbonzo.tariff.service.UserInfoService;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:testdb",
+        "spring.h2.console.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "logging.level.org.springframework.security=WARN",
+        "logging.level.csd.security=WARN",
+        "freight.api.url=https://ship.freightos.com/api/shippingCalculator"
+})
+@DisplayName("Admin Model Controller Integration Tests")
+class AdminModelControllerTest {
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private UserInfoRepository userInfoRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private UserInfoService userInfoService;
+
+    @Autowired
+    private JwtService jwtService;
+
+    private String adminJwtToken;
+
+    @BeforeEach
+    void setUp() {
+        RestAssured.port = port;
+        RestAssured.enableLoggingOfRequestAndResponseIfValidationFails();
+
+        transactionRepository.deleteAll();  // FK to UserInfo
+        userInfoRepository.deleteAll();
+
+        userInfoService.addUser(new UserInfo(null, "admin", "admin@email.com", "goodpassword", "ROLE_ADMIN", null));
+        adminJwtToken = jwtService.token("admin@email.com");
+    }
+
+    @AfterEach
+    void tearDown() {
+        transactionRepository.deleteAll();
+        userInfoRepository.deleteAll();
+    }
+
+    @Test
+    @DisplayName("Should return model status with the registry version")
+    void getModelStatus_ShouldIncludeRegistry() {
+        given()
+            .auth().oauth2(adminJwtToken)
+        .when()
+            .get("/api/admin/models")
+        .then()
+            .statusCode(200)
+            .body("modelVersion", notNullValue())
+            .body("registry.version", greaterThanOrEqualTo(0))
+            .body("registry.previousVersions", empty());
+    }
+
+    @Test
+    @DisplayName("Should return 409 when there is no earlier model version")
+    void rollback_ShouldReturn409WithoutEarlierVersion() {
+        given()
+            .auth().oauth2(adminJwtToken)
+        .when()
+            .post("/api/admin/models/rollback")
+        .then()
+            .statusCode(409);
+    }
+
+    @Test
+    @DisplayName("Should start training in the background and report its status")
+    void startTraining_ShouldReturn202WithStatus() {
+        given()
+            .auth().oauth2(adminJwtToken)
+        .when()
+            .post("/api/admin/models/training")
+        .then()
+            .statusCode(202)
+            .body("running", notNullValue())
+            .body("modelVersion", greaterThanOrEqualTo(0));
+
+        given()
+            .auth().oauth2(adminJwtToken)
+        .when()
+            .get("/api/admin/models/training")
+        .then()
+            .statusCode(200)
+            .body("lastTraining", notNullValue());
+    }
+
+    @Test
+    @DisplayName("Should return the materialized forecast status")
+    void getForecastStatus_ShouldReturnHotRoutes() {
+        given()
+            .auth().oauth2(adminJwtToken)
+        .when()
+            .get("/api/admin/models/forecasts")
+        .then()
+            .statusCode(200)
+            .body("enabled", equalTo(true))
+            .body("hotRoutes", greaterThanOrEqualTo(0))
+            .body("materialized", greaterThanOrEqualTo(0));
+    }
+
+    @Test
+    @DisplayName("Should return the feature store status")
+    void getFeatureStoreStatus_ShouldBeReady() {
+        given()
+            .auth().oauth2(adminJwtToken)
+        .when()
+            .get("/api/admin/models/features")
+        .then()
+            .statusCode(200)
+            .body("ready", equalTo(true))
+            .body("measureRoutes", greaterThanOrEqualTo(0));
+    }
+
+    @Test
+    @DisplayName("Should return the recommendation cache status")
+    void getRecommendationCacheStatus_ShouldReportCounts() {
+        given()
+            .auth().oauth2(adminJwtToken)
+        .when()
+            .get("/api/admin/models/recommendations")
+        .then()
+            .statusCode(200)
+            .body("enabled", equalTo(true))
+            .body("entries", greaterThanOrEqualTo(0))
+            .body("maxEntries", equalTo(10000));
+    }
+
+    @Test
+    @DisplayName("Should run a backtest and report its metrics")
+    void backtest_ShouldReturnReport() {
+        given()
+            .auth().oauth2(adminJwtToken)
+            .queryParam("folds", 2)
+        .when()
+            .post("/api/admin/models/backtest")
+        .then()
+            .statusCode(200)
+            .body("folds", equalTo(2))
+            .body("cutoffs", hasSize(2))
+            .body("overall.predictions", greaterThanOrEqualTo(0))
+            .body("passed", notNullValue());
+    }
+
+    @Test
+    @DisplayName("Should return 400 for a backtest without folds")
+    void backtest_ShouldReturn400ForInvalidSettings() {
+        given()
+            .auth().oauth2(adminJwtToken)
+            .queryParam("folds", 0)
+        .when()
+            .post("/api/admin/models/backtest")
+        .then()
+            .statusCode(400);
+    }
+
+    @Test
+    @DisplayName("Should return 403 when token is missing")
+    void rollback_ShouldReturn403WhenTokenIsMissing() {
+        given()
+        .when()
+            .post("/api/admin/models/rollback")
+        .then()
+            .statusCode(403);
+    }
+}
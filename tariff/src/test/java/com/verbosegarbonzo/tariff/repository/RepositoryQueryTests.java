@@ -6,10 +6,12 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -54,6 +56,14 @@ class RepositoryQueryTests {
         assertTrue(measureRepository.findValidRate(importer, product, LocalDate.of(2024,12,31)).isPresent());
         assertTrue(measureRepository.findValidRate(importer, product, LocalDate.of(2023,12,31)).isEmpty());
         assertTrue(measureRepository.findValidRate(importer, product, LocalDate.of(2025,1,1)).isEmpty());
+
+        assertEquals(1, measureRepository.findValidRows("SGP", List.of("290531", "100199"), LocalDate.of(2024,12,31)).size());
+        List<MeasureIndexRow> measureRows = measureRepository.findIndexRows();
+        assertEquals(1, measureRows.size());
+        assertEquals(m.getMeasureId(), measureRows.get(0).measureId());
+        assertEquals("290531", measureRows.get(0).hs6Code());
+        assertEquals(0, new BigDecimal("5").compareTo(measureRows.get(0).mfnAdvalRate()));
+        assertTrue(measureRepository.findValidRows("SGP", List.of("290531"), LocalDate.of(2025,1,1)).isEmpty());
     }
 
     @Test
@@ -73,6 +83,10 @@ class RepositoryQueryTests {
 
         assertTrue(preferenceRepository.findValidRate(importer, exporter, product, LocalDate.of(2024,6,1)).isPresent());
         assertTrue(preferenceRepository.findValidRate(importer, exporter, product, LocalDate.of(2023,12,31)).isEmpty());
+        List<PreferenceIndexRow> preferenceRows = preferenceRepository.findIndexRows();
+        assertEquals(1, preferenceRows.size());
+        assertEquals("MYS", preferenceRows.get(0).exporterCode());
+        assertEquals(0, new BigDecimal("3").compareTo(preferenceRows.get(0).prefAdValRate()));
     }
 
     @Test
@@ -91,6 +105,65 @@ class RepositoryQueryTests {
         suspensionRepository.save(s);
 
         assertTrue(suspensionRepository.findActiveSuspension(importer, product, LocalDate.of(2024,6,1)).isPresent());
+
+        Suspension lifted = new Suspension();
+        lifted.setImporter(importer);
+        lifted.setProduct(product);
+        lifted.setValidFrom(LocalDate.of(2025,1,1));
+        lifted.setSuspensionFlag(false);
+        lifted.setSuspensionNote("lifted");
+        suspensionRepository.save(lifted);
+
+        // Only the flagged suspension is indexed
+        List<SuspensionIndexRow> indexed = suspensionRepository.findIndexRows();
+        assertEquals(1, indexed.size());
+        assertEquals(s.getSuspensionId(), indexed.get(0).suspensionId());
+        assertEquals("SGP", indexed.get(0).importerCode());
+    }
+
+    @Test
+    void measure_streamTrainingRows_ordersByRouteThenDate() {
+        Country sgp = persistCountry("SGP", "702");
+        Country mys = persistCountry("MYS", "458");
+        Product p1 = persistProduct("290531");
+        Product p2 = persistProduct("100199");
+
+        persistMeasure(sgp, p1, LocalDate.of(2024,1,1), "5");
+        persistMeasure(mys, p2, LocalDate.of(2023,1,1), "2");
+        persistMeasure(sgp, p1, LocalDate.of(2023,1,1), null);
+        persistMeasure(mys, p1, LocalDate.of(2024,1,1), "3");
+
+        List<MeasureTrainingRow> rows;
+        try (Stream<MeasureTrainingRow> stream = measureRepository.streamTrainingRows()) {
+            rows = stream.toList();
+        }
+
+        List<String> flat = rows.stream()
+            .map(r -> r.importerCode() + " " + r.hs6Code() + " " + r.validFrom() + " "
+                + (r.mfnAdvalRate() != null ? r.mfnAdvalRate().stripTrailingZeros().toPlainString() : "-"))
+            .toList();
+        assertEquals(List.of(
+                "MYS 100199 2023-01-01 2",
+                "MYS 290531 2024-01-01 3",
+                "SGP 290531 2023-01-01 -",
+                "SGP 290531 2024-01-01 5"),
+            flat);
+
+        RateTableFingerprint fingerprint = measureRepository.fingerprint();
+        assertEquals(4, fingerprint.rows());
+        assertEquals(2 * LocalDate.of(2024,1,1).toEpochDay() + 2 * LocalDate.of(2023,1,1).toEpochDay(),
+            fingerprint.dayTotal());
+        assertEquals(10.0, fingerprint.rateTotal(), 1e-9);
+        assertEquals(new RateTableFingerprint(0, 0, 0), preferenceRepository.fingerprint());
+    }
+
+    private void persistMeasure(Country importer, Product product, LocalDate validFrom, String rate) {
+        Measure m = new Measure();
+        m.setImporter(importer);
+        m.setProduct(product);
+        m.setValidFrom(validFrom);
+        m.setMfnAdvalRate(rate != null ? new BigDecimal(rate) : null);
+        measureRepository.save(m);
     }
 
     @Test
@@ -136,6 +209,17 @@ class RepositoryQueryTests {
         Transaction loaded = transactionRepository.findByUidAndTid(user, t1.getTid());
         assertNotNull(loaded);
         assertEquals(t1.getTid(), loaded.getTid());
+
+        // One route per exporter, the transaction without one included
+        List<Object[]> routes = transactionRepository.getUserRoutePatterns(user, PageRequest.of(0, 10));
+        assertEquals(2, routes.size());
+        assertTrue(routes.stream().anyMatch(r -> r[1] == null && "290531".equals(r[2])));
+        assertTrue(routes.stream().anyMatch(r -> "MYS".equals(r[1]) && ((Number) r[3]).longValue() == 1));
+
+        // Across all users, also keeping the transaction without an exporter
+        List<Object[]> traded = transactionRepository.getRoutePatterns(LocalDate.of(2024, 1, 1), PageRequest.of(0, 10));
+        assertEquals(2, traded.size());
+        assertTrue(traded.stream().anyMatch(r -> r[1] == null && ((Number) r[3]).longValue() == 1));
     }
 }
 
@@ -5,7 +5,9 @@ import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import org.junit.jupiter.api.BeforeEach;
@@ -15,13 +17,19 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import com.verbosegarbonzo.tariff.model.AIRecommendationResponse;
 import com.verbosegarbonzo.tariff.model.Country;
 import com.verbosegarbonzo.tariff.model.DateRangeForecast;
+import com.verbosegarbonzo.tariff.model.HorizonForecast;
 import com.verbosegarbonzo.tariff.model.Measure;
+import com.verbosegarbonzo.tariff.model.MeasureTrainingRow;
 import com.verbosegarbonzo.tariff.model.Product;
 import com.verbosegarbonzo.tariff.model.ProfileType;
 import com.verbosegarbonzo.tariff.repository.CountryRepository;
@@ -43,6 +51,12 @@ class AIRecommendationServiceTest {
     @Mock
     private ProductRepository productRepository;
 
+    @Mock
+    private ForecastMaterializationService materializedForecasts;
+
+    @Mock
+    private RecommendationCache recommendationCache;
+
     @InjectMocks
     private AIRecommendationService aiRecommendationService;
 
@@ -52,6 +66,10 @@ class AIRecommendationServiceTest {
 
     @BeforeEach
     void setUp() {
+        // Compute every recommendation; RecommendationCacheTest covers caching
+        lenient().when(recommendationCache.get(any(), any(), any(), any(), any()))
+            .thenAnswer(call -> call.<Supplier<AIRecommendationResponse>>getArgument(4).get());
+
         testCountry = Country.builder()
             .countryCode("USA")
             .name("United States")
@@ -87,8 +105,9 @@ class AIRecommendationServiceTest {
             .thenReturn(Optional.of(testMeasure));
 
         List<DateRangeForecast> forecasts = createTestForecasts();
-        when(mlService.predictRateRange(eq(importerCode), eq(exporterCode), eq(hs6Code), any(LocalDate.class), any(LocalDate.class)))
-            .thenReturn(forecasts);
+        HorizonForecast horizon = horizonOf(forecasts);
+        when(mlService.scoreHorizon(eq(importerCode), eq(exporterCode), eq(hs6Code), any(LocalDate.class), any(LocalDate.class)))
+            .thenReturn(horizon);
 
         // When
         AIRecommendationResponse response = aiRecommendationService.getTimingRecommendation(
@@ -103,6 +122,28 @@ class AIRecommendationServiceTest {
         assertThat(response.getHasInsufficientData()).isFalse();
     }
 
+    @Test
+    void getTimingRecommendation_HotRoute_UsesMaterializedForecast() {
+        // Given
+        when(countryRepository.findById("USA")).thenReturn(Optional.of(testCountry));
+        when(productRepository.findById("123456")).thenReturn(Optional.of(testProduct));
+        when(measureRepository.findValidRate(any(Country.class), any(Product.class), any(LocalDate.class)))
+            .thenReturn(Optional.of(testMeasure));
+
+        LocalDate today = LocalDate.now();
+        when(materializedForecasts.lookup("USA", "CHN", "123456", today, today.plusDays(365)))
+            .thenReturn(Optional.of(createTestForecasts()));
+
+        // When
+        AIRecommendationResponse response = aiRecommendationService.getTimingRecommendation(
+            "USA", "CHN", "123456", ProfileType.BUSINESS_OWNER);
+
+        // Then
+        assertThat(response.getHasInsufficientData()).isFalse();
+        assertThat(response.getAverageConfidence()).isEqualTo(75);
+        verify(mlService, never()).scoreHorizon(any(), any(), any(), any(LocalDate.class), any(LocalDate.class));
+    }
+
     @Test
     void getTimingRecommendation_BusinessOwner_PersonalizedExplanation() {
         // Given
@@ -117,8 +158,9 @@ class AIRecommendationServiceTest {
             .thenReturn(Optional.of(testMeasure));
 
         List<DateRangeForecast> forecasts = createTestForecasts();
-        when(mlService.predictRateRange(any(), any(), any(), any(LocalDate.class), any(LocalDate.class)))
-            .thenReturn(forecasts);
+        HorizonForecast horizon = horizonOf(forecasts);
+        when(mlService.scoreHorizon(any(), any(), any(), any(LocalDate.class), any(LocalDate.class)))
+            .thenReturn(horizon);
 
         // When
         AIRecommendationResponse response = aiRecommendationService.getTimingRecommendation(
@@ -144,8 +186,9 @@ class AIRecommendationServiceTest {
             .thenReturn(Optional.of(testMeasure));
 
         List<DateRangeForecast> forecasts = createTestForecasts();
-        when(mlService.predictRateRange(any(), any(), any(), any(LocalDate.class), any(LocalDate.class)))
-            .thenReturn(forecasts);
+        HorizonForecast horizon = horizonOf(forecasts);
+        when(mlService.scoreHorizon(any(), any(), any(), any(LocalDate.class), any(LocalDate.class)))
+            .thenReturn(horizon);
 
         // When
         AIRecommendationResponse response = aiRecommendationService.getTimingRecommendation(
@@ -171,8 +214,9 @@ class AIRecommendationServiceTest {
             .thenReturn(Optional.of(testMeasure));
 
         List<DateRangeForecast> forecasts = createTestForecasts();
-        when(mlService.predictRateRange(any(), any(), any(), any(LocalDate.class), any(LocalDate.class)))
-            .thenReturn(forecasts);
+        HorizonForecast horizon = horizonOf(forecasts);
+        when(mlService.scoreHorizon(any(), any(), any(), any(LocalDate.class), any(LocalDate.class)))
+            .thenReturn(horizon);
 
         // When
         AIRecommendationResponse response = aiRecommendationService.getTimingRecommendation(
@@ -197,8 +241,10 @@ class AIRecommendationServiceTest {
         when(measureRepository.findValidRate(any(Country.class), any(Product.class), any(LocalDate.class)))
             .thenReturn(Optional.of(testMeasure));
 
-        when(mlService.predictRateRange(any(), any(), any(), any(LocalDate.class), any(LocalDate.class)))
-            .thenReturn(Collections.emptyList());
+        HorizonForecast horizon = horizonOf(Collections.emptyList());
+
+        when(mlService.scoreHorizon(any(), any(), any(), any(LocalDate.class), any(LocalDate.class)))
+            .thenReturn(horizon);
 
         // When
         AIRecommendationResponse response = aiRecommendationService.getTimingRecommendation(
@@ -222,6 +268,9 @@ class AIRecommendationServiceTest {
         ProfileType userProfile = ProfileType.BUSINESS_OWNER;
 
         when(countryRepository.findById(importerCode)).thenThrow(new RuntimeException("Database error"));
+        HorizonForecast horizon = horizonOf(Collections.emptyList());
+        when(mlService.scoreHorizon(any(), any(), any(), any(LocalDate.class), any(LocalDate.class)))
+            .thenReturn(horizon);
 
         // When
         AIRecommendationResponse response = aiRecommendationService.getTimingRecommendation(
@@ -247,8 +296,9 @@ class AIRecommendationServiceTest {
         when(productRepository.findById(hs6Code)).thenReturn(Optional.empty());
 
         List<DateRangeForecast> forecasts = createTestForecasts();
-        when(mlService.predictRateRange(any(), any(), any(), any(LocalDate.class), any(LocalDate.class)))
-            .thenReturn(forecasts);
+        HorizonForecast horizon = horizonOf(forecasts);
+        when(mlService.scoreHorizon(any(), any(), any(), any(LocalDate.class), any(LocalDate.class)))
+            .thenReturn(horizon);
 
         // When
         AIRecommendationResponse response = aiRecommendationService.getTimingRecommendation(
@@ -256,6 +306,46 @@ class AIRecommendationServiceTest {
 
         // Then
         assertThat(response.getCurrentRate()).isEqualByComparingTo(new BigDecimal("5.0")); // Default rate
+        assertThat(response.getDegraded()).isTrue();
+    }
+
+    @Test
+    void getTimingRecommendation_WithReadHistory_ScoresItWithoutReading() {
+        // Given
+        RateHistory measures = RateHistory.of(List.of(testMeasure), Measure::getValidFrom, Measure::getMfnAdvalRate);
+        HorizonForecast horizon = horizonOf(createVariedForecasts());
+        when(mlService.scoreHorizon(eq("USA"), eq("CHN"), eq("123456"), any(LocalDate.class), any(LocalDate.class), eq(measures)))
+            .thenReturn(horizon);
+
+        // When
+        AIRecommendationResponse response = aiRecommendationService.getTimingRecommendation(
+            "USA", "CHN", "123456", ProfileType.BUSINESS_OWNER, new BigDecimal("0.10"), measures);
+
+        // Then
+        assertThat(response.getCurrentRate()).isEqualByComparingTo(new BigDecimal("0.10"));
+        assertThat(response.getDegraded()).isFalse();
+        assertThat(response.getOptimalPeriods()).isNotEmpty();
+        verify(mlService, never()).scoreHorizon(any(), any(), any(), any(LocalDate.class), any(LocalDate.class));
+        verify(measureRepository, never()).findValidRate(any(), any(), any());
+    }
+
+    @Test
+    void getCurrentRates_OneQueryForAllProducts() {
+        // Given: an overlapping older row, a row without a rate and a product without a row
+        LocalDate today = LocalDate.now();
+        when(measureRepository.findValidRows(eq("USA"), eq(List.of("123456", "222222", "999999")), eq(today)))
+            .thenReturn(List.of(
+                new MeasureTrainingRow("USA", "123456", today.minusYears(2), new BigDecimal("7.00")),
+                new MeasureTrainingRow("USA", "123456", today.minusYears(1), new BigDecimal("0.10")),
+                new MeasureTrainingRow("USA", "222222", today.minusYears(1), null)));
+
+        // When
+        Map<String, BigDecimal> rates = aiRecommendationService.getCurrentRates("USA", List.of("123456", "222222", "999999"));
+
+        // Then
+        assertThat(rates.get("123456")).isEqualByComparingTo("0.10");
+        assertThat(rates.get("222222")).isEqualByComparingTo(BigDecimal.ZERO);
+        assertThat(rates).doesNotContainKey("999999");
     }
 
     @Test
@@ -272,8 +362,9 @@ class AIRecommendationServiceTest {
             .thenReturn(Optional.of(testMeasure));
 
         List<DateRangeForecast> forecasts = createVariedForecasts();
-        when(mlService.predictRateRange(any(), any(), any(), any(LocalDate.class), any(LocalDate.class)))
-            .thenReturn(forecasts);
+        HorizonForecast horizon = horizonOf(forecasts);
+        when(mlService.scoreHorizon(any(), any(), any(), any(LocalDate.class), any(LocalDate.class)))
+            .thenReturn(horizon);
 
         // When
         AIRecommendationResponse response = aiRecommendationService.getTimingRecommendation(
@@ -306,8 +397,9 @@ class AIRecommendationServiceTest {
             .thenReturn(Optional.of(testMeasure));
 
         List<DateRangeForecast> forecasts = createVariedForecasts();
-        when(mlService.predictRateRange(any(), any(), any(), any(LocalDate.class), any(LocalDate.class)))
-            .thenReturn(forecasts);
+        HorizonForecast horizon = horizonOf(forecasts);
+        when(mlService.scoreHorizon(any(), any(), any(), any(LocalDate.class), any(LocalDate.class)))
+            .thenReturn(horizon);
 
         // When
         AIRecommendationResponse response = aiRecommendationService.getTimingRecommendation(
@@ -340,8 +432,9 @@ class AIRecommendationServiceTest {
             .thenReturn(Optional.of(testMeasure));
 
         List<DateRangeForecast> forecasts = createVariedForecasts();
-        when(mlService.predictRateRange(any(), any(), any(), any(LocalDate.class), any(LocalDate.class)))
-            .thenReturn(forecasts);
+        HorizonForecast horizon = horizonOf(forecasts);
+        when(mlService.scoreHorizon(any(), any(), any(), any(LocalDate.class), any(LocalDate.class)))
+            .thenReturn(horizon);
 
         // When
         AIRecommendationResponse response = aiRecommendationService.getTimingRecommendation(
@@ -368,8 +461,9 @@ class AIRecommendationServiceTest {
             .thenReturn(Optional.of(testMeasure));
 
         List<DateRangeForecast> forecasts = createTestForecasts();
-        when(mlService.predictRateRange(any(), any(), any(), any(LocalDate.class), any(LocalDate.class)))
-            .thenReturn(forecasts);
+        HorizonForecast horizon = horizonOf(forecasts);
+        when(mlService.scoreHorizon(any(), any(), any(), any(LocalDate.class), any(LocalDate.class)))
+            .thenReturn(horizon);
 
         // When
         AIRecommendationResponse response = aiRecommendationService.getTimingRecommendation(
@@ -393,8 +487,9 @@ class AIRecommendationServiceTest {
             .thenReturn(Optional.of(testMeasure));
 
         List<DateRangeForecast> forecasts = createManyForecasts(20);
-        when(mlService.predictRateRange(any(), any(), any(), any(LocalDate.class), any(LocalDate.class)))
-            .thenReturn(forecasts);
+        HorizonForecast horizon = horizonOf(forecasts);
+        when(mlService.scoreHorizon(any(), any(), any(), any(LocalDate.class), any(LocalDate.class)))
+            .thenReturn(horizon);
 
         // When
         AIRecommendationResponse response = aiRecommendationService.getTimingRecommendation(
@@ -418,8 +513,9 @@ class AIRecommendationServiceTest {
             .thenReturn(Optional.of(testMeasure));
 
         List<DateRangeForecast> forecasts = createManyForecasts(20);
-        when(mlService.predictRateRange(any(), any(), any(), any(LocalDate.class), any(LocalDate.class)))
-            .thenReturn(forecasts);
+        HorizonForecast horizon = horizonOf(forecasts);
+        when(mlService.scoreHorizon(any(), any(), any(), any(LocalDate.class), any(LocalDate.class)))
+            .thenReturn(horizon);
 
         // When
         AIRecommendationResponse response = aiRecommendationService.getTimingRecommendation(
@@ -443,8 +539,9 @@ class AIRecommendationServiceTest {
             .thenReturn(Optional.of(testMeasure));
 
         List<DateRangeForecast> forecasts = createVariedForecasts();
-        when(mlService.predictRateRange(any(), any(), any(), any(LocalDate.class), any(LocalDate.class)))
-            .thenReturn(forecasts);
+        HorizonForecast horizon = horizonOf(forecasts);
+        when(mlService.scoreHorizon(any(), any(), any(), any(LocalDate.class), any(LocalDate.class)))
+            .thenReturn(horizon);
 
         // When
         AIRecommendationResponse response = aiRecommendationService.getTimingRecommendation(
@@ -471,8 +568,9 @@ class AIRecommendationServiceTest {
             .thenReturn(Optional.of(testMeasure));
 
         List<DateRangeForecast> forecasts = createVariedForecasts();
-        when(mlService.predictRateRange(any(), any(), any(), any(LocalDate.class), any(LocalDate.class)))
-            .thenReturn(forecasts);
+        HorizonForecast horizon = horizonOf(forecasts);
+        when(mlService.scoreHorizon(any(), any(), any(), any(LocalDate.class), any(LocalDate.class)))
+            .thenReturn(horizon);
 
         // When
         AIRecommendationResponse response = aiRecommendationService.getTimingRecommendation(
@@ -487,6 +585,12 @@ class AIRecommendationServiceTest {
 
     // Helper methods
 
+    private HorizonForecast horizonOf(List<DateRangeForecast> weeks) {
+        HorizonForecast horizon = mock(HorizonForecast.class);
+        when(horizon.weekly()).thenReturn(weeks);
+        return horizon;
+    }
+
     private List<DateRangeForecast> createTestForecasts() {
         List<DateRangeForecast> forecasts = new ArrayList<>();
         LocalDate start = LocalDate.now();
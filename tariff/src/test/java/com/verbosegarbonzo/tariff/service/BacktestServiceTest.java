@@ -0,0 +1,147 @@
+package com.verbosegarbonzo.tariff.service;
+
+import com.verbosegarbonzo.tariff.config.MLModelProperties;
+import com.verbosegarbonzo.tariff.model.MeasureTrainingRow;
+import com.verbosegarbonzo.tariff.repository.MeasureRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntToDoubleFunction;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BacktestServiceTest {
+
+    private static final LocalDate AS_OF = LocalDate.of(2030, 1, 1);
+
+    @Mock
+    private MeasureRepository measureRepository;
+
+    @Mock
+    private TrainingDataReader trainingDataReader;
+
+    private MLModelProperties mlProperties;
+    private BacktestService backtestService;
+
+    @BeforeEach
+    void setUp() {
+        mlProperties = new MLModelProperties();
+        mlProperties.getModel().setMinTrainingSamples(30);
+        mlProperties.getBacktest().setParallelism(2);
+        TariffMLService mlService = new TariffMLService(measureRepository, trainingDataReader, mlProperties,
+            mock(FeatureStore.class));
+        backtestService = new BacktestService(trainingDataReader, mlService, mlProperties);
+    }
+
+    @Test
+    void settings_CutoffsStepBackFromHorizonBeforeAsOf() {
+        BacktestService.Settings settings = new BacktestService.Settings(3, 12, 6, AS_OF);
+
+        assertThat(settings.cutoffs()).containsExactly(
+            LocalDate.of(2028, 1, 1), LocalDate.of(2028, 7, 1), LocalDate.of(2029, 1, 1));
+    }
+
+    @Test
+    void run_ConstantRateRoute_ModelIsExactAndCoversEveryRate() {
+        // Given: 72 monthly rows from 2024 at 10%
+        givenRoutes(monthly("USA", LocalDate.of(2024, 1, 1), 72, i -> 10));
+
+        // When
+        BacktestService.Report report = backtestService.run(new BacktestService.Settings(2, 12, 6, AS_OF));
+
+        // Then: the 2028-07 cutoff forecasts 12 rows, the 2029-01 cutoff 12
+        assertThat(report.routes()).isEqualTo(1);
+        assertThat(report.routesEvaluated()).isEqualTo(1);
+        assertThat(report.model().predictions()).isEqualTo(24);
+        assertThat(report.fallback().predictions()).isZero();
+        assertThat(report.overall().mae()).isZero();
+        assertThat(report.overall().mape()).isZero();
+        assertThat(report.overall().coverage()).isEqualTo(1.0);
+        assertThat(report.byCutoff()).containsOnlyKeys("2028-07-01", "2029-01-01");
+        assertThat(report.byCutoff().get("2028-07-01").predictions()).isEqualTo(12);
+        assertThat(report.passed()).isTrue();
+        assertThat(report.toMap())
+            .containsEntry("routes", 1L)
+            .containsEntry("passed", true)
+            .containsEntry("cutoffs", List.of("2028-07-01", "2029-01-01"));
+    }
+
+    @Test
+    void run_RouteWithFewRowsBeforeCutoff_UsesFallback() {
+        // Given: 12 monthly rows from 2028-01, too few to train on
+        givenRoutes(monthly("CHN", LocalDate.of(2028, 1, 1), 12, i -> 4));
+
+        // When: the cutoff is 2028-07-01
+        BacktestService.Report report = backtestService.run(new BacktestService.Settings(1, 18, 6, AS_OF));
+
+        // Then: the last 6 rows are forecast from the average of the first 6
+        assertThat(report.model().predictions()).isZero();
+        assertThat(report.fallback().predictions()).isEqualTo(6);
+        assertThat(report.fallback().mae()).isZero();
+        assertThat(report.fallback().coverage()).isEqualTo(1.0);
+    }
+
+    @Test
+    void run_RouteWithoutHistoryBeforeCutoff_IsNotEvaluated() {
+        // Given
+        givenRoutes(monthly("USA", LocalDate.of(2029, 6, 1), 6, i -> 10));
+
+        // When
+        BacktestService.Report report = backtestService.run(new BacktestService.Settings(2, 12, 6, AS_OF));
+
+        // Then
+        assertThat(report.routes()).isEqualTo(1);
+        assertThat(report.routesEvaluated()).isZero();
+        assertThat(report.overall().predictions()).isZero();
+    }
+
+    @Test
+    void run_ErrorAboveGate_Fails() {
+        // Given: the rate doubles from 10 to 20 at the cutoff
+        givenRoutes(monthly("USA", LocalDate.of(2024, 1, 1), 72, i -> i < 60 ? 10 : 20));
+        mlProperties.getBacktest().setMaxMape(10);
+        mlProperties.getBacktest().setMinCoverage(0.9);
+
+        // When
+        BacktestService.Report report = backtestService.run(new BacktestService.Settings(1, 12, 6, AS_OF));
+
+        // Then: every prediction is 10 against 20
+        assertThat(report.overall().mae()).isEqualTo(10.0);
+        assertThat(report.overall().mape()).isEqualTo(50.0);
+        assertThat(report.overall().coverage()).isZero();
+        assertThat(report.passed()).isFalse();
+        assertThat(report.failures()).hasSize(2)
+            .anySatisfy(failure -> assertThat(failure).startsWith("MAPE 50.00%"))
+            .anySatisfy(failure -> assertThat(failure).startsWith("coverage 0.000"));
+    }
+
+    @Test
+    void run_InvalidSettings_Throws() {
+        assertThatThrownBy(() -> backtestService.run(new BacktestService.Settings(0, 12, 6, AS_OF)))
+            .isInstanceOf(IllegalArgumentException.class);
+        verifyNoInteractions(trainingDataReader);
+    }
+
+    private void givenRoutes(List<MeasureTrainingRow> rows) {
+        doAnswer(invocation -> TrainingDataReader.groupRoutes(rows.stream(), invocation.getArgument(0)))
+            .when(trainingDataReader).forEachRoute(any());
+    }
+
+    private static List<MeasureTrainingRow> monthly(String importerCode, LocalDate start, int count, IntToDoubleFunction rate) {
+        List<MeasureTrainingRow> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rows.add(new MeasureTrainingRow(importerCode, "123456", start.plusMonths(i), BigDecimal.valueOf(rate.applyAsDouble(i))));
+        }
+        return rows;
+    }
+}
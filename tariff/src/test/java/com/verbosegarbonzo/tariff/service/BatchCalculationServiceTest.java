@@ -0,0 +1,254 @@
+package com.verbosegarbonzo.tariff.service;
+
+import com.verbosegarbonzo.tariff.config.BatchProperties;
+import com.verbosegarbonzo.tariff.exception.InvalidRequestException;
+import com.verbosegarbonzo.tariff.exception.RateNotFoundException;
+import com.verbosegarbonzo.tariff.exception.WeightRequiredException;
+import com.verbosegarbonzo.tariff.model.BatchCalculateResult;
+import com.verbosegarbonzo.tariff.model.CalculateRequest;
+import com.verbosegarbonzo.tariff.model.CalculateResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class BatchCalculationServiceTest {
+
+    private TariffService tariffService;
+    private BatchProperties batchProperties;
+
+    @BeforeEach
+    void setUp() {
+        tariffService = mock(TariffService.class);
+        batchProperties = new BatchProperties();
+    }
+
+    private static CalculateRequest request(String hs6, String tradeOriginal) {
+        CalculateRequest req = new CalculateRequest();
+        req.setImporterCode("SGP");
+        req.setExporterCode("MYS");
+        req.setHs6(hs6);
+        req.setTransactionDate(LocalDate.of(2024, 1, 1));
+        req.setTradeOriginal(new BigDecimal(tradeOriginal));
+        return req;
+    }
+
+    private static CalculateResponse echo(CalculateRequest req) {
+        return new CalculateResponse(null, req);
+    }
+
+    @Test
+    void calculateAll_returnsResultsInSubmissionOrder() {
+        when(tariffService.calculate(any())).thenAnswer(inv -> echo(inv.getArgument(0)));
+        BatchCalculationService service = new BatchCalculationService(tariffService, batchProperties);
+
+        List<CalculateRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            requests.add(request(String.format("%06d", i % 7), (i + 1) + ".00"));
+        }
+
+        List<BatchCalculateResult> results = service.calculateAll(requests);
+
+        assertEquals(50, results.size());
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i, results.get(i).getIndex());
+            assertSame(requests.get(i).getTradeOriginal(), results.get(i).getResult().getTradeOriginal());
+        }
+    }
+
+    @Test
+    void calculateAll_failedItemDoesNotFailBatch() {
+        CalculateRequest ok = request("111111", "100.00");
+        CalculateRequest needsWeight = request("222222", "100.00");
+        when(tariffService.calculate(ok)).thenReturn(echo(ok));
+        when(tariffService.calculate(needsWeight))
+                .thenThrow(new WeightRequiredException("Net weight is required for specific duties"));
+        BatchCalculationService service = new BatchCalculationService(tariffService, batchProperties);
+
+        List<BatchCalculateResult> results = service.calculateAll(List.of(needsWeight, ok));
+
+        assertEquals("WEIGHT_REQUIRED", results.get(0).getError());
+        assertNull(results.get(0).getResult());
+        assertNull(results.get(1).getError());
+        assertNotNull(results.get(1).getResult());
+    }
+
+    @Test
+    void calculateAll_errorInItemIsRecordedAsFailure() {
+        CalculateRequest ok = request("111111", "100.00");
+        CalculateRequest broken = request("222222", "100.00");
+        when(tariffService.calculate(ok)).thenReturn(echo(ok));
+        when(tariffService.calculate(broken)).thenThrow(new StackOverflowError());
+        BatchCalculationService service = new BatchCalculationService(tariffService, batchProperties);
+
+        List<BatchCalculateResult> results = service.calculateAll(List.of(broken, ok));
+
+        assertEquals("CALCULATION_ERROR", results.get(0).getError());
+        assertNull(results.get(1).getError());
+    }
+
+    @Test
+    void calculateAll_rateNotFoundIsSharedWithinLookupGroup() {
+        when(tariffService.calculate(any())).thenThrow(new RateNotFoundException("No tariff data"));
+        BatchCalculationService service = new BatchCalculationService(tariffService, batchProperties);
+
+        // Same (importer, exporter, hs6, date), different trade values
+        List<BatchCalculateResult> results = service.calculateAll(List.of(
+                request("290531", "10.00"), request("290531", "20.00"), request("290531", "30.00")));
+
+        verify(tariffService, times(1)).calculate(any());
+        results.forEach(r -> assertEquals("RATE_NOT_FOUND", r.getError()));
+    }
+
+    @Test
+    void calculateAll_runsGroupsConcurrentlyUpToConfiguredCap() {
+        batchProperties.setMaxConcurrency(4);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        when(tariffService.calculate(any())).thenAnswer(inv -> {
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(50);
+            running.decrementAndGet();
+            return echo(inv.getArgument(0));
+        });
+        BatchCalculationService service = new BatchCalculationService(tariffService, batchProperties);
+
+        List<CalculateRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            requests.add(request(String.format("%06d", i), "1.00"));
+        }
+
+        long start = System.currentTimeMillis();
+        List<BatchCalculateResult> results = service.calculateAll(requests);
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(16, results.size());
+        assertTrue(peak.get() <= 4, "peak concurrency " + peak.get());
+        assertTrue(peak.get() > 1, "items should run concurrently");
+        // 16 items x 50 ms sequentially would be 800 ms
+        assertTrue(elapsed < 700, "batch took " + elapsed + " ms");
+    }
+
+    private static class ListSink implements BatchCalculationService.ResultSink {
+        final List<BatchCalculateResult> results = new ArrayList<>();
+
+        @Override
+        public void write(BatchCalculateResult result) {
+            results.add(result);
+        }
+
+        @Override
+        public void flush() {
+        }
+    }
+
+    @Test
+    void calculateStream_writesResultsInInputOrderAndSkipsBlankLines() throws Exception {
+        when(tariffService.calculate(any())).thenAnswer(inv -> {
+            CalculateRequest req = inv.getArgument(0);
+            // Later items finish first
+            Thread.sleep(100 - req.getTradeOriginal().intValue() * 10L);
+            return echo(req);
+        });
+        BatchCalculationService service = new BatchCalculationService(tariffService, batchProperties);
+        ListSink sink = new ListSink();
+
+        List<String> lines = List.of("1", "2", "", "3", "bad", "4");
+        long count = service.calculateStream(lines.iterator(), line -> {
+            if (line.equals("bad")) {
+                throw new InvalidRequestException("Malformed JSON line");
+            }
+            return request("290531", line + ".00");
+        }, sink);
+
+        assertEquals(5, count);
+        assertEquals(5, sink.results.size());
+        assertEquals(new BigDecimal("1.00"), sink.results.get(0).getResult().getTradeOriginal());
+        assertEquals(new BigDecimal("3.00"), sink.results.get(2).getResult().getTradeOriginal());
+        assertEquals("INVALID_REQUEST", sink.results.get(3).getError());
+        assertEquals(new BigDecimal("4.00"), sink.results.get(4).getResult().getTradeOriginal());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i, sink.results.get(i).getIndex());
+        }
+    }
+
+    @Test
+    void calculateStream_neverReadsMoreThanWindowAheadOfOutput() throws Exception {
+        batchProperties.setStreamWindow(8);
+        when(tariffService.calculate(any())).thenAnswer(inv -> echo(inv.getArgument(0)));
+        BatchCalculationService service = new BatchCalculationService(tariffService, batchProperties);
+
+        AtomicInteger read = new AtomicInteger();
+        AtomicInteger maxAhead = new AtomicInteger();
+        ListSink sink = new ListSink() {
+            @Override
+            public void write(BatchCalculateResult result) {
+                super.write(result);
+                maxAhead.accumulateAndGet(read.get() - results.size(), Math::max);
+            }
+        };
+        Iterator<String> lines = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return read.get() < 10_000;
+            }
+
+            @Override
+            public String next() {
+                read.incrementAndGet();
+                return "1";
+            }
+        };
+
+        long count = service.calculateStream(lines, line -> request("290531", line), sink);
+
+        assertEquals(10_000, count);
+        assertEquals(10_000, sink.results.size());
+        assertTrue(maxAhead.get() < 8, "read " + maxAhead.get() + " items ahead of output");
+    }
+
+    @Test
+    void calculateStream_abortedMidWindowGivesBackEveryPermit() {
+        batchProperties.setMaxConcurrency(16);
+        batchProperties.setStreamWindow(64);
+        when(tariffService.calculate(any())).thenAnswer(inv -> {
+            Thread.sleep(20);
+            return echo(inv.getArgument(0));
+        });
+        BatchCalculationService service = new BatchCalculationService(tariffService, batchProperties);
+
+        // Input breaks off right after a burst of items, so some are cancelled before they start
+        for (int attempt = 0; attempt < 20; attempt++) {
+            AtomicInteger read = new AtomicInteger();
+            Iterator<String> lines = new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return true;
+                }
+
+                @Override
+                public String next() {
+                    if (read.incrementAndGet() > 12) {
+                        throw new UncheckedIOException(new IOException("Connection reset"));
+                    }
+                    return "1";
+                }
+            };
+
+            assertThrows(UncheckedIOException.class,
+                    () -> service.calculateStream(lines, line -> request("290531", line), new ListSink()));
+            assertEquals(16, service.availablePermits(), "permits after attempt " + attempt);
+        }
+    }
+}
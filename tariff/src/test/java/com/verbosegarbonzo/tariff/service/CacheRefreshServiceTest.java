@@ -29,6 +29,12 @@ class CacheRefreshServiceTest {
     @Mock
     private Cache productCache;
 
+    @Mock
+    private Cache forecastCache;
+
+    @Mock
+    private TariffMLService mlService;
+
     @InjectMocks
     private CacheRefreshService cacheRefreshService;
 
@@ -38,6 +44,26 @@ class CacheRefreshServiceTest {
         reset(cacheManager, freightCache, countryCache, productCache);
     }
 
+    @Test
+    void register_ListensForModelUpdates() {
+        cacheRefreshService.register();
+
+        verify(mlService).addModelUpdateListener(cacheRefreshService);
+    }
+
+    @Test
+    void routeUpdated_ClearsForecastCache() {
+        // Given
+        when(cacheManager.getCache("tariffForecasts")).thenReturn(forecastCache);
+
+        // When: a measure of one route is written, then models are retrained
+        cacheRefreshService.routeUpdated("USA", "123456");
+        cacheRefreshService.allRoutesUpdated();
+
+        // Then
+        verify(forecastCache, times(2)).clear();
+    }
+
     @Test
     void refreshFreightCache_Success_ClearsCacheSuccessfully() {
         // Given
@@ -0,0 +1,121 @@
+package com.verbosegarbonzo.tariff.service;
+
+import com.verbosegarbonzo.tariff.service.DutyMath.Fixed;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Property checks: for generated operands DutyMath returns exactly (value and scale) what the
+ * BigDecimal expressions in TariffService returned before it.
+ */
+class DutyMathTest {
+
+    private static final int CASES = 200_000;
+
+    // The expressions TariffService used before DutyMath
+    private static BigDecimal legacyPercentOf(BigDecimal amount, BigDecimal percent) {
+        return amount.multiply(percent.multiply(BigDecimal.valueOf(0.01))).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static BigDecimal legacyInsurance(BigDecimal amount, BigDecimal percent) {
+        return amount.multiply(percent).divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP);
+    }
+
+    private static BigDecimal legacyTimes(BigDecimal quantity, BigDecimal rate) {
+        return quantity.multiply(rate).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static BigDecimal legacyCompound(BigDecimal amount, BigDecimal adval, BigDecimal quantity,
+            BigDecimal specific) {
+        return amount.multiply(adval.multiply(BigDecimal.valueOf(0.01)))
+                .add(quantity.multiply(specific))
+                .setScale(2, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Random decimal: mostly request-sized values, with a tail of negatives, negative scales and
+     * values too wide for a long so the fallback path is exercised too.
+     */
+    private static BigDecimal decimal(Random random) {
+        int digits = random.nextInt(10) == 0 ? 1 + random.nextInt(24) : 1 + random.nextInt(9);
+        BigInteger unscaled = new BigInteger(digits * 4, random).mod(BigInteger.TEN.pow(digits));
+        if (random.nextInt(10) == 0) {
+            unscaled = unscaled.negate();
+        }
+        int scale = random.nextInt(20) == 0 ? -random.nextInt(3) : random.nextInt(7);
+        return new BigDecimal(unscaled, scale);
+    }
+
+    @Test
+    void percentOf_matchesLegacyExpressions() {
+        Random random = new Random(7);
+        for (int i = 0; i < CASES; i++) {
+            BigDecimal amount = decimal(random);
+            BigDecimal percent = decimal(random);
+            BigDecimal actual = DutyMath.percentOf(Fixed.of(amount), Fixed.of(percent));
+            assertEquals(legacyPercentOf(amount, percent), actual, () -> amount + " * " + percent + "%");
+            assertEquals(legacyInsurance(amount, percent), actual, () -> amount + " * " + percent + "%");
+        }
+    }
+
+    @Test
+    void times_matchesLegacyExpression() {
+        Random random = new Random(11);
+        for (int i = 0; i < CASES; i++) {
+            BigDecimal quantity = decimal(random);
+            BigDecimal rate = decimal(random);
+            assertEquals(legacyTimes(quantity, rate), DutyMath.times(Fixed.of(quantity), Fixed.of(rate)),
+                    () -> quantity + " * " + rate);
+        }
+    }
+
+    @Test
+    void compound_matchesLegacyExpression() {
+        Random random = new Random(13);
+        for (int i = 0; i < CASES; i++) {
+            BigDecimal amount = decimal(random);
+            BigDecimal adval = decimal(random);
+            BigDecimal quantity = decimal(random);
+            BigDecimal specific = decimal(random);
+            assertEquals(legacyCompound(amount, adval, quantity, specific),
+                    DutyMath.compound(Fixed.of(amount), Fixed.of(adval), Fixed.of(quantity), Fixed.of(specific)),
+                    () -> amount + " * " + adval + "% + " + quantity + " * " + specific);
+        }
+    }
+
+    @Test
+    void halfUpTiesRoundAwayFromZero() {
+        assertEquals(new BigDecimal("0.13"), DutyMath.percentOf(Fixed.of(new BigDecimal("2.50")),
+                Fixed.of(new BigDecimal("5"))));
+        assertEquals(new BigDecimal("-0.13"), DutyMath.percentOf(Fixed.of(new BigDecimal("-2.50")),
+                Fixed.of(new BigDecimal("5"))));
+        assertEquals(new BigDecimal("0.12"), DutyMath.percentOf(Fixed.of(new BigDecimal("2.49")),
+                Fixed.of(new BigDecimal("5"))));
+        assertEquals(new BigDecimal("1.01"), DutyMath.times(Fixed.of(new BigDecimal("0.5")),
+                Fixed.of(new BigDecimal("2.015"))));
+    }
+
+    @Test
+    void resultAlwaysHasScaleTwo() {
+        assertEquals(new BigDecimal("7.50"), DutyMath.percentOf(Fixed.of(new BigDecimal("100")),
+                Fixed.of(new BigDecimal("7.5"))));
+        assertEquals(new BigDecimal("0.00"), DutyMath.percentOf(Fixed.of(new BigDecimal("100.00")), Fixed.ZERO));
+        assertEquals(new BigDecimal("1.00"), DutyMath.percentOf(Fixed.of(new BigDecimal("100.00")), Fixed.ONE));
+    }
+
+    @Test
+    void overflowFallsBackToBigDecimal() {
+        BigDecimal amount = new BigDecimal("999999999999999999.99");
+        BigDecimal percent = new BigDecimal("99.9999");
+        assertEquals(legacyPercentOf(amount, percent), DutyMath.percentOf(Fixed.of(amount), Fixed.of(percent)));
+
+        BigDecimal quantity = new BigDecimal("922337203685477580.7");
+        assertEquals(legacyTimes(quantity, BigDecimal.TEN), DutyMath.times(Fixed.of(quantity), Fixed.of(BigDecimal.TEN)));
+    }
+}
@@ -0,0 +1,137 @@
+package com.verbosegarbonzo.tariff.service;
+
+import com.verbosegarbonzo.tariff.service.EffectiveRateSeries.Interval;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+
+class EffectiveRateSeriesTest {
+
+    private static final LocalDate START = LocalDate.of(2024, 1, 1);
+
+    @Test
+    void merge_PreferenceOverSuspensionOverMeasure() {
+        // Given: a measure all year, a suspension in March to May, a preference in April
+        Interval[] measures = { interval(0, null, 10) };
+        Interval[] suspensions = { interval(60, 151, 0) };
+        Interval[] preferences = { interval(91, 120, 4) };
+
+        // When
+        TrainingDataReader.RouteSeries series = EffectiveRateSeries.merge("USA-CHN-123456", measures, suspensions, preferences);
+
+        // Then: the suspension takes over again after the preference, then the measure
+        assertThat(series.tradeRoute()).isEqualTo("USA-CHN-123456");
+        assertThat(series.validFrom()).containsExactly(day(0), day(60), day(91), day(121), day(152));
+        assertThat(series.rates()).containsExactly(10, 0, 4, 0, 10);
+        assertThat(series.measureRowsOnly()).isFalse();
+    }
+
+    @Test
+    void merge_MeasuresOnly_OneRowPerMeasure() {
+        // Given: consecutive measures, two with the same rate, and a gap before the last
+        Interval[] measures = {
+            interval(0, 30, 5),
+            interval(31, null, 5),
+            interval(59, 89, Double.NaN),
+            interval(120, null, 7)
+        };
+
+        // When
+        TrainingDataReader.RouteSeries series = EffectiveRateSeries.merge("USA-123456", measures,
+            EffectiveRateSeries.none(), EffectiveRateSeries.none());
+
+        // Then: the open-ended measure is in force again between the two later ones
+        assertThat(series.validFrom()).containsExactly(day(0), day(31), day(59), day(90), day(120));
+        assertThat(series.rates()).containsExactly(5, 5, Double.NaN, 5, 7);
+        assertThat(series.measureRowsOnly()).isFalse();
+
+        TrainingDataReader.RouteSeries consecutive = EffectiveRateSeries.merge("USA-123456",
+            Arrays.copyOf(measures, 2), EffectiveRateSeries.none(), EffectiveRateSeries.none());
+        assertThat(consecutive.rates()).containsExactly(5, 5);
+        assertThat(consecutive.measureRowsOnly()).isTrue();
+    }
+
+    @Test
+    void merge_NoRows_IsEmpty() {
+        TrainingDataReader.RouteSeries series = EffectiveRateSeries.merge("USA-123456",
+            EffectiveRateSeries.none(), EffectiveRateSeries.none(), EffectiveRateSeries.none());
+
+        assertThat(series.size()).isZero();
+        assertThat(series.measureRowsOnly()).isTrue();
+    }
+
+    @Test
+    void merge_RandomIntervals_MatchesDayByDayResolution() {
+        Random random = new Random(7);
+        for (int trial = 0; trial < 200; trial++) {
+            // Given
+            Interval[] measures = randomIntervals(random, 8);
+            Interval[] suspensions = randomIntervals(random, 3);
+            Interval[] preferences = randomIntervals(random, 3);
+
+            // When
+            TrainingDataReader.RouteSeries series = EffectiveRateSeries.merge("USA-123456", measures, suspensions, preferences);
+
+            // Then
+            List<LocalDate> expectedDays = new ArrayList<>();
+            List<Double> expectedRates = new ArrayList<>();
+            Interval inForce = null;
+            for (int d = 0; d < 800; d++) {
+                Interval resolved = resolve(preferences, d);
+                if (resolved == null) {
+                    resolved = resolve(suspensions, d);
+                }
+                if (resolved == null) {
+                    resolved = resolve(measures, d);
+                }
+                if (resolved != inForce && resolved != null) {
+                    expectedDays.add(day(d));
+                    expectedRates.add(resolved.rate());
+                }
+                inForce = resolved;
+            }
+            assertThat(series.validFrom()).as("trial %d", trial).containsExactlyElementsOf(expectedDays);
+            assertThat(series.rates()).as("trial %d", trial)
+                .containsExactly(expectedRates.stream().mapToDouble(Double::doubleValue).toArray());
+        }
+    }
+
+    /**
+     * The row in force on the day as RateIndexService resolves it: latest validFrom, later row on a tie.
+     */
+    private static Interval resolve(Interval[] sorted, int d) {
+        for (int i = sorted.length - 1; i >= 0; i--) {
+            Interval row = sorted[i];
+            if (!row.validFrom().isAfter(day(d)) && (row.validTo() == null || !row.validTo().isBefore(day(d)))) {
+                return row;
+            }
+        }
+        return null;
+    }
+
+    private static Interval[] randomIntervals(Random random, int max) {
+        Interval[] intervals = new Interval[random.nextInt(max + 1)];
+        for (int i = 0; i < intervals.length; i++) {
+            int from = random.nextInt(600);
+            Integer to = random.nextInt(4) == 0 ? null : from + random.nextInt(150);
+            intervals[i] = interval(from, to, random.nextInt(20));
+        }
+        Arrays.sort(intervals, Comparator.comparing(Interval::validFrom));
+        return intervals;
+    }
+
+    private static Interval interval(int from, Integer to, double rate) {
+        return new Interval(day(from), to != null ? day(to) : null, rate);
+    }
+
+    private static LocalDate day(int offset) {
+        return START.plusDays(offset);
+    }
+}
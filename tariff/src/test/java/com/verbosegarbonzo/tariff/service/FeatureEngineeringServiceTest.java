@@ -12,8 +12,14 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 import static org.assertj.core.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -31,6 +37,9 @@ class FeatureEngineeringServiceTest {
     @Mock
     private SuspensionRepository suspensionRepository;
 
+    @Mock
+    private FeatureStore featureStore;
+
     @InjectMocks
     private FeatureEngineeringService featureEngineeringService;
 
@@ -234,6 +243,257 @@ class FeatureEngineeringServiceTest {
         assertThat(features.getHasPreference()).isFalse();
     }
 
+    @Test
+    void extractFeatureVector_FillsSchemaSlotsFromFeatures() {
+        // Given
+        String importerCode = "USA";
+        String exporterCode = "CHN";
+        String hs6Code = "123456";
+        LocalDate targetDate = LocalDate.of(2025, 4, 10);
+
+        when(measureRepository.findHistoricalRates(any(), any(), any(LocalDate.class), any(LocalDate.class)))
+            .thenReturn(createTestMeasures(5));
+        when(preferenceRepository.findHistoricalPreferences(any(), any(), any(), any(LocalDate.class), any(LocalDate.class)))
+            .thenReturn(createTestPreferences(2));
+        when(suspensionRepository.findHistoricalSuspensions(any(), any(), any(LocalDate.class), any(LocalDate.class)))
+            .thenReturn(Collections.emptyList());
+
+        // When
+        double[] vector = featureEngineeringService.extractFeatureVector(
+            importerCode, exporterCode, hs6Code, targetDate);
+        TariffFeatures features = featureEngineeringService.extractFeatures(
+            importerCode, exporterCode, hs6Code, targetDate);
+
+        // Then
+        assertThat(vector).hasSize(FeatureSchema.SIZE);
+        assertThat(vector[FeatureSchema.MONTH_SIN]).isEqualTo(Math.sin(2 * Math.PI * 4 / 12));
+        assertThat(vector[FeatureSchema.DAY_OF_YEAR_NORM]).isEqualTo(targetDate.getDayOfYear() / 365.0);
+        assertThat(vector[FeatureSchema.AVG_RATE_3Y]).isEqualTo(features.getAvgRateLast3Years().doubleValue());
+        assertThat(vector[FeatureSchema.RATE_VOLATILITY]).isEqualTo(features.getRateVolatility().doubleValue());
+        assertThat(vector[FeatureSchema.HAS_PREFERENCE]).isEqualTo(1.0);
+        assertThat(vector[FeatureSchema.HAS_SUSPENSION]).isEqualTo(0.0);
+        assertThat(vector[FeatureSchema.YEARS_SINCE_FTA]).isEqualTo(features.getYearsSinceFTA().doubleValue());
+    }
+
+    @Test
+    void extractFeatures_ComputesRateStatistics() {
+        // Given: five measures over the last two years
+        LocalDate targetDate = LocalDate.of(2025, 6, 15);
+        List<Measure> measures = new ArrayList<>();
+        double[] rates = {5, 10, 15, 8, 12};
+        for (int i = 0; i < rates.length; i++) {
+            measures.add(Measure.builder()
+                .measureId(i + 1)
+                .mfnAdvalRate(BigDecimal.valueOf(rates[i]))
+                .validFrom(targetDate.minusMonths(20 - i * 4L))
+                .build());
+        }
+        when(measureRepository.findHistoricalRates(any(), any(), any(LocalDate.class), any(LocalDate.class)))
+            .thenReturn(measures);
+        when(suspensionRepository.findHistoricalSuspensions(any(), any(), any(LocalDate.class), any(LocalDate.class)))
+            .thenReturn(Collections.emptyList());
+
+        // When
+        TariffFeatures features = featureEngineeringService.extractFeatures("USA", null, "123456", targetDate);
+
+        // Then: mean 10, squared deviations 58 over 5 rows, older half 7.50 against newer 11.67
+        assertThat(features.getAvgRateLast3Years()).isEqualByComparingTo("10.00");
+        assertThat(features.getAvgRateLast5Years()).isEqualByComparingTo("10.00");
+        assertThat(features.getRateVolatility().doubleValue()).isCloseTo(Math.sqrt(11.6), within(1e-12));
+        assertThat(features.getTrendDirection()).isEqualTo(1);
+        assertThat(features.getDaysSinceEpoch()).isEqualTo(targetDate.toEpochDay());
+    }
+
+    @Test
+    void extractFeatures_Bulk_MatchesSingleRouteExtraction() {
+        // Given: random history for two importers, and keys over several routes and dates
+        History history = new History(new Random(5));
+        history.stubSingleRouteQueries();
+        history.stubBulkQueries();
+        List<FeatureEngineeringService.FeatureKey> keys = randomKeys(new Random(9));
+
+        // When
+        Map<FeatureEngineeringService.FeatureKey, TariffFeatures> bulk = featureEngineeringService.extractFeatures(keys);
+
+        // Then
+        assertThat(bulk).containsOnlyKeys(keys);
+        for (FeatureEngineeringService.FeatureKey key : keys) {
+            TariffFeatures single = featureEngineeringService.extractFeatures(
+                key.importerCode(), key.exporterCode(), key.hs6Code(), key.targetDate());
+            assertThat(bulk.get(key)).as("%s", key).usingRecursiveComparison().isEqualTo(single);
+        }
+    }
+
+    @Test
+    void extractFeatures_FromFeatureStore_MatchesQueriesWithoutQuerying() {
+        // Given: the same history in the tables and in a loaded feature store
+        History history = new History(new Random(7));
+        history.stubSingleRouteQueries();
+        history.stubFeatureStore();
+        FeatureEngineeringService fromQueries = new FeatureEngineeringService(measureRepository,
+            preferenceRepository, suspensionRepository, mock(FeatureStore.class));
+        List<FeatureEngineeringService.FeatureKey> keys = randomKeys(new Random(8));
+
+        // When
+        Map<FeatureEngineeringService.FeatureKey, TariffFeatures> fromStore = featureEngineeringService.extractFeatures(keys);
+        FeatureEngineeringService.FeatureKey first = keys.get(0);
+        TariffFeatures singleFromStore = featureEngineeringService.extractFeatures(
+            first.importerCode(), first.exporterCode(), first.hs6Code(), first.targetDate());
+
+        // Then
+        verify(measureRepository, never()).findHistoricalRows(any(), any(), any(), any());
+        verify(measureRepository, never()).findHistoricalRates(any(), any(), any(), any());
+        for (FeatureEngineeringService.FeatureKey key : keys) {
+            TariffFeatures queried = fromQueries.extractFeatures(
+                key.importerCode(), key.exporterCode(), key.hs6Code(), key.targetDate());
+            assertThat(fromStore.get(key)).as("%s", key).usingRecursiveComparison().isEqualTo(queried);
+        }
+        assertThat(singleFromStore).usingRecursiveComparison().isEqualTo(fromStore.get(first));
+    }
+
+    @Test
+    void extractFeatures_Bulk_QueriesEachTableOncePerImporter() {
+        // Given
+        History history = new History(new Random(6));
+        history.stubBulkQueries();
+        LocalDate targetDate = LocalDate.of(2024, 3, 1);
+        List<FeatureEngineeringService.FeatureKey> keys = List.of(
+            new FeatureEngineeringService.FeatureKey("USA", "CHN", "100000", targetDate),
+            new FeatureEngineeringService.FeatureKey("USA", "DEU", "100001", targetDate),
+            new FeatureEngineeringService.FeatureKey("USA", null, "100002", targetDate.minusYears(1)),
+            new FeatureEngineeringService.FeatureKey("CAN", null, "100000", targetDate));
+
+        // When
+        double[] vectors = featureEngineeringService.extractFeatureVectors(keys);
+
+        // Then
+        verify(measureRepository, times(2)).findHistoricalRows(any(), any(), any(), any());
+        verify(suspensionRepository, times(2)).findHistoricalRows(any(), any(), any(), any());
+        verify(preferenceRepository, times(1)).findHistoricalRows(eq("USA"), any(), any(), any(), any());
+        verify(measureRepository, never()).findHistoricalRates(any(), any(), any(), any());
+        assertThat(vectors).hasSize(keys.size() * FeatureSchema.SIZE);
+        assertThat(vectors[2 * FeatureSchema.SIZE + FeatureSchema.DAY_OF_YEAR_NORM])
+            .isEqualTo(targetDate.minusYears(1).getDayOfYear() / 365.0);
+    }
+
+    private static List<FeatureEngineeringService.FeatureKey> randomKeys(Random random) {
+        List<FeatureEngineeringService.FeatureKey> keys = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            String exporterCode = switch (random.nextInt(3)) {
+                case 0 -> null;
+                case 1 -> "CHN";
+                default -> "DEU";
+            };
+            keys.add(new FeatureEngineeringService.FeatureKey(
+                random.nextBoolean() ? "USA" : "CAN", exporterCode, "10000" + random.nextInt(4),
+                LocalDate.of(2020, 1, 1).plusDays(random.nextInt(2000))));
+        }
+        return keys;
+    }
+
+    /**
+     * Random measures, preferences and suspensions for two importers, four products and two
+     * exporters, answering both the single-route and the bulk queries.
+     */
+    private class History {
+        final List<MeasureTrainingRow> measures = new ArrayList<>();
+        final List<PreferenceTrainingRow> preferences = new ArrayList<>();
+        final List<SuspensionTrainingRow> suspensions = new ArrayList<>();
+
+        History(Random random) {
+            for (String importerCode : List.of("USA", "CAN")) {
+                for (int product = 0; product < 4; product++) {
+                    String hs6Code = "10000" + product;
+                    LocalDate date = LocalDate.of(2013, 1, 1);
+                    for (int i = 0; i < 40; i++) {
+                        date = date.plusDays(30 + random.nextInt(90));
+                        BigDecimal rate = random.nextInt(8) == 0 ? null : BigDecimal.valueOf(random.nextInt(2000), 2);
+                        measures.add(new MeasureTrainingRow(importerCode, hs6Code, date, rate));
+                    }
+                    for (String exporterCode : List.of("CHN", "DEU")) {
+                        LocalDate from = LocalDate.of(2015, 1, 1).plusDays(random.nextInt(3000));
+                        for (int i = 0; i < random.nextInt(3); i++, from = from.plusYears(1)) {
+                            preferences.add(new PreferenceTrainingRow(importerCode, exporterCode, hs6Code, from,
+                                from.plusYears(1).minusDays(1), BigDecimal.ONE));
+                        }
+                    }
+                    if (random.nextBoolean()) {
+                        LocalDate from = LocalDate.of(2016, 1, 1).plusDays(random.nextInt(2500));
+                        suspensions.add(new SuspensionTrainingRow(importerCode, hs6Code, from, from.plusMonths(6), BigDecimal.ZERO));
+                    }
+                }
+            }
+        }
+
+        void stubSingleRouteQueries() {
+            when(measureRepository.findHistoricalRates(any(), any(), any(LocalDate.class), any(LocalDate.class)))
+                .thenAnswer(call -> select(measures, MeasureTrainingRow::validFrom, call.getArgument(2), call.getArgument(3),
+                    row -> row.importerCode().equals(call.getArgument(0)) && row.hs6Code().equals(call.getArgument(1)))
+                    .stream()
+                    .map(row -> Measure.builder().mfnAdvalRate(row.mfnAdvalRate()).validFrom(row.validFrom()).build())
+                    .toList());
+            lenient().when(preferenceRepository.findHistoricalPreferences(any(), any(), any(), any(LocalDate.class), any(LocalDate.class)))
+                .thenAnswer(call -> select(preferences, PreferenceTrainingRow::validFrom, call.getArgument(3), call.getArgument(4),
+                    row -> row.importerCode().equals(call.getArgument(0)) && row.exporterCode().equals(call.getArgument(1))
+                        && row.hs6Code().equals(call.getArgument(2)))
+                    .stream()
+                    .map(row -> {
+                        Preference preference = new Preference();
+                        preference.setValidFrom(row.validFrom());
+                        return preference;
+                    })
+                    .toList());
+            when(suspensionRepository.findHistoricalSuspensions(any(), any(), any(LocalDate.class), any(LocalDate.class)))
+                .thenAnswer(call -> select(suspensions, SuspensionTrainingRow::validFrom, call.getArgument(2), call.getArgument(3),
+                    row -> row.importerCode().equals(call.getArgument(0)) && row.hs6Code().equals(call.getArgument(1)))
+                    .stream()
+                    .map(row -> new Suspension())
+                    .toList());
+        }
+
+        void stubBulkQueries() {
+            when(measureRepository.findHistoricalRows(any(), any(), any(), any()))
+                .thenAnswer(call -> select(measures, MeasureTrainingRow::validFrom, call.getArgument(2), call.getArgument(3),
+                    row -> row.importerCode().equals(call.getArgument(0))
+                        && call.<Collection<String>>getArgument(1).contains(row.hs6Code())));
+            lenient().when(preferenceRepository.findHistoricalRows(any(), any(), any(), any(), any()))
+                .thenAnswer(call -> select(preferences, PreferenceTrainingRow::validFrom, call.getArgument(3), call.getArgument(4),
+                    row -> row.importerCode().equals(call.getArgument(0))
+                        && call.<Collection<String>>getArgument(1).contains(row.exporterCode())
+                        && call.<Collection<String>>getArgument(2).contains(row.hs6Code())));
+            when(suspensionRepository.findHistoricalRows(any(), any(), any(), any()))
+                .thenAnswer(call -> select(suspensions, SuspensionTrainingRow::validFrom, call.getArgument(2), call.getArgument(3),
+                    row -> row.importerCode().equals(call.getArgument(0))
+                        && call.<Collection<String>>getArgument(1).contains(row.hs6Code())));
+        }
+
+        void stubFeatureStore() {
+            when(featureStore.isReady()).thenReturn(true);
+            when(featureStore.measures(any(), any())).thenAnswer(call -> RateHistory.of(
+                select(measures, MeasureTrainingRow::validFrom, LocalDate.MIN, LocalDate.MAX,
+                    row -> row.importerCode().equals(call.getArgument(0)) && row.hs6Code().equals(call.getArgument(1))),
+                MeasureTrainingRow::validFrom, MeasureTrainingRow::mfnAdvalRate));
+            when(featureStore.preferences(any(), any(), any())).thenAnswer(call -> RateHistory.of(
+                select(preferences, PreferenceTrainingRow::validFrom, LocalDate.MIN, LocalDate.MAX,
+                    row -> row.importerCode().equals(call.getArgument(0)) && row.exporterCode().equals(call.getArgument(1))
+                        && row.hs6Code().equals(call.getArgument(2))),
+                PreferenceTrainingRow::validFrom, PreferenceTrainingRow::prefAdValRate));
+            when(featureStore.suspensions(any(), any())).thenAnswer(call -> RateHistory.of(
+                select(suspensions, SuspensionTrainingRow::validFrom, LocalDate.MIN, LocalDate.MAX,
+                    row -> row.importerCode().equals(call.getArgument(0)) && row.hs6Code().equals(call.getArgument(1))),
+                SuspensionTrainingRow::validFrom, SuspensionTrainingRow::suspensionRate));
+        }
+
+        private <T> List<T> select(List<T> rows, Function<T, LocalDate> validFrom, LocalDate start, LocalDate end,
+                Predicate<T> matches) {
+            return rows.stream()
+                .filter(matches)
+                .filter(row -> !validFrom.apply(row).isBefore(start) && !validFrom.apply(row).isAfter(end))
+                .sorted(Comparator.comparing(validFrom))
+                .toList();
+        }
+    }
+
     // Helper methods
 
     private List<Measure> createTestMeasures(int count) {
@@ -0,0 +1,266 @@
+package com.verbosegarbonzo.tariff.service;
+
+import com.verbosegarbonzo.tariff.config.MLModelProperties;
+import com.verbosegarbonzo.tariff.model.MeasureTrainingRow;
+import com.verbosegarbonzo.tariff.model.PreferenceTrainingRow;
+import com.verbosegarbonzo.tariff.model.RateTableFingerprint;
+import com.verbosegarbonzo.tariff.model.SuspensionTrainingRow;
+import com.verbosegarbonzo.tariff.repository.MeasureRepository;
+import com.verbosegarbonzo.tariff.repository.PreferenceRepository;
+import com.verbosegarbonzo.tariff.repository.SuspensionRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FeatureStoreTest {
+
+    private static final LocalDate START = LocalDate.of(2020, 1, 1);
+
+    @Mock
+    private MeasureRepository measureRepository;
+
+    @Mock
+    private PreferenceRepository preferenceRepository;
+
+    @Mock
+    private SuspensionRepository suspensionRepository;
+
+    @TempDir
+    Path tempDir;
+
+    private MLModelProperties properties;
+    private FeatureStore store;
+
+    private final List<MeasureTrainingRow> measures = List.of(
+        measure("USA", "100000", 0, "5.00"),
+        measure("USA", "100000", 400, null),
+        measure("USA", "100000", 800, "7.50"),
+        measure("USA", "100001", 100, "2.00"));
+    private final List<PreferenceTrainingRow> preferences = List.of(
+        preference("USA", "CHN", "100000", 200),
+        preference("USA", "CHN", "100000", 600),
+        preference("USA", "DEU", "100000", 300));
+    private final List<SuspensionTrainingRow> suspensions = List.of(
+        suspension("USA", "100001", 50));
+
+    @BeforeEach
+    void setUp() {
+        properties = new MLModelProperties();
+        properties.getModel().setPath(tempDir.toString());
+        store = new FeatureStore(measureRepository, preferenceRepository, suspensionRepository, properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.shutdown();
+    }
+
+    @Test
+    void rebuild_GroupsRowsIntoRouteHistories() {
+        // Given
+        stubStreams();
+        assertThat(store.isReady()).isFalse();
+
+        // When
+        store.rebuild();
+
+        // Then
+        assertThat(store.isReady()).isTrue();
+        RateHistory usa = store.measures("USA", "100000");
+        assertThat(usa.size()).isEqualTo(3);
+        assertThat(usa.day(0)).isEqualTo(START.toEpochDay());
+        assertThat(usa.day(2)).isEqualTo(START.plusDays(800).toEpochDay());
+        assertThat(usa.sum(0, 3)).isEqualTo(12.5);
+        assertThat(usa.sumOfSquares(0, 3)).isEqualTo(81.25);
+        assertThat(usa.rated(0, 3)).isEqualTo(2);
+        int from = usa.from(START.plusDays(1).toEpochDay());
+        assertThat(usa.sum(from, usa.to(START.plusDays(800).toEpochDay()))).isEqualTo(7.5);
+
+        assertThat(store.preferences("USA", "CHN", "100000").size()).isEqualTo(2);
+        assertThat(store.preferences("USA", "DEU", "100000").day(0)).isEqualTo(START.plusDays(300).toEpochDay());
+        assertThat(store.suspensions("USA", "100001").size()).isEqualTo(1);
+        assertThat(store.measures("CAN", "100000")).isSameAs(RateHistory.EMPTY);
+        assertThat(store.getStatus()).containsEntry("measureRoutes", 2).containsEntry("preferenceRoutes", 2);
+    }
+
+    @Test
+    void applyChanges_UpdateOnlyTheWrittenRoutes() {
+        // Given
+        stubStreams();
+        store.rebuild();
+        RateHistory untouched = store.measures("USA", "100001");
+
+        // When: a measure updated, one added, a preference deleted and a suspension added
+        store.applyMeasureChange(measures.get(0), measure("USA", "100000", 0, "6.00"));
+        store.applyMeasureChange(null, measure("CAN", "100000", 10, "1.00"));
+        store.applyPreferenceChange(preferences.get(2), null);
+        store.applySuspensionChange(null, suspension("USA", "100000", 700));
+
+        // Then
+        RateHistory usa = store.measures("USA", "100000");
+        assertThat(usa.size()).isEqualTo(3);
+        assertThat(usa.sum(0, 3)).isEqualTo(13.5);
+        assertThat(store.measures("CAN", "100000").size()).isEqualTo(1);
+        assertThat(store.measures("USA", "100001")).isSameAs(untouched);
+        assertThat(store.preferences("USA", "DEU", "100000")).isSameAs(RateHistory.EMPTY);
+        assertThat(store.suspensions("USA", "100000").day(0)).isEqualTo(START.plusDays(700).toEpochDay());
+    }
+
+    @Test
+    void initialize_LoadsSavedStoreWhileFingerprintsMatch() {
+        // Given: a store built, changed once and saved
+        stubStreams();
+        store.rebuild();
+        store.applyMeasureChange(null, measure("CAN", "100000", 10, "1.00"));
+        store.getPendingPersistence().join();
+        assertThat(tempDir.resolve(FeatureStore.FILE_NAME)).exists();
+
+        stubFingerprints(Stream.concat(measures.stream(), Stream.of(measure("CAN", "100000", 10, "1.00"))).toList());
+        FeatureStore restarted = new FeatureStore(measureRepository, preferenceRepository, suspensionRepository, properties);
+
+        // When
+        restarted.initialize();
+
+        // Then: read from the file, not the tables
+        assertThat(restarted.isReady()).isTrue();
+        verify(measureRepository, times(1)).streamTrainingRows();
+        assertThat(restarted.measures("CAN", "100000").size()).isEqualTo(1);
+        RateHistory usa = restarted.measures("USA", "100000");
+        assertThat(usa.size()).isEqualTo(3);
+        assertThat(usa.sum(0, 3)).isEqualTo(12.5);
+        assertThat(Double.isNaN(usa.rate(1))).isTrue();
+        assertThat(restarted.preferences("USA", "CHN", "100000").size()).isEqualTo(2);
+        restarted.shutdown();
+    }
+
+    @Test
+    void initialize_StaleOrMissingFile_Rebuilds() throws Exception {
+        // Given: a saved store, then a rate changed around the application, keeping the row count
+        stubStreams();
+        store.rebuild();
+        store.getPendingPersistence().join();
+        stubFingerprints(List.of(measures.get(0), measures.get(1), measure("USA", "100000", 800, "8.00"),
+            measures.get(3)));
+        FeatureStore restarted = new FeatureStore(measureRepository, preferenceRepository, suspensionRepository, properties);
+
+        // When
+        restarted.initialize();
+
+        // Then
+        verify(measureRepository, times(2)).streamTrainingRows();
+        assertThat(restarted.isReady()).isTrue();
+        restarted.shutdown();
+
+        Files.delete(tempDir.resolve(FeatureStore.FILE_NAME));
+        FeatureStore fresh = new FeatureStore(measureRepository, preferenceRepository, suspensionRepository, properties);
+        fresh.initialize();
+        verify(measureRepository, times(3)).streamTrainingRows();
+        fresh.shutdown();
+    }
+
+    @Test
+    void rebuild_RouteWrittenWhileReading_IsReloadedFromTheTable() {
+        // Given: a measure written after the cursor has passed its route
+        MeasureTrainingRow written = measure("USA", "100000", 900, "9.00");
+        when(measureRepository.streamTrainingRows()).thenAnswer(call -> measures.stream()
+            .peek(row -> {
+                if (row == measures.get(3)) {
+                    store.applyMeasureChange(null, written);
+                }
+            }));
+        when(preferenceRepository.streamTrainingRows()).thenAnswer(call -> preferences.stream());
+        when(suspensionRepository.streamFeatureRows()).thenAnswer(call -> suspensions.stream());
+        when(measureRepository.findHistoricalRows(eq("USA"), eq(List.of("100000")), any(), any()))
+            .thenReturn(List.of(measures.get(0), measures.get(1), measures.get(2), written));
+
+        // When
+        store.rebuild();
+
+        // Then
+        RateHistory usa = store.measures("USA", "100000");
+        assertThat(usa.size()).isEqualTo(4);
+        assertThat(usa.sum(0, 4)).isEqualTo(21.5);
+    }
+
+    @Test
+    void applyChanges_NotifyEachWrittenRouteOnce() {
+        // Given: a store that was never loaded
+        List<String> changed = new ArrayList<>();
+        store.addChangeListener((importerCode, hs6Code) -> changed.add(importerCode + "-" + hs6Code));
+
+        // When: an update within one route, a move between routes, and a delete
+        store.applyPreferenceChange(preferences.get(0), preference("USA", "CHN", "100000", 250));
+        store.applyMeasureChange(measures.get(3), measure("DEU", "100001", 100, "2.00"));
+        store.applySuspensionChange(suspensions.get(0), null);
+
+        // Then
+        assertThat(changed).containsExactly("USA-100000", "USA-100001", "DEU-100001", "USA-100001");
+    }
+
+    @Test
+    void disabled_NeverReady() {
+        properties.getFeatures().setEnabled(false);
+
+        store.initialize();
+        store.rebuild();
+
+        assertThat(store.isReady()).isFalse();
+        verifyNoInteractions(measureRepository);
+    }
+
+    private void stubStreams() {
+        when(measureRepository.streamTrainingRows()).thenAnswer(call -> measures.stream());
+        when(preferenceRepository.streamTrainingRows()).thenAnswer(call -> preferences.stream());
+        when(suspensionRepository.streamFeatureRows()).thenAnswer(call -> suspensions.stream());
+    }
+
+    private void stubFingerprints(List<MeasureTrainingRow> measureRows) {
+        when(measureRepository.fingerprint()).thenReturn(
+            fingerprint(measureRows, MeasureTrainingRow::validFrom, MeasureTrainingRow::mfnAdvalRate));
+        when(preferenceRepository.fingerprint()).thenReturn(
+            fingerprint(preferences, PreferenceTrainingRow::validFrom, PreferenceTrainingRow::prefAdValRate));
+        when(suspensionRepository.fingerprint()).thenReturn(
+            fingerprint(suspensions, SuspensionTrainingRow::validFrom, SuspensionTrainingRow::suspensionRate));
+    }
+
+    private static <T> RateTableFingerprint fingerprint(List<T> rows, Function<T, LocalDate> validFrom,
+            Function<T, BigDecimal> rate) {
+        return new RateTableFingerprint(rows.size(),
+            rows.stream().mapToLong(row -> validFrom.apply(row).toEpochDay()).sum(),
+            rows.stream().map(rate).filter(r -> r != null).mapToDouble(BigDecimal::doubleValue).sum());
+    }
+
+    private static MeasureTrainingRow measure(String importerCode, String hs6Code, int day, String rate) {
+        return new MeasureTrainingRow(importerCode, hs6Code, START.plusDays(day),
+            rate != null ? new BigDecimal(rate) : null);
+    }
+
+    private static PreferenceTrainingRow preference(String importerCode, String exporterCode, String hs6Code, int day) {
+        return new PreferenceTrainingRow(importerCode, exporterCode, hs6Code, START.plusDays(day),
+            START.plusDays(day + 364), BigDecimal.ONE);
+    }
+
+    private static SuspensionTrainingRow suspension(String importerCode, String hs6Code, int day) {
+        return new SuspensionTrainingRow(importerCode, hs6Code, START.plusDays(day), START.plusDays(day + 180),
+            BigDecimal.ZERO);
+    }
+}
@@ -0,0 +1,154 @@
+package com.verbosegarbonzo.tariff.service;
+
+import com.verbosegarbonzo.tariff.config.MLModelProperties;
+import com.verbosegarbonzo.tariff.model.DateRangeForecast;
+import com.verbosegarbonzo.tariff.model.HorizonForecast;
+import com.verbosegarbonzo.tariff.repository.TransactionRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ForecastMaterializationServiceTest {
+
+    private static final LocalDate TODAY = LocalDate.now();
+    private static final LocalDate END = TODAY.plusDays(365);
+
+    @Mock
+    private TariffMLService mlService;
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    private MLModelProperties properties;
+    private ForecastMaterializationService service;
+
+    @BeforeEach
+    void setUp() {
+        properties = new MLModelProperties();
+        properties.getForecasts().setHotRoutes(2);
+        properties.getForecasts().setParallelism(2);
+        service = new ForecastMaterializationService(mlService, transactionRepository, properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void refresh_MaterializesMostTradedAndRequestedRoutes() {
+        // Given: two traded routes, and a third requested more often than the second is traded
+        when(transactionRepository.getRoutePatterns(eq(TODAY.minusDays(90)), any())).thenReturn(List.of(
+            new Object[] {"USA", "CHN", "111111", 5L},
+            new Object[] {"USA", "DEU", "222222", 3L}));
+        for (int i = 0; i < 4; i++) {
+            assertThat(service.lookup("USA", "JPN", "333333", TODAY, END)).isEmpty();
+        }
+        when(mlService.hasTrainedModels()).thenReturn(true);
+        when(mlService.scoreHorizon(any(), any(), any(), eq(TODAY), eq(END))).thenReturn(horizon(2.5));
+
+        // When
+        service.refresh();
+
+        // Then
+        assertThat(service.lookup("USA", "CHN", "111111", TODAY, END)).hasValueSatisfying(weeks ->
+            assertSameRanges(weeks, horizon(2.5).weekly()));
+        assertThat(service.lookup("USA", "JPN", "333333", TODAY, END)).isPresent();
+        assertThat(service.lookup("USA", "DEU", "222222", TODAY, END)).isEmpty();
+        verify(mlService, never()).scoreHorizon(eq("USA"), eq("DEU"), eq("222222"), any(), any());
+        assertThat(service.getStatus()).containsEntry("hotRoutes", 2).containsEntry("materialized", 2L);
+    }
+
+    @Test
+    void lookup_OtherDayOrHorizon_Misses() {
+        materializeOneRoute();
+
+        assertThat(service.lookup("USA", "CHN", "111111", TODAY.plusDays(1), END.plusDays(1))).isEmpty();
+        assertThat(service.lookup("USA", "CHN", "111111", TODAY, END.minusDays(7))).isEmpty();
+        assertThat(service.lookup("USA", "CHN", "111111", TODAY, END)).isPresent();
+    }
+
+    @Test
+    void routeUpdated_RecomputesHotRoutesOfThatImporterAndProduct() {
+        // Given
+        materializeOneRoute();
+        when(mlService.scoreHorizon(any(), any(), any(), eq(TODAY), eq(END))).thenReturn(horizon(7.0));
+
+        // When
+        service.routeUpdated("USA", "999999");
+        service.routeUpdated("USA", "111111");
+        service.pendingRefreshes().join();
+
+        // Then
+        assertThat(service.lookup("USA", "CHN", "111111", TODAY, END)).hasValueSatisfying(weeks ->
+            assertThat(weeks.get(0).getAvgRate()).isEqualByComparingTo("7.03"));
+        verify(mlService, times(2)).scoreHorizon(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void refresh_WithoutTrainedModels_WaitsForFirstPublish() {
+        // Given
+        when(transactionRepository.getRoutePatterns(any(), any())).thenReturn(List.<Object[]>of(
+            new Object[] {"USA", "CHN", "111111", 5L}));
+        when(mlService.hasTrainedModels()).thenReturn(false);
+
+        // When
+        service.refresh();
+
+        // Then
+        verify(mlService, never()).scoreHorizon(any(), any(), any(), any(), any());
+        assertThat(service.lookup("USA", "CHN", "111111", TODAY, END)).isEmpty();
+
+        when(mlService.scoreHorizon(any(), any(), any(), eq(TODAY), eq(END))).thenReturn(horizon(2.5));
+        service.allRoutesUpdated();
+        service.pendingRefreshes().join();
+        assertThat(service.lookup("USA", "CHN", "111111", TODAY, END)).isPresent();
+    }
+
+    @Test
+    void lookup_Disabled_AlwaysMisses() {
+        materializeOneRoute();
+        properties.getForecasts().setEnabled(false);
+
+        assertThat(service.lookup("USA", "CHN", "111111", TODAY, END)).isEmpty();
+        assertThat(service.refreshInBackground()).isCompleted();
+    }
+
+    private void materializeOneRoute() {
+        when(transactionRepository.getRoutePatterns(any(), any())).thenReturn(List.<Object[]>of(
+            new Object[] {"USA", "CHN", "111111", 5L}));
+        when(mlService.hasTrainedModels()).thenReturn(true);
+        when(mlService.scoreHorizon(any(), any(), any(), eq(TODAY), eq(END))).thenReturn(horizon(2.5));
+        service.refresh();
+    }
+
+    private static HorizonForecast horizon(double rate) {
+        double[] rates = new double[365];
+        int[] confidence = new int[365];
+        for (int day = 0; day < rates.length; day++) {
+            rates[day] = rate + (day % 30) * 0.01;
+            confidence[day] = 60 + day % 11;
+        }
+        return new HorizonForecast(TODAY, rates, confidence, true);
+    }
+
+    private static void assertSameRanges(List<DateRangeForecast> actual, List<DateRangeForecast> expected) {
+        assertThat(actual).hasSameSizeAs(expected);
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(actual.get(i)).usingRecursiveComparison().isEqualTo(expected.get(i));
+        }
+        assertThat(actual.get(actual.size() - 1).getDayCount()).isEqualTo(1L);
+    }
+}
@@ -0,0 +1,180 @@
+package com.verbosegarbonzo.tariff.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.verbosegarbonzo.tariff.model.AIRecommendationResponse;
+import com.verbosegarbonzo.tariff.model.ProfileType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Disposable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Runs GeminiSummaryService streaming against a local stub of the Gemini streaming endpoint,
+ * which writes one server-sent event per chunk of generated text.
+ */
+class GeminiSummaryStreamingTest {
+
+    private static final String CHUNK =
+            "{\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"%s\"}],\"role\":\"model\"}}]}";
+
+    private HttpServer server;
+    private GeminiSummaryService service;
+
+    // Stub behaviour, set per test
+    private volatile int status = 200;
+    private volatile List<String> chunks = List.of();
+    private volatile long chunkDelayMs = 0;
+    private volatile CountDownLatch release = new CountDownLatch(0);
+
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private final AtomicInteger chunksWritten = new AtomicInteger();
+    private final CountDownLatch clientGone = new CountDownLatch(1);
+
+    private final AIRecommendationResponse recommendation = AIRecommendationResponse.builder()
+            .currentRate(new BigDecimal("5.00"))
+            .potentialSavingsPercent(new BigDecimal("1.50"))
+            .averageConfidence(80)
+            .explanation("Rates dip in the spring")
+            .optimalPeriods(new ArrayList<>())
+            .avoidPeriods(new ArrayList<>())
+            .hasInsufficientData(false)
+            .build();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+
+        service = new GeminiSummaryService(null, new ObjectMapper(), WebClient.create());
+        ReflectionTestUtils.setField(service, "geminiApiKey", "test-api-key-123");
+        ReflectionTestUtils.setField(service, "geminiStreamUrl",
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/models/gemini-2.5-flash:streamGenerateContent");
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.add(exchange.getRequestURI() + " " + new String(exchange.getRequestBody().readAllBytes(),
+                StandardCharsets.UTF_8));
+        if (status != 200) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0); // Chunked
+        try (OutputStream out = exchange.getResponseBody()) {
+            for (int i = 0; i < chunks.size(); i++) {
+                if (i == 1) {
+                    release.await(5, TimeUnit.SECONDS);
+                }
+                out.write(("data: " + String.format(CHUNK, chunks.get(i)) + "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                chunksWritten.incrementAndGet();
+                Thread.sleep(chunkDelayMs);
+            }
+        } catch (IOException e) {
+            clientGone.countDown();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void streamGeminiSummary_RelaysEachChunkAsItArrives() throws Exception {
+        // Given: the stub holds every chunk after the first until released
+        chunks = List.of("Import ", "in April", " to save 1.5%.");
+        release = new CountDownLatch(1);
+        List<String> received = new CopyOnWriteArrayList<>();
+        CountDownLatch firstChunk = new CountDownLatch(1);
+        CountDownLatch completed = new CountDownLatch(1);
+
+        // When
+        service.streamGeminiSummary(recommendation, ProfileType.BUSINESS_OWNER, "USA", "123456")
+                .subscribe(text -> {
+                    received.add(text);
+                    firstChunk.countDown();
+                }, error -> completed.countDown(), completed::countDown);
+
+        // Then: the first chunk is relayed before the rest are generated
+        assertThat(firstChunk.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(received).containsExactly("Import ");
+        release.countDown();
+        assertThat(completed.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(received).containsExactly("Import ", "in April", " to save 1.5%.");
+
+        assertThat(requests).hasSize(1);
+        assertThat(requests.get(0))
+                .startsWith("/v1/models/gemini-2.5-flash:streamGenerateContent?alt=sse&key=test-api-key-123 ")
+                .contains("Importing Country: USA");
+    }
+
+    @Test
+    void streamGeminiSummary_Cancelled_ClosesUpstreamCall() throws Exception {
+        // Given: a long generation
+        chunks = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            chunks.add("word" + i + " ");
+        }
+        chunkDelayMs = 20;
+        CountDownLatch firstChunk = new CountDownLatch(1);
+
+        // When: the subscriber goes away after the first chunk, as a disconnected client does
+        Disposable subscription = service.streamGeminiSummary(recommendation, ProfileType.STUDENT, "USA", "123456")
+                .subscribe(text -> firstChunk.countDown());
+        assertThat(firstChunk.await(5, TimeUnit.SECONDS)).isTrue();
+        subscription.dispose();
+
+        // Then: the stub sees the connection closed long before it would have finished
+        assertThat(clientGone.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(chunksWritten.get()).isLessThan(200);
+    }
+
+    @Test
+    void streamGeminiSummary_UpstreamError_Fails() {
+        status = 503;
+
+        assertThatThrownBy(() -> service.streamGeminiSummary(recommendation, ProfileType.STUDENT, "USA", "123456")
+                .collectList()
+                .block(Duration.ofSeconds(5)))
+                .isInstanceOf(WebClientResponseException.ServiceUnavailable.class);
+    }
+
+    @Test
+    void streamGeminiSummary_WithNoApiKey_CompletesEmpty() {
+        ReflectionTestUtils.setField(service, "geminiApiKey", "");
+
+        List<String> received = service.streamGeminiSummary(recommendation, ProfileType.STUDENT, "USA", "123456")
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertThat(received).isEmpty();
+        assertThat(requests).isEmpty();
+    }
+}
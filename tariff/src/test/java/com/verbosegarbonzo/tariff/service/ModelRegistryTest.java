@@ -0,0 +1,208 @@
+package com.verbosegarbonzo.tariff.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.*;
+
+class ModelRegistryTest {
+
+    @Test
+    void current_BeforePublish_IsEmptyVersionZero() {
+        ModelRegistry registry = new ModelRegistry(3);
+
+        assertThat(registry.current().version()).isZero();
+        assertThat(registry.current().isEmpty()).isTrue();
+        assertThat(registry.rollback()).isEmpty();
+    }
+
+    @Test
+    void publish_DerivesFromCurrentAndBumpsVersion() {
+        // Given
+        ModelRegistry registry = new ModelRegistry(3);
+        registry.publish("training", current -> Map.of("USA-123456", model("USA-123456")));
+
+        // When
+        ModelRegistry.Snapshot second = registry.publish("training", current -> {
+            Map<String, TariffMLService.TariffMLModel> updated = new HashMap<>(current);
+            updated.put("CHN-654321", model("CHN-654321"));
+            return updated;
+        });
+
+        // Then
+        assertThat(second.version()).isEqualTo(2);
+        assertThat(second.models()).containsOnlyKeys("USA-123456", "CHN-654321");
+        assertThat(registry.current()).isSameAs(second);
+        assertThat(registry.describe()).containsEntry("previousVersions", List.of(1L));
+    }
+
+    @Test
+    void publish_SnapshotIsUnmodifiable() {
+        ModelRegistry registry = new ModelRegistry(3);
+        Map<String, TariffMLService.TariffMLModel> models = new HashMap<>();
+        models.put("USA-123456", model("USA-123456"));
+
+        ModelRegistry.Snapshot snapshot = registry.publish("training", current -> models);
+        models.clear();
+
+        assertThat(snapshot.models()).hasSize(1);
+        assertThatThrownBy(() -> snapshot.models().clear()).isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    void rollback_RestoresPreviousSnapshotsNewestFirst() {
+        // Given
+        ModelRegistry registry = new ModelRegistry(3);
+        ModelRegistry.Snapshot first = registry.publish("training", current -> Map.of("A-1", model("A-1")));
+        ModelRegistry.Snapshot second = registry.publish("training", current -> Map.of("B-2", model("B-2")));
+        registry.publish("training", current -> Map.of("C-3", model("C-3")));
+
+        // When / Then
+        assertThat(registry.rollback()).containsSame(second);
+        assertThat(registry.current()).isSameAs(second);
+        assertThat(registry.rollback()).containsSame(first);
+        assertThat(registry.rollback()).isEmpty();
+        assertThat(registry.current()).isSameAs(first);
+
+        // Versions are not reused after a rollback
+        assertThat(registry.publish("training", current -> current).version()).isEqualTo(4);
+    }
+
+    @Test
+    void publish_KeepsOnlyRetainedSnapshots() {
+        ModelRegistry registry = new ModelRegistry(2);
+        for (int i = 0; i < 5; i++) {
+            registry.publish("training", current -> current);
+        }
+
+        assertThat(registry.describe()).containsEntry("version", 5L)
+            .containsEntry("previousVersions", List.of(4L, 3L));
+    }
+
+    @Test
+    void publishRoute_ReplacesOneRouteAndSharesTheRest() {
+        // Given
+        ModelRegistry registry = new ModelRegistry(3);
+        TariffMLService.TariffMLModel kept = model("A-1");
+        registry.publish("training", current -> Map.of("A-1", kept, "B-2", model("B-2")));
+        TariffMLService.TariffMLModel updated = model("B-2");
+
+        // When
+        ModelRegistry.Snapshot snapshot = registry.publishRoute("measure write", "B-2", updated);
+        registry.publishRoute("measure write", "C-3", model("C-3"));
+        ModelRegistry.Snapshot removed = registry.publishRoute("measure write", "A-1", null);
+
+        // Then
+        assertThat(snapshot.version()).isEqualTo(2);
+        assertThat(snapshot.model("A-1")).isSameAs(kept);
+        assertThat(snapshot.model("B-2")).isSameAs(updated);
+        assertThat(snapshot.models()).hasSize(2);
+        assertThat(removed.models()).containsOnlyKeys("B-2", "C-3").hasSize(2);
+        assertThat(removed.model("A-1")).isNull();
+        assertThat(new HashMap<>(removed.models())).containsOnlyKeys("B-2", "C-3");
+        assertThatThrownBy(() -> removed.models().put("D-4", null)).isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    void publishRoute_IsNotARollbackPoint() {
+        // Given
+        ModelRegistry registry = new ModelRegistry(3);
+        ModelRegistry.Snapshot first = registry.publish("training", current -> Map.of("A-1", model("A-1")));
+        registry.publish("training", current -> Map.of("A-1", model("A-1")));
+        registry.publishRoute("measure write", "A-1", model("A-1"));
+
+        // When
+        registry.publishRoute("measure write", "B-2", model("B-2"));
+
+        // Then: rollback skips the route updates back to the last full publish before them
+        assertThat(registry.describe()).containsEntry("version", 4L).containsEntry("previousVersions", List.of(1L));
+        assertThat(registry.rollback()).containsSame(first);
+    }
+
+    @Test
+    void publishRoute_ManyUpdates_StayConsistent() {
+        // Given
+        ModelRegistry registry = new ModelRegistry(1);
+        registry.publish("training", current -> {
+            Map<String, TariffMLService.TariffMLModel> models = new HashMap<>();
+            for (int i = 0; i < 100; i++) {
+                models.put("R-" + i, model("R-" + i));
+            }
+            return models;
+        });
+
+        // When: more updates than are kept as changes before folding them in
+        for (int i = 0; i < 50; i++) {
+            registry.publishRoute("measure write", "R-" + i, i % 2 == 0 ? null : model("R-" + i));
+            registry.publishRoute("measure write", "N-" + i, model("N-" + i));
+        }
+
+        // Then
+        Map<String, TariffMLService.TariffMLModel> models = registry.current().models();
+        assertThat(models).hasSize(125);
+        assertThat(new HashMap<>(models)).hasSize(125);
+        assertThat(models.containsKey("R-0")).isFalse();
+        assertThat(models.containsKey("R-1")).isTrue();
+        assertThat(models.containsKey("N-49")).isTrue();
+    }
+
+    @Test
+    void publish_ConcurrentUpdatesAreNotLost() throws Exception {
+        // Given
+        ModelRegistry registry = new ModelRegistry(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean versionWentBack = new AtomicBoolean();
+
+        // When: 8 writers each add 50 routes while the reader follows the versions
+        for (int w = 0; w < 8; w++) {
+            int writer = w;
+            executor.execute(() -> {
+                awaitQuietly(start);
+                for (int i = 0; i < 50; i++) {
+                    String route = writer + "-" + i;
+                    registry.publish("training", current -> {
+                        Map<String, TariffMLService.TariffMLModel> updated = new HashMap<>(current);
+                        updated.put(route, model(route));
+                        return updated;
+                    });
+                }
+            });
+        }
+        executor.shutdown();
+        start.countDown();
+        long lastVersion = 0;
+        while (!executor.isTerminated()) {
+            ModelRegistry.Snapshot snapshot = registry.current();
+            if (snapshot.version() < lastVersion) {
+                versionWentBack.set(true);
+            }
+            lastVersion = snapshot.version();
+        }
+
+        // Then
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(registry.current().models()).hasSize(400);
+        assertThat(versionWentBack).isFalse();
+    }
+
+    private static TariffMLService.TariffMLModel model(String tradeRoute) {
+        return new TariffMLService.TariffMLModel(tradeRoute);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
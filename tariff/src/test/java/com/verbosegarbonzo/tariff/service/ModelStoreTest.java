@@ -0,0 +1,155 @@
+package com.verbosegarbonzo.tariff.service;
+
+import com.verbosegarbonzo.tariff.config.MLModelProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.*;
+
+class ModelStoreTest {
+
+    private static final ModelStore.Header HEADER =
+        new ModelStore.Header(FeatureSchema.VERSION, MLModelProperties.Backend.GBT, "1.0.0");
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void open_ReadsHeaderWithoutDecodingRoutes() throws Exception {
+        // Given
+        Path file = writeRoutes(500);
+
+        // When
+        ModelStore store = ModelStore.open(file);
+
+        // Then
+        assertThat(store.header()).isEqualTo(HEADER);
+        assertThat(store.size()).isEqualTo(500);
+        assertThat(store.decodedCount()).isZero();
+    }
+
+    @Test
+    void get_DecodesOnlyTheRouteAskedFor() throws Exception {
+        // Given
+        ModelStore store = ModelStore.open(writeRoutes(500));
+
+        // When
+        TariffMLService.TariffMLModel model = store.get("R123-010000");
+
+        // Then
+        assertThat(model.getTradeRoute()).isEqualTo("R123-010000");
+        assertThat(model.getMean()).isEqualTo(123.0);
+        assertThat(model.getStdDev()).isEqualTo(1.5);
+        assertThat(model.getConfidenceBase()).isEqualTo(70);
+        assertThat(model.getBackend()).isEqualTo(MLModelProperties.Backend.GBT);
+        assertThat(model.getFeatureSchemaVersion()).isEqualTo(FeatureSchema.VERSION);
+        assertThat(store.get("R123-010000")).isSameAs(model);
+        assertThat(store.decodedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void get_UnknownRoute_ReturnsNull() throws Exception {
+        ModelStore store = ModelStore.open(writeRoutes(10));
+
+        assertThat(store.get("R10-010000")).isNull();
+        assertThat(store.get("")).isNull();
+        assertThat(store.asMap().containsKey("ZZZ-999999")).isFalse();
+        assertThat(store.decodedCount()).isZero();
+    }
+
+    @Test
+    void get_TreeModel_PredictsAsBeforeWriting() throws Exception {
+        // Given
+        LocalDate[] validFrom = new LocalDate[104];
+        double[] rates = new double[104];
+        for (int i = 0; i < 104; i++) {
+            validFrom[i] = LocalDate.of(2020, 1, 1).plusWeeks(i);
+            rates[i] = validFrom[i].getMonthValue() <= 6 ? 5.0 : 10.0;
+        }
+        TariffMLService.TariffMLModel model = new TariffMLService.TariffMLModel("USA-123456");
+        model.setTrees(TreeRateModel.fit(new TrainingDataReader.RouteSeries("USA-123456", validFrom, rates), 20, 3, 0.1));
+        Map<String, TariffMLService.TariffMLModel> models = new HashMap<>();
+        models.put("USA-123456", model);
+        models.put("CHN-123456", new TariffMLService.TariffMLModel("CHN-123456"));
+        Path file = tempDir.resolve(ModelStore.FILE_NAME);
+        ModelStore.write(file, HEADER, models);
+
+        // When
+        TariffMLService.TariffMLModel loaded = ModelStore.open(file).get("USA-123456");
+
+        // Then
+        double[] rows = new double[365 * FeatureSchema.SIZE];
+        for (int i = 0; i < 365; i++) {
+            FeatureSchema.writeSeasonality(LocalDate.of(2030, 1, 1).plusDays(i), rows, i * FeatureSchema.SIZE);
+        }
+        double[] expected = new double[365];
+        double[] actual = new double[365];
+        model.predictAll(rows, 365, expected);
+        loaded.predictAll(rows, 365, actual);
+        assertThat(actual).containsExactly(expected);
+    }
+
+    @Test
+    void asMap_IteratesEveryRoute() throws Exception {
+        // Given
+        ModelStore store = ModelStore.open(writeRoutes(50));
+
+        // When
+        Map<String, TariffMLService.TariffMLModel> copy = new HashMap<>(store.asMap());
+
+        // Then
+        assertThat(copy).hasSize(50).containsKey("R0-010000").containsKey("R49-010000");
+        assertThat(copy.get("R7-010000").getMean()).isEqualTo(7.0);
+        assertThat(store.decodedCount()).isEqualTo(50);
+        assertThatThrownBy(() -> store.asMap().put("X-1", null)).isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    void write_ReplacesFileWhileOldMappingStaysReadable() throws Exception {
+        // Given
+        Path file = writeRoutes(20);
+        ModelStore old = ModelStore.open(file);
+
+        // When
+        ModelStore.write(file, HEADER, Map.of("NEW-000001", new TariffMLService.TariffMLModel("NEW-000001")));
+
+        // Then
+        assertThat(old.get("R3-010000").getMean()).isEqualTo(3.0);
+        assertThat(ModelStore.open(file).size()).isEqualTo(1);
+        assertThat(tempDir.resolve(ModelStore.FILE_NAME + ".tmp")).doesNotExist();
+    }
+
+    @Test
+    void open_RejectsOtherFiles() throws Exception {
+        Path notModels = tempDir.resolve("other.bin");
+        Files.write(notModels, new byte[64]);
+        Path truncated = tempDir.resolve("truncated.bin");
+        byte[] full = Files.readAllBytes(writeRoutes(10));
+        Files.write(truncated, java.util.Arrays.copyOf(full, full.length - 8));
+
+        assertThatThrownBy(() -> ModelStore.open(notModels)).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> ModelStore.open(truncated)).isInstanceOf(IOException.class)
+            .hasMessageContaining("truncated");
+    }
+
+    private Path writeRoutes(int count) throws IOException {
+        Map<String, TariffMLService.TariffMLModel> models = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            TariffMLService.TariffMLModel model = new TariffMLService.TariffMLModel("R" + i + "-010000");
+            model.setMean(i);
+            model.setStdDev(1.5);
+            model.setConfidenceBase(70);
+            models.put(model.getTradeRoute(), model);
+        }
+        Path file = tempDir.resolve(ModelStore.FILE_NAME);
+        ModelStore.write(file, HEADER, models);
+        return file;
+    }
+}
@@ -0,0 +1,215 @@
+package com.verbosegarbonzo.tariff.service;
+
+import com.verbosegarbonzo.tariff.config.MLModelProperties;
+import com.verbosegarbonzo.tariff.exception.InvalidRequestException;
+import com.verbosegarbonzo.tariff.model.AIRecommendationRequest;
+import com.verbosegarbonzo.tariff.model.AIRecommendationResponse;
+import com.verbosegarbonzo.tariff.model.PortfolioRecommendationResponse;
+import com.verbosegarbonzo.tariff.model.PortfolioRouteResult;
+import com.verbosegarbonzo.tariff.model.ProfileType;
+import com.verbosegarbonzo.tariff.model.UserInfo;
+import com.verbosegarbonzo.tariff.repository.TransactionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PortfolioRecommendationServiceTest {
+
+    @Mock
+    private AIRecommendationService recommendationService;
+
+    @Mock
+    private TariffMLService mlService;
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    private MLModelProperties properties;
+    private PortfolioRecommendationService service;
+
+    private final RateHistory usaHistory = new RateHistory(new long[] {1}, new double[] {2.5});
+
+    @BeforeEach
+    void setUp() {
+        properties = new MLModelProperties();
+        properties.getPortfolio().setMaxRoutes(5);
+        service = new PortfolioRecommendationService(recommendationService, mlService, transactionRepository, properties);
+    }
+
+    @Test
+    void recommend_ReadsOncePerImporterAndKeepsRequestOrder() {
+        // Given: two USA products, one of them twice and once with a blank exporter, and one DEU product
+        when(recommendationService.getCurrentRates(eq("USA"), anyCollection()))
+            .thenReturn(Map.of("111111", new BigDecimal("4.00"), "222222", new BigDecimal("6.00")));
+        when(recommendationService.getCurrentRates(eq("DEU"), anyCollection()))
+            .thenReturn(Map.of("111111", new BigDecimal("3.00")));
+        when(mlService.recentHistories(eq("USA"), anyCollection()))
+            .thenReturn(Map.of("111111", usaHistory, "222222", RateHistory.EMPTY));
+        when(mlService.recentHistories(eq("DEU"), anyCollection()))
+            .thenReturn(Map.of("111111", RateHistory.EMPTY));
+        when(recommendationService.getTimingRecommendation(any(), any(), any(), eq(ProfileType.STUDENT), any(), any()))
+            .thenAnswer(call -> response(call.getArgument(4)));
+
+        // When
+        PortfolioRecommendationResponse portfolio = service.recommend(List.of(
+            route("USA", "CHN", "111111"),
+            route("DEU", "CHN", "111111"),
+            route("USA", "", "222222"),
+            route("USA", "CHN", "111111"),
+            route("USA", null, "222222")), ProfileType.STUDENT);
+
+        // Then
+        assertThat(portfolio.getRoutes()).extracting(PortfolioRouteResult::getImporterCode,
+                PortfolioRouteResult::getExporterCode, PortfolioRouteResult::getHs6Code)
+            .containsExactly(tuple("USA", "CHN", "111111"), tuple("DEU", "CHN", "111111"), tuple("USA", null, "222222"));
+        assertThat(portfolio.getRoutes()).extracting(r -> r.getRecommendation().getCurrentRate())
+            .containsExactly(new BigDecimal("4.00"), new BigDecimal("3.00"), new BigDecimal("6.00"));
+        assertThat(portfolio.getSucceeded()).isEqualTo(3);
+        assertThat(portfolio.getFailed()).isZero();
+        assertThat(portfolio.getProfileType()).isEqualTo(ProfileType.STUDENT);
+
+        verify(recommendationService).getCurrentRates("USA", Set.of("111111", "222222"));
+        verify(mlService).recentHistories("USA", Set.of("111111", "222222"));
+        verify(recommendationService).getTimingRecommendation("USA", "CHN", "111111", ProfileType.STUDENT,
+            new BigDecimal("4.00"), usaHistory);
+        verify(recommendationService, never()).getTimingRecommendation(any(), any(), any(), any());
+    }
+
+    @Test
+    void recommend_FailingRoutes_ReturnOthers() {
+        // Given: one route throws, one importer's reads fail and one route has no HS6 code
+        when(recommendationService.getCurrentRates(eq("USA"), anyCollection()))
+            .thenReturn(Map.of("111111", BigDecimal.ONE, "222222", BigDecimal.ONE));
+        when(mlService.recentHistories(eq("USA"), anyCollection()))
+            .thenReturn(Map.of("111111", RateHistory.EMPTY, "222222", RateHistory.EMPTY));
+        when(recommendationService.getCurrentRates(eq("DEU"), anyCollection()))
+            .thenThrow(new IllegalStateException("Database unavailable"));
+        when(recommendationService.getTimingRecommendation(eq("USA"), any(), eq("111111"), any(), any(), any()))
+            .thenThrow(new IllegalStateException("Scoring failed"));
+        when(recommendationService.getTimingRecommendation(eq("USA"), any(), eq("222222"), any(), any(), any()))
+            .thenReturn(response(BigDecimal.ONE));
+
+        // When
+        PortfolioRecommendationResponse portfolio = service.recommend(List.of(
+            route("USA", "CHN", "111111"),
+            route("USA", "CHN", "222222"),
+            route("DEU", "CHN", "111111"),
+            route("USA", "CHN", " ")), ProfileType.BUSINESS_OWNER);
+
+        // Then
+        List<PortfolioRouteResult> routes = portfolio.getRoutes();
+        assertThat(routes).extracting(PortfolioRouteResult::getError)
+            .containsExactly("RECOMMENDATION_ERROR", null, "RECOMMENDATION_ERROR", "INVALID_REQUEST");
+        assertThat(routes.get(0).getMessage()).isEqualTo("Scoring failed");
+        assertThat(routes.get(1).getRecommendation()).isNotNull();
+        assertThat(routes.get(2).getMessage()).isEqualTo("Database unavailable");
+        assertThat(portfolio.getSucceeded()).isEqualTo(1);
+        assertThat(portfolio.getFailed()).isEqualTo(3);
+    }
+
+    @Test
+    void recommend_RouteThrowingAnError_FailsOnlyThatRoute() {
+        // Given: one route's scoring throws an Error rather than an exception
+        when(recommendationService.getCurrentRates(eq("USA"), anyCollection()))
+            .thenReturn(Map.of("111111", BigDecimal.ONE, "222222", BigDecimal.ONE));
+        when(mlService.recentHistories(eq("USA"), anyCollection()))
+            .thenReturn(Map.of("111111", RateHistory.EMPTY, "222222", RateHistory.EMPTY));
+        when(recommendationService.getTimingRecommendation(eq("USA"), any(), eq("111111"), any(), any(), any()))
+            .thenThrow(new StackOverflowError("Too deep"));
+        when(recommendationService.getTimingRecommendation(eq("USA"), any(), eq("222222"), any(), any(), any()))
+            .thenReturn(response(BigDecimal.ONE));
+
+        // When
+        PortfolioRecommendationResponse portfolio = service.recommend(List.of(
+            route("USA", "CHN", "111111"),
+            route("USA", "CHN", "222222")), ProfileType.STUDENT);
+
+        // Then
+        assertThat(portfolio.getRoutes()).extracting(PortfolioRouteResult::getError)
+            .containsExactly("RECOMMENDATION_ERROR", null);
+        assertThat(portfolio.getRoutes().get(0).getMessage()).isEqualTo("Too deep");
+        assertThat(portfolio.getFailed()).isEqualTo(1);
+    }
+
+    @Test
+    void recommend_RunsRoutesConcurrently() {
+        // Given: each route waits until all three are in flight
+        properties.getPortfolio().setMaxConcurrency(3);
+        service = new PortfolioRecommendationService(recommendationService, mlService, transactionRepository, properties);
+        when(recommendationService.getCurrentRates(any(), anyCollection())).thenReturn(Map.of());
+        when(mlService.recentHistories(any(), anyCollection())).thenReturn(Map.of());
+        CountDownLatch allStarted = new CountDownLatch(3);
+        when(recommendationService.getTimingRecommendation(any(), any(), any(), any(), any(), any()))
+            .thenAnswer(call -> {
+                allStarted.countDown();
+                assertThat(allStarted.await(5, TimeUnit.SECONDS)).isTrue();
+                return response(BigDecimal.ONE);
+            });
+
+        // When
+        PortfolioRecommendationResponse portfolio = service.recommend(List.of(
+            route("USA", "CHN", "111111"),
+            route("USA", "CHN", "222222"),
+            route("DEU", "CHN", "333333")), ProfileType.BUSINESS_OWNER);
+
+        // Then
+        assertThat(portfolio.getSucceeded()).isEqualTo(3);
+    }
+
+    @Test
+    void recommend_TooManyRoutes_Rejected() {
+        List<AIRecommendationRequest> routes = Collections.nCopies(6, route("USA", "CHN", "111111"));
+
+        assertThatThrownBy(() -> service.recommend(routes, ProfileType.BUSINESS_OWNER))
+            .isInstanceOf(InvalidRequestException.class)
+            .hasMessageContaining("at most 5 routes");
+        verifyNoInteractions(recommendationService);
+    }
+
+    @Test
+    void routesFromHistory_MostTradedRoutesOfTheUser() {
+        // Given
+        UserInfo user = new UserInfo();
+        properties.getPortfolio().setHistoryRoutes(2);
+        when(transactionRepository.getUserRoutePatterns(user, PageRequest.of(0, 2))).thenReturn(List.of(
+            new Object[] {"USA", "CHN", "111111", 5L},
+            new Object[] {"USA", null, "222222", 2L}));
+
+        // When
+        List<AIRecommendationRequest> routes = service.routesFromHistory(user);
+
+        // Then
+        assertThat(routes).extracting(AIRecommendationRequest::getImporterCode, AIRecommendationRequest::getExporterCode,
+                AIRecommendationRequest::getHs6Code)
+            .containsExactly(tuple("USA", "CHN", "111111"), tuple("USA", null, "222222"));
+    }
+
+    private static AIRecommendationRequest route(String importerCode, String exporterCode, String hs6Code) {
+        return new AIRecommendationRequest(importerCode, exporterCode, hs6Code);
+    }
+
+    private static AIRecommendationResponse response(BigDecimal currentRate) {
+        return AIRecommendationResponse.builder()
+            .currentRate(currentRate)
+            .hasInsufficientData(false)
+            .build();
+    }
+}
@@ -0,0 +1,211 @@
+package com.verbosegarbonzo.tariff.service;
+
+import com.verbosegarbonzo.tariff.model.*;
+import com.verbosegarbonzo.tariff.repository.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class RateIndexServiceTest {
+
+    private MeasureRepository measureRepository;
+    private PreferenceRepository preferenceRepository;
+    private SuspensionRepository suspensionRepository;
+    private RateIndexService rateIndexService;
+
+    private Country importer;
+    private Country exporter;
+    private Product product;
+
+    @BeforeEach
+    void setUp() {
+        measureRepository = mock(MeasureRepository.class);
+        preferenceRepository = mock(PreferenceRepository.class);
+        suspensionRepository = mock(SuspensionRepository.class);
+        rateIndexService = new RateIndexService(measureRepository, preferenceRepository, suspensionRepository);
+
+        importer = Country.builder().countryCode("SGP").name("Singapore").numericCode("702").build();
+        exporter = Country.builder().countryCode("MYS").name("Malaysia").numericCode("458").build();
+        product = new Product();
+        product.setHs6Code("290531");
+    }
+
+    private Measure measure(int id, LocalDate from, LocalDate to, String rate) {
+        return Measure.builder()
+                .measureId(id)
+                .importer(importer)
+                .product(product)
+                .validFrom(from)
+                .validTo(to)
+                .mfnAdvalRate(new BigDecimal(rate))
+                .build();
+    }
+
+    private Suspension suspension(int id, boolean flag) {
+        Suspension s = new Suspension();
+        s.setSuspensionId(id);
+        s.setImporter(importer);
+        s.setProduct(product);
+        s.setValidFrom(LocalDate.of(2024, 1, 1));
+        s.setSuspensionFlag(flag);
+        s.setSuspensionNote("note");
+        s.setSuspensionRate(BigDecimal.ZERO);
+        return s;
+    }
+
+    @Test
+    void findMeasure_picksIntervalCoveringDate() {
+        rateIndexService.indexMeasure(measure(1, LocalDate.of(2022, 1, 1), LocalDate.of(2022, 12, 31), "5"));
+        rateIndexService.indexMeasure(measure(2, LocalDate.of(2023, 1, 1), LocalDate.of(2023, 12, 31), "6"));
+        rateIndexService.indexMeasure(measure(3, LocalDate.of(2024, 1, 1), null, "7"));
+
+        assertEquals(new BigDecimal("5"),
+                rateIndexService.findMeasure("SGP", "290531", LocalDate.of(2022, 6, 1)).orElseThrow().mfnAdvalRate());
+        assertEquals(new BigDecimal("6"),
+                rateIndexService.findMeasure("SGP", "290531", LocalDate.of(2023, 12, 31)).orElseThrow().mfnAdvalRate());
+        assertEquals(new BigDecimal("7"),
+                rateIndexService.findMeasure("SGP", "290531", LocalDate.of(2030, 1, 1)).orElseThrow().mfnAdvalRate());
+        assertTrue(rateIndexService.findMeasure("SGP", "290531", LocalDate.of(2021, 12, 31)).isEmpty());
+        assertTrue(rateIndexService.findMeasure("USA", "290531", LocalDate.of(2023, 1, 1)).isEmpty());
+    }
+
+    @Test
+    void findMeasure_gapBetweenIntervals_returnsEmpty() {
+        rateIndexService.indexMeasure(measure(1, LocalDate.of(2020, 1, 1), LocalDate.of(2020, 12, 31), "5"));
+        rateIndexService.indexMeasure(measure(2, LocalDate.of(2022, 1, 1), LocalDate.of(2022, 12, 31), "6"));
+
+        assertTrue(rateIndexService.findMeasure("SGP", "290531", LocalDate.of(2021, 6, 1)).isEmpty());
+    }
+
+    @Test
+    void findMeasure_longEarlierInterval_stillFoundBehindShorterOnes() {
+        rateIndexService.indexMeasure(measure(1, LocalDate.of(2020, 1, 1), null, "9"));
+        rateIndexService.indexMeasure(measure(2, LocalDate.of(2021, 1, 1), LocalDate.of(2021, 3, 31), "1"));
+        rateIndexService.indexMeasure(measure(3, LocalDate.of(2022, 1, 1), LocalDate.of(2022, 3, 31), "2"));
+
+        assertEquals(new BigDecimal("9"),
+                rateIndexService.findMeasure("SGP", "290531", LocalDate.of(2023, 1, 1)).orElseThrow().mfnAdvalRate());
+        // Overlap resolves to the latest validFrom
+        assertEquals(new BigDecimal("2"),
+                rateIndexService.findMeasure("SGP", "290531", LocalDate.of(2022, 2, 1)).orElseThrow().mfnAdvalRate());
+    }
+
+    @Test
+    void indexMeasure_updateMovesRowAndRemoveDropsIt() {
+        rateIndexService.indexMeasure(measure(1, LocalDate.of(2022, 1, 1), null, "5"));
+        rateIndexService.indexMeasure(measure(1, LocalDate.of(2022, 1, 1), null, "8"));
+
+        assertEquals(new BigDecimal("8"),
+                rateIndexService.findMeasure("SGP", "290531", LocalDate.of(2023, 1, 1)).orElseThrow().mfnAdvalRate());
+        assertEquals(1, rateIndexService.getIndexStatus().get("measures"));
+
+        rateIndexService.removeMeasure(1);
+        assertTrue(rateIndexService.findMeasure("SGP", "290531", LocalDate.of(2023, 1, 1)).isEmpty());
+    }
+
+    @Test
+    void indexSuspension_onlyFlaggedSuspensionsAreActive() {
+        rateIndexService.indexSuspension(suspension(1, true));
+        assertTrue(rateIndexService.findActiveSuspension("SGP", "290531", LocalDate.of(2024, 5, 1)).isPresent());
+
+        rateIndexService.indexSuspension(suspension(1, false));
+        assertTrue(rateIndexService.findActiveSuspension("SGP", "290531", LocalDate.of(2024, 5, 1)).isEmpty());
+    }
+
+    @Test
+    void findPreference_keyedByExporter() {
+        Preference pref = new Preference();
+        pref.setPreferenceId(1);
+        pref.setImporter(importer);
+        pref.setExporter(exporter);
+        pref.setProduct(product);
+        pref.setValidFrom(LocalDate.of(2024, 1, 1));
+        pref.setPrefAdValRate(new BigDecimal("2"));
+        rateIndexService.indexPreference(pref);
+
+        assertTrue(rateIndexService.findPreference("SGP", "MYS", "290531", LocalDate.of(2024, 2, 1)).isPresent());
+        assertTrue(rateIndexService.findPreference("SGP", "CHN", "290531", LocalDate.of(2024, 2, 1)).isEmpty());
+    }
+
+    @Test
+    void reload_replacesIndexFromRepositories() {
+        rateIndexService.indexMeasure(measure(99, LocalDate.of(2010, 1, 1), null, "1"));
+
+        when(measureRepository.findIndexRows())
+                .thenReturn(List.of(MeasureIndexRow.of(measure(1, LocalDate.of(2024, 1, 1), null, "4"))));
+        when(preferenceRepository.findIndexRows()).thenReturn(List.of());
+        when(suspensionRepository.findIndexRows()).thenReturn(List.of(SuspensionIndexRow.of(suspension(1, true))));
+
+        rateIndexService.reload();
+
+        assertEquals(new BigDecimal("4"),
+                rateIndexService.findMeasure("SGP", "290531", LocalDate.of(2024, 6, 1)).orElseThrow().mfnAdvalRate());
+        assertTrue(rateIndexService.findMeasure("SGP", "290531", LocalDate.of(2015, 1, 1)).isEmpty());
+        assertEquals(1, rateIndexService.getIndexStatus().get("activeSuspensions"));
+    }
+
+    @Test
+    void reload_writesDuringTheRead_SurviveTheSnapshot() {
+        // Given: while the tables are read, a measure is updated and a suspension lifted
+        when(measureRepository.findIndexRows()).thenAnswer(call -> {
+            List<MeasureIndexRow> snapshot = List.of(MeasureIndexRow.of(measure(1, LocalDate.of(2024, 1, 1), null, "4")));
+            rateIndexService.indexMeasure(measure(1, LocalDate.of(2024, 1, 1), null, "9"));
+            return snapshot;
+        });
+        when(preferenceRepository.findIndexRows()).thenReturn(List.of());
+        when(suspensionRepository.findIndexRows()).thenAnswer(call -> {
+            rateIndexService.removeSuspension(1);
+            return List.of(SuspensionIndexRow.of(suspension(1, true)));
+        });
+
+        // When
+        rateIndexService.reload();
+
+        // Then: the writes win over the older rows the reload read
+        assertEquals(new BigDecimal("9"),
+                rateIndexService.findMeasure("SGP", "290531", LocalDate.of(2024, 6, 1)).orElseThrow().mfnAdvalRate());
+        assertEquals(0, rateIndexService.getIndexStatus().get("activeSuspensions"));
+
+        // A write after the reload is not replayed by the next one
+        when(measureRepository.findIndexRows())
+                .thenReturn(List.of(MeasureIndexRow.of(measure(1, LocalDate.of(2024, 1, 1), null, "5"))));
+        when(suspensionRepository.findIndexRows()).thenReturn(List.of());
+        rateIndexService.reload();
+        assertEquals(new BigDecimal("5"),
+                rateIndexService.findMeasure("SGP", "290531", LocalDate.of(2024, 6, 1)).orElseThrow().mfnAdvalRate());
+    }
+
+    @Test
+    void scheduleReload_readsTheTablesOffTheSchedulerThread() throws Exception {
+        // Given: a measure read that holds until released
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<Thread> reader = new AtomicReference<>();
+        when(measureRepository.findIndexRows()).thenAnswer(call -> {
+            reader.set(Thread.currentThread());
+            release.await(5, TimeUnit.SECONDS);
+            return List.of(MeasureIndexRow.of(measure(1, LocalDate.of(2024, 1, 1), null, "4")));
+        });
+        when(preferenceRepository.findIndexRows()).thenReturn(List.of());
+        when(suspensionRepository.findIndexRows()).thenReturn(List.of());
+
+        // When
+        rateIndexService.scheduleReload();
+
+        // Then: the call returned at once and the reload completes on its own thread
+        assertTrue(rateIndexService.findMeasure("SGP", "290531", LocalDate.of(2024, 6, 1)).isEmpty());
+        release.countDown();
+        rateIndexService.reloadInBackground().get(5, TimeUnit.SECONDS);
+        assertNotSame(Thread.currentThread(), reader.get());
+        assertTrue(rateIndexService.findMeasure("SGP", "290531", LocalDate.of(2024, 6, 1)).isPresent());
+        rateIndexService.shutdown();
+    }
+}
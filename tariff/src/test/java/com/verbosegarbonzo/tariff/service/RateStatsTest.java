@@ -0,0 +1,94 @@
+package com.verbosegarbonzo.tariff.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+
+class RateStatsTest {
+
+    private static final double TOLERANCE = 1e-9;
+
+    @Test
+    void of_MatchesTwoPassMeanAndPopulationStdDev() {
+        RateStats stats = RateStats.of(new double[] {2, 4, 4, 4, 5, 5, 7, 9});
+
+        assertThat(stats.count()).isEqualTo(8);
+        assertThat(stats.mean()).isEqualTo(5.0);
+        assertThat(stats.stdDev()).isEqualTo(2.0);
+        assertThat(stats.sum()).isEqualTo(40.0);
+        assertThat(stats.sumOfSquares()).isEqualTo(232.0);
+    }
+
+    @Test
+    void of_SkipsRowsWithoutRate() {
+        assertThat(RateStats.of(new double[] {Double.NaN, 3, Double.NaN, 5})).isEqualTo(RateStats.of(new double[] {3, 5}));
+        assertThat(RateStats.of(new double[] {Double.NaN})).isEqualTo(RateStats.EMPTY);
+        assertThat(RateStats.EMPTY.add(Double.NaN)).isEqualTo(RateStats.EMPTY);
+    }
+
+    @Test
+    void add_OneAtATime_MatchesBatch() {
+        double[] rates = randomRates(500, 1);
+
+        RateStats incremental = RateStats.EMPTY;
+        for (double rate : rates) {
+            incremental = incremental.add(rate);
+        }
+
+        assertClose(incremental, RateStats.of(rates));
+    }
+
+    @Test
+    void remove_UndoesAdd() {
+        double[] rates = randomRates(200, 2);
+        RateStats stats = RateStats.of(rates);
+
+        // When: the last 50 rates are taken out again
+        for (int i = 150; i < 200; i++) {
+            stats = stats.remove(rates[i]);
+        }
+
+        // Then
+        assertClose(stats, RateStats.of(Arrays.copyOf(rates, 150)));
+        assertThat(RateStats.EMPTY.add(3.5).remove(3.5)).isEqualTo(RateStats.EMPTY);
+    }
+
+    @Test
+    void remove_LeavingEqualRates_HasZeroStdDev() {
+        RateStats stats = RateStats.of(new double[] {0.1, 0.1, 0.1, 0.7}).remove(0.7);
+
+        assertThat(stats.m2()).isGreaterThanOrEqualTo(0);
+        assertThat(stats.stdDev()).isCloseTo(0, within(TOLERANCE));
+        assertThat(stats.mean()).isCloseTo(0.1, within(TOLERANCE));
+    }
+
+    @Test
+    void merge_MatchesStatsOfBothSets() {
+        double[] rates = randomRates(300, 3);
+
+        RateStats merged = RateStats.of(Arrays.copyOfRange(rates, 0, 120))
+            .merge(RateStats.of(Arrays.copyOfRange(rates, 120, 300)));
+
+        assertClose(merged, RateStats.of(rates));
+        assertThat(merged.merge(RateStats.EMPTY)).isSameAs(merged);
+        assertThat(RateStats.EMPTY.merge(merged)).isSameAs(merged);
+    }
+
+    private static double[] randomRates(int count, long seed) {
+        Random random = new Random(seed);
+        double[] rates = new double[count];
+        for (int i = 0; i < count; i++) {
+            rates[i] = 1000 + random.nextDouble() * 5; // Large mean, small spread
+        }
+        return rates;
+    }
+
+    private static void assertClose(RateStats actual, RateStats expected) {
+        assertThat(actual.count()).isEqualTo(expected.count());
+        assertThat(actual.mean()).isCloseTo(expected.mean(), within(TOLERANCE));
+        assertThat(actual.m2()).isCloseTo(expected.m2(), within(expected.m2() * 1e-9));
+    }
+}
@@ -0,0 +1,148 @@
+package com.verbosegarbonzo.tariff.service;
+
+import com.verbosegarbonzo.tariff.model.*;
+import com.verbosegarbonzo.tariff.repository.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class RateWriteBehindServiceTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private RateIndexService rateIndexService;
+    private TariffMLService mlService;
+    private RateWriteBehindService writeBehind;
+
+    private Country importer;
+    private Country exporter;
+    private Product product;
+
+    @BeforeEach
+    void setUp() {
+        // PostgreSQL mode so the ON CONFLICT upsert runs as it does in production
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:writebehind-" + UUID.randomUUID() + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE measure (measure_id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, "
+                + "importer_code VARCHAR(3) NOT NULL, product_code VARCHAR(6) NOT NULL, valid_from DATE NOT NULL, "
+                + "valid_to DATE, mfn_adval_rate DECIMAL(10,4), specific_rate_per_kg DECIMAL(10,4), "
+                + "UNIQUE (valid_from, importer_code, product_code))");
+        jdbcTemplate.execute("CREATE TABLE preference (preference_id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, "
+                + "importer_code VARCHAR(3) NOT NULL, exporter_code VARCHAR(3) NOT NULL, product_code VARCHAR(6) NOT NULL, "
+                + "valid_from DATE NOT NULL, valid_to DATE, pref_adval_rate DECIMAL(10,4) NOT NULL, "
+                + "UNIQUE (importer_code, exporter_code, product_code, valid_from))");
+
+        rateIndexService = new RateIndexService(mock(MeasureRepository.class), mock(PreferenceRepository.class),
+                mock(SuspensionRepository.class));
+        mlService = mock(TariffMLService.class);
+        writeBehind = new RateWriteBehindService(jdbcTemplate, new DataSourceTransactionManager(dataSource),
+                rateIndexService, mlService, 500, 10_000);
+
+        importer = Country.builder().countryCode("SGP").name("Singapore").numericCode("702").build();
+        exporter = Country.builder().countryCode("MYS").name("Malaysia").numericCode("458").build();
+        product = new Product("290531", "Test product");
+    }
+
+    private Integer indexedMeasureId() {
+        return rateIndexService.findMeasure("SGP", "290531", LocalDate.of(2024, 6, 1)).orElseThrow().id();
+    }
+
+    @Test
+    void enqueueMeasure_indexesImmediatelyAndDedupesRepeats() {
+        writeBehind.enqueueMeasure(importer, product, new BigDecimal("5.5"), LocalDate.of(2024, 3, 1));
+        writeBehind.enqueueMeasure(importer, product, new BigDecimal("5.5"), LocalDate.of(2024, 9, 1));
+
+        assertTrue(indexedMeasureId() < 0, "provisional id before flush");
+        assertEquals(1, writeBehind.getQueueStatus().get("pendingMeasures"));
+        assertEquals(1, rateIndexService.getIndexStatus().get("measures"));
+    }
+
+    @Test
+    void flush_insertsPendingRowsAndReindexesWithStoredIds() {
+        writeBehind.enqueueMeasure(importer, product, new BigDecimal("5.5"), LocalDate.of(2024, 3, 1));
+        writeBehind.enqueuePreference(importer, exporter, product, new BigDecimal("1.25"), LocalDate.of(2024, 3, 1));
+
+        writeBehind.flush();
+
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM measure", Integer.class));
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM preference", Integer.class));
+        assertEquals(LocalDate.of(2024, 12, 31), jdbcTemplate.queryForObject(
+                "SELECT valid_to FROM measure", java.sql.Date.class).toLocalDate());
+
+        Integer storedId = jdbcTemplate.queryForObject("SELECT measure_id FROM measure", Integer.class);
+        assertEquals(storedId, indexedMeasureId());
+        assertEquals(1, rateIndexService.getIndexStatus().get("measures"));
+        assertEquals(new BigDecimal("1.2500"), rateIndexService
+                .findPreference("SGP", "MYS", "290531", LocalDate.of(2024, 6, 1)).orElseThrow().prefAdValRate());
+        assertEquals(0, writeBehind.getQueueStatus().get("pendingMeasures"));
+        assertEquals(0, writeBehind.getQueueStatus().get("pendingPreferences"));
+        verify(mlService).applyMeasureChange(null, new MeasureTrainingRow("SGP", "290531",
+                LocalDate.of(2024, 1, 1), LocalDate.of(2024, 12, 31), new BigDecimal("5.5")));
+        verify(mlService).applyPreferenceChange(null, new PreferenceTrainingRow("SGP", "MYS", "290531",
+                LocalDate.of(2024, 1, 1), LocalDate.of(2024, 12, 31), new BigDecimal("1.25")));
+    }
+
+    @Test
+    void flush_keepsExistingRowOnConflict() {
+        jdbcTemplate.update("INSERT INTO measure (importer_code, product_code, valid_from, mfn_adval_rate) "
+                + "VALUES ('SGP', '290531', DATE '2024-01-01', 9)");
+
+        writeBehind.enqueueMeasure(importer, product, new BigDecimal("5.5"), LocalDate.of(2024, 3, 1));
+        writeBehind.flush();
+
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM measure", Integer.class));
+        assertEquals(0, new BigDecimal("9").compareTo(rateIndexService
+                .findMeasure("SGP", "290531", LocalDate.of(2024, 6, 1)).orElseThrow().mfnAdvalRate()));
+        verifyNoInteractions(mlService);
+    }
+
+    @Test
+    void flush_failureKeepsRowsPendingForRetry() {
+        jdbcTemplate.execute("DROP TABLE measure");
+        writeBehind.enqueueMeasure(importer, product, new BigDecimal("5.5"), LocalDate.of(2024, 3, 1));
+
+        writeBehind.flush();
+
+        assertEquals(1, writeBehind.getQueueStatus().get("pendingMeasures"));
+        assertTrue(indexedMeasureId() < 0);
+        verifyNoInteractions(mlService);
+    }
+
+    @Test
+    void flush_badRowIsDroppedAndTheRestInserted() {
+        // Given: a rate too large for DECIMAL(10,4) alongside a valid one
+        writeBehind.enqueueMeasure(importer, product, new BigDecimal("5.5"), LocalDate.of(2024, 3, 1));
+        writeBehind.enqueueMeasure(importer, new Product("290532", "Other product"), new BigDecimal("12345678"),
+                LocalDate.of(2024, 3, 1));
+
+        // When
+        writeBehind.flush();
+
+        // Then: the valid row is stored, the bad one is no longer pending or indexed
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM measure", Integer.class));
+        assertEquals(0, writeBehind.getQueueStatus().get("pendingMeasures"));
+        assertTrue(indexedMeasureId() > 0);
+        assertTrue(rateIndexService.findMeasure("SGP", "290532", LocalDate.of(2024, 6, 1)).isEmpty());
+        verify(mlService).applyMeasureChange(null, new MeasureTrainingRow("SGP", "290531",
+                LocalDate.of(2024, 1, 1), LocalDate.of(2024, 12, 31), new BigDecimal("5.5")));
+        verifyNoMoreInteractions(mlService);
+    }
+
+    @Test
+    void flushOnShutdown_persistsPendingRows() {
+        writeBehind.enqueueMeasure(importer, product, new BigDecimal("5.5"), LocalDate.of(2024, 3, 1));
+
+        writeBehind.flushOnShutdown();
+
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM measure", Integer.class));
+    }
+}
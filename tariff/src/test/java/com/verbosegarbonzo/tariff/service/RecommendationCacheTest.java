@@ -0,0 +1,281 @@
+package com.verbosegarbonzo.tariff.service;
+
+import com.verbosegarbonzo.tariff.config.MLModelProperties;
+import com.verbosegarbonzo.tariff.model.AIRecommendationResponse;
+import com.verbosegarbonzo.tariff.model.ProfileType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RecommendationCacheTest {
+
+    private static final long MINUTE = Duration.ofMinutes(1).toNanos();
+
+    @Mock
+    private FeatureStore featureStore;
+
+    @Mock
+    private TariffMLService mlService;
+
+    private MLModelProperties properties;
+    private RecommendationCache cache;
+    private final AtomicLong now = new AtomicLong();
+    private final AtomicInteger computations = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        properties = new MLModelProperties();
+        properties.getRecommendations().setTtl(Duration.ofMinutes(10));
+        properties.getRecommendations().setMaxStale(Duration.ofMinutes(30));
+        cache = new RecommendationCache(properties, featureStore, mlService);
+        cache.ticker = now::get;
+    }
+
+    @AfterEach
+    void tearDown() {
+        cache.shutdown();
+    }
+
+    @Test
+    void get_CachesPerRouteAndProfile() {
+        assertThat(rate(get("USA", "CHN", "111111", ProfileType.STUDENT, 1))).isEqualTo("1");
+        assertThat(rate(get("USA", "CHN", "111111", ProfileType.STUDENT, 2))).isEqualTo("1");
+        assertThat(rate(get("USA", "CHN", "111111", ProfileType.BUSINESS_OWNER, 3))).isEqualTo("3");
+        assertThat(rate(get("USA", "DEU", "111111", ProfileType.STUDENT, 4))).isEqualTo("4");
+
+        assertThat(computations).hasValue(3);
+        assertThat(cache.getStatus()).containsEntry("hits", 1L).containsEntry("misses", 3L);
+    }
+
+    @Test
+    void get_Failure_NotCached() {
+        assertThatThrownBy(() -> cache.get("USA", "CHN", "111111", ProfileType.STUDENT, () -> {
+            throw new IllegalStateException("Scoring failed");
+        })).hasMessage("Scoring failed");
+
+        assertThat(rate(get("USA", "CHN", "111111", ProfileType.STUDENT, 2))).isEqualTo("2");
+        assertThat(cache.getStatus()).containsEntry("entries", 1);
+    }
+
+    @Test
+    void get_StaleEntry_ServedWhileRecomputedInBackground() throws Exception {
+        // Given
+        get("USA", "CHN", "111111", ProfileType.STUDENT, 1);
+        now.addAndGet(11 * MINUTE);
+        CountDownLatch recomputed = new CountDownLatch(1);
+
+        // When: the stale hit answers at once and the entry is recomputed behind it
+        AIRecommendationResponse stale = cache.get("USA", "CHN", "111111", ProfileType.STUDENT, () -> {
+            recomputed.countDown();
+            return response(2);
+        });
+
+        // Then
+        assertThat(rate(stale)).isEqualTo("1");
+        assertThat(recomputed.await(5, TimeUnit.SECONDS)).isTrue();
+        await(() -> rate(get("USA", "CHN", "111111", ProfileType.STUDENT, 3)).equals("2"));
+        assertThat(computations).as("no request computed it again").hasValue(1);
+    }
+
+    @Test
+    void get_ExpiredEntry_RecomputedOnRequest() {
+        get("USA", "CHN", "111111", ProfileType.STUDENT, 1);
+        now.addAndGet(41 * MINUTE);
+
+        assertThat(rate(get("USA", "CHN", "111111", ProfileType.STUDENT, 2))).isEqualTo("2");
+    }
+
+    @Test
+    void get_DegradedResponse_KeptForDegradedTtlOnly() {
+        // Given: a recommendation built on the default current rate
+        properties.getRecommendations().setDegradedTtl(Duration.ofMinutes(1));
+        AIRecommendationResponse degraded = response(5);
+        degraded.setDegraded(true);
+        cache.get("USA", "CHN", "111111", ProfileType.STUDENT, () -> degraded);
+
+        // When / Then: served within the short TTL, recomputed on request after it
+        now.addAndGet(MINUTE / 2);
+        assertThat(get("USA", "CHN", "111111", ProfileType.STUDENT, 2)).isSameAs(degraded);
+        now.addAndGet(MINUTE);
+        assertThat(rate(get("USA", "CHN", "111111", ProfileType.STUDENT, 3))).isEqualTo("3");
+        assertThat(computations).hasValue(1);
+    }
+
+    @Test
+    void get_ConcurrentMisses_ShareOneComputation() throws Exception {
+        // Given: a computation that holds until a second request is waiting on it
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<AIRecommendationResponse> first = CompletableFuture.supplyAsync(() ->
+            cache.get("USA", "CHN", "111111", ProfileType.STUDENT, () -> {
+                started.countDown();
+                awaitQuietly(release);
+                return response(1);
+            }));
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // When
+        CompletableFuture<AIRecommendationResponse> second = CompletableFuture.supplyAsync(() ->
+            get("USA", "CHN", "111111", ProfileType.STUDENT, 2));
+        await(() -> cache.getStatus().get("misses").equals(2L));
+        Thread.sleep(100); // Let the second request reach the computation in progress
+        release.countDown();
+
+        // Then
+        assertThat(rate(first.get(5, TimeUnit.SECONDS))).isEqualTo("1");
+        assertThat(rate(second.get(5, TimeUnit.SECONDS))).isEqualTo("1");
+        assertThat(computations).hasValue(0);
+    }
+
+    @Test
+    void get_ErrorInSharedComputation_ReachesEveryCaller() throws Exception {
+        // Given: a computation that holds until a second request is waiting on it, then throws an Error
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<AIRecommendationResponse> first = CompletableFuture.supplyAsync(() ->
+            cache.get("USA", "CHN", "111111", ProfileType.STUDENT, () -> {
+                started.countDown();
+                awaitQuietly(release);
+                throw new StackOverflowError("Too deep");
+            }));
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // When
+        CompletableFuture<AIRecommendationResponse> second = CompletableFuture.supplyAsync(() ->
+            get("USA", "CHN", "111111", ProfileType.STUDENT, 2));
+        await(() -> cache.getStatus().get("misses").equals(2L));
+        Thread.sleep(100); // Let the second request reach the computation in progress
+        release.countDown();
+
+        // Then: both fail rather than hang, and nothing is cached
+        assertThatThrownBy(() -> first.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(StackOverflowError.class);
+        assertThatThrownBy(() -> second.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(StackOverflowError.class);
+        assertThat(computations).hasValue(0);
+        assertThat(cache.getStatus()).containsEntry("entries", 0).containsEntry("computing", 0);
+    }
+
+    @Test
+    void routeChanged_EvictsEveryExporterAndProfileOfTheRoute() {
+        // Given
+        cache.register();
+        ArgumentCaptor<FeatureStore.ChangeListener> listener = ArgumentCaptor.forClass(FeatureStore.ChangeListener.class);
+        verify(featureStore).addChangeListener(listener.capture());
+        verify(mlService).addModelUpdateListener(cache);
+        get("USA", "CHN", "111111", ProfileType.STUDENT, 1);
+        get("USA", "DEU", "111111", ProfileType.BUSINESS_OWNER, 1);
+        get("USA", "CHN", "222222", ProfileType.STUDENT, 1);
+
+        // When: a preference or suspension of USA 111111 is written
+        listener.getValue().routeChanged("USA", "111111");
+
+        // Then
+        assertThat(rate(get("USA", "CHN", "111111", ProfileType.STUDENT, 2))).isEqualTo("2");
+        assertThat(rate(get("USA", "DEU", "111111", ProfileType.BUSINESS_OWNER, 2))).isEqualTo("2");
+        assertThat(rate(get("USA", "CHN", "222222", ProfileType.STUDENT, 2))).isEqualTo("1");
+        assertThat(cache.getStatus()).containsEntry("evictions", 2L);
+    }
+
+    @Test
+    void routeUpdated_DuringComputation_ResultNotCached() {
+        AIRecommendationResponse computed = cache.get("USA", "CHN", "111111", ProfileType.STUDENT, () -> {
+            cache.routeUpdated("USA", "111111");
+            return response(1);
+        });
+
+        assertThat(rate(computed)).isEqualTo("1");
+        assertThat(rate(get("USA", "CHN", "111111", ProfileType.STUDENT, 2))).isEqualTo("2");
+    }
+
+    @Test
+    void allRoutesUpdated_ServesCachedOnceWhileRecomputing() {
+        get("USA", "CHN", "111111", ProfileType.STUDENT, 1);
+
+        cache.allRoutesUpdated();
+
+        assertThat(rate(get("USA", "CHN", "111111", ProfileType.STUDENT, 2))).isEqualTo("1");
+        await(() -> rate(get("USA", "CHN", "111111", ProfileType.STUDENT, 3)).equals("2"));
+    }
+
+    @Test
+    void get_Full_DropsLeastRecentlyUsed() {
+        // Given: four entries, the first read again last
+        properties.getRecommendations().setMaxEntries(4);
+        for (int i = 0; i < 4; i++) {
+            now.addAndGet(1);
+            get("USA", "CHN", "00000" + i, ProfileType.STUDENT, 1);
+        }
+        now.addAndGet(1);
+        get("USA", "CHN", "000000", ProfileType.STUDENT, 1);
+
+        // When
+        get("USA", "CHN", "000004", ProfileType.STUDENT, 1);
+
+        // Then: the least recently read made room
+        assertThat(cache.getStatus()).containsEntry("entries", 4);
+        assertThat(rate(get("USA", "CHN", "000000", ProfileType.STUDENT, 2))).isEqualTo("1");
+        assertThat(rate(get("USA", "CHN", "000001", ProfileType.STUDENT, 2))).isEqualTo("2");
+    }
+
+    @Test
+    void disabled_AlwaysComputes() {
+        properties.getRecommendations().setCacheEnabled(false);
+
+        get("USA", "CHN", "111111", ProfileType.STUDENT, 1);
+        get("USA", "CHN", "111111", ProfileType.STUDENT, 2);
+
+        assertThat(computations).hasValue(2);
+        assertThat(cache.getStatus()).containsEntry("entries", 0);
+    }
+
+    private AIRecommendationResponse get(String importerCode, String exporterCode, String hs6Code,
+            ProfileType profile, int rate) {
+        return cache.get(importerCode, exporterCode, hs6Code, profile, () -> {
+            computations.incrementAndGet();
+            return response(rate);
+        });
+    }
+
+    private static AIRecommendationResponse response(int rate) {
+        return AIRecommendationResponse.builder()
+            .currentRate(BigDecimal.valueOf(rate))
+            .hasInsufficientData(false)
+            .build();
+    }
+
+    private static String rate(AIRecommendationResponse response) {
+        return response.getCurrentRate().toPlainString();
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("condition met within 5 s").isLessThan(deadline);
+            Thread.onSpinWait();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -3,19 +3,28 @@ package com.verbosegarbonzo.tariff.service;
 import com.verbosegarbonzo.tariff.config.MLModelProperties;
 import com.verbosegarbonzo.tariff.model.*;
 import com.verbosegarbonzo.tariff.repository.MeasureRepository;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.io.TempDir;
+import org.assertj.core.api.InstanceOfAssertFactories;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -27,9 +36,15 @@ class TariffMLServiceTest {
     @Mock
     private MeasureRepository measureRepository;
 
+    @Mock
+    private TrainingDataReader trainingDataReader;
+
     @Spy
     private MLModelProperties mlProperties;
 
+    @Mock
+    private FeatureStore featureStore;
+
     @InjectMocks
     private TariffMLService tariffMLService;
 
@@ -62,6 +77,12 @@ class TariffMLServiceTest {
         mlProperties.getModel().setMinTrainingSamples(30);
     }
 
+    @AfterEach
+    void awaitModelFiles() throws Exception {
+        // Model files are written in the background; let them land before the temp dir is removed
+        tariffMLService.getPendingPersistence().get(10, TimeUnit.SECONDS);
+    }
+
     @Test
     void initializeModel_Success_CreatesModelsDirectory() {
         // When
@@ -90,7 +111,7 @@ class TariffMLServiceTest {
     void trainNewModel_WithSufficientData_TrainsModelsSuccessfully() {
         // Given
         List<Measure> historicalData = createHistoricalData(50);
-        when(measureRepository.findAll()).thenReturn(historicalData);
+        givenTrainingData(historicalData);
 
         // When
         tariffMLService.trainNewModel();
@@ -107,7 +128,7 @@ class TariffMLServiceTest {
     void trainNewModel_WithInsufficientData_DoesNotTrainModels() {
         // Given - Less than minTrainingSamples (30)
         List<Measure> historicalData = createHistoricalData(10);
-        when(measureRepository.findAll()).thenReturn(historicalData);
+        givenTrainingData(historicalData);
 
         // When
         tariffMLService.trainNewModel();
@@ -122,7 +143,7 @@ class TariffMLServiceTest {
     @Test
     void trainNewModel_WithNoData_DoesNotTrainModels() {
         // Given
-        when(measureRepository.findAll()).thenReturn(Collections.emptyList());
+        givenTrainingData(Collections.emptyList());
 
         // When
         tariffMLService.trainNewModel();
@@ -143,7 +164,7 @@ class TariffMLServiceTest {
         tariffMLService.trainNewModel();
 
         // Then
-        verify(measureRepository, never()).findAll();
+        verify(trainingDataReader, never()).forEachRoute(any());
     }
 
     @Test
@@ -195,7 +216,7 @@ class TariffMLServiceTest {
         // Given
         tariffMLService.initializeModel();
         List<Measure> historicalData = createHistoricalData(50);
-        when(measureRepository.findAll()).thenReturn(historicalData);
+        givenTrainingData(historicalData);
         tariffMLService.trainNewModel();
 
         String importerCode = "USA";
@@ -266,7 +287,7 @@ class TariffMLServiceTest {
     }
 
     @Test
-    void predictRateRange_TrainsModelsOnFirstRequest() {
+    void predictRateRange_FirstRequest_ServesFallbackAndTrainsInBackground() throws Exception {
         // Given
         mlProperties.getModel().setEnabled(true);
         tariffMLService.initializeModel();
@@ -278,19 +299,65 @@ class TariffMLServiceTest {
         LocalDate endDate = startDate.plusMonths(1);
 
         List<Measure> historicalData = createHistoricalData(50);
-        when(measureRepository.findAll()).thenReturn(historicalData);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await(10, TimeUnit.SECONDS);
+            return TrainingDataReader.groupRoutes(historicalData.stream()
+                .map(m -> new MeasureTrainingRow("USA", "123456", m.getValidFrom(), m.getMfnAdvalRate())),
+                invocation.getArgument(0));
+        }).when(trainingDataReader).forEachRoute(any());
         when(measureRepository.findHistoricalRates(eq(importerCode), eq(hs6Code), any(LocalDate.class), any(LocalDate.class)))
             .thenReturn(historicalData);
 
-        // When
+        // When: training is held up while the request is served
         List<DateRangeForecast> results = tariffMLService.predictRateRange(
             importerCode, exporterCode, hs6Code, startDate, endDate);
 
         // Then
         assertThat(results).isNotEmpty();
-        verify(measureRepository).findAll(); // Training should have been triggered
-        assertThat(tariffMLService.getModelStatus())
-            .containsEntry("modelTrained", true);
+        assertThat(tariffMLService.getTrainingStatus())
+            .containsEntry("running", true)
+            .containsEntry("trigger", "first request");
+        assertThat(tariffMLService.getModelStatus()).containsEntry("modelTrained", false);
+
+        // Once training finishes the models are used
+        CompletableFuture<Void> training = tariffMLService.trainInBackground("test");
+        release.countDown();
+        training.get(10, TimeUnit.SECONDS);
+        assertThat(tariffMLService.getModelStatus()).containsEntry("modelTrained", true);
+        verify(trainingDataReader, times(1)).forEachRoute(any());
+    }
+
+    @Test
+    void trainInBackground_ConcurrentCallers_ShareOneRun() throws Exception {
+        // Given
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Measure> historicalData = createHistoricalData(50);
+        doAnswer(invocation -> {
+            started.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return TrainingDataReader.groupRoutes(historicalData.stream()
+                .map(m -> new MeasureTrainingRow("USA", "123456", m.getValidFrom(), m.getMfnAdvalRate())),
+                invocation.getArgument(0));
+        }).when(trainingDataReader).forEachRoute(any());
+
+        // When
+        CompletableFuture<Void> first = tariffMLService.trainInBackground("first request");
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+        List<CompletableFuture<Void>> joined = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            joined.add(tariffMLService.trainInBackground("first request"));
+        }
+        release.countDown();
+        first.get(10, TimeUnit.SECONDS);
+
+        // Then
+        assertThat(joined).allSatisfy(future -> assertThat(future).isSameAs(first));
+        verify(trainingDataReader, times(1)).forEachRoute(any());
+        assertThat(tariffMLService.getTrainingStatus())
+            .containsEntry("running", false)
+            .containsEntry("modelVersion", 1L);
     }
 
     @Test
@@ -334,16 +401,28 @@ class TariffMLServiceTest {
     }
 
     @Test
-    void scheduleModelRetraining_TriggersTraining() {
-        // Given
+    void scheduleModelRetraining_ReturnsBeforeTrainingFinishes() throws Exception {
+        // Given: training that holds until released
+        CountDownLatch release = new CountDownLatch(1);
         List<Measure> historicalData = createHistoricalData(50);
-        when(measureRepository.findAll()).thenReturn(historicalData);
+        doAnswer(invocation -> {
+            release.await(10, TimeUnit.SECONDS);
+            return TrainingDataReader.groupRoutes(historicalData.stream()
+                .map(m -> new MeasureTrainingRow("USA", "123456", m.getValidFrom(), m.getMfnAdvalRate())),
+                invocation.getArgument(0));
+        }).when(trainingDataReader).forEachRoute(any());
 
         // When
         tariffMLService.scheduleModelRetraining();
 
-        // Then
-        verify(measureRepository).findAll();
+        // Then: the scheduler thread is free while the run goes on
+        assertThat(tariffMLService.getTrainingStatus())
+            .containsEntry("running", true)
+            .containsEntry("trigger", "schedule");
+        CompletableFuture<Void> run = tariffMLService.trainInBackground("schedule");
+        release.countDown();
+        run.get(10, TimeUnit.SECONDS);
+        verify(trainingDataReader).forEachRoute(any());
         assertThat(tariffMLService.getModelStatus())
             .extracting("modelTrained")
             .isEqualTo(true);
@@ -357,18 +436,42 @@ class TariffMLServiceTest {
         model.setStdDev(0.02);
         model.setConfidenceBase(75);
 
-        Map<String, Double> features = new HashMap<>();
-        features.put("month_sin", 0.5);
-        features.put("month_cos", 0.866);
-        features.put("day_of_year_norm", 0.5);
-        features.put("historical_avg", 0.10);
+        double[] features = FeatureSchema.newVector();
+        features[FeatureSchema.MONTH_SIN] = 0.5;
+        features[FeatureSchema.MONTH_COS] = 0.866;
+        features[FeatureSchema.DAY_OF_YEAR_NORM] = 0.5;
+        features[FeatureSchema.AVG_RATE_3Y] = 0.10;
 
         // When
-        Double prediction = model.predict(features);
+        double prediction = model.predict(features);
 
         // Then
-        assertThat(prediction).isNotNull();
         assertThat(prediction).isGreaterThanOrEqualTo(0.0);
+        assertThat(prediction).isCloseTo(0.10 + 0.5 * 0.05 * 0.02, within(1e-12));
+    }
+
+    @Test
+    void tariffMLModel_PredictAll_MatchesSinglePredictions() {
+        // Given
+        TariffMLService.TariffMLModel model = new TariffMLService.TariffMLModel("USA-123456");
+        model.setMean(0.10);
+        model.setStdDev(0.02);
+
+        double[] rows = new double[12 * FeatureSchema.SIZE];
+        for (int month = 1; month <= 12; month++) {
+            FeatureSchema.writeSeasonality(LocalDate.of(2025, month, 15), rows, (month - 1) * FeatureSchema.SIZE);
+        }
+
+        // When
+        double[] predictions = new double[12];
+        model.predictAll(rows, 12, predictions);
+
+        // Then
+        for (int month = 1; month <= 12; month++) {
+            double[] single = FeatureSchema.newVector();
+            FeatureSchema.writeSeasonality(LocalDate.of(2025, month, 15), single, 0);
+            assertThat(predictions[month - 1]).isEqualTo(model.predict(single));
+        }
     }
 
     @Test
@@ -377,40 +480,37 @@ class TariffMLServiceTest {
         TariffMLService.TariffMLModel model = new TariffMLService.TariffMLModel("USA-123456");
         model.setConfidenceBase(70);
 
-        Map<String, Double> features = new HashMap<>();
-        features.put("day_of_year_norm", 0.75);
+        double[] features = FeatureSchema.newVector();
+        features[FeatureSchema.DAY_OF_YEAR_NORM] = 0.75;
 
         // When
-        Integer confidence = model.getConfidenceScore(features);
+        int confidence = model.getConfidenceScore(features);
 
         // Then
-        assertThat(confidence).isNotNull();
         assertThat(confidence).isBetween(40, 100);
     }
 
     @Test
-    void tariffMLModel_Serializable_CanBeSerializedAndDeserialized() throws Exception {
+    void tariffMLModel_ModelStore_RoundTripsParameters() throws Exception {
         // Given
         TariffMLService.TariffMLModel model = new TariffMLService.TariffMLModel("USA-123456");
         model.setMean(0.12);
         model.setStdDev(0.03);
         model.setConfidenceBase(80);
+        Path file = tempDir.resolve(ModelStore.FILE_NAME);
 
-        // When - Serialize
-        java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
-        try (java.io.ObjectOutputStream oos = new java.io.ObjectOutputStream(baos)) {
-            oos.writeObject(model);
-        }
-
-        // Then - Deserialize
-        java.io.ByteArrayInputStream bais = new java.io.ByteArrayInputStream(baos.toByteArray());
-        TariffMLService.TariffMLModel deserializedModel;
-        try (java.io.ObjectInputStream ois = new java.io.ObjectInputStream(bais)) {
-            deserializedModel = (TariffMLService.TariffMLModel) ois.readObject();
-        }
+        // When
+        ModelStore.write(file, currentHeader(), Map.of("USA-123456", model));
+        TariffMLService.TariffMLModel loaded = ModelStore.open(file).get("USA-123456");
 
-        assertThat(deserializedModel).isNotNull();
-        assertThat(deserializedModel.getTradeRoute()).isEqualTo("USA-123456");
+        // Then
+        assertThat(loaded).isNotNull();
+        assertThat(loaded.getTradeRoute()).isEqualTo("USA-123456");
+        assertThat(loaded.getModelVersion()).isEqualTo("1.0.0");
+        double[] features = FeatureSchema.newVector();
+        FeatureSchema.writeSeasonality(LocalDate.of(2030, 3, 1), features, 0);
+        assertThat(loaded.predict(features)).isEqualTo(model.predict(features));
+        assertThat(loaded.getConfidenceScore(features)).isEqualTo(model.getConfidenceScore(features));
     }
 
     @Test
@@ -459,7 +559,7 @@ class TariffMLServiceTest {
         historicalData.addAll(createHistoricalDataForRoute("DEU", "654321", 35));
         historicalData.addAll(createHistoricalDataForRoute("GBR", "789012", 32));
 
-        when(measureRepository.findAll()).thenReturn(historicalData);
+        givenTrainingData(historicalData);
 
         // When
         tariffMLService.trainNewModel();
@@ -490,8 +590,663 @@ class TariffMLServiceTest {
         assertThat(results).isEmpty();
     }
 
+    @Test
+    void scoreHorizon_WithRecentHistories_MatchesReadingPerRoute() {
+        // Given: one importer's measures for two products
+        mlProperties.getModel().setEnabled(false);
+        LocalDate startDate = LocalDate.now();
+        LocalDate endDate = startDate.plusDays(30);
+        List<Measure> first = createHistoricalDataForRoute("USA", "123456", 20);
+        List<Measure> second = createHistoricalDataForRoute("USA", "654321", 5);
+        for (int i = 0; i < first.size(); i++) {
+            first.get(i).setMfnAdvalRate(BigDecimal.valueOf(i % 7, 1));
+        }
+        for (int i = 0; i < second.size(); i++) {
+            second.get(i).setMfnAdvalRate(i == 2 ? null : BigDecimal.valueOf(i + 3, 2));
+        }
+        when(measureRepository.findHistoricalRates(eq("USA"), any(), any(LocalDate.class), any(LocalDate.class)))
+            .thenAnswer(call -> "123456".equals(call.getArgument(1)) ? first : second);
+        when(measureRepository.findHistoricalRows(eq("USA"), eq(List.of("123456", "654321", "999999")),
+                any(LocalDate.class), any(LocalDate.class)))
+            .thenReturn(Stream.concat(first.stream(), second.stream()).map(MeasureTrainingRow::of).toList());
+
+        // When
+        Map<String, RateHistory> histories = tariffMLService.recentHistories("USA", List.of("123456", "654321", "999999"));
+
+        // Then
+        assertThat(histories.get("999999")).isSameAs(RateHistory.EMPTY);
+        for (String hs6Code : List.of("123456", "654321")) {
+            HorizonForecast shared = tariffMLService.scoreHorizon("USA", "CHN", hs6Code, startDate, endDate,
+                histories.get(hs6Code));
+            HorizonForecast own = tariffMLService.scoreHorizon("USA", "CHN", hs6Code, startDate, endDate);
+            assertThat(shared.weekly()).usingRecursiveFieldByFieldElementComparator().isEqualTo(own.weekly());
+        }
+        verify(measureRepository, times(1)).findHistoricalRows(any(), any(), any(), any());
+    }
+
+    @Test
+    void predictRateRange_TrainedModel_MatchesDailyPredictions() {
+        // Given
+        mlProperties.getModel().setEnabled(true);
+        tariffMLService.initializeModel();
+
+        List<Measure> historicalData = createHistoricalData(50);
+        givenTrainingData(historicalData);
+        tariffMLService.trainNewModel();
+        when(measureRepository.findHistoricalRates(eq("USA"), eq("123456"), any(LocalDate.class), any(LocalDate.class)))
+            .thenReturn(historicalData);
+        when(measureRepository.countHistoricalRecords("USA", "123456")).thenReturn(50L);
+
+        LocalDate startDate = LocalDate.now().minusDays(3);
+        LocalDate endDate = startDate.plusDays(400);
+
+        // When
+        List<DateRangeForecast> results = tariffMLService.predictRateRange("USA", "CHN", "123456", startDate, endDate);
+
+        // Then
+        assertThat(results).hasSize(58);
+        assertThat(results).usingRecursiveComparison()
+            .isEqualTo(weeklyFromDailyPredictions("USA", "CHN", "123456", startDate, endDate));
+    }
+
+    @Test
+    void predictRateRange_TreeBackend_MatchesDailyPredictions() {
+        // Given
+        mlProperties.getModel().setBackend(MLModelProperties.Backend.GBT);
+        mlProperties.getModel().getTree().setRounds(10);
+        tariffMLService.initializeModel();
+
+        List<Measure> historicalData = createHistoricalData(104);
+        givenTrainingData(historicalData);
+        tariffMLService.trainNewModel();
+        when(measureRepository.findHistoricalRates(eq("USA"), eq("123456"), any(LocalDate.class), any(LocalDate.class)))
+            .thenReturn(historicalData);
+        when(measureRepository.countHistoricalRecords("USA", "123456")).thenReturn(104L);
+
+        LocalDate startDate = LocalDate.now().minusDays(3);
+        LocalDate endDate = startDate.plusDays(400);
+
+        // When
+        List<DateRangeForecast> results = tariffMLService.predictRateRange("USA", "CHN", "123456", startDate, endDate);
+
+        // Then
+        assertThat(tariffMLService.getModelStatus()).containsEntry("backend", "GBT");
+        assertThat(results).usingRecursiveComparison()
+            .isEqualTo(weeklyFromDailyPredictions("USA", "CHN", "123456", startDate, endDate));
+    }
+
+    @Test
+    void predictRateRange_TreeSplittingOnHistory_MatchesDailyPredictions() {
+        // Given: a tree answering 9 when the 3-year average exceeds 0.05 and 1 otherwise
+        ByteBuffer encoded = ByteBuffer.allocate(8 + 4 + 4 + 4 + 3 * (4 + 8 + 4 + 4));
+        encoded.putDouble(0).putInt(1).putInt(3).putInt(0);
+        encoded.putInt(FeatureSchema.AVG_RATE_3Y).putInt(-1).putInt(-1);
+        encoded.putDouble(0.05).putDouble(1).putDouble(9);
+        encoded.putInt(1).putInt(-1).putInt(-1);
+        encoded.putInt(2).putInt(-1).putInt(-1);
+        TariffMLService.TariffMLModel model = new TariffMLService.TariffMLModel("USA-123456");
+        model.setTrees(TreeRateModel.readFrom(encoded, 0));
+        model.setConfidenceBase(70);
+        ModelRegistry registry = (ModelRegistry) ReflectionTestUtils.getField(tariffMLService, "registry");
+        registry.publishRoute("test", "USA-123456", model);
+
+        List<Measure> historicalData = createHistoricalData(50);
+        when(measureRepository.findHistoricalRates(eq("USA"), eq("123456"), any(LocalDate.class), any(LocalDate.class)))
+            .thenReturn(historicalData);
+        when(measureRepository.countHistoricalRecords("USA", "123456")).thenReturn(50L);
+
+        LocalDate startDate = LocalDate.now();
+        LocalDate endDate = startDate.plusDays(60);
+
+        // When
+        List<DateRangeForecast> results = tariffMLService.predictRateRange("USA", "CHN", "123456", startDate, endDate);
+
+        // Then
+        assertThat(results).allSatisfy(week -> assertThat(week.getAvgRate()).isEqualByComparingTo("9"));
+        assertThat(results).usingRecursiveComparison()
+            .isEqualTo(weeklyFromDailyPredictions("USA", "CHN", "123456", startDate, endDate));
+    }
+
+    @Test
+    void predictRateRange_Fallback_MatchesDailyPredictions() {
+        // Given: no trained model, so every day uses the historical average
+        mlProperties.getModel().setEnabled(false);
+
+        List<Measure> historicalData = createHistoricalData(20);
+        when(measureRepository.findHistoricalRates(eq("USA"), eq("123456"), any(LocalDate.class), any(LocalDate.class)))
+            .thenReturn(historicalData);
+        when(measureRepository.countHistoricalRecords("USA", "123456")).thenReturn(20L);
+
+        // Spans the point 365 days out where confidence drops
+        LocalDate startDate = LocalDate.now().minusDays(10);
+        LocalDate endDate = startDate.plusDays(420);
+
+        // When
+        List<DateRangeForecast> results = tariffMLService.predictRateRange("USA", "CHN", "123456", startDate, endDate);
+
+        // Then
+        assertThat(results).usingRecursiveComparison()
+            .isEqualTo(weeklyFromDailyPredictions("USA", "CHN", "123456", startDate, endDate));
+        assertThat(results.get(0).getConfidencePercent())
+            .isGreaterThan(results.get(results.size() - 1).getConfidencePercent());
+    }
+
+    @Test
+    void predictRateRange_NoHistory_MatchesDailyPredictions() {
+        // Given
+        mlProperties.getModel().setEnabled(false);
+        when(measureRepository.findHistoricalRates(eq("USA"), eq("123456"), any(LocalDate.class), any(LocalDate.class)))
+            .thenReturn(Collections.emptyList());
+        when(measureRepository.countHistoricalRecords("USA", "123456")).thenReturn(0L);
+
+        LocalDate startDate = LocalDate.now();
+        LocalDate endDate = startDate.plusDays(30);
+
+        // When
+        List<DateRangeForecast> results = tariffMLService.predictRateRange("USA", "CHN", "123456", startDate, endDate);
+
+        // Then
+        assertThat(results).usingRecursiveComparison()
+            .isEqualTo(weeklyFromDailyPredictions("USA", "CHN", "123456", startDate, endDate));
+    }
+
+    @Test
+    void scoreHorizon_OneSlotPerDay() {
+        // Given
+        mlProperties.getModel().setEnabled(false);
+        when(measureRepository.findHistoricalRates(eq("USA"), eq("123456"), any(LocalDate.class), any(LocalDate.class)))
+            .thenReturn(createHistoricalData(10));
+
+        LocalDate startDate = LocalDate.of(2025, 1, 1);
+
+        // When
+        HorizonForecast horizon = tariffMLService.scoreHorizon("USA", "CHN", "123456", startDate, startDate.plusDays(45));
+
+        // Then
+        assertThat(horizon.days()).isEqualTo(45);
+        assertThat(horizon.confidence()).hasSize(45);
+        assertThat(horizon.hasHistoricalData()).isTrue();
+        assertThat(horizon.weekly()).hasSize(7);
+        assertThat(horizon.weekly().get(6).getDayCount()).isEqualTo(3L);
+    }
+
+    @Test
+    void initializeModel_MapsModelFileWithoutDecodingRoutes() throws Exception {
+        // Given
+        Map<String, TariffMLService.TariffMLModel> models = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            models.put("R" + i + "-123456", new TariffMLService.TariffMLModel("R" + i + "-123456"));
+        }
+        ModelStore.write(tempDir.resolve(ModelStore.FILE_NAME), currentHeader(), models);
+
+        // When
+        tariffMLService.initializeModel();
+
+        // Then
+        assertThat(tariffMLService.getModelStatus())
+            .containsEntry("modelTrained", true)
+            .containsEntry("trainedRoutes", 100)
+            .containsEntry("featureSchemaVersion", FeatureSchema.VERSION);
+    }
+
+    @Test
+    void initializeModel_SkipsModelFileFromAnotherFeatureSchema() throws Exception {
+        // Given
+        writeStore(new ModelStore.Header(FeatureSchema.VERSION - 1, MLModelProperties.Backend.MEAN, "1.0.0"));
+
+        // When
+        tariffMLService.initializeModel();
+
+        // Then
+        assertThat(tariffMLService.getModelStatus()).containsEntry("modelTrained", false);
+    }
+
+    @Test
+    void initializeModel_SkipsModelFileFromAnotherModelVersion() throws Exception {
+        // Given
+        writeStore(new ModelStore.Header(FeatureSchema.VERSION, MLModelProperties.Backend.MEAN, "0.9.0"));
+
+        // When
+        tariffMLService.initializeModel();
+
+        // Then
+        assertThat(tariffMLService.getModelStatus()).containsEntry("modelTrained", false);
+    }
+
+    @Test
+    void initializeModel_SkipsModelFileFromAnotherBackend() throws Exception {
+        // Given: mean models on disk while the tree backend is configured
+        mlProperties.getModel().setBackend(MLModelProperties.Backend.CART);
+        writeStore(new ModelStore.Header(FeatureSchema.VERSION, MLModelProperties.Backend.MEAN, "1.0.0"));
+
+        // When
+        tariffMLService.initializeModel();
+
+        // Then
+        assertThat(tariffMLService.getModelStatus()).containsEntry("modelTrained", false);
+    }
+
+    @Test
+    void initializeModel_IgnoresPerRouteModelFiles() throws Exception {
+        // Given: a file in the old per-route format
+        java.nio.file.Files.write(tempDir.resolve("USA_123456.model"), new byte[] {(byte) 0xAC, (byte) 0xED, 0, 5});
+
+        // When
+        tariffMLService.initializeModel();
+
+        // Then
+        assertThat(tariffMLService.getModelStatus()).containsEntry("modelTrained", false);
+    }
+
+    @Test
+    void trainNewModel_ManyRoutesInParallel_TrainsEveryRouteAndRecordsMetrics() {
+        // Given
+        mlProperties.getTraining().setParallelism(4);
+        List<Measure> historicalData = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            historicalData.addAll(createHistoricalDataForRoute("R" + i, "123456", 30 + i % 5));
+        }
+        givenTrainingData(historicalData);
+
+        // When
+        tariffMLService.trainNewModel();
+
+        // Then
+        Map<String, Object> status = tariffMLService.getModelStatus();
+        assertThat(status).containsEntry("trainedRoutes", 100);
+        assertThat(status.get("lastTraining")).isInstanceOfSatisfying(Map.class, training -> {
+            assertThat(training).containsEntry("routes", 100).containsEntry("trainedRoutes", 100);
+            assertThat((Long) training.get("totalMillis")).isGreaterThanOrEqualTo(0L);
+            assertThat((String) training.get("slowestRoute")).startsWith("R");
+        });
+    }
+
+    @Test
+    void trainNewModel_ComputesMeanOfRouteRates() {
+        // Given: rates 1..40, mean 20.5
+        List<Measure> historicalData = createHistoricalData(40);
+        for (int i = 0; i < historicalData.size(); i++) {
+            historicalData.get(i).setMfnAdvalRate(BigDecimal.valueOf(i + 1));
+        }
+        givenTrainingData(historicalData);
+        when(measureRepository.countHistoricalRecords("USA", "123456")).thenReturn(40L);
+        when(measureRepository.findHistoricalRates(eq("USA"), eq("123456"), any(LocalDate.class), any(LocalDate.class)))
+            .thenReturn(historicalData);
+
+        // When
+        tariffMLService.trainNewModel();
+
+        // Then: March and September have month_sin of +1 and -1, so their average is the mean
+        BigDecimal march = tariffMLService.predictTariffRate("USA", "CHN", "123456", LocalDate.of(2030, 3, 1)).getPredictedRate();
+        BigDecimal september = tariffMLService.predictTariffRate("USA", "CHN", "123456", LocalDate.of(2030, 9, 1)).getPredictedRate();
+        assertThat(march.add(september)).isEqualByComparingTo("41.00");
+    }
+
+    @Test
+    void trainNewModel_PersistsModelsInBackground() throws Exception {
+        // Given
+        givenTrainingData(createHistoricalData(50));
+
+        // When
+        tariffMLService.trainNewModel();
+        tariffMLService.getPendingPersistence().get(10, TimeUnit.SECONDS);
+
+        // Then
+        assertThat(tempDir.resolve(ModelStore.FILE_NAME)).exists();
+        tariffMLService.initializeModel();
+        assertThat(tariffMLService.getModelStatus()).containsEntry("modelTrained", true);
+    }
+
+    @Test
+    void rollbackModels_RestoresPreviousVersionAndModelFile() throws Exception {
+        // Given: a first training with one route, then a retrain that adds a second
+        List<Measure> first = createHistoricalData(40);
+        givenTrainingData(first);
+        tariffMLService.trainNewModel();
+
+        List<Measure> second = new ArrayList<>(first);
+        second.addAll(createHistoricalDataForRoute("CHN", "654321", 40));
+        givenTrainingData(second);
+        tariffMLService.trainNewModel();
+        assertThat(tariffMLService.getModelStatus()).containsEntry("trainedRoutes", 2);
+
+        // When
+        Optional<ModelRegistry.Snapshot> restored = tariffMLService.rollbackModels();
+        tariffMLService.getPendingPersistence().get(10, TimeUnit.SECONDS);
+
+        // Then
+        assertThat(restored).hasValueSatisfying(snapshot -> assertThat(snapshot.version()).isEqualTo(1));
+        assertThat(tariffMLService.getModelStatus()).containsEntry("trainedRoutes", 1);
+        ModelStore stored = ModelStore.open(tempDir.resolve(ModelStore.FILE_NAME));
+        assertThat(stored.size()).isEqualTo(1);
+        assertThat(stored.get("USA-123456")).isNotNull();
+        assertThat(stored.get("CHN-654321")).isNull();
+        assertThat(tariffMLService.rollbackModels()).isEmpty();
+    }
+
+    @Test
+    void trainNewModel_Fails_KeepsServingCurrentModels() {
+        // Given
+        givenTrainingData(createHistoricalData(40));
+        tariffMLService.trainNewModel();
+        doThrow(new IllegalStateException("database down")).when(trainingDataReader).forEachRoute(any());
+
+        // When
+        tariffMLService.trainNewModel();
+
+        // Then
+        assertThat(tariffMLService.getModelStatus())
+            .containsEntry("modelTrained", true)
+            .containsEntry("trainedRoutes", 1);
+    }
+
+    @Test
+    void applyMeasureChange_MeanModel_UpdatesRouteStatisticsWithoutRetraining() throws Exception {
+        // Given: rates 1..40, mean 20.5
+        givenTrainingData(ratedHistory(40));
+        tariffMLService.trainNewModel();
+
+        // When: insert 41, then update it to 82, then delete it
+        tariffMLService.applyMeasureChange(null, row(LocalDate.of(2031, 1, 1), 41));
+        RateStats inserted = storedStats("USA-123456");
+        tariffMLService.applyMeasureChange(row(LocalDate.of(2031, 1, 1), 41), row(LocalDate.of(2031, 1, 1), 82));
+        RateStats updated = storedStats("USA-123456");
+        tariffMLService.applyMeasureChange(row(LocalDate.of(2031, 1, 1), 82), null);
+        RateStats deleted = storedStats("USA-123456");
+
+        // Then
+        assertThat(inserted.count()).isEqualTo(41);
+        assertThat(inserted.mean()).isCloseTo(21.0, within(1e-9));
+        assertThat(updated.count()).isEqualTo(41);
+        assertThat(updated.mean()).isCloseTo(22.0, within(1e-9));
+        assertThat(deleted.count()).isEqualTo(40);
+        assertThat(deleted.mean()).isCloseTo(20.5, within(1e-9));
+        assertThat(deleted.stdDev()).isCloseTo(RateStats.of(rates(40)).stdDev(), within(1e-9));
+        verify(trainingDataReader, never()).readRoutes(any(), any());
+        assertThat(tariffMLService.getModelStatus()).extractingByKey("registry")
+            .asInstanceOf(InstanceOfAssertFactories.MAP).containsEntry("source", "measure write");
+    }
+
+    @Test
+    void applyMeasureChange_MovesRowBetweenRoutes() throws Exception {
+        // Given
+        List<Measure> history = ratedHistory(40);
+        history.addAll(createHistoricalDataForRoute("CHN", "654321", 40));
+        givenTrainingData(history);
+        tariffMLService.trainNewModel();
+        RateStats before = storedStats("CHN-654321");
+
+        // When: a USA row is corrected to belong to CHN
+        tariffMLService.applyMeasureChange(row(LocalDate.of(2020, 1, 1), 40),
+            new MeasureTrainingRow("CHN", "654321", LocalDate.of(2020, 1, 1), BigDecimal.valueOf(40)));
+
+        // Then
+        assertThat(storedStats("USA-123456").count()).isEqualTo(39);
+        assertThat(storedStats("USA-123456").mean()).isCloseTo(20.0, within(1e-9));
+        assertThat(storedStats("CHN-654321")).isEqualTo(before.add(40));
+    }
+
+    @Test
+    void applyMeasureChange_BelowMinimumSamples_DropsRouteModel() {
+        // Given
+        givenTrainingData(ratedHistory(30));
+        tariffMLService.trainNewModel();
+
+        // When
+        tariffMLService.applyMeasureChange(row(LocalDate.of(2020, 1, 1), 30), null);
+
+        // Then
+        assertThat(tariffMLService.getModelStatus()).containsEntry("trainedRoutes", 0);
+    }
+
+    @Test
+    void applyMeasureChange_RouteWithoutModel_TrainsItFromItsRows() {
+        // Given
+        when(trainingDataReader.readRoutes("USA", "123456")).thenReturn(List.of(series(rates(30))));
+
+        // When
+        tariffMLService.applyMeasureChange(null, row(LocalDate.of(2020, 1, 1), 30));
+
+        // Then
+        assertThat(tariffMLService.getModelStatus())
+            .containsEntry("modelTrained", true)
+            .containsEntry("trainedRoutes", 1);
+        verify(trainingDataReader, never()).forEachRoute(any());
+    }
+
+    @Test
+    void applyMeasureChange_TreeBackend_RetrainsOnlyTheRoute() {
+        // Given
+        mlProperties.getModel().setBackend(MLModelProperties.Backend.CART);
+        List<Measure> history = ratedHistory(40);
+        history.addAll(createHistoricalDataForRoute("CHN", "654321", 40));
+        givenTrainingData(history);
+        tariffMLService.trainNewModel();
+        when(trainingDataReader.readRoutes("USA", "123456")).thenReturn(List.of(series(rates(41))));
+
+        // When
+        tariffMLService.applyMeasureChange(null, row(LocalDate.of(2031, 1, 1), 41));
+
+        // Then
+        verify(trainingDataReader).readRoutes("USA", "123456");
+        verify(trainingDataReader, times(1)).forEachRoute(any());
+        assertThat(tariffMLService.getModelStatus()).containsEntry("trainedRoutes", 2);
+    }
+
+    @Test
+    void applyMeasureChange_DuringTraining_RetrainsRouteOnceTheRunPublishes() throws Exception {
+        // Given: a training run that waits inside the read
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Measure> history = ratedHistory(40);
+        doAnswer(invocation -> {
+            reading.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return TrainingDataReader.groupRoutes(history.stream().map(MeasureTrainingRow::of), invocation.getArgument(0));
+        }).when(trainingDataReader).forEachRoute(any());
+        when(trainingDataReader.readRoutes("USA", "123456")).thenReturn(List.of(series(rates(41))));
+        CompletableFuture<Void> run = tariffMLService.trainInBackground("test");
+        assertThat(reading.await(10, TimeUnit.SECONDS)).isTrue();
+
+        // When: a row is added that the run may or may not have read
+        tariffMLService.applyMeasureChange(null, row(LocalDate.of(2031, 1, 1), 41));
+        release.countDown();
+        run.get(10, TimeUnit.SECONDS);
+
+        // Then: the route is read again after the run's models are published
+        verify(trainingDataReader, times(2)).readRoutes("USA", "123456");
+        assertThat(tariffMLService.getModelStatus()).containsEntry("trainedRoutes", 1);
+        assertThat(storedStats("USA-123456").count()).isEqualTo(41);
+    }
+
+    @Test
+    void predictTariffRate_ExporterWithPreferences_UsesItsOwnRouteModel() {
+        // Given: MFN 10 from 2020; CHN has a 2% preference from 2021, halfway through its rows
+        List<MeasureTrainingRow> measures = new ArrayList<>();
+        List<PreferenceTrainingRow> preferences = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            measures.add(row(LocalDate.of(2020, 1, 1).plusWeeks(i), 10));
+            preferences.add(new PreferenceTrainingRow("USA", "CHN", "123456", LocalDate.of(2021, 1, 1).plusWeeks(i),
+                null, BigDecimal.valueOf(2)));
+        }
+        doAnswer(invocation -> TrainingDataReader.mergeRoutes(measures.stream(), Stream.empty(), preferences.stream(),
+            invocation.getArgument(0))).when(trainingDataReader).forEachRoute(any());
+        tariffMLService.trainNewModel();
+        when(measureRepository.countHistoricalRecords("USA", "123456")).thenReturn(40L);
+        LocalDate targetDate = LocalDate.now().plusMonths(6);
+
+        // When
+        ForecastResult preferential = tariffMLService.predictTariffRate("USA", "CHN", "123456", targetDate);
+        ForecastResult mfn = tariffMLService.predictTariffRate("USA", "DEU", "123456", targetDate);
+
+        // Then: the CHN route's rows are 40 at 10 and 40 at 2
+        assertThat(tariffMLService.getModelStatus()).containsEntry("trainedRoutes", 2);
+        assertThat(preferential.getIsFromMLModel()).isTrue();
+        assertThat(preferential.getPredictedRate().doubleValue()).isCloseTo(6.0, within(0.25));
+        assertThat(mfn.getIsFromMLModel()).isTrue();
+        assertThat(mfn.getPredictedRate()).isEqualByComparingTo("10.00");
+    }
+
+    @Test
+    void applyMeasureChange_RouteWithPreferences_RetrainsEveryExporterRoute() throws Exception {
+        // Given
+        givenTrainingData(ratedHistory(40));
+        tariffMLService.trainNewModel();
+        TrainingDataReader.RouteSeries exporterRoute = new TrainingDataReader.RouteSeries(
+            "USA-CHN-123456", series(rates(41)).validFrom(), rates(41), false);
+        when(trainingDataReader.hasExporterRoutes("USA", "123456")).thenReturn(true);
+        when(trainingDataReader.readRoutes("USA", "123456")).thenReturn(List.of(series(rates(41)), exporterRoute));
+
+        // When
+        tariffMLService.applyMeasureChange(null, row(LocalDate.of(2031, 1, 1), 41));
+
+        // Then: the exporter's model keeps no statistics to update, so it is retrained on every write
+        assertThat(tariffMLService.getModelStatus()).containsEntry("trainedRoutes", 2);
+        assertThat(storedStats("USA-123456").count()).isEqualTo(41);
+        assertThat(storedStats("USA-CHN-123456")).isEqualTo(RateStats.EMPTY);
+    }
+
+    @Test
+    void applyPreferenceChange_RetrainsTheProductsRoutesAndNotifiesListeners() {
+        // Given: a new CHN preference gives the route its own exporter model
+        TariffMLService.ModelUpdateListener listener = mock(TariffMLService.ModelUpdateListener.class);
+        tariffMLService.addModelUpdateListener(listener);
+        TrainingDataReader.RouteSeries exporterRoute = new TrainingDataReader.RouteSeries(
+            "USA-CHN-123456", series(rates(30)).validFrom(), rates(30), false);
+        when(trainingDataReader.readRoutes("USA", "123456")).thenReturn(List.of(series(rates(30)), exporterRoute));
+        PreferenceTrainingRow preference = new PreferenceTrainingRow("USA", "CHN", "123456",
+            LocalDate.of(2021, 1, 1), null, BigDecimal.valueOf(2));
+
+        // When
+        tariffMLService.applyPreferenceChange(null, preference);
+
+        // Then
+        verify(featureStore).applyPreferenceChange(null, preference);
+        assertThat(tariffMLService.getModelStatus()).containsEntry("trainedRoutes", 2);
+        verify(listener).routeUpdated("USA", "123456");
+    }
+
+    @Test
+    void applySuspensionChange_MovedToAnotherProduct_RetrainsBothAndNotifiesListeners() {
+        // Given
+        TariffMLService.ModelUpdateListener listener = mock(TariffMLService.ModelUpdateListener.class);
+        tariffMLService.addModelUpdateListener(listener);
+        when(trainingDataReader.readRoutes("USA", "123456")).thenReturn(List.of());
+        when(trainingDataReader.readRoutes("USA", "654321")).thenReturn(List.of());
+        SuspensionTrainingRow before = new SuspensionTrainingRow("USA", "123456", LocalDate.of(2021, 1, 1), null, null);
+        SuspensionTrainingRow after = new SuspensionTrainingRow("USA", "654321", LocalDate.of(2021, 1, 1), null, null);
+
+        // When
+        tariffMLService.applySuspensionChange(before, after);
+
+        // Then
+        verify(featureStore).applySuspensionChange(before, after);
+        verify(trainingDataReader).readRoutes("USA", "123456");
+        verify(trainingDataReader).readRoutes("USA", "654321");
+        verify(listener).routeUpdated("USA", "123456");
+        verify(listener).routeUpdated("USA", "654321");
+    }
+
+    @Test
+    void applySuspensionChange_ModelsDisabled_OnlyNotifies() {
+        // Given
+        mlProperties.getModel().setEnabled(false);
+        TariffMLService.ModelUpdateListener listener = mock(TariffMLService.ModelUpdateListener.class);
+        tariffMLService.addModelUpdateListener(listener);
+
+        // When
+        tariffMLService.applySuspensionChange(null,
+            new SuspensionTrainingRow("USA", "123456", LocalDate.of(2021, 1, 1), null, null));
+
+        // Then
+        verify(trainingDataReader, never()).readRoutes(any(), any());
+        verify(listener).routeUpdated("USA", "123456");
+    }
+
     // Helper methods
 
+    /**
+     * USA-123456 with rates 1..count, one per week from 2020-01-01.
+     */
+    private List<Measure> ratedHistory(int count) {
+        List<Measure> measures = createHistoricalData(count);
+        for (int i = 0; i < count; i++) {
+            measures.get(i).setValidFrom(LocalDate.of(2020, 1, 1).plusWeeks(i));
+            measures.get(i).setMfnAdvalRate(BigDecimal.valueOf(i + 1));
+        }
+        return measures;
+    }
+
+    private static double[] rates(int count) {
+        double[] rates = new double[count];
+        for (int i = 0; i < count; i++) {
+            rates[i] = i + 1;
+        }
+        return rates;
+    }
+
+    private static TrainingDataReader.RouteSeries series(double[] rates) {
+        LocalDate[] validFrom = new LocalDate[rates.length];
+        for (int i = 0; i < rates.length; i++) {
+            validFrom[i] = LocalDate.of(2020, 1, 1).plusWeeks(i);
+        }
+        return new TrainingDataReader.RouteSeries("USA-123456", validFrom, rates);
+    }
+
+    private static MeasureTrainingRow row(LocalDate validFrom, double rate) {
+        return new MeasureTrainingRow("USA", "123456", validFrom, BigDecimal.valueOf(rate));
+    }
+
+    private RateStats storedStats(String tradeRoute) throws Exception {
+        tariffMLService.getPendingPersistence().get(10, TimeUnit.SECONDS);
+        return ModelStore.open(tempDir.resolve(ModelStore.FILE_NAME)).get(tradeRoute).getStats();
+    }
+
+    private void givenTrainingData(List<Measure> measures) {
+        doAnswer(invocation -> TrainingDataReader.groupRoutes(
+            measures.stream()
+                .map(m -> new MeasureTrainingRow(m.getImporter().getCountryCode(), m.getProduct().getHs6Code(),
+                    m.getValidFrom(), m.getMfnAdvalRate()))
+                .sorted(Comparator.comparing(MeasureTrainingRow::importerCode)
+                    .thenComparing(MeasureTrainingRow::hs6Code)
+                    .thenComparing(MeasureTrainingRow::validFrom)),
+            invocation.getArgument(0))).when(trainingDataReader).forEachRoute(any());
+    }
+
+    private ModelStore.Header currentHeader() {
+        return new ModelStore.Header(FeatureSchema.VERSION, MLModelProperties.Backend.MEAN, "1.0.0");
+    }
+
+    private void writeStore(ModelStore.Header header) throws Exception {
+        TariffMLService.TariffMLModel model = new TariffMLService.TariffMLModel("USA-123456");
+        ModelStore.write(tempDir.resolve(ModelStore.FILE_NAME), header, Map.of("USA-123456", model));
+    }
+
+    /**
+     * predictTariffRate for each day, aggregated by week as predictRateRange did before horizon scoring.
+     */
+    private List<DateRangeForecast> weeklyFromDailyPredictions(
+            String importerCode, String exporterCode, String hs6Code, LocalDate startDate, LocalDate endDate) {
+        List<DateRangeForecast> results = new ArrayList<>();
+        for (LocalDate weekStart = startDate; weekStart.isBefore(endDate); weekStart = weekStart.plusDays(7)) {
+            List<ForecastResult> week = new ArrayList<>();
+            for (LocalDate day = weekStart; day.isBefore(weekStart.plusDays(7)) && day.isBefore(endDate); day = day.plusDays(1)) {
+                week.add(tariffMLService.predictTariffRate(importerCode, exporterCode, hs6Code, day));
+            }
+            results.add(DateRangeForecast.builder()
+                .startDate(weekStart)
+                .endDate(weekStart.plusDays(6))
+                .avgRate(week.stream().map(ForecastResult::getPredictedRate).reduce(BigDecimal.ZERO, BigDecimal::add)
+                    .divide(BigDecimal.valueOf(week.size()), 2, RoundingMode.HALF_UP))
+                .minRate(week.stream().map(ForecastResult::getPredictedRate).min(BigDecimal::compareTo).orElseThrow())
+                .maxRate(week.stream().map(ForecastResult::getPredictedRate).max(BigDecimal::compareTo).orElseThrow())
+                .confidencePercent(week.stream().mapToInt(ForecastResult::getConfidencePercent).sum() / week.size())
+                .dayCount((long) week.size())
+                .build());
+        }
+        return results;
+    }
+
     private List<Measure> createHistoricalData(int count) {
         return createHistoricalDataForRoute("USA", "123456", count);
     }
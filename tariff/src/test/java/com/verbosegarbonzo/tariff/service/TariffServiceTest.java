@@ -1,5 +1,5 @@
 package com.verbosegarbonzo.tariff.service;
-import com.verbosegarbonzo.tariff.config.WitsProperties;
+import com.verbosegarbonzo.tariff.client.WitsTariffClient;
 import com.verbosegarbonzo.tariff.exception.InvalidRateException;
 import com.verbosegarbonzo.tariff.exception.InvalidRequestException;
 import com.verbosegarbonzo.tariff.exception.RateNotFoundException;
@@ -8,11 +8,13 @@ import com.verbosegarbonzo.tariff.model.*;
 import com.verbosegarbonzo.tariff.repository.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -25,9 +27,11 @@ class TariffServiceTest {
     private SuspensionRepository suspensionRepository;
     private CountryRepository countryRepository;
     private ProductRepository productRepository;
-    private WebClient webClient;
-    private WitsProperties witsProperties;
+    private WitsTariffClient witsTariffClient;
     private FreightService freightService;
+    private RateIndexService rateIndexService;
+    private JdbcTemplate jdbcTemplate;
+    private RateWriteBehindService rateWriteBehindService;
     private TariffService tariffService;
 
     private Country importer;
@@ -41,19 +45,23 @@ class TariffServiceTest {
         suspensionRepository = mock(SuspensionRepository.class);
         countryRepository = mock(CountryRepository.class);
         productRepository = mock(ProductRepository.class);
-        webClient = mock(WebClient.class, RETURNS_DEEP_STUBS);
-        witsProperties = mock(WitsProperties.class, RETURNS_DEEP_STUBS);
+        witsTariffClient = mock(WitsTariffClient.class);
+        when(witsTariffClient.fetchRate(any(), any(), any(), anyInt()))
+                .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
         freightService = mock(FreightService.class);
+        rateIndexService = new RateIndexService(measureRepository, preferenceRepository, suspensionRepository);
+
+        jdbcTemplate = mock(JdbcTemplate.class);
+        rateWriteBehindService = new RateWriteBehindService(jdbcTemplate, mock(PlatformTransactionManager.class),
+                rateIndexService, mock(TariffMLService.class), 500, 10_000);
 
         tariffService = new TariffService(
-                preferenceRepository,
-                measureRepository,
-                suspensionRepository,
                 countryRepository,
                 productRepository,
-                webClient,
-                witsProperties,
-                freightService);
+                witsTariffClient,
+                freightService,
+                rateIndexService,
+                rateWriteBehindService);
 
         importer = Country.builder().countryCode("SGP").name("Singapore").numericCode("702").valuationBasis("CIF").build();
         exporter = Country.builder().countryCode("MYS").name("Malaysia").numericCode("458").valuationBasis("FOB").build();
@@ -75,6 +83,19 @@ class TariffServiceTest {
         return req;
     }
 
+    private void indexMeasure(BigDecimal advalRate, BigDecimal specificRate) {
+        Measure m = Measure.builder()
+                .measureId(1)
+                .importer(importer)
+                .product(product)
+                .validFrom(LocalDate.of(2024, 1, 1))
+                .validTo(LocalDate.of(2024, 12, 31))
+                .mfnAdvalRate(advalRate)
+                .specificRatePerKg(specificRate)
+                .build();
+        rateIndexService.indexMeasure(m);
+    }
+
     @Test
     void validateRequest_missingFields_throwInvalidRequest() {
         CalculateRequest req = new CalculateRequest();
@@ -88,10 +109,13 @@ class TariffServiceTest {
         req.setNetWeight(new BigDecimal("5"));
 
         Preference pref = new Preference();
+        pref.setPreferenceId(1);
+        pref.setImporter(importer);
+        pref.setExporter(exporter);
+        pref.setProduct(product);
+        pref.setValidFrom(LocalDate.of(2024, 1, 1));
         pref.setPrefAdValRate(new BigDecimal("10"));
-
-        when(preferenceRepository.findValidRate(importer, exporter, product, req.getTransactionDate()))
-                .thenReturn(Optional.of(pref));
+        rateIndexService.indexPreference(pref);
 
         CalculateResponse resp = tariffService.calculate(req);
         assertEquals(new BigDecimal("111.00"), resp.getTradeFinal());
@@ -107,12 +131,14 @@ class TariffServiceTest {
         CalculateRequest req = baseRequest();
         req.setNetWeight(new BigDecimal("2"));
 
-        when(preferenceRepository.findValidRate(any(), any(), any(), any())).thenReturn(Optional.empty());
-
         Suspension susp = new Suspension();
+        susp.setSuspensionId(1);
+        susp.setImporter(importer);
+        susp.setProduct(product);
+        susp.setValidFrom(LocalDate.of(2024, 1, 1));
+        susp.setSuspensionFlag(true);
         susp.setSuspensionRate(new BigDecimal("5"));
-        when(suspensionRepository.findActiveSuspension(importer, product, req.getTransactionDate()))
-                .thenReturn(Optional.of(susp));
+        rateIndexService.indexSuspension(susp);
 
         CalculateResponse resp = tariffService.calculate(req);
         assertEquals(new BigDecimal("106.00"), resp.getTradeFinal());
@@ -122,16 +148,40 @@ class TariffServiceTest {
     }
 
     @Test
-    void measurePath_advaloremOnly_usesPercentage() {
+    void preferenceTakesPrecedenceOverSuspensionAndMeasure() {
         CalculateRequest req = baseRequest();
 
-        when(preferenceRepository.findValidRate(any(), any(), any(), any())).thenReturn(Optional.empty());
-        when(suspensionRepository.findActiveSuspension(any(), any(), any())).thenReturn(Optional.empty());
+        Preference pref = new Preference();
+        pref.setPreferenceId(1);
+        pref.setImporter(importer);
+        pref.setExporter(exporter);
+        pref.setProduct(product);
+        pref.setValidFrom(LocalDate.of(2024, 1, 1));
+        pref.setPrefAdValRate(new BigDecimal("2"));
+        rateIndexService.indexPreference(pref);
+
+        Suspension susp = new Suspension();
+        susp.setSuspensionId(1);
+        susp.setImporter(importer);
+        susp.setProduct(product);
+        susp.setValidFrom(LocalDate.of(2024, 1, 1));
+        susp.setSuspensionFlag(true);
+        susp.setSuspensionRate(new BigDecimal("5"));
+        rateIndexService.indexSuspension(susp);
 
-        Measure m = new Measure();
-        m.setMfnAdvalRate(new BigDecimal("7.5"));
-        when(measureRepository.findValidRate(importer, product, req.getTransactionDate()))
-                .thenReturn(Optional.of(m));
+        indexMeasure(new BigDecimal("7.5"), null);
+
+        CalculateResponse resp = tariffService.calculate(req);
+        assertEquals(new BigDecimal("103.00"), resp.getTradeFinal());
+        assertTrue(resp.getAppliedRate().has("prefAdval"));
+        verifyNoInteractions(preferenceRepository, suspensionRepository, measureRepository);
+    }
+
+    @Test
+    void measurePath_advaloremOnly_usesPercentage() {
+        CalculateRequest req = baseRequest();
+
+        indexMeasure(new BigDecimal("7.5"), null);
 
         CalculateResponse resp = tariffService.calculate(req);
         assertEquals(new BigDecimal("108.50"), resp.getTradeFinal());
@@ -139,16 +189,22 @@ class TariffServiceTest {
     }
 
     @Test
-    void measurePath_specificOnly_requiresWeight() {
+    void measurePath_resolvesImporterOnceAndSkipsProductAndExporterLookups() {
         CalculateRequest req = baseRequest();
 
-        when(preferenceRepository.findValidRate(any(), any(), any(), any())).thenReturn(Optional.empty());
-        when(suspensionRepository.findActiveSuspension(any(), any(), any())).thenReturn(Optional.empty());
+        indexMeasure(new BigDecimal("7.5"), null);
 
-        Measure m = new Measure();
-        m.setSpecificRatePerKg(new BigDecimal("2.00"));
-        when(measureRepository.findValidRate(importer, product, req.getTransactionDate()))
-                .thenReturn(Optional.of(m));
+        tariffService.calculate(req);
+        verify(countryRepository, times(1)).findById("SGP");
+        verify(countryRepository, never()).findById("MYS");
+        verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    void measurePath_specificOnly_requiresWeight() {
+        CalculateRequest req = baseRequest();
+
+        indexMeasure(null, new BigDecimal("2.00"));
 
         assertThrows(WeightRequiredException.class, () -> tariffService.calculate(req));
     }
@@ -157,13 +213,7 @@ class TariffServiceTest {
     void measurePath_invalidRates_throwInvalidRateException() {
         CalculateRequest req = baseRequest();
 
-        when(preferenceRepository.findValidRate(any(), any(), any(), any())).thenReturn(Optional.empty());
-        when(suspensionRepository.findActiveSuspension(any(), any(), any())).thenReturn(Optional.empty());
-
-        Measure m = new Measure();
-        m.setMfnAdvalRate(new BigDecimal("-1"));
-        when(measureRepository.findValidRate(importer, product, req.getTransactionDate()))
-                .thenReturn(Optional.of(m));
+        indexMeasure(new BigDecimal("-1"), null);
 
         assertThrows(InvalidRateException.class, () -> tariffService.calculate(req));
     }
@@ -172,15 +222,33 @@ class TariffServiceTest {
     void whenNoDataAnywhere_throwRateNotFound() {
         CalculateRequest req = baseRequest();
 
-        when(preferenceRepository.findValidRate(any(), any(), any(), any())).thenReturn(Optional.empty());
-        when(suspensionRepository.findActiveSuspension(any(), any(), any())).thenReturn(Optional.empty());
-        when(measureRepository.findValidRate(any(), any(), any())).thenReturn(Optional.empty());
-
-        // Make WITS numeric codes present but parsing returns nulls internally
+        // WITS numeric codes present but the client has no rate for either call
         importer.setNumericCode("702");
         exporter.setNumericCode("458");
 
         assertThrows(RateNotFoundException.class, () -> tariffService.calculate(req));
+        verify(witsTariffClient).fetchRate("702", "458", "290531", 2024);
+        verify(witsTariffClient).fetchRate("702", WitsTariffClient.MFN_PARTNER, "290531", 2024);
+    }
+
+    @Test
+    void witsFallback_usesMfnRateAndIndexesItBeforePersisting() {
+        CalculateRequest req = baseRequest();
+
+        when(witsTariffClient.fetchRate("702", WitsTariffClient.MFN_PARTNER, "290531", 2024))
+                .thenReturn(CompletableFuture.completedFuture(Optional.of(new BigDecimal("6.5"))));
+
+        CalculateResponse resp = tariffService.calculate(req);
+        assertEquals(new BigDecimal("107.50"), resp.getTradeFinal());
+
+        // Indexed straight away, written to the database only on flush
+        assertTrue(rateIndexService.findMeasure("SGP", "290531", LocalDate.of(2024, 6, 1)).isPresent());
+        assertEquals(1, rateWriteBehindService.getQueueStatus().get("pendingMeasures"));
+        verifyNoInteractions(jdbcTemplate, measureRepository);
+
+        // The next call for the same route resolves from the index, not WITS
+        tariffService.calculate(req);
+        verify(witsTariffClient, times(1)).fetchRate("702", WitsTariffClient.MFN_PARTNER, "290531", 2024);
     }
 
     @Test
@@ -189,13 +257,7 @@ class TariffServiceTest {
         req.setIncludeFreight(true);
         req.setFreightMode("air");
 
-        when(preferenceRepository.findValidRate(any(), any(), any(), any())).thenReturn(Optional.empty());
-        when(suspensionRepository.findActiveSuspension(any(), any(), any())).thenReturn(Optional.empty());
-
-        Measure m = new Measure();
-        m.setMfnAdvalRate(new BigDecimal("0"));
-        when(measureRepository.findValidRate(importer, product, req.getTransactionDate()))
-                .thenReturn(Optional.of(m));
+        indexMeasure(new BigDecimal("0"), null);
 
         FreightService.FreightDetails details = new FreightService.FreightDetails(10.0, 20.0, 30.0, 5);
         when(freightService.calculateFreight("air", "SGP", "MYS", 100.0)).thenReturn(details);
@@ -215,4 +277,3 @@ class TariffServiceTest {
     }
 }
 
-
@@ -0,0 +1,165 @@
+package com.verbosegarbonzo.tariff.service;
+
+import com.verbosegarbonzo.tariff.model.MeasureTrainingRow;
+import com.verbosegarbonzo.tariff.model.PreferenceTrainingRow;
+import com.verbosegarbonzo.tariff.model.SuspensionTrainingRow;
+import com.verbosegarbonzo.tariff.repository.MeasureRepository;
+import com.verbosegarbonzo.tariff.repository.PreferenceRepository;
+import com.verbosegarbonzo.tariff.repository.SuspensionRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TrainingDataReaderTest {
+
+    @Mock
+    private MeasureRepository measureRepository;
+
+    @Mock
+    private PreferenceRepository preferenceRepository;
+
+    @Mock
+    private SuspensionRepository suspensionRepository;
+
+    @InjectMocks
+    private TrainingDataReader trainingDataReader;
+
+    @Test
+    void forEachRoute_GroupsConsecutiveRowsByRoute() {
+        // Given
+        when(measureRepository.streamTrainingRows()).thenReturn(Stream.of(
+            row("DEU", "111111", 1, "5.0"),
+            row("DEU", "111111", 2, null),
+            row("DEU", "222222", 1, "3.5"),
+            row("USA", "111111", 1, "7.25"),
+            row("USA", "111111", 2, "7.75")));
+
+        // When
+        List<TrainingDataReader.RouteSeries> routes = new ArrayList<>();
+        long rows = trainingDataReader.forEachRoute(routes::add);
+
+        // Then
+        assertThat(rows).isEqualTo(5);
+        assertThat(routes).extracting(TrainingDataReader.RouteSeries::tradeRoute)
+            .containsExactly("DEU-111111", "DEU-222222", "USA-111111");
+        assertThat(routes.get(0).size()).isEqualTo(2);
+        assertThat(routes.get(0).rates()[0]).isEqualTo(5.0);
+        assertThat(routes.get(0).rates()[1]).isNaN();
+        assertThat(routes.get(2).validFrom()).containsExactly(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 2, 1));
+        assertThat(routes.get(2).rates()).containsExactly(7.25, 7.75);
+    }
+
+    @Test
+    void forEachRoute_ClosesTheCursors() {
+        // Given
+        AtomicInteger closed = new AtomicInteger();
+        when(measureRepository.streamTrainingRows())
+            .thenReturn(Stream.of(row("DEU", "111111", 1, "5.0")).onClose(closed::incrementAndGet));
+        when(suspensionRepository.streamTrainingRows())
+            .thenReturn(Stream.<SuspensionTrainingRow>empty().onClose(closed::incrementAndGet));
+        when(preferenceRepository.streamTrainingRows())
+            .thenReturn(Stream.<PreferenceTrainingRow>empty().onClose(closed::incrementAndGet));
+
+        // When
+        trainingDataReader.forEachRoute(route -> { });
+
+        // Then
+        assertThat(closed).hasValue(3);
+    }
+
+    @Test
+    void mergeRoutes_AppliesSuspensionsAndPreferencesOfTheSameImporterAndProduct() {
+        // Given: DEU-111111 has a suspension in month 3 and preferences for CHN and FRA;
+        // USA-222222 has only a preference
+        Stream<MeasureTrainingRow> measures = Stream.of(
+            row("DEU", "111111", 1, "5.0"),
+            row("DEU", "111111", 2, "6.0"),
+            row("DEU", "111111", 4, "7.0"),
+            row("DEU", "222222", 1, "3.5"));
+        Stream<SuspensionTrainingRow> suspensions = Stream.of(
+            new SuspensionTrainingRow("DEU", "111111", month(3), month(4).minusDays(1), null));
+        Stream<PreferenceTrainingRow> preferences = Stream.of(
+            preference("DEU", "CHN", "111111", 2, "1.0"),
+            preference("DEU", "FRA", "111111", 1, "2.0"),
+            preference("USA", "CHN", "222222", 1, "0.5"));
+
+        // When
+        List<TrainingDataReader.RouteSeries> routes = new ArrayList<>();
+        long rows = TrainingDataReader.mergeRoutes(measures, suspensions, preferences, routes::add);
+
+        // Then
+        assertThat(rows).isEqualTo(8);
+        assertThat(routes).extracting(TrainingDataReader.RouteSeries::tradeRoute).containsExactly(
+            "DEU-111111", "DEU-CHN-111111", "DEU-FRA-111111", "DEU-222222", "USA-222222", "USA-CHN-222222");
+        assertThat(routes.get(0).validFrom()).containsExactly(month(1), month(2), month(3), month(4));
+        assertThat(routes.get(0).rates()).containsExactly(5.0, 6.0, 0.0, 7.0);
+        assertThat(routes.get(0).measureRowsOnly()).isFalse();
+        assertThat(routes.get(1).validFrom()).containsExactly(month(1), month(2));
+        assertThat(routes.get(1).rates()).containsExactly(5.0, 1.0);
+        assertThat(routes.get(2).rates()).containsExactly(2.0);
+        assertThat(routes.get(3).measureRowsOnly()).isTrue();
+        assertThat(routes.get(4).size()).isZero();
+        assertThat(routes.get(5).rates()).containsExactly(0.5);
+    }
+
+    @Test
+    void readRoutes_RouteWithoutRows_GivesEmptyRouteForEveryExporter() {
+        // When
+        List<TrainingDataReader.RouteSeries> routes = trainingDataReader.readRoutes("USA", "123456");
+
+        // Then
+        assertThat(routes).singleElement().satisfies(route -> {
+            assertThat(route.tradeRoute()).isEqualTo("USA-123456");
+            assertThat(route.size()).isZero();
+        });
+    }
+
+    @Test
+    void groupRoutes_HandsOverEachRouteBeforeReadingPastTheNext() {
+        // Given: 3 routes of 100 rows
+        AtomicInteger read = new AtomicInteger();
+        Stream<MeasureTrainingRow> rows = Stream.iterate(0, i -> i < 300, i -> i + 1)
+            .map(i -> row("C" + i / 100, "111111", i % 100 + 1, "1.0"))
+            .peek(row -> read.incrementAndGet());
+
+        // When
+        List<Integer> readWhenHandedOver = new ArrayList<>();
+        TrainingDataReader.groupRoutes(rows, route -> readWhenHandedOver.add(read.get()));
+
+        // Then: a route is complete once the first row of the next one is read
+        assertThat(readWhenHandedOver).containsExactly(101, 201, 300);
+    }
+
+    @Test
+    void groupRoutes_NoRows_HandsOverNothing() {
+        List<TrainingDataReader.RouteSeries> routes = new ArrayList<>();
+
+        assertThat(TrainingDataReader.groupRoutes(Stream.empty(), routes::add)).isZero();
+        assertThat(routes).isEmpty();
+    }
+
+    private static MeasureTrainingRow row(String importer, String hs6, int month, String rate) {
+        return new MeasureTrainingRow(importer, hs6, month(month), rate != null ? new BigDecimal(rate) : null);
+    }
+
+    private static PreferenceTrainingRow preference(String importer, String exporter, String hs6, int month, String rate) {
+        return new PreferenceTrainingRow(importer, exporter, hs6, month(month), null, new BigDecimal(rate));
+    }
+
+    private static LocalDate month(int month) {
+        return LocalDate.of(2024, 1, 1).plusMonths(month - 1);
+    }
+}
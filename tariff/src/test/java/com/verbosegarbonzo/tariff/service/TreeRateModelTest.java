@@ -0,0 +1,117 @@
+package com.verbosegarbonzo.tariff.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.*;
+
+class TreeRateModelTest {
+
+    @Test
+    void fit_SingleTree_LearnsSeasonalStep() {
+        // Given: 5% in the first half of each year, 10% in the second
+        TrainingDataReader.RouteSeries route = seasonalRoute(3);
+
+        // When
+        TreeRateModel model = TreeRateModel.fit(route, 1, 4, 1.0);
+
+        // Then
+        assertThat(model.getTreeCount()).isEqualTo(1);
+        assertThat(predict(model, LocalDate.of(2030, 3, 10))).isCloseTo(5.0, within(0.01));
+        assertThat(predict(model, LocalDate.of(2030, 9, 10))).isCloseTo(10.0, within(0.01));
+    }
+
+    @Test
+    void fit_Boosted_ConvergesOnSeasonalStep() {
+        // Given
+        TrainingDataReader.RouteSeries route = seasonalRoute(3);
+
+        // When
+        TreeRateModel model = TreeRateModel.fit(route, 50, 3, 0.1);
+
+        // Then
+        assertThat(model.getTreeCount()).isEqualTo(50);
+        assertThat(predict(model, LocalDate.of(2030, 3, 10))).isCloseTo(5.0, within(0.05));
+        assertThat(predict(model, LocalDate.of(2030, 9, 10))).isCloseTo(10.0, within(0.05));
+    }
+
+    @Test
+    void fit_SkipsRowsWithoutRate() {
+        // Given
+        TrainingDataReader.RouteSeries route = seasonalRoute(2);
+        for (int i = 0; i < route.size(); i += 3) {
+            route.rates()[i] = Double.NaN;
+        }
+
+        // When
+        TreeRateModel model = TreeRateModel.fit(route, 1, 4, 1.0);
+
+        // Then
+        assertThat(predict(model, LocalDate.of(2030, 2, 1))).isCloseTo(5.0, within(0.01));
+    }
+
+    @Test
+    void predictAll_MatchesSinglePredictions() {
+        // Given
+        TariffMLService.TariffMLModel model = new TariffMLService.TariffMLModel("USA-123456");
+        model.setTrees(TreeRateModel.fit(seasonalRoute(3), 20, 3, 0.1));
+
+        double[] rows = new double[365 * FeatureSchema.SIZE];
+        LocalDate day = LocalDate.of(2030, 1, 1);
+        for (int i = 0; i < 365; i++, day = day.plusDays(1)) {
+            FeatureSchema.writeSeasonality(day, rows, i * FeatureSchema.SIZE);
+        }
+
+        // When
+        double[] batch = new double[365];
+        model.predictAll(rows, 365, batch);
+
+        // Then
+        for (int i = 0; i < 365; i++) {
+            assertThat(batch[i]).isEqualTo(model.predict(rows, i * FeatureSchema.SIZE));
+        }
+    }
+
+    @Test
+    void writeTo_ReadFrom_PredictsTheSame() throws Exception {
+        // Given
+        TreeRateModel model = TreeRateModel.fit(seasonalRoute(3), 10, 3, 0.1);
+
+        // When: read back from an offset, as ModelStore does
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(-1L);
+            model.writeTo(out);
+        }
+        TreeRateModel restored = TreeRateModel.readFrom(ByteBuffer.wrap(bytes.toByteArray()), Long.BYTES);
+
+        // Then
+        assertThat(bytes.size()).isEqualTo(Long.BYTES + model.encodedSize());
+        assertThat(restored.getNodeCount()).isEqualTo(model.getNodeCount());
+        for (LocalDate date = LocalDate.of(2030, 1, 1); date.getYear() == 2030; date = date.plusDays(5)) {
+            assertThat(predict(restored, date)).isEqualTo(predict(model, date));
+        }
+    }
+
+    private static double predict(TreeRateModel model, LocalDate date) {
+        double[] features = FeatureSchema.newVector();
+        FeatureSchema.writeSeasonality(date, features, 0);
+        return model.predict(features, 0);
+    }
+
+    private static TrainingDataReader.RouteSeries seasonalRoute(int years) {
+        int weeks = years * 52;
+        LocalDate[] validFrom = new LocalDate[weeks];
+        double[] rates = new double[weeks];
+        LocalDate start = LocalDate.of(2020, 1, 1);
+        for (int i = 0; i < weeks; i++) {
+            validFrom[i] = start.plusWeeks(i);
+            rates[i] = validFrom[i].getMonthValue() <= 6 ? 5.0 : 10.0;
+        }
+        return new TrainingDataReader.RouteSeries("USA-123456", validFrom, rates);
+    }
+}